@@ -5,7 +5,7 @@ import seng202.group8.viewcontrollers.RootController;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.URISyntaxException;
+import java.net.URI;
 import java.sql.SQLException;
 import java.util.Arrays;
 
@@ -17,7 +17,7 @@ public class Main {
 
     public static void main(String[] args) {
         try {
-            boolean dbSet = false;
+            URI databaseUri = Database.getDefaultDatabasePath();
             if (args.length == 1) {
                 if (Arrays.stream(new String[]{"help", "--help"}).anyMatch(args[0].toLowerCase()::contains)) {
                     // https://stackoverflow.com/a/8832866
@@ -32,12 +32,17 @@ public class Main {
                 }
 
                 File databaseFile = new File(args[0]);
-                Database.setDatabasePath(databaseFile.toURI());
-                dbSet = true;
+                databaseUri = databaseFile.toURI();
             }
 
-            if (!dbSet) Database.setDatabasePath(); // set to default
-        } catch (IOException | URISyntaxException e) {
+            if (Database.hasPendingMigrations(databaseUri)) {
+                // Migrating can take a while, so it is done in the background once the progress dialog can be shown
+                RootController.setDatabaseToMigrate(databaseUri);
+            } else {
+                Database.setDatabasePath(databaseUri);
+                Database.establishConnection();
+            }
+        } catch (IOException e) {
             AlertHelper.showGenericErrorAlert(e, true,
                 "Could not load database",
                 "Check if the given path to the database is valid",
@@ -48,8 +53,6 @@ public class Main {
             Database.exitProgramOnSetDatabasePathException(e);
         }
 
-        Database.establishConnection();
-
         RootController.main(args);
     }
 }
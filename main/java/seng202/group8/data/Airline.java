@@ -50,6 +50,15 @@ public class Airline extends Data {
         this.country = country;
     }
 
+    /**
+     * Makes a copy of the airline with the same ID, e.g. to edit without changing the original
+     *
+     * @return the copy
+     */
+    public Airline copy() {
+        return new Airline(getId(), name, callsign, iata, icao, country);
+    }
+
     /**
      * This is the constructor when a user is editing and or changing data, using setters as the data given may not
      * be valid and needs to be error checked
@@ -98,6 +98,17 @@ public class Airport extends Data {
         this.dst = DSTType.fromCode(dst);
     }
 
+    /**
+     * Makes a copy of the airport with the same ID, e.g. to edit without changing the original
+     *
+     * @return the copy
+     */
+    public Airport copy() {
+        Airport copy = new Airport(getId(), name, city, country, iata, icao, latitude, longitude, altitude, timezone, 'U');
+        copy.dst = dst;
+        return copy;
+    }
+
     /**
      * This is the constructor used when importing from a CSV, or when a user is editing and or changing data
      * Setters are used and errors may be thrown if the data is invalid
@@ -46,4 +46,15 @@ public class DateTimeHelpers {
     public static LocalTime timeInMinutesToLocalTime(int timeInMinutes) {
         return LocalTime.of(timeInMinutes / 60, timeInMinutes % 60, 0, 0);
     }
+
+    /**
+     * Converts a date time to whole minutes since the epoch, rounding up any seconds
+     *
+     * @param dateTime date and time in any timezone
+     * @return minutes since 1970-01-01T00:00Z
+     */
+    public static long toEpochMinute(ZonedDateTime dateTime) {
+        long seconds = dateTime.toEpochSecond() + (dateTime.getNano() > 0 ? 1 : 0);
+        return Math.floorDiv(seconds + 59, 60);
+    }
 }
@@ -1,7 +1,8 @@
 package seng202.group8.data;
 
-import seng202.group8.datacontroller.AirportDataController;
+import seng202.group8.data.spatial.DistanceKernel;
 import seng202.group8.datacontroller.DataConstraintsException;
+import seng202.group8.datacontroller.RouteDataController;
 
 import java.sql.SQLException;
 import java.time.Duration;
@@ -42,6 +43,9 @@ public class Route extends Data {
     private int flightDuration; // Duration of the flight in minutes. Not null
     public static final String FLIGHT_DURATION = "TimeLength";
 
+    private Double distance = null; // Great circle distance between the airports in km, worked out by the database. Null if either airport is unknown
+    public static final String DISTANCE = "Distance";
+
     private ArrayList<Integer> takeoffTimes; // Sorted list of the times the flight takes off each day, in minutes from midnight UTC time
     public static final String TAKEOFF_TIMES = "NotAnActualRowInRoutesTakeoffTimes";
 
@@ -95,6 +99,18 @@ public class Route extends Data {
         Collections.sort(this.takeoffTimes); // Sort by takeoff time
     }
 
+    /**
+     * Makes a copy of the route with the same ID, e.g. to edit without changing the original
+     *
+     * @return the copy
+     */
+    public Route copy() {
+        Route copy = new Route(getId(), airlineCode, sourceAirportCode, destinationAirportCode, planeTypes, price,
+                isCodeShare, flightDuration, takeoffTimes);
+        copy.distance = distance;
+        return copy;
+    }
+
     /**
      * This is the constructor used when importing from a CSV, or when a user is editing and or changing data
      * Setters are used and errors may be thrown if the data is invalid
@@ -501,6 +517,26 @@ public class Route extends Data {
         this.flightDuration = flightDuration;
     }
 
+    /**
+     * Gets the great circle distance between the source and destination airports, as stored in the database.
+     * Not updated when the airport codes are changed until the route is saved and loaded again
+     *
+     * @return distance in km, or null if either airport is unknown or the route has not been saved
+     */
+    public Double getDistance() {
+        return distance;
+    }
+
+    /**
+     * Sets the stored distance of the route. Only used when loading from the database; the distance is always
+     * worked out from the airports when saving
+     *
+     * @param distance distance in km, or null if unknown
+     */
+    public void setDistance(Double distance) {
+        this.distance = distance;
+    }
+
     /**
      * Generates the flight duration for a route.
      *
@@ -536,7 +572,7 @@ public class Route extends Data {
      * @return distance between coordinates in km
      */
     public static double getDistanceFromLongLat(double lat1, double long1, double lat2, double long2) {
-        int radius = 6371; // km
+        double radius = DistanceKernel.EARTH_RADIUS; // km
         double dlat = degreeToRadians(lat2 - lat1);
         double dlong = degreeToRadians(long2 - long1);
         double haversine = Math.sin(dlat / 2) * Math.sin(dlat / 2) +
@@ -546,23 +582,16 @@ public class Route extends Data {
     }
 
     /**
-     * Calculates the distance between the source and destination airport. Requires DB access
+     * Calculates the distance between the source and destination airport. Requires DB access: both airports are read
+     * in one query, and the distance is worked out by {@link #getDistanceFromLongLat}
      * @param sourceAirportCode source IATA/ICAO airport code
      * @param destinationAirportCode destination IATA/ICAO airport code
      * @return distance between airports in kilometers as the crow flies, or 0 if either the source or destination airport can't be found
      * @throws SQLException if database error occurs while fetching source or destination airport
      */
     public static double calculateDistanceBetweenAirports(String sourceAirportCode, String destinationAirportCode) throws SQLException {
-        AirportDataController airportData = AirportDataController.getSingleton();
-        Airport start = airportData.getEntity(sourceAirportCode);
-        if (start == null) return 0;
-        Airport end = airportData.getEntity(destinationAirportCode);
-        if (end == null) return 0;
-
-        return getDistanceFromLongLat(
-                start.getLatitude(), start.getLongitude(),
-                end.getLatitude(), end.getLongitude()
-        );
+        Double distance = RouteDataController.getSingleton().getDistanceBetweenAirports(sourceAirportCode, destinationAirportCode);
+        return distance == null ? 0 : distance;
     }
 
     /**
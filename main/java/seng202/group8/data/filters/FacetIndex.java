@@ -0,0 +1,198 @@
+package seng202.group8.data.filters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory columnar copy of the columns of a table that the filters use, for counting how many rows each option of
+ * each textual filter would give.
+ * <p>
+ * Each textual column ("dimension") is stored as an int per row, indexing a dictionary of the column's distinct values.
+ * Numeric columns are stored as doubles, with NaN for null. {@link #count(List, List)} works out the counts for every
+ * dimension in a single pass over the rows. An index is never modified once built, so it can be counted from any
+ * thread.
+ */
+public class FacetIndex {
+    private final int rowCount;
+    private final int[][] keys; // [dimension][row], -1 for null
+    private final String[][] values; // [dimension][key]
+    private final double[][] numbers; // [numeric column][row]
+
+    /**
+     * Collects the rows of an index
+     */
+    public static class Builder {
+        private final List<Map<String, Integer>> keyIndexes = new ArrayList<>();
+        private final List<List<String>> values = new ArrayList<>();
+        private int[][] keys;
+        private double[][] numbers;
+        private int rowCount = 0;
+        private int capacity = 1024;
+
+        /**
+         * @param dimensionCount number of textual columns
+         * @param numericCount   number of numeric columns
+         */
+        public Builder(int dimensionCount, int numericCount) {
+            keys = new int[dimensionCount][capacity];
+            numbers = new double[numericCount][capacity];
+            for (int d = 0; d < dimensionCount; d++) {
+                keyIndexes.add(new HashMap<>());
+                values.add(new ArrayList<>());
+            }
+        }
+
+        /**
+         * Adds a row
+         *
+         * @param rowValues  value of each textual column; may contain nulls
+         * @param rowNumbers value of each numeric column; NaN for null
+         * @return this, for chaining
+         */
+        public Builder addRow(String[] rowValues, double... rowNumbers) {
+            if (rowCount == capacity) {
+                capacity *= 2;
+                for (int d = 0; d < keys.length; d++) {
+                    keys[d] = Arrays.copyOf(keys[d], capacity);
+                }
+                for (int n = 0; n < numbers.length; n++) {
+                    numbers[n] = Arrays.copyOf(numbers[n], capacity);
+                }
+            }
+            for (int d = 0; d < keys.length; d++) {
+                if (rowValues[d] == null) {
+                    keys[d][rowCount] = -1;
+                } else {
+                    List<String> dimensionValues = values.get(d);
+                    keys[d][rowCount] = keyIndexes.get(d).computeIfAbsent(rowValues[d], value -> {
+                        dimensionValues.add(value);
+                        return dimensionValues.size() - 1;
+                    });
+                }
+            }
+            for (int n = 0; n < numbers.length; n++) {
+                numbers[n][rowCount] = rowNumbers[n];
+            }
+            rowCount++;
+            return this;
+        }
+
+        /**
+         * Creates the index
+         *
+         * @return the index
+         */
+        public FacetIndex build() {
+            int[][] builtKeys = new int[keys.length][];
+            String[][] builtValues = new String[keys.length][];
+            for (int d = 0; d < keys.length; d++) {
+                builtKeys[d] = Arrays.copyOf(keys[d], rowCount);
+                builtValues[d] = values.get(d).toArray(new String[0]);
+            }
+            double[][] builtNumbers = new double[numbers.length][];
+            for (int n = 0; n < numbers.length; n++) {
+                builtNumbers[n] = Arrays.copyOf(numbers[n], rowCount);
+            }
+            return new FacetIndex(rowCount, builtKeys, builtValues, builtNumbers);
+        }
+    }
+
+    private FacetIndex(int rowCount, int[][] keys, String[][] values, double[][] numbers) {
+        this.rowCount = rowCount;
+        this.keys = keys;
+        this.values = values;
+        this.numbers = numbers;
+    }
+
+    /**
+     * Gets the number of rows
+     *
+     * @return number of rows
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Counts how many rows each value of each dimension would give. Each dimension is counted with every filter
+     * applied except its own, so the counts show what ticking another option would add
+     *
+     * @param selected for each dimension, the values selected; empty if the dimension is not filtered
+     * @param ranges   for each numeric column, the inclusive range rows must be in, or null if the column is not
+     *                 filtered. Rows with a null value are outside every range, as with SQL BETWEEN
+     * @return for each dimension, the number of rows for each value; values with no rows are left out
+     */
+    public List<Map<String, Integer>> count(List<? extends Set<String>> selected, List<FilterRange<Integer>> ranges) {
+        int dimensionCount = keys.length;
+
+        // Which keys pass each dimension's filter; null if it is not filtered
+        boolean[][] keyPasses = new boolean[dimensionCount][];
+        for (int d = 0; d < dimensionCount; d++) {
+            if (!selected.get(d).isEmpty()) {
+                keyPasses[d] = new boolean[values[d].length];
+                for (int k = 0; k < values[d].length; k++) {
+                    keyPasses[d][k] = selected.get(d).contains(values[d][k]);
+                }
+            }
+        }
+
+        boolean[] filtered = new boolean[numbers.length];
+        double[] mins = new double[numbers.length];
+        double[] maxes = new double[numbers.length];
+        for (int n = 0; n < numbers.length; n++) {
+            FilterRange<Integer> range = ranges.get(n);
+            filtered[n] = range != null;
+            mins[n] = range == null || range.min == null ? Double.NEGATIVE_INFINITY : range.min;
+            maxes[n] = range == null || range.max == null ? Double.POSITIVE_INFINITY : range.max;
+        }
+
+        int[][] keyCounts = new int[dimensionCount][];
+        for (int d = 0; d < dimensionCount; d++) {
+            keyCounts[d] = new int[values[d].length];
+        }
+
+        rows:
+        for (int row = 0; row < rowCount; row++) {
+            for (int n = 0; n < numbers.length; n++) {
+                double number = numbers[n][row];
+                if (filtered[n] && !(number >= mins[n] && number <= maxes[n])) { // NaN (null) is never in range
+                    continue rows;
+                }
+            }
+
+            // A row failing exactly one dimension's filter still counts towards that dimension
+            int failed = -1;
+            for (int d = 0; d < dimensionCount; d++) {
+                int key = keys[d][row];
+                if (keyPasses[d] != null && (key == -1 || !keyPasses[d][key])) {
+                    if (failed != -1) {
+                        continue rows;
+                    }
+                    failed = d;
+                }
+            }
+            for (int d = 0; d < dimensionCount; d++) {
+                int key = keys[d][row];
+                if (key != -1 && (failed == -1 || failed == d)) {
+                    keyCounts[d][key]++;
+                }
+            }
+        }
+
+        List<Map<String, Integer>> counts = new ArrayList<>(dimensionCount);
+        for (int d = 0; d < dimensionCount; d++) {
+            HashMap<String, Integer> valueCounts = new HashMap<>();
+            for (int k = 0; k < values[d].length; k++) {
+                if (keyCounts[d][k] != 0) {
+                    valueCounts.put(values[d][k], keyCounts[d][k]);
+                }
+            }
+            counts.add(valueCounts);
+        }
+        return counts;
+    }
+}
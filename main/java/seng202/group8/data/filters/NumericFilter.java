@@ -4,7 +4,8 @@ import seng202.group8.viewcontrollers.filterviews.NumericFilterView;
 
 /**
  * An class that represents a numeric filter component. Contains upper and lower bounds that can be used to filter
- * numeric attributes of collections of objects.
+ * numeric attributes of collections of objects. If given the distribution of the attribute, the limits of the bounds
+ * snap to the smallest and largest values in the data.
  */
 public class NumericFilter extends Filter {
     private final Integer min;
@@ -13,6 +14,9 @@ public class NumericFilter extends Filter {
 
     private FilterRange<Integer> range;
     private NumericFilterView filterView;
+    private ValueDistribution distribution = null;
+    private Integer limitMin; // Limits as of the last change to the distribution
+    private Integer limitMax;
 
     /**
      * Create the NumericFilter
@@ -30,24 +34,62 @@ public class NumericFilter extends Filter {
         this.max = max;
         this.range = new FilterRange<>(min, max);
         this.stepBy = stepBy;
+        this.limitMin = min;
+        this.limitMax = max;
     }
 
     /**
-     * Returns the minimum bound for this filter (ie the lowest possible low value allowed)
+     * Returns the minimum bound for this filter (ie the lowest possible low value allowed). This is the smallest value
+     * in the data if the filter has a distribution with values
      *
      * @return The minimum bound for this filter
      */
     public Integer getMin() {
-        return min;
+        return distribution == null || distribution.getCount() == 0 ? min : distribution.getMin();
     }
 
     /**
-     * Returns the maximum bound for this filter (ie the highest possible high value allowed)
+     * Returns the maximum bound for this filter (ie the highest possible high value allowed). This is the largest value
+     * in the data if the filter has a distribution with values
      *
      * @return The maximum bound for this filter
      */
     public Integer getMax() {
-        return max;
+        return distribution == null || distribution.getCount() == 0 ? max : distribution.getMax();
+    }
+
+    /**
+     * Sets the distribution of the values this filter filters, which the limits of the bounds snap to
+     *
+     * @param distribution distribution of the values, or null to use the fixed limits
+     */
+    public void setDistribution(ValueDistribution distribution) {
+        this.distribution = distribution;
+        distributionChanged();
+    }
+
+    /**
+     * Gets the distribution of the values this filter filters
+     *
+     * @return the distribution, or null if the filter has fixed limits
+     */
+    public ValueDistribution getDistribution() {
+        return distribution;
+    }
+
+    /**
+     * Updates the limits after the distribution has changed. A range that covered the old limits is moved to cover
+     * the new ones, so that no values are filtered out until the user narrows it
+     */
+    public void distributionChanged() {
+        boolean wasFullRange = limitMin.equals(range.min) && limitMax.equals(range.max);
+        limitMin = getMin();
+        limitMax = getMax();
+        if (filterView != null) {
+            filterView.refreshLimits();
+        } else if (wasFullRange) {
+            range = new FilterRange<>(limitMin, limitMax);
+        }
     }
 
     /**
@@ -80,6 +122,17 @@ public class NumericFilter extends Filter {
         return range;
     }
 
+    /**
+     * Checks if the filter is set to its whole range, so filters nothing out besides values outside of the
+     * minimum and maximum
+     *
+     * @return true if both bounds are at their limits
+     */
+    public boolean isFullRange() {
+        FilterRange<Integer> bounds = getBounds();
+        return getMin().equals(bounds.min) && getMax().equals(bounds.max);
+    }
+
     /**
      * Sets the numeric filter view component that interfaces this object
      *
@@ -0,0 +1,179 @@
+package seng202.group8.data.filters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Index of the options of a textual filter for case-insensitive substring search, so that typing in the search bar of
+ * a long option list does not scan every option.
+ * <p>
+ * Every substring of up to {@link #GRAM_LENGTH} characters of each lower-cased option ("n-gram") is mapped to the
+ * positions of the options containing it. A search looks up the rarest n-gram of the searched text, and only checks
+ * the options containing it. N-grams are packed into longs and kept in an open addressing table, so building the
+ * index does not create a string per n-gram. An index is never modified once built; it is rebuilt when the options
+ * change.
+ */
+public class OptionSearchIndex {
+    /**
+     * Length of the longest n-grams indexed. Texts this long or shorter are answered from the index alone
+     */
+    public static final int GRAM_LENGTH = 3;
+
+    private final String[] options;
+    private final String[] lowerCaseOptions;
+
+    private long[] grams; // Packed n-gram in each slot of the table, or 0 if the slot is empty
+    private int[] counts; // Number of options containing each slot's n-gram
+    private int[][] positions; // Positions of the options containing each slot's n-gram
+    private int used = 0;
+
+    /**
+     * Builds the index
+     *
+     * @param options options to search, in the order results should be given
+     */
+    public OptionSearchIndex(List<String> options) {
+        this.options = options.toArray(new String[0]);
+        lowerCaseOptions = new String[this.options.length];
+        grams = new long[1024];
+        counts = new int[grams.length];
+        int[] lastPosition = new int[grams.length]; // Position + 1 of the last option counted for each slot
+
+        // Count the options containing each n-gram, then fill in their positions
+        for (int i = 0; i < this.options.length; i++) {
+            lowerCaseOptions[i] = this.options[i].toLowerCase();
+            String option = lowerCaseOptions[i];
+            for (int start = 0; start < option.length(); start++) {
+                long gram = 0;
+                for (int length = 1; length <= GRAM_LENGTH && start + length <= option.length(); length++) {
+                    gram = extend(gram, option.charAt(start + length - 1));
+                    if (used * 2 >= grams.length) {
+                        lastPosition = grow(lastPosition);
+                    }
+                    int slot = findSlot(gram);
+                    if (grams[slot] == 0) {
+                        grams[slot] = gram;
+                        used++;
+                    }
+                    if (lastPosition[slot] != i + 1) { // Count each option once, however often it has the n-gram
+                        lastPosition[slot] = i + 1;
+                        counts[slot]++;
+                    }
+                }
+            }
+        }
+
+        positions = new int[grams.length][];
+        int[] filled = new int[grams.length];
+        for (int slot = 0; slot < grams.length; slot++) {
+            if (grams[slot] != 0) {
+                positions[slot] = new int[counts[slot]];
+            }
+        }
+        for (int i = 0; i < lowerCaseOptions.length; i++) {
+            String option = lowerCaseOptions[i];
+            for (int start = 0; start < option.length(); start++) {
+                long gram = 0;
+                for (int length = 1; length <= GRAM_LENGTH && start + length <= option.length(); length++) {
+                    gram = extend(gram, option.charAt(start + length - 1));
+                    int slot = findSlot(gram);
+                    int count = filled[slot];
+                    if (count == 0 || positions[slot][count - 1] != i) {
+                        positions[slot][count] = i;
+                        filled[slot]++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a character to the end of a packed n-gram. The length is kept in the top bits, so no n-gram packs to 0
+     *
+     * @param gram  packed n-gram, or 0 for the empty n-gram
+     * @param c     character to add
+     * @return the packed longer n-gram
+     */
+    private static long extend(long gram, char c) {
+        long length = (gram >>> 48) + 1;
+        return (length << 48) | ((gram & 0xFFFFFFFFFFFFL) << 16) | c;
+    }
+
+    /**
+     * Finds the slot of the table holding an n-gram, or the empty slot it would go in
+     *
+     * @param gram packed n-gram
+     * @return slot of the table
+     */
+    private int findSlot(long gram) {
+        int mask = grams.length - 1;
+        long hash = gram * 0x9E3779B97F4A7C15L;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (grams[slot] != 0 && grams[slot] != gram) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Doubles the size of the table while counting
+     *
+     * @param lastPosition last option counted for each slot
+     * @return last option counted for each slot of the new table
+     */
+    private int[] grow(int[] lastPosition) {
+        long[] oldGrams = grams;
+        int[] oldCounts = counts;
+        grams = new long[oldGrams.length * 2];
+        counts = new int[grams.length];
+        int[] newLastPosition = new int[grams.length];
+        for (int slot = 0; slot < oldGrams.length; slot++) {
+            if (oldGrams[slot] != 0) {
+                int newSlot = findSlot(oldGrams[slot]);
+                grams[newSlot] = oldGrams[slot];
+                counts[newSlot] = oldCounts[slot];
+                newLastPosition[newSlot] = lastPosition[slot];
+            }
+        }
+        return newLastPosition;
+    }
+
+    /**
+     * Finds the options containing the given text, ignoring case
+     *
+     * @param text text to search for
+     * @return matching options, in the order they were given to the index
+     */
+    public List<String> search(String text) {
+        String query = text.toLowerCase();
+        if (query.isEmpty()) {
+            return Arrays.asList(options.clone());
+        }
+
+        // Every option containing the text contains all of its n-grams, so only the rarest one's options are checked
+        int length = Math.min(GRAM_LENGTH, query.length());
+        int[] candidates = null;
+        for (int start = 0; start + length <= query.length(); start++) {
+            long gram = 0;
+            for (int i = start; i < start + length; i++) {
+                gram = extend(gram, query.charAt(i));
+            }
+            int slot = findSlot(gram);
+            if (grams[slot] == 0) {
+                return new ArrayList<>();
+            }
+            if (candidates == null || positions[slot].length < candidates.length) {
+                candidates = positions[slot];
+            }
+        }
+
+        ArrayList<String> results = new ArrayList<>();
+        for (int position : candidates) {
+            if (query.length() == length || lowerCaseOptions[position].contains(query)) {
+                results.add(options[position]);
+            }
+        }
+        return results;
+    }
+}
@@ -4,8 +4,12 @@ import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import seng202.group8.viewcontrollers.filterviews.TextualFilterView;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -17,6 +21,8 @@ public class TextualFilter extends Filter {
     private ObservableList<String> options;
     private HashSet<String> checkedOptions = new HashSet<>();
     private TextualFilterView textualFilterView;
+    private Map<String, Integer> optionCounts = null;
+    private OptionSearchIndex searchIndex = null; // Built when first searched after the options change
 
     /**
      * Gets the text options that are currently selected (ticked) by the user
@@ -64,8 +70,79 @@ public class TextualFilter extends Filter {
     public void setOptions(Collection<String> options) {
         this.options = FXCollections.observableArrayList(options);
         checkedOptions.retainAll(options);  // Ensure that selected options which are no longer valid are removed
+        optionsChanged();
+    }
+
+    /**
+     * Adds an option that can be selected by the user, keeping the options in order if they are sorted. Only the new
+     * option is added to the view; the search index is rebuilt on the next search
+     *
+     * @param option The text option to add. Should not already be an option
+     */
+    public void addAvailableOption(String option) {
+        int index = Collections.binarySearch(options, option);
+        options.add(index < 0 ? -index - 1 : index, option);
+        searchIndex = null;
+        if (textualFilterView != null) {
+            textualFilterView.optionAdded(option);
+        }
+    }
+
+    /**
+     * Removes an option so that it can no longer be selected by the user, unselecting it if it was selected. The
+     * options must be sorted
+     *
+     * @param option The text option to remove
+     */
+    public void removeAvailableOption(String option) {
+        int index = Collections.binarySearch(options, option);
+        if (index < 0) {
+            return;
+        }
+        options.remove(index);
+        checkedOptions.remove(option);
+        searchIndex = null;
+        if (textualFilterView != null) {
+            textualFilterView.optionRemoved(option);
+        }
+    }
+
+    /**
+     * Finds the options containing the given text, ignoring case. Uses an index of the options rather than checking
+     * each one, so is fast enough to run on every key press for thousands of options. The index is built by the first
+     * search after the options change
+     *
+     * @param text text typed by the user
+     * @return matching options, in the same order as the options; all options if the text is empty
+     */
+    public List<String> searchOptions(String text) {
+        if (text.isEmpty()) {
+            return new ArrayList<>(options);
+        }
+        if (searchIndex == null) {
+            searchIndex = new OptionSearchIndex(options);
+        }
+        return searchIndex.search(text);
+    }
+
+    /**
+     * Checks if an option would be found by searching for the given text
+     *
+     * @param option option to check
+     * @param text   text typed by the user
+     * @return true if the option contains the text, ignoring case
+     */
+    public static boolean optionMatches(String option, String text) {
+        return option.toLowerCase().contains(text.toLowerCase());
+    }
+
+    /**
+     * Discards the search index of the old options, and updates the view
+     */
+    private void optionsChanged() {
+        searchIndex = null;
         if (textualFilterView != null) {
-            textualFilterView.setOptions(this.options);
+            textualFilterView.refreshOptions();
         }
     }
 
@@ -78,6 +155,32 @@ public class TextualFilter extends Filter {
         return options;
     }
 
+    /**
+     * Sets how many results each option would give, to show next to the options
+     *
+     * @param optionCounts number of results for each option, with options giving none left out; or null to not show
+     *                     counts
+     */
+    public void setOptionCounts(Map<String, Integer> optionCounts) {
+        this.optionCounts = optionCounts;
+        if (textualFilterView != null) {
+            textualFilterView.refreshOptionCounts();
+        }
+    }
+
+    /**
+     * Gets how many results an option would give
+     *
+     * @param option The text option
+     * @return number of results, or null if the counts are not known
+     */
+    public Integer getOptionCount(String option) {
+        if (optionCounts == null) {
+            return null;
+        }
+        return optionCounts.getOrDefault(option, 0);
+    }
+
     /**
      * Sets the textual filter view component that interfaces this object
      *
@@ -3,12 +3,12 @@ package seng202.group8.data.filters;
 import java.util.function.Predicate;
 
 /**
- * A Predicate to be used for a TextualFilter, matching all objects whose string representation contains a specified substring.
- * Only the test() function and constructor has been properly implemented.
- * Note that the functions that return a predicate (and, negate, or) simply return null, so don't use these functions.
+ * A Predicate to be used for a TextualFilter, matching all objects whose string representation contains a specified
+ * substring, ignoring case. To search the options of a filter, use {@link TextualFilter#searchOptions(String)}, which
+ * does not check every option.
  */
 public class TextualFilterPredicate implements Predicate<Object> {
-    String filter;
+    private final String filter;
 
     /**
      * Constructs the TextualFilterPredicate
@@ -16,7 +16,7 @@ public class TextualFilterPredicate implements Predicate<Object> {
      * @param substring The substring that all accepted strings must contain
      */
     public TextualFilterPredicate(String substring) {
-        filter = substring;
+        filter = substring.toLowerCase();
     }
 
     /**
@@ -26,30 +26,6 @@ public class TextualFilterPredicate implements Predicate<Object> {
      */
     @Override
     public boolean test(Object testString) {
-        return testString.toString().toLowerCase().contains(filter.toLowerCase());
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public Predicate<Object> and(Predicate<? super Object> other) {
-        return null;
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public Predicate<Object> negate() {
-        return null;
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public Predicate<Object> or(Predicate<? super Object> other) {
-        return null;
+        return testString.toString().toLowerCase().contains(filter);
     }
 }
@@ -0,0 +1,164 @@
+package seng202.group8.data.filters;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Distribution of an integer attribute over a set of entities, e.g. the prices of all routes. Kept up to date one
+ * entity at a time, so the minimum, maximum and a histogram of the values are known without rescanning the table.
+ * <p>
+ * Each distinct value is counted once per entity that has it. The histogram is worked out from the distinct values
+ * the first time it is asked for after a change, and kept until the next change.
+ */
+public class ValueDistribution {
+    private final TreeMap<Integer, Integer> valueCounts = new TreeMap<>();
+    private int[] valuesById = new int[0];
+    private boolean[] hasValue = new boolean[0];
+    private int count = 0;
+
+    private int[] histogram = null;
+    private int histogramBuckets = 0;
+
+    /**
+     * Replaces every value, e.g. after the table was bulk loaded
+     *
+     * @param ids    entity IDs
+     * @param values value of each entity, in the same order as the IDs; null for entities without one
+     */
+    public void reset(List<Integer> ids, List<Integer> values) {
+        valueCounts.clear();
+        int maxId = 0;
+        for (int id : ids) {
+            maxId = Math.max(maxId, id);
+        }
+        valuesById = new int[maxId + 1];
+        hasValue = new boolean[maxId + 1];
+        count = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            Integer value = values.get(i);
+            if (value != null) {
+                valuesById[ids.get(i)] = value;
+                hasValue[ids.get(i)] = true;
+                valueCounts.merge(value, 1, Integer::sum);
+                count++;
+            }
+        }
+        histogram = null;
+    }
+
+    /**
+     * Records that an entity was added or changed
+     *
+     * @param id    ID of the entity
+     * @param value new value of the entity, or null if it has none
+     */
+    public void put(int id, Integer value) {
+        if (value == null) {
+            remove(id);
+            return;
+        }
+        if (id < hasValue.length && hasValue[id] && valuesById[id] == value) {
+            return;
+        }
+
+        remove(id);
+        if (id >= valuesById.length) {
+            int capacity = Math.max(id + 1, valuesById.length * 2);
+            valuesById = Arrays.copyOf(valuesById, capacity);
+            hasValue = Arrays.copyOf(hasValue, capacity);
+        }
+        valuesById[id] = value;
+        hasValue[id] = true;
+        valueCounts.merge(value, 1, Integer::sum);
+        count++;
+        histogram = null;
+    }
+
+    /**
+     * Records that an entity was deleted
+     *
+     * @param id ID the entity had
+     */
+    public void remove(int id) {
+        if (id < 0 || id >= hasValue.length || !hasValue[id]) {
+            return;
+        }
+
+        hasValue[id] = false;
+        if (valueCounts.merge(valuesById[id], -1, Integer::sum) == 0) {
+            valueCounts.remove(valuesById[id]);
+        }
+        count--;
+        histogram = null;
+    }
+
+    /**
+     * Gets the number of entities with a value
+     *
+     * @return number of values
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the smallest value
+     *
+     * @return smallest value, or null if there are none
+     */
+    public Integer getMin() {
+        return valueCounts.isEmpty() ? null : valueCounts.firstKey();
+    }
+
+    /**
+     * Gets the largest value
+     *
+     * @return largest value, or null if there are none
+     */
+    public Integer getMax() {
+        return valueCounts.isEmpty() ? null : valueCounts.lastKey();
+    }
+
+    /**
+     * Gets the width of the buckets of {@link #getHistogram(int)}
+     *
+     * @param bucketCount most buckets wanted
+     * @return width of each bucket, at least 1
+     */
+    public int getBucketWidth(int bucketCount) {
+        if (valueCounts.isEmpty()) {
+            return 1;
+        }
+        long range = (long) getMax() - getMin() + 1;
+        return (int) Math.max(1, (range + bucketCount - 1) / bucketCount);
+    }
+
+    /**
+     * Gets an equi-width histogram of the values, from the smallest value to the largest. Bucket i counts the values
+     * from min + i * width (inclusive) to min + (i + 1) * width (exclusive), where width is
+     * {@link #getBucketWidth(int)}
+     *
+     * @param bucketCount most buckets wanted; fewer are given if the values span fewer integers
+     * @return number of values in each bucket; empty if there are no values. Must not be modified
+     */
+    public int[] getHistogram(int bucketCount) {
+        if (histogram != null && histogramBuckets == bucketCount) {
+            return histogram;
+        }
+
+        if (valueCounts.isEmpty()) {
+            histogram = new int[0];
+        } else {
+            int min = getMin();
+            int width = getBucketWidth(bucketCount);
+            histogram = new int[(int) (((long) getMax() - min) / width) + 1];
+            for (Map.Entry<Integer, Integer> entry : valueCounts.entrySet()) {
+                histogram[(int) (((long) entry.getKey() - min) / width)] += entry.getValue();
+            }
+        }
+        histogramBuckets = bucketCount;
+        return histogram;
+    }
+}
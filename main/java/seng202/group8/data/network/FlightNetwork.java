@@ -0,0 +1,699 @@
+package seng202.group8.data.network;
+
+import seng202.group8.data.Route;
+import seng202.group8.data.spatial.DistanceKernel;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Compact, read-only graph of the flight network. Airports are nodes with dense integer indexes (0 to
+ * airportCount - 1) and routes are directed edges stored in compressed sparse row (CSR) form: the outgoing edges of
+ * airport `a` are the edges from {@link #getFirstEdge(int)} (inclusive) to {@link #getEdgeEnd(int)} (exclusive),
+ * and every per-edge value is held in a primitive array indexed by edge.
+ * <p>
+ * Takeoff schedules use the same layout: the sorted takeoff times of edge `e` are
+ * {@link #getTakeoffTime(int)} for k from {@link #getFirstTakeoff(int)} to {@link #getTakeoffEnd(int)}.
+ * <p>
+ * A network is never modified once built; {@link #withRoute(Route)} and {@link #withoutRoute(int)} return a patched
+ * copy, so a network can be read from any thread while a newer one is being made.
+ */
+public class FlightNetwork {
+    private static final String AIRPORT_SQL = "SELECT ID, IATA, ICAO, Country, Latitude, Longitude, Timezone FROM Airport ORDER BY ID";
+
+    /**
+     * Every route whose airports both exist, with the database IDs of the airports and its takeoff times.
+     * `+r.ID` stops the ID's integer affinity being applied to TakeoffTimes.Route, which would prevent the index on it
+     * being used
+     */
+    private static final String ROUTE_SQL = "SELECT r.ID, r.Airline, s.ID AS SourceID, d.ID AS DestinationID, r.Price, r.TimeLength, " +
+            "(SELECT group_concat(t.Time) FROM TakeoffTimes t WHERE t.Route = +r.ID) AS Times FROM Route r " +
+            "JOIN Airport s ON (r.Source = s.IATA OR r.Source = s.ICAO) " +
+            "JOIN Airport d ON (r.Destination = d.IATA OR r.Destination = d.ICAO)";
+
+    // Airports; shared between a network and its patched copies as they never change
+    private final int[] airportIds;
+    private final String[] airportCodes;
+    private final int[] airportCountries;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final double[] timezones;
+    private final String[] countryNames;
+    private final Map<String, Integer> airportIndexByCode;
+    private final DistanceKernel distanceKernel;
+
+    // Airlines are referenced by index so that edges can store them in an int array
+    private final String[] airlineCodes;
+    private final Map<String, Integer> airlineIndexByCode;
+
+    // Routes, in CSR form
+    private final int[] edgeOffsets;
+    private final int[] edgeTargets;
+    private final int[] edgeRouteIds;
+    private final int[] edgeAirlines;
+    private final int[] edgeDurations;
+    private final int[] edgePrices;
+    private final int[] takeoffOffsets;
+    private final int[] takeoffTimes;
+
+    private FlightNetwork(FlightNetwork airports, String[] airlineCodes, Map<String, Integer> airlineIndexByCode, EdgeList edges) {
+        this.airportIds = airports.airportIds;
+        this.airportCodes = airports.airportCodes;
+        this.airportCountries = airports.airportCountries;
+        this.latitudes = airports.latitudes;
+        this.longitudes = airports.longitudes;
+        this.timezones = airports.timezones;
+        this.countryNames = airports.countryNames;
+        this.airportIndexByCode = airports.airportIndexByCode;
+        this.distanceKernel = airports.distanceKernel;
+        this.airlineCodes = airlineCodes;
+        this.airlineIndexByCode = airlineIndexByCode;
+
+        // Counting sort of the edges by source airport
+        int airportCount = airportIds.length;
+        edgeOffsets = new int[airportCount + 1];
+        for (int i = 0; i < edges.size; i++) {
+            edgeOffsets[edges.sources.get(i) + 1]++;
+        }
+        for (int a = 0; a < airportCount; a++) {
+            edgeOffsets[a + 1] += edgeOffsets[a];
+        }
+
+        edgeTargets = new int[edges.size];
+        edgeRouteIds = new int[edges.size];
+        edgeAirlines = new int[edges.size];
+        edgeDurations = new int[edges.size];
+        edgePrices = new int[edges.size];
+        int[] order = new int[edges.size];
+        int[] next = Arrays.copyOf(edgeOffsets, airportCount);
+        for (int i = 0; i < edges.size; i++) {
+            int e = next[edges.sources.get(i)]++;
+            order[e] = i;
+            edgeTargets[e] = edges.targets.get(i);
+            edgeRouteIds[e] = edges.routeIds.get(i);
+            edgeAirlines[e] = edges.airlines.get(i);
+            edgeDurations[e] = edges.durations.get(i);
+            edgePrices[e] = edges.prices.get(i);
+        }
+
+        takeoffOffsets = new int[edges.size + 1];
+        takeoffTimes = new int[edges.times.size];
+        for (int e = 0; e < edges.size; e++) {
+            int i = order[e];
+            int start = edges.timeOffsets.get(i);
+            int length = edges.timeOffsets.get(i + 1) - start;
+            System.arraycopy(edges.times.data, start, takeoffTimes, takeoffOffsets[e], length);
+            takeoffOffsets[e + 1] = takeoffOffsets[e] + length;
+        }
+    }
+
+    private FlightNetwork(int[] airportIds, String[] airportCodes, int[] airportCountries, double[] latitudes,
+                          double[] longitudes, double[] timezones, String[] countryNames, Map<String, Integer> airportIndexByCode) {
+        this.airportIds = airportIds;
+        this.airportCodes = airportCodes;
+        this.airportCountries = airportCountries;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.timezones = timezones;
+        this.countryNames = countryNames;
+        this.airportIndexByCode = airportIndexByCode;
+        this.distanceKernel = new DistanceKernel(airportIds, latitudes, longitudes);
+        this.airlineCodes = new String[0];
+        this.airlineIndexByCode = Map.of();
+        this.edgeOffsets = new int[airportIds.length + 1];
+        this.edgeTargets = this.edgeRouteIds = this.edgeAirlines = this.edgeDurations = this.edgePrices = new int[0];
+        this.takeoffOffsets = new int[1];
+        this.takeoffTimes = new int[0];
+    }
+
+    /**
+     * Builds the network from the airports and routes in the database. Routes whose source or destination airport
+     * is not in the database are left out
+     *
+     * @param connection connection to the database
+     * @return the network
+     * @throws SQLException if error from database
+     */
+    public static FlightNetwork build(Connection connection) throws SQLException {
+        FlightNetwork airports = loadAirports(connection);
+        EdgeList edges = new EdgeList();
+        Map<String, Integer> airlineIndexByCode = new HashMap<>();
+        String[] airlineCodes = new String[16];
+
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet resultSet = statement.executeQuery(ROUTE_SQL)) {
+                while (resultSet.next()) {
+                    String airline = resultSet.getString("Airline");
+                    Integer airlineIndex = airlineIndexByCode.get(airline);
+                    if (airlineIndex == null) {
+                        airlineIndex = airlineIndexByCode.size();
+                        airlineIndexByCode.put(airline, airlineIndex);
+                        if (airlineIndex == airlineCodes.length) {
+                            airlineCodes = Arrays.copyOf(airlineCodes, airlineCodes.length * 2);
+                        }
+                        airlineCodes[airlineIndex] = airline;
+                    }
+
+                    edges.add(
+                            Arrays.binarySearch(airports.airportIds, resultSet.getInt("SourceID")),
+                            Arrays.binarySearch(airports.airportIds, resultSet.getInt("DestinationID")),
+                            resultSet.getInt("ID"),
+                            airlineIndex,
+                            resultSet.getInt("TimeLength"),
+                            resultSet.getInt("Price")
+                    );
+                    edges.addTimes(resultSet.getString("Times"));
+                }
+            }
+        }
+
+        return new FlightNetwork(airports, Arrays.copyOf(airlineCodes, airlineIndexByCode.size()), airlineIndexByCode, edges);
+    }
+
+    /**
+     * Reads every airport, giving each a dense index in order of their database IDs
+     *
+     * @return network containing the airports and no routes
+     */
+    private static FlightNetwork loadAirports(Connection connection) throws SQLException {
+        IntList ids = new IntList();
+        IntList countries = new IntList();
+        DoubleList latitudes = new DoubleList();
+        DoubleList longitudes = new DoubleList();
+        DoubleList timezones = new DoubleList();
+        List<String> codes = new ArrayList<>();
+        Map<String, Integer> indexByCode = new HashMap<>();
+        Map<String, Integer> countryIndexes = new HashMap<>();
+
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet resultSet = statement.executeQuery(AIRPORT_SQL)) {
+                while (resultSet.next()) {
+                    int index = ids.size;
+                    String iata = resultSet.getString("IATA");
+                    String icao = resultSet.getString("ICAO");
+                    ids.add(resultSet.getInt("ID"));
+                    codes.add(iata == null ? icao : iata); // Same as Airport.getCode
+                    if (iata != null) {
+                        indexByCode.put(iata, index);
+                    }
+                    if (icao != null) {
+                        indexByCode.put(icao, index);
+                    }
+                    countries.add(countryIndexes.computeIfAbsent(resultSet.getString("Country"), name -> countryIndexes.size()));
+                    latitudes.add(resultSet.getDouble("Latitude"));
+                    longitudes.add(resultSet.getDouble("Longitude"));
+                    timezones.add(resultSet.getDouble("Timezone"));
+                }
+            }
+        }
+
+        String[] countryNames = new String[countryIndexes.size()];
+        countryIndexes.forEach((name, index) -> countryNames[index] = name);
+        return new FlightNetwork(ids.toArray(), codes.toArray(new String[0]), countries.toArray(), latitudes.toArray(),
+                longitudes.toArray(), timezones.toArray(), countryNames, indexByCode);
+    }
+
+    /**
+     * Copies the edges of this network, except for the one belonging to the given route, into a new edge list
+     */
+    private EdgeList copyEdgesExcept(int routeId) {
+        EdgeList edges = new EdgeList();
+        for (int a = 0; a < getAirportCount(); a++) {
+            for (int e = edgeOffsets[a]; e < edgeOffsets[a + 1]; e++) {
+                if (edgeRouteIds[e] != routeId) {
+                    edges.add(a, edgeTargets[e], edgeRouteIds[e], edgeAirlines[e], edgeDurations[e], edgePrices[e]);
+                    edges.addTimes(takeoffTimes, takeoffOffsets[e], takeoffOffsets[e + 1]);
+                }
+            }
+        }
+        return edges;
+    }
+
+    /**
+     * Creates a copy of the network with the given route added, or replacing the existing edge for that route.
+     * If either of the route's airports are not in the network, the route is removed instead
+     *
+     * @param route route to add or update; must be in the database
+     * @return the patched network
+     */
+    public FlightNetwork withRoute(Route route) {
+        int source = getAirportIndex(route.getSourceAirportCode());
+        int destination = getAirportIndex(route.getDestinationAirportCode());
+        if (source == -1 || destination == -1) {
+            return withoutRoute(route.getId());
+        }
+
+        String[] newAirlineCodes = airlineCodes;
+        Map<String, Integer> newAirlineIndexByCode = airlineIndexByCode;
+        String airline = route.getAirlineCode().toUpperCase();
+        Integer airlineIndex = airlineIndexByCode.get(airline);
+        if (airlineIndex == null) {
+            airlineIndex = airlineCodes.length;
+            newAirlineCodes = Arrays.copyOf(airlineCodes, airlineCodes.length + 1);
+            newAirlineCodes[airlineIndex] = airline;
+            newAirlineIndexByCode = new HashMap<>(airlineIndexByCode);
+            newAirlineIndexByCode.put(airline, airlineIndex);
+        }
+
+        EdgeList edges = copyEdgesExcept(route.getId());
+        edges.add(source, destination, route.getId(), airlineIndex, route.getFlightDuration(), route.getPrice());
+        List<Integer> times = route.getTakeoffTimes();
+        for (int time : times) {
+            edges.times.add(time);
+        }
+        edges.timeOffsets.add(edges.times.size);
+        return new FlightNetwork(this, newAirlineCodes, newAirlineIndexByCode, edges);
+    }
+
+    /**
+     * Creates a copy of the network without the edge for the given route
+     *
+     * @param routeId database ID of the route to remove
+     * @return the patched network, or this network if it does not contain the route
+     */
+    public FlightNetwork withoutRoute(int routeId) {
+        if (findEdge(routeId) == -1) {
+            return this;
+        }
+        return new FlightNetwork(this, airlineCodes, airlineIndexByCode, copyEdgesExcept(routeId));
+    }
+
+    /**
+     * Gets the number of airports in the network
+     *
+     * @return number of airports
+     */
+    public int getAirportCount() {
+        return airportIds.length;
+    }
+
+    /**
+     * Gets the number of routes in the network
+     *
+     * @return number of edges
+     */
+    public int getEdgeCount() {
+        return edgeTargets.length;
+    }
+
+    /**
+     * Gets the index of the airport with the given IATA or ICAO code
+     *
+     * @param code IATA or ICAO code, in any case
+     * @return index of the airport, or -1 if it is not in the network
+     */
+    public int getAirportIndex(String code) {
+        if (code == null) {
+            return -1;
+        }
+        Integer index = airportIndexByCode.get(code.toUpperCase());
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Gets the index of the airport with the given database ID
+     *
+     * @param id database ID of the airport
+     * @return index of the airport, or -1 if it is not in the network
+     */
+    public int getAirportIndexById(int id) {
+        int index = Arrays.binarySearch(airportIds, id);
+        return index < 0 ? -1 : index;
+    }
+
+    /**
+     * Gets the database ID of an airport
+     *
+     * @param airport index of the airport
+     * @return database ID of the airport
+     */
+    public int getAirportId(int airport) {
+        return airportIds[airport];
+    }
+
+    /**
+     * Gets the code of an airport: its IATA code if it has one, otherwise its ICAO code
+     *
+     * @param airport index of the airport
+     * @return code of the airport
+     */
+    public String getAirportCode(int airport) {
+        return airportCodes[airport];
+    }
+
+    /**
+     * Gets the index of the country an airport is in. Two airports are in the same country if their country indexes
+     * are equal
+     *
+     * @param airport index of the airport
+     * @return index of the country
+     */
+    public int getAirportCountry(int airport) {
+        return airportCountries[airport];
+    }
+
+    /**
+     * Gets the name of a country from its index
+     *
+     * @param country index of the country, from {@link #getAirportCountry(int)}
+     * @return name of the country
+     */
+    public String getCountryName(int country) {
+        return countryNames[country];
+    }
+
+    /**
+     * Gets the number of distinct countries the airports are in
+     *
+     * @return number of countries; country indexes go from 0 to this - 1
+     */
+    public int getCountryCount() {
+        return countryNames.length;
+    }
+
+    /**
+     * Gets the index of a country from its name
+     *
+     * @param name name of the country
+     * @return index of the country, or -1 if no airport in the network is in it
+     */
+    public int getCountryIndex(String name) {
+        for (int country = 0; country < countryNames.length; country++) {
+            if (Objects.equals(countryNames[country], name)) {
+                return country;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the latitude of an airport
+     *
+     * @param airport index of the airport
+     * @return latitude in degrees
+     */
+    public double getLatitude(int airport) {
+        return latitudes[airport];
+    }
+
+    /**
+     * Gets the longitude of an airport
+     *
+     * @param airport index of the airport
+     * @return longitude in degrees
+     */
+    public double getLongitude(int airport) {
+        return longitudes[airport];
+    }
+
+    /**
+     * Gets a distance kernel over the airports of the network. Its airport indexes are the same as the network's
+     *
+     * @return the kernel
+     */
+    public DistanceKernel getDistanceKernel() {
+        return distanceKernel;
+    }
+
+    /**
+     * Gets the timezone of an airport
+     *
+     * @param airport index of the airport
+     * @return hours offset from UTC
+     */
+    public double getTimezone(int airport) {
+        return timezones[airport];
+    }
+
+    /**
+     * Gets the first outgoing edge of an airport
+     *
+     * @param airport index of the airport
+     * @return index of the first edge
+     */
+    public int getFirstEdge(int airport) {
+        return edgeOffsets[airport];
+    }
+
+    /**
+     * Gets the index after the last outgoing edge of an airport
+     *
+     * @param airport index of the airport
+     * @return index one past the last edge
+     */
+    public int getEdgeEnd(int airport) {
+        return edgeOffsets[airport + 1];
+    }
+
+    /**
+     * Gets the airport an edge starts from
+     *
+     * @param edge index of the edge
+     * @return index of the source airport
+     */
+    public int getEdgeSource(int edge) {
+        // Find the last airport whose first edge is at or before this one; airports with no edges share offsets
+        int low = 0;
+        int high = getAirportCount() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (edgeOffsets[middle] <= edge) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Gets the airport an edge flies to
+     *
+     * @param edge index of the edge
+     * @return index of the destination airport
+     */
+    public int getEdgeTarget(int edge) {
+        return edgeTargets[edge];
+    }
+
+    /**
+     * Gets the database ID of the route an edge represents
+     *
+     * @param edge index of the edge
+     * @return database ID of the route
+     */
+    public int getEdgeRouteId(int edge) {
+        return edgeRouteIds[edge];
+    }
+
+    /**
+     * Gets the airline that flies an edge
+     *
+     * @param edge index of the edge
+     * @return index of the airline
+     */
+    public int getEdgeAirline(int edge) {
+        return edgeAirlines[edge];
+    }
+
+    /**
+     * Gets the number of distinct airline codes used by the routes in the network
+     *
+     * @return number of airlines; airline indexes go from 0 to this - 1
+     */
+    public int getAirlineCount() {
+        return airlineCodes.length;
+    }
+
+    /**
+     * Gets the index of an airline from the code routes use for it
+     *
+     * @param code IATA or ICAO code, in any case
+     * @return index of the airline, or -1 if no route in the network uses the code
+     */
+    public int getAirlineIndex(String code) {
+        if (code == null) {
+            return -1;
+        }
+        Integer index = airlineIndexByCode.get(code.toUpperCase());
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Gets the code of an airline from its index
+     *
+     * @param airline index of the airline, from {@link #getEdgeAirline(int)}
+     * @return IATA or ICAO code of the airline
+     */
+    public String getAirlineCode(int airline) {
+        return airlineCodes[airline];
+    }
+
+    /**
+     * Gets the duration of an edge's flight
+     *
+     * @param edge index of the edge
+     * @return duration in minutes
+     */
+    public int getEdgeDuration(int edge) {
+        return edgeDurations[edge];
+    }
+
+    /**
+     * Gets the price of an edge's flight
+     *
+     * @param edge index of the edge
+     * @return price of the flight
+     */
+    public int getEdgePrice(int edge) {
+        return edgePrices[edge];
+    }
+
+    /**
+     * Gets the position of the first takeoff time of an edge
+     *
+     * @param edge index of the edge
+     * @return position to pass to {@link #getTakeoffTime(int)}
+     */
+    public int getFirstTakeoff(int edge) {
+        return takeoffOffsets[edge];
+    }
+
+    /**
+     * Gets the position after the last takeoff time of an edge
+     *
+     * @param edge index of the edge
+     * @return position one past the last takeoff time
+     */
+    public int getTakeoffEnd(int edge) {
+        return takeoffOffsets[edge + 1];
+    }
+
+    /**
+     * Gets a takeoff time. The takeoff times of each edge are sorted
+     *
+     * @param position position of the takeoff time, between {@link #getFirstTakeoff(int)} and {@link #getTakeoffEnd(int)}
+     * @return minutes from midnight UTC
+     */
+    public int getTakeoffTime(int position) {
+        return takeoffTimes[position];
+    }
+
+    /**
+     * Finds the edge for a route
+     *
+     * @param routeId database ID of the route
+     * @return index of the edge, or -1 if the route is not in the network
+     */
+    public int findEdge(int routeId) {
+        for (int e = 0; e < edgeRouteIds.length; e++) {
+            if (edgeRouteIds[e] == routeId) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Growable list of edges in no particular order, with their takeoff times stored back to back
+     */
+    private static class EdgeList {
+        private final IntList sources = new IntList();
+        private final IntList targets = new IntList();
+        private final IntList routeIds = new IntList();
+        private final IntList airlines = new IntList();
+        private final IntList durations = new IntList();
+        private final IntList prices = new IntList();
+        private final IntList timeOffsets = new IntList();
+        private final IntList times = new IntList();
+        private int size = 0;
+
+        private EdgeList() {
+            timeOffsets.add(0);
+        }
+
+        private void add(int source, int target, int routeId, int airline, int duration, int price) {
+            sources.add(source);
+            targets.add(target);
+            routeIds.add(routeId);
+            airlines.add(airline);
+            durations.add(duration);
+            prices.add(price);
+            size++;
+        }
+
+        /**
+         * Adds the takeoff times of the last edge from the comma separated list made by group_concat
+         */
+        private void addTimes(String list) {
+            int start = times.size;
+            if (list != null) {
+                for (String time : list.split(",")) {
+                    times.add(Integer.parseInt(time));
+                }
+            }
+            Arrays.sort(times.data, start, times.size);
+            timeOffsets.add(times.size);
+        }
+
+        /**
+         * Adds the takeoff times of the last edge from part of an array that is already sorted
+         */
+        private void addTimes(int[] source, int start, int end) {
+            for (int i = start; i < end; i++) {
+                times.add(source[i]);
+            }
+            timeOffsets.add(times.size);
+        }
+    }
+
+    /**
+     * Growable int array, to avoid boxing while the network is being built
+     */
+    private static class IntList {
+        private int[] data = new int[16];
+        private int size = 0;
+
+        private void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        private int get(int index) {
+            return data[index];
+        }
+
+        private int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+
+    /**
+     * Growable double array, to avoid boxing while the network is being built
+     */
+    private static class DoubleList {
+        private double[] data = new double[16];
+        private int size = 0;
+
+        private void add(double value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        private double[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
@@ -0,0 +1,405 @@
+package seng202.group8.data.network;
+
+import seng202.group8.data.spatial.DistanceKernel;
+
+import java.util.Arrays;
+
+/**
+ * Finds multi-leg itineraries through a {@link FlightNetwork}, taking the daily takeoff schedule of each route into
+ * account. Times are absolute, in minutes since the epoch (UTC).
+ * <p>
+ * Connections follow the same rules as the trip sanity check: at least 2 hours before an international flight and
+ * 30 minutes before a domestic one. No connection time is needed for the first flight.
+ * <p>
+ * Both searches are label-setting (Dijkstra) searches over airports. This works because waiting never lets you arrive
+ * earlier, so the earliest way to reach an airport is always the best one to continue from.
+ */
+public class ItinerarySearch {
+    public static final int DOMESTIC_CONNECTION_MINUTES = 30;
+    public static final int INTERNATIONAL_CONNECTION_MINUTES = 2 * 60;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private final FlightNetwork network;
+    private final DistanceKernel distanceKernel;
+
+    /**
+     * Fastest any route in the network covers its distance, in km per minute. Used for the A* lower bound
+     */
+    private final double maxSpeed;
+
+    /**
+     * A sequence of flights from the origin to the destination
+     */
+    public static class Itinerary {
+        private final FlightNetwork network;
+        private final int[] edges;
+        private final long[] takeoffs;
+
+        private Itinerary(FlightNetwork network, int[] edges, long[] takeoffs) {
+            this.network = network;
+            this.edges = edges;
+            this.takeoffs = takeoffs;
+        }
+
+        /**
+         * Gets the number of flights in the itinerary
+         *
+         * @return number of flights; 0 if the origin is the destination
+         */
+        public int getLegCount() {
+            return edges.length;
+        }
+
+        /**
+         * Gets the network edge flown on a leg
+         *
+         * @param leg index of the leg
+         * @return index of the edge in the network
+         */
+        public int getEdge(int leg) {
+            return edges[leg];
+        }
+
+        /**
+         * Gets the database ID of the route flown on a leg
+         *
+         * @param leg index of the leg
+         * @return route ID
+         */
+        public int getRouteId(int leg) {
+            return network.getEdgeRouteId(edges[leg]);
+        }
+
+        /**
+         * Gets the takeoff time of a leg
+         *
+         * @param leg index of the leg
+         * @return minutes since the epoch, UTC
+         */
+        public long getTakeoffMinute(int leg) {
+            return takeoffs[leg];
+        }
+
+        /**
+         * Gets the time the last flight lands
+         *
+         * @return minutes since the epoch, UTC, or -1 if there are no legs
+         */
+        public long getArrivalMinute() {
+            if (edges.length == 0) {
+                return -1;
+            }
+            return takeoffs[edges.length - 1] + network.getEdgeDuration(edges[edges.length - 1]);
+        }
+
+        /**
+         * Gets the total price of the flights
+         *
+         * @return sum of the prices of each leg, counting a negative price as free like {@link ItinerarySearch#findCheapest}
+         */
+        public int getPrice() {
+            int price = 0;
+            for (int edge : edges) {
+                price += getLegPrice(network, edge);
+            }
+            return price;
+        }
+    }
+
+    /**
+     * Gets the price the searches use for a flight. Negative prices are counted as free, as the cheapest search can
+     * not handle negative edges
+     *
+     * @param network network the edge is in
+     * @param edge    index of the edge
+     * @return price of the flight, at least 0
+     */
+    private static int getLegPrice(FlightNetwork network, int edge) {
+        return Math.max(0, network.getEdgePrice(edge));
+    }
+
+    /**
+     * Creates a search over the given network
+     *
+     * @param network network to search
+     */
+    public ItinerarySearch(FlightNetwork network) {
+        this.network = network;
+        this.distanceKernel = network.getDistanceKernel();
+
+        int edgeCount = network.getEdgeCount();
+        int[] sources = new int[edgeCount];
+        int[] targets = new int[edgeCount];
+        for (int a = 0; a < network.getAirportCount(); a++) {
+            for (int e = network.getFirstEdge(a); e < network.getEdgeEnd(a); e++) {
+                sources[e] = a;
+                targets[e] = network.getEdgeTarget(e);
+            }
+        }
+        double[] distances = new double[edgeCount];
+        distanceKernel.distances(sources, targets, edgeCount, distances);
+
+        double fastest = 0;
+        for (int e = 0; e < edgeCount; e++) {
+            int duration = network.getEdgeDuration(e);
+            if (duration > 0) {
+                fastest = Math.max(fastest, distances[e] / duration);
+            } else if (distances[e] > 0) {
+                fastest = Double.POSITIVE_INFINITY; // A zero length flight means there is no useful bound
+            }
+        }
+        maxSpeed = fastest;
+    }
+
+    /**
+     * Gets the network being searched
+     *
+     * @return the network
+     */
+    public FlightNetwork getNetwork() {
+        return network;
+    }
+
+    /**
+     * Gets the connection time needed before taking a flight, which depends on if the flight is international
+     *
+     * @param edge index of the edge being flown
+     * @return minimum minutes between landing and the takeoff of the flight
+     */
+    public int getConnectionMinutes(int edge) {
+        int source = network.getEdgeSource(edge);
+        boolean isInternational = network.getAirportCountry(source) != network.getAirportCountry(network.getEdgeTarget(edge));
+        return isInternational ? INTERNATIONAL_CONNECTION_MINUTES : DOMESTIC_CONNECTION_MINUTES;
+    }
+
+    /**
+     * Finds the first takeoff of an edge at or after the given time. Takeoff times repeat every day
+     *
+     * @param edge     index of the edge
+     * @param earliest earliest acceptable takeoff, in minutes since the epoch
+     * @return takeoff time in minutes since the epoch, or -1 if the route has no takeoff times
+     */
+    public long getNextTakeoff(int edge, long earliest) {
+        int first = network.getFirstTakeoff(edge);
+        int end = network.getTakeoffEnd(edge);
+        if (first == end) {
+            return -1;
+        }
+
+        long day = Math.floorDiv(earliest, MINUTES_PER_DAY);
+        int timeOfDay = Math.floorMod(earliest, MINUTES_PER_DAY);
+        // Binary search for the first takeoff at or after the time of day
+        int low = first;
+        int high = end;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (network.getTakeoffTime(middle) < timeOfDay) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        if (low == end) {
+            return (day + 1) * MINUTES_PER_DAY + network.getTakeoffTime(first); // First flight the next day
+        }
+        return day * MINUTES_PER_DAY + network.getTakeoffTime(low);
+    }
+
+    /**
+     * Gets the earliest time an edge can be taken off on after arriving at its source airport
+     */
+    private long getDeparture(int edge, long arrival, boolean isOrigin) {
+        return getNextTakeoff(edge, isOrigin ? arrival : arrival + getConnectionMinutes(edge));
+    }
+
+    /**
+     * Finds the itinerary that lands at the destination as early as possible, using A* with a lower bound from the
+     * great circle distance to the destination
+     *
+     * @param origin      index of the origin airport
+     * @param destination index of the destination airport
+     * @param departure   earliest time to take off, in minutes since the epoch
+     * @return the itinerary, or null if the destination can not be reached
+     */
+    public Itinerary findEarliestArrival(int origin, int destination, long departure) {
+        int airportCount = network.getAirportCount();
+        long[] arrival = new long[airportCount];
+        Arrays.fill(arrival, Long.MAX_VALUE);
+        double[] bound = new double[airportCount];
+        Arrays.fill(bound, -1);
+        int[] previousEdge = new int[airportCount];
+        long[] previousTakeoff = new long[airportCount];
+        boolean[] settled = new boolean[airportCount];
+
+        Heap heap = new Heap();
+        arrival[origin] = departure;
+        previousEdge[origin] = -1;
+        heap.push(departure, origin);
+
+        while (heap.size > 0) {
+            int airport = heap.popNode();
+            if (settled[airport]) {
+                continue;
+            }
+            settled[airport] = true;
+            if (airport == destination) {
+                return makeItinerary(destination, previousEdge, previousTakeoff);
+            }
+
+            for (int e = network.getFirstEdge(airport); e < network.getEdgeEnd(airport); e++) {
+                int target = network.getEdgeTarget(e);
+                if (settled[target]) {
+                    continue;
+                }
+                long takeoff = getDeparture(e, arrival[airport], airport == origin);
+                if (takeoff == -1) {
+                    continue;
+                }
+                long landing = takeoff + network.getEdgeDuration(e);
+                if (landing < arrival[target]) {
+                    arrival[target] = landing;
+                    previousEdge[target] = e;
+                    previousTakeoff[target] = takeoff;
+                    if (bound[target] < 0) {
+                        bound[target] = maxSpeed == 0 || Double.isInfinite(maxSpeed) ? 0 : distanceKernel.distance(target, destination) / maxSpeed;
+                    }
+                    heap.push(landing + (long) Math.floor(bound[target]), target);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the itinerary with the lowest total price, taking the flight that lands earliest when prices are equal
+     *
+     * @param origin      index of the origin airport
+     * @param destination index of the destination airport
+     * @param departure   earliest time to take off, in minutes since the epoch
+     * @return the itinerary, or null if the destination can not be reached
+     */
+    public Itinerary findCheapest(int origin, int destination, long departure) {
+        int airportCount = network.getAirportCount();
+        long[] price = new long[airportCount];
+        Arrays.fill(price, Long.MAX_VALUE);
+        long[] arrival = new long[airportCount];
+        int[] previousEdge = new int[airportCount];
+        long[] previousTakeoff = new long[airportCount];
+        boolean[] settled = new boolean[airportCount];
+
+        // The heap is ordered by price, then by arrival time relative to the departure
+        Heap heap = new Heap();
+        price[origin] = 0;
+        arrival[origin] = departure;
+        previousEdge[origin] = -1;
+        heap.push(0, origin);
+
+        while (heap.size > 0) {
+            int airport = heap.popNode();
+            if (settled[airport]) {
+                continue;
+            }
+            settled[airport] = true;
+            if (airport == destination) {
+                return makeItinerary(destination, previousEdge, previousTakeoff);
+            }
+
+            for (int e = network.getFirstEdge(airport); e < network.getEdgeEnd(airport); e++) {
+                int target = network.getEdgeTarget(e);
+                if (settled[target]) {
+                    continue;
+                }
+                long takeoff = getDeparture(e, arrival[airport], airport == origin);
+                if (takeoff == -1) {
+                    continue;
+                }
+                long landing = takeoff + network.getEdgeDuration(e);
+                long newPrice = price[airport] + getLegPrice(network, e);
+                if (newPrice < price[target] || (newPrice == price[target] && landing < arrival[target])) {
+                    price[target] = newPrice;
+                    arrival[target] = landing;
+                    previousEdge[target] = e;
+                    previousTakeoff[target] = takeoff;
+                    heap.push((newPrice << 31) | Math.min(landing - departure, Integer.MAX_VALUE), target);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Follows the previous edges back from the destination to get the legs in order
+     */
+    private Itinerary makeItinerary(int destination, int[] previousEdge, long[] previousTakeoff) {
+        int legs = 0;
+        for (int airport = destination; previousEdge[airport] != -1; airport = network.getEdgeSource(previousEdge[airport])) {
+            legs++;
+        }
+
+        int[] edges = new int[legs];
+        long[] takeoffs = new long[legs];
+        int airport = destination;
+        for (int leg = legs - 1; leg >= 0; leg--) {
+            edges[leg] = previousEdge[airport];
+            takeoffs[leg] = previousTakeoff[airport];
+            airport = network.getEdgeSource(edges[leg]);
+        }
+        return new Itinerary(network, edges, takeoffs);
+    }
+
+    /**
+     * Binary min-heap of airports keyed by a long. Stale entries are left in and skipped when popped, which is
+     * cheaper than a decrease-key operation for graphs this sparse
+     */
+    private static class Heap {
+        private long[] keys = new long[64];
+        private int[] nodes = new int[64];
+        private int size = 0;
+
+        private void push(long key, int node) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                nodes = Arrays.copyOf(nodes, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[parent] <= key) {
+                    break;
+                }
+                keys[i] = keys[parent];
+                nodes[i] = nodes[parent];
+                i = parent;
+            }
+            keys[i] = key;
+            nodes[i] = node;
+        }
+
+        private int popNode() {
+            int top = nodes[0];
+            size--;
+            long key = keys[size];
+            int node = nodes[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (keys[child] >= key) {
+                    break;
+                }
+                keys[i] = keys[child];
+                nodes[i] = nodes[child];
+                i = child;
+            }
+            keys[i] = key;
+            nodes[i] = node;
+            return top;
+        }
+    }
+}
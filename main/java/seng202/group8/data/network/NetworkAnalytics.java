@@ -0,0 +1,421 @@
+package seng202.group8.data.network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Connectivity metrics over a {@link FlightNetwork}: the degree of each airport, how many airports can be reached
+ * from it within a number of flights, and the biggest hubs of each country and airline.
+ * <p>
+ * Everything is worked out up front by {@link #compute(FlightNetwork)}. The per-airport metrics are split into
+ * ranges of airports run on the common fork-join pool, each with its own scratch arrays; the rankings are made by
+ * sorting packed long keys with {@link Arrays#parallelSort(long[])}. Like the network, the results never change, so
+ * they can be shared between threads.
+ */
+public class NetworkAnalytics {
+    /**
+     * Number of flights the precomputed reachability counts allow
+     */
+    public static final int REACH_LEGS = 2;
+
+    /**
+     * Most airports a single fork-join task works on before it is split
+     */
+    private static final int TASK_SIZE = 256;
+
+    /**
+     * Mask for an airport index packed into the low bits of a sort key
+     */
+    private static final int AIRPORT_MASK = (1 << 24) - 1;
+
+    private final FlightNetwork network;
+
+    // Reverse of the network's edges: the sources of the edges into airport `a` are
+    // inSources[inOffsets[a]] to inSources[inOffsets[a + 1] - 1]
+    private final int[] inOffsets;
+    private final int[] inSources;
+
+    // Per airport
+    private final int[] outDegrees;
+    private final int[] inDegrees;
+    private final int[] degrees;
+    private final int[] reachCounts;
+    private final int[] countryRanks;
+
+    // Airports of each country from most to least connected, in CSR form by country index
+    private final int[] countryOffsets;
+    private final int[] countryAirports;
+
+    // Airports used by each airline from most to fewest routes, in CSR form by airline index
+    private final int[] airlineOffsets;
+    private final int[] airlineAirports;
+    private final int[] airlineRouteCounts;
+
+    /**
+     * An airport and the number of routes of an airline that use it
+     */
+    public static class Hub {
+        private final int airport;
+        private final int routeCount;
+
+        private Hub(int airport, int routeCount) {
+            this.airport = airport;
+            this.routeCount = routeCount;
+        }
+
+        /**
+         * Gets the airport
+         *
+         * @return index of the airport in the network
+         */
+        public int getAirport() {
+            return airport;
+        }
+
+        /**
+         * Gets the number of routes of the airline that start or end at the airport
+         *
+         * @return number of routes
+         */
+        public int getRouteCount() {
+            return routeCount;
+        }
+    }
+
+    private NetworkAnalytics(FlightNetwork network) {
+        this.network = network;
+        int airportCount = network.getAirportCount();
+        int edgeCount = network.getEdgeCount();
+
+        // Counting sort of the edges by target for the reverse adjacency
+        inOffsets = new int[airportCount + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            inOffsets[network.getEdgeTarget(e) + 1]++;
+        }
+        for (int a = 0; a < airportCount; a++) {
+            inOffsets[a + 1] += inOffsets[a];
+        }
+        inSources = new int[edgeCount];
+        int[] next = Arrays.copyOf(inOffsets, airportCount);
+        for (int a = 0; a < airportCount; a++) {
+            for (int e = network.getFirstEdge(a); e < network.getEdgeEnd(a); e++) {
+                inSources[next[network.getEdgeTarget(e)]++] = a;
+            }
+        }
+
+        outDegrees = new int[airportCount];
+        inDegrees = new int[airportCount];
+        degrees = new int[airportCount];
+        reachCounts = new int[airportCount];
+        ForkJoinPool.commonPool().invoke(new AirportTask(0, airportCount));
+
+        // Sort by country, then most connected first. Airport indexes and degrees are less than 2^24 and there are far
+        // fewer than 2^15 countries, so the packed keys are never negative
+        long[] keys = new long[airportCount];
+        for (int a = 0; a < airportCount; a++) {
+            keys[a] = ((long) network.getAirportCountry(a) << 48) | ((long) (AIRPORT_MASK - degrees[a]) << 24) | a;
+        }
+        Arrays.parallelSort(keys);
+        countryOffsets = new int[network.getCountryCount() + 1];
+        countryAirports = new int[airportCount];
+        for (int i = 0; i < airportCount; i++) {
+            countryAirports[i] = (int) (keys[i] & AIRPORT_MASK);
+            countryOffsets[network.getAirportCountry(countryAirports[i]) + 1]++;
+        }
+        for (int c = 0; c < network.getCountryCount(); c++) {
+            countryOffsets[c + 1] += countryOffsets[c];
+        }
+        countryRanks = new int[airportCount];
+        for (int i = 0; i < airportCount; i++) {
+            int airport = countryAirports[i];
+            countryRanks[airport] = i - countryOffsets[network.getAirportCountry(airport)] + 1;
+        }
+
+        // Count the routes of each airline at each airport by sorting (airline, airport) pairs, one for each end of
+        // every edge, and counting runs of equal pairs
+        long[] pairs = new long[edgeCount * 2];
+        for (int a = 0; a < airportCount; a++) {
+            for (int e = network.getFirstEdge(a); e < network.getEdgeEnd(a); e++) {
+                long airline = (long) network.getEdgeAirline(e) << 32;
+                pairs[2 * e] = airline | a;
+                pairs[2 * e + 1] = airline | network.getEdgeTarget(e);
+            }
+        }
+        Arrays.parallelSort(pairs);
+
+        airlineOffsets = new int[network.getAirlineCount() + 1];
+        long[] hubs = new long[pairs.length];
+        int runs = 0;
+        for (int i = 0; i < pairs.length; ) {
+            int end = i + 1;
+            while (end < pairs.length && pairs[end] == pairs[i]) {
+                end++;
+            }
+            airlineOffsets[(int) (pairs[i] >>> 32) + 1]++;
+            hubs[runs++] = ((long) (Integer.MAX_VALUE - (end - i)) << 32) | (pairs[i] & 0xFFFFFFFFL);
+            i = end;
+        }
+        for (int l = 0; l < network.getAirlineCount(); l++) {
+            airlineOffsets[l + 1] += airlineOffsets[l];
+        }
+
+        // The runs are already grouped by airline; order each airline's airports by most routes first
+        airlineAirports = new int[runs];
+        airlineRouteCounts = new int[runs];
+        for (int l = 0; l < network.getAirlineCount(); l++) {
+            Arrays.sort(hubs, airlineOffsets[l], airlineOffsets[l + 1]);
+        }
+        for (int i = 0; i < runs; i++) {
+            airlineAirports[i] = (int) hubs[i];
+            airlineRouteCounts[i] = Integer.MAX_VALUE - (int) (hubs[i] >>> 32);
+        }
+    }
+
+    /**
+     * Works out every metric for a network
+     *
+     * @param network network to analyse
+     * @return the analytics
+     */
+    public static NetworkAnalytics compute(FlightNetwork network) {
+        return new NetworkAnalytics(network);
+    }
+
+    /**
+     * Gets the network the analytics were worked out from
+     *
+     * @return the network
+     */
+    public FlightNetwork getNetwork() {
+        return network;
+    }
+
+    /**
+     * Gets the number of airports with a direct flight from an airport
+     *
+     * @param airport index of the airport
+     * @return number of distinct destinations
+     */
+    public int getOutDegree(int airport) {
+        return outDegrees[airport];
+    }
+
+    /**
+     * Gets the number of airports with a direct flight to an airport
+     *
+     * @param airport index of the airport
+     * @return number of distinct origins
+     */
+    public int getInDegree(int airport) {
+        return inDegrees[airport];
+    }
+
+    /**
+     * Gets the number of airports with a direct flight to or from an airport
+     *
+     * @param airport index of the airport
+     * @return number of distinct airports connected to the airport
+     */
+    public int getDegree(int airport) {
+        return degrees[airport];
+    }
+
+    /**
+     * Gets the degree centrality of an airport: the fraction of the other airports it is directly connected to
+     *
+     * @param airport index of the airport
+     * @return centrality between 0 and 1
+     */
+    public double getDegreeCentrality(int airport) {
+        int others = network.getAirportCount() - 1;
+        return others == 0 ? 0 : degrees[airport] / (double) others;
+    }
+
+    /**
+     * Gets the number of other airports that can be reached from an airport in at most {@link #REACH_LEGS} flights
+     *
+     * @param airport index of the airport
+     * @return number of reachable airports
+     */
+    public int getReachCount(int airport) {
+        return reachCounts[airport];
+    }
+
+    /**
+     * Counts the other airports that can be reached from an airport in at most the given number of flights.
+     * Not precomputed unless `maxLegs` is {@link #REACH_LEGS}, so runs a breadth first search
+     *
+     * @param airport index of the origin airport
+     * @param maxLegs maximum number of flights
+     * @return number of reachable airports
+     */
+    public int countReachable(int airport, int maxLegs) {
+        if (maxLegs == REACH_LEGS) {
+            return reachCounts[airport];
+        }
+        int words = (network.getAirportCount() + 63) >>> 6;
+        return countReachable(network, airport, maxLegs, new long[words], new long[words], new long[words]);
+    }
+
+    /**
+     * Gets the position of an airport among the airports of its country, by degree
+     *
+     * @param airport index of the airport
+     * @return 1 for the most connected airport in the country, 2 for the next, etc.
+     */
+    public int getCountryRank(int airport) {
+        return countryRanks[airport];
+    }
+
+    /**
+     * Gets the most connected airports in a country
+     *
+     * @param country index of the country
+     * @param count   maximum number of airports to return
+     * @return airport indexes, most connected first
+     */
+    public int[] getTopHubsInCountry(int country, int count) {
+        int start = countryOffsets[country];
+        return Arrays.copyOfRange(countryAirports, start, Math.min(countryOffsets[country + 1], start + count));
+    }
+
+    /**
+     * Gets the airports used by the most routes of an airline. An airline can appear in routes under both its IATA
+     * and ICAO code, so the counts of every given airline index are added together
+     *
+     * @param airlines indexes of the airline in the network
+     * @param count    maximum number of hubs to return
+     * @return hubs, most routes first
+     */
+    public List<Hub> getTopHubsForAirline(int[] airlines, int count) {
+        if (airlines.length == 1) {
+            List<Hub> hubs = new ArrayList<>(count);
+            for (int i = airlineOffsets[airlines[0]]; i < airlineOffsets[airlines[0] + 1] && hubs.size() < count; i++) {
+                hubs.add(new Hub(airlineAirports[i], airlineRouteCounts[i]));
+            }
+            return hubs;
+        }
+
+        int[] totals = new int[network.getAirportCount()];
+        for (int airline : airlines) {
+            for (int i = airlineOffsets[airline]; i < airlineOffsets[airline + 1]; i++) {
+                totals[airlineAirports[i]] += airlineRouteCounts[i];
+            }
+        }
+        List<Hub> hubs = new ArrayList<>();
+        for (int airport = 0; airport < totals.length; airport++) {
+            if (totals[airport] > 0) {
+                hubs.add(new Hub(airport, totals[airport]));
+            }
+        }
+        hubs.sort((a, b) -> a.routeCount != b.routeCount ? Integer.compare(b.routeCount, a.routeCount) : Integer.compare(a.airport, b.airport));
+        return hubs.subList(0, Math.min(count, hubs.size()));
+    }
+
+    /**
+     * Breadth first search from an airport, one bitset per level. The frontier is walked a word at a time, skipping
+     * empty words, so sparse levels of a large network are cheap
+     */
+    private static int countReachable(FlightNetwork network, int origin, int maxLegs, long[] visited, long[] frontier, long[] next) {
+        Arrays.fill(visited, 0);
+        Arrays.fill(frontier, 0);
+        visited[origin >>> 6] |= 1L << origin;
+        frontier[origin >>> 6] |= 1L << origin;
+        int reached = 0;
+
+        for (int leg = 0; leg < maxLegs; leg++) {
+            Arrays.fill(next, 0);
+            boolean added = false;
+            for (int word = 0; word < frontier.length; word++) {
+                long bits = frontier[word];
+                while (bits != 0) {
+                    int airport = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    for (int e = network.getFirstEdge(airport); e < network.getEdgeEnd(airport); e++) {
+                        int target = network.getEdgeTarget(e);
+                        long bit = 1L << target;
+                        if ((visited[target >>> 6] & bit) == 0) {
+                            visited[target >>> 6] |= bit;
+                            next[target >>> 6] |= bit;
+                            reached++;
+                            added = true;
+                        }
+                    }
+                }
+            }
+            if (!added) {
+                break;
+            }
+            long[] swap = frontier;
+            frontier = next;
+            next = swap;
+        }
+        return reached;
+    }
+
+    /**
+     * Works out the degrees and reachability of a range of airports, splitting the range in half until it is small
+     * enough. Each leaf has its own scratch arrays, so leaves never share writable state
+     */
+    private class AirportTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int start;
+        private final int end;
+
+        private AirportTask(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > TASK_SIZE) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new AirportTask(start, middle), new AirportTask(middle, end));
+                return;
+            }
+
+            int airportCount = network.getAirportCount();
+            int words = (airportCount + 63) >>> 6;
+            long[] visited = new long[words];
+            long[] frontier = new long[words];
+            long[] next = new long[words];
+            // Marks airports already counted for the current airport; stamps avoid clearing the arrays each time
+            int[] outStamps = new int[airportCount];
+            int[] inStamps = new int[airportCount];
+
+            for (int a = start; a < end; a++) {
+                int stamp = a + 1;
+                int out = 0;
+                int in = 0;
+                int both = 0;
+                for (int e = network.getFirstEdge(a); e < network.getEdgeEnd(a); e++) {
+                    int target = network.getEdgeTarget(e);
+                    if (target != a && outStamps[target] != stamp) {
+                        outStamps[target] = stamp;
+                        out++;
+                        both++;
+                    }
+                }
+                for (int i = inOffsets[a]; i < inOffsets[a + 1]; i++) {
+                    int source = inSources[i];
+                    if (source != a && inStamps[source] != stamp) {
+                        inStamps[source] = stamp;
+                        in++;
+                        if (outStamps[source] != stamp) {
+                            both++;
+                        }
+                    }
+                }
+                outDegrees[a] = out;
+                inDegrees[a] = in;
+                degrees[a] = both;
+                reachCounts[a] = countReachable(network, a, REACH_LEGS, visited, frontier, next);
+            }
+        }
+    }
+}
@@ -0,0 +1,422 @@
+package seng202.group8.data.network;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Level of detail view of a subset of a {@link FlightNetwork} for drawing the whole network on a web map.
+ * <p>
+ * For each zoom level, airports are clustered on a grid of {@link #CELL_PIXELS} pixel cells in Web Mercator
+ * coordinates, so that there is at most one marker per cell. Routes are bundled into one line per pair of
+ * clusters. The clusters and bundles are split into the map's standard 256 pixel tiles so that only the part of
+ * the network on screen needs to be sent to the map. A cluster belongs to the tile its centre is in, and a bundle to
+ * the tiles of both of its ends, keeping only the {@link #MAX_BUNDLES_PER_TILE} largest bundles of each tile.
+ * <p>
+ * Levels are worked out the first time they are asked for. Like the network, they never change afterwards.
+ */
+public class NetworkTiles {
+    /**
+     * Highest zoom level with its own clustering. Past this, clusters are small enough to hold single airports, so
+     * maps zoomed in further use this level
+     */
+    public static final int MAX_ZOOM = 12;
+
+    /**
+     * Width and height of a clustering cell in pixels
+     */
+    public static final int CELL_PIXELS = 48;
+
+    /**
+     * Largest number of bundles kept for each tile
+     */
+    public static final int MAX_BUNDLES_PER_TILE = 300;
+
+    private static final int TILE_PIXELS = 256;
+    private static final double MAX_LATITUDE = 85.05112878; // Web Mercator cuts off here
+
+    private final FlightNetwork network;
+    private final int[] airports; // Network indexes of the airports shown
+    private final int[] edgeFrom; // Positions in airports of the ends of each shown edge
+    private final int[] edgeTo;
+    private final double[] xs; // Web Mercator position of each shown airport, from 0 to 1
+    private final double[] ys;
+    private final int[] degrees; // Number of shown edges at each shown airport
+    private final Level[] levels = new Level[MAX_ZOOM + 1];
+
+    /**
+     * Clusters and bundles of one zoom level
+     */
+    public class Level {
+        private final int zoom;
+        private final int clusterCount;
+        private final int[] clusterSizes;
+        private final double[] clusterLatitudes;
+        private final double[] clusterLongitudes;
+        private final int[] clusterLabels; // Network index of the airport with the most shown routes
+        private final int[] bundleFrom;
+        private final int[] bundleTo;
+        private final int[] bundleSizes;
+        private final Map<Long, int[]> tileClusters = new HashMap<>();
+        private final Map<Long, int[]> tileBundles = new HashMap<>();
+
+        private Level(int zoom) {
+            this.zoom = zoom;
+            double cellSize = CELL_PIXELS / (double) (TILE_PIXELS << zoom);
+            int tiles = 1 << zoom;
+
+            // Cluster by cell: sort the airports by packed cell coordinates, then each run is one cluster
+            long[] keys = new long[airports.length];
+            for (int i = 0; i < airports.length; i++) {
+                long cellX = (long) (xs[i] / cellSize);
+                long cellY = (long) (ys[i] / cellSize);
+                keys[i] = (((cellX << 20) | cellY) << 24) | i;
+            }
+            Arrays.parallelSort(keys);
+
+            int[] airportClusters = new int[airports.length];
+            int[] sizes = new int[airports.length];
+            double[] sumX = new double[airports.length];
+            double[] sumY = new double[airports.length];
+            int[] labels = new int[airports.length];
+            int clusters = 0;
+            for (int k = 0; k < keys.length; k++) {
+                if (k == 0 || keys[k] >>> 24 != keys[k - 1] >>> 24) {
+                    labels[clusters++] = -1;
+                }
+                int c = clusters - 1;
+                int i = (int) (keys[k] & 0xFFFFFF);
+                airportClusters[i] = c;
+                sizes[c]++;
+                sumX[c] += xs[i];
+                sumY[c] += ys[i];
+                if (labels[c] == -1 || degrees[i] > degrees[labels[c]]) {
+                    labels[c] = i;
+                }
+            }
+
+            clusterCount = clusters;
+            clusterSizes = Arrays.copyOf(sizes, clusters);
+            clusterLatitudes = new double[clusters];
+            clusterLongitudes = new double[clusters];
+            clusterLabels = new int[clusters];
+            long[] clusterTiles = new long[clusters];
+            for (int c = 0; c < clusters; c++) {
+                double x = sumX[c] / sizes[c];
+                double y = sumY[c] / sizes[c];
+                clusterLongitudes[c] = x * 360 - 180;
+                clusterLatitudes[c] = Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * y))));
+                clusterLabels[c] = airports[labels[c]];
+                clusterTiles[c] = tileKey(Math.min(tiles - 1, (int) (x * tiles)), Math.min(tiles - 1, (int) (y * tiles)));
+            }
+
+            // Bundle edges by the unordered pair of clusters they join, dropping edges within a cluster
+            long[] pairs = new long[edgeFrom.length];
+            int pairCount = 0;
+            for (int e = 0; e < edgeFrom.length; e++) {
+                int a = airportClusters[edgeFrom[e]];
+                int b = airportClusters[edgeTo[e]];
+                if (a != b) {
+                    pairs[pairCount++] = ((long) Math.min(a, b) << 32) | Math.max(a, b);
+                }
+            }
+            Arrays.parallelSort(pairs, 0, pairCount);
+
+            // Count runs of equal pairs, then order the bundles from largest to smallest
+            long[] runs = new long[pairCount];
+            long[] bundles = new long[pairCount];
+            int bundleCount = 0;
+            for (int k = 0; k < pairCount; ) {
+                int end = k + 1;
+                while (end < pairCount && pairs[end] == pairs[k]) {
+                    end++;
+                }
+                runs[bundleCount] = pairs[k];
+                bundles[bundleCount] = ((long) (Integer.MAX_VALUE - (end - k)) << 32) | bundleCount;
+                bundleCount++;
+                k = end;
+            }
+            Arrays.sort(bundles, 0, bundleCount);
+            bundleFrom = new int[bundleCount];
+            bundleTo = new int[bundleCount];
+            bundleSizes = new int[bundleCount];
+            for (int k = 0; k < bundleCount; k++) {
+                long pair = runs[(int) bundles[k]];
+                bundleFrom[k] = (int) (pair >>> 32);
+                bundleTo[k] = (int) pair;
+                bundleSizes[k] = Integer.MAX_VALUE - (int) (bundles[k] >>> 32);
+            }
+
+            // Split into tiles
+            Map<Long, int[]> clusterLists = new HashMap<>();
+            for (int c = 0; c < clusters; c++) {
+                append(clusterLists, clusterTiles[c], c, Integer.MAX_VALUE);
+            }
+            for (Map.Entry<Long, int[]> entry : clusterLists.entrySet()) {
+                tileClusters.put(entry.getKey(), Arrays.copyOfRange(entry.getValue(), 1, entry.getValue()[0] + 1));
+            }
+            Map<Long, int[]> bundleLists = new HashMap<>();
+            for (int k = 0; k < bundleCount; k++) {
+                long fromTile = clusterTiles[bundleFrom[k]];
+                long toTile = clusterTiles[bundleTo[k]];
+                append(bundleLists, fromTile, k, MAX_BUNDLES_PER_TILE);
+                if (toTile != fromTile) {
+                    append(bundleLists, toTile, k, MAX_BUNDLES_PER_TILE);
+                }
+            }
+            for (Map.Entry<Long, int[]> entry : bundleLists.entrySet()) {
+                tileBundles.put(entry.getKey(), Arrays.copyOfRange(entry.getValue(), 1, entry.getValue()[0] + 1));
+            }
+        }
+
+        /**
+         * Adds a value to the list of a tile, if it has room. Lists are stored with their length in the first element
+         */
+        private void append(Map<Long, int[]> lists, long tile, int value, int limit) {
+            int[] list = lists.get(tile);
+            if (list == null) {
+                list = new int[9];
+                lists.put(tile, list);
+            } else if (list[0] == limit) {
+                return;
+            } else if (list[0] + 1 == list.length) {
+                list = Arrays.copyOf(list, list.length * 2);
+                lists.put(tile, list);
+            }
+            list[++list[0]] = value;
+        }
+
+        /**
+         * Gets the network the level is of
+         *
+         * @return the network
+         */
+        public FlightNetwork getNetwork() {
+            return network;
+        }
+
+        /**
+         * Gets the zoom level
+         *
+         * @return zoom level, from 0 to {@link #MAX_ZOOM}
+         */
+        public int getZoom() {
+            return zoom;
+        }
+
+        /**
+         * Gets the number of clusters
+         *
+         * @return number of clusters
+         */
+        public int getClusterCount() {
+            return clusterCount;
+        }
+
+        /**
+         * Gets the number of airports in a cluster
+         *
+         * @param cluster index of the cluster
+         * @return number of airports
+         */
+        public int getClusterSize(int cluster) {
+            return clusterSizes[cluster];
+        }
+
+        /**
+         * Gets the latitude of the centre of a cluster
+         *
+         * @param cluster index of the cluster
+         * @return latitude in degrees
+         */
+        public double getClusterLatitude(int cluster) {
+            return clusterLatitudes[cluster];
+        }
+
+        /**
+         * Gets the longitude of the centre of a cluster
+         *
+         * @param cluster index of the cluster
+         * @return longitude in degrees
+         */
+        public double getClusterLongitude(int cluster) {
+            return clusterLongitudes[cluster];
+        }
+
+        /**
+         * Gets the airport a cluster is labelled with: the one with the most shown routes
+         *
+         * @param cluster index of the cluster
+         * @return index of the airport in the network
+         */
+        public int getClusterLabel(int cluster) {
+            return clusterLabels[cluster];
+        }
+
+        /**
+         * Gets the number of bundles
+         *
+         * @return number of bundles
+         */
+        public int getBundleCount() {
+            return bundleSizes.length;
+        }
+
+        /**
+         * Gets the cluster at one end of a bundle. Bundles are not directed; this is the one with the lower index
+         *
+         * @param bundle index of the bundle
+         * @return index of the cluster
+         */
+        public int getBundleFrom(int bundle) {
+            return bundleFrom[bundle];
+        }
+
+        /**
+         * Gets the cluster at the other end of a bundle
+         *
+         * @param bundle index of the bundle
+         * @return index of the cluster
+         */
+        public int getBundleTo(int bundle) {
+            return bundleTo[bundle];
+        }
+
+        /**
+         * Gets the number of routes in a bundle, in either direction. Bundles are ordered from largest to smallest
+         *
+         * @param bundle index of the bundle
+         * @return number of routes
+         */
+        public int getBundleSize(int bundle) {
+            return bundleSizes[bundle];
+        }
+
+        /**
+         * Gets the clusters whose centre is in a tile
+         *
+         * @param x column of the tile, from 0 to 2^zoom - 1
+         * @param y row of the tile, from 0 at the top to 2^zoom - 1
+         * @return cluster indexes; empty if there are none
+         */
+        public int[] getTileClusters(int x, int y) {
+            return tileClusters.getOrDefault(tileKey(x, y), new int[0]);
+        }
+
+        /**
+         * Gets the largest bundles with an end in a tile
+         *
+         * @param x column of the tile, from 0 to 2^zoom - 1
+         * @param y row of the tile, from 0 at the top to 2^zoom - 1
+         * @return bundle indexes, largest first; empty if there are none
+         */
+        public int[] getTileBundles(int x, int y) {
+            return tileBundles.getOrDefault(tileKey(x, y), new int[0]);
+        }
+    }
+
+    /**
+     * Creates a view of part of a network
+     *
+     * @param network      the network
+     * @param airportShown whether each airport of the network, by index, should be shown
+     * @param edgeShown    whether each edge of the network, by index, should be shown. Edges to or from an airport
+     *                     that is not shown are left out
+     */
+    public NetworkTiles(FlightNetwork network, boolean[] airportShown, boolean[] edgeShown) {
+        this.network = network;
+        int airportCount = 0;
+        for (int a = 0; a < network.getAirportCount(); a++) {
+            if (airportShown[a]) {
+                airportCount++;
+            }
+        }
+        if (airportCount > 0xFFFFFF) {
+            throw new IllegalArgumentException("Too many airports to cluster");
+        }
+
+        airports = new int[airportCount];
+        xs = new double[airportCount];
+        ys = new double[airportCount];
+        degrees = new int[airportCount];
+        int[] positions = new int[network.getAirportCount()];
+        for (int a = 0, i = 0; a < network.getAirportCount(); a++) {
+            positions[a] = -1;
+            if (airportShown[a]) {
+                positions[a] = i;
+                airports[i] = a;
+                double latitude = Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, network.getLatitude(a))));
+                // Kept just under 1 so that every airport falls in a cell and tile
+                xs[i] = Math.min(Math.nextDown(1.0), Math.max(0, (network.getLongitude(a) + 180) / 360));
+                ys[i] = Math.min(Math.nextDown(1.0), Math.max(0, (1 - Math.log(Math.tan(latitude) + 1 / Math.cos(latitude)) / Math.PI) / 2));
+                i++;
+            }
+        }
+
+        int edgeCount = 0;
+        int[] from = new int[network.getEdgeCount()];
+        int[] to = new int[network.getEdgeCount()];
+        for (int a = 0; a < network.getAirportCount(); a++) {
+            for (int e = network.getFirstEdge(a); e < network.getEdgeEnd(a); e++) {
+                int target = network.getEdgeTarget(e);
+                if (edgeShown[e] && positions[a] != -1 && positions[target] != -1) {
+                    from[edgeCount] = positions[a];
+                    to[edgeCount] = positions[target];
+                    degrees[positions[a]]++;
+                    degrees[positions[target]]++;
+                    edgeCount++;
+                }
+            }
+        }
+        edgeFrom = Arrays.copyOf(from, edgeCount);
+        edgeTo = Arrays.copyOf(to, edgeCount);
+    }
+
+    /**
+     * Gets the network the view is of
+     *
+     * @return the network
+     */
+    public FlightNetwork getNetwork() {
+        return network;
+    }
+
+    /**
+     * Gets the number of airports shown
+     *
+     * @return number of airports
+     */
+    public int getAirportCount() {
+        return airports.length;
+    }
+
+    /**
+     * Gets the number of edges shown
+     *
+     * @return number of edges
+     */
+    public int getEdgeCount() {
+        return edgeFrom.length;
+    }
+
+    /**
+     * Gets the clusters and bundles of a zoom level, working them out if this is the first time
+     *
+     * @param zoom zoom level of the map; levels past {@link #MAX_ZOOM} use {@link #MAX_ZOOM}
+     * @return the level
+     */
+    public synchronized Level getLevel(int zoom) {
+        zoom = Math.max(0, Math.min(MAX_ZOOM, zoom));
+        if (levels[zoom] == null) {
+            levels[zoom] = new Level(zoom);
+        }
+        return levels[zoom];
+    }
+
+    /**
+     * Packs the coordinates of a tile into a map key
+     */
+    private static long tileKey(int x, int y) {
+        return ((long) x << 32) | y;
+    }
+}
@@ -0,0 +1,431 @@
+package seng202.group8.data.spatial;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only k-d tree over airport locations for nearest neighbour and radius queries.
+ * <p>
+ * Locations are stored as 3D unit vectors rather than latitude/longitude, which avoids special cases at the poles
+ * and the date line: the straight line (chord) distance between two unit vectors increases with the great circle
+ * distance, so the nearest points by chord are the nearest points on the globe. The vectors and distances are
+ * worked out by {@link DistanceKernel}, so both give the same distance between two airports.
+ * <p>
+ * The tree is implicit: points are ordered so that the middle point of any range splits the rest of the range in
+ * two. Like FlightNetwork, {@link #withAirports(int[], double[], double[])} and {@link #withoutAirport(int)} return a
+ * new index rather than modifying this one.
+ */
+public class AirportSpatialIndex {
+    private final int[] ids;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] zs;
+    private final byte[] axes;
+
+    /**
+     * An airport found by a query, and its distance from the query point
+     */
+    public static class Neighbour {
+        private final int airportId;
+        private final double distance;
+
+        private Neighbour(int airportId, double distance) {
+            this.airportId = airportId;
+            this.distance = distance;
+        }
+
+        /**
+         * Gets the database ID of the airport
+         *
+         * @return airport ID
+         */
+        public int getAirportId() {
+            return airportId;
+        }
+
+        /**
+         * Gets the great circle distance from the query point to the airport
+         *
+         * @return distance in km
+         */
+        public double getDistance() {
+            return distance;
+        }
+    }
+
+    /**
+     * Builds an index over the given airports. The arrays are copied
+     *
+     * @param ids        database IDs of the airports
+     * @param latitudes  latitudes in degrees
+     * @param longitudes longitudes in degrees
+     */
+    public AirportSpatialIndex(int[] ids, double[] latitudes, double[] longitudes) {
+        int size = ids.length;
+        this.ids = ids.clone();
+        this.latitudes = latitudes.clone();
+        this.longitudes = longitudes.clone();
+        xs = new double[size];
+        ys = new double[size];
+        zs = new double[size];
+        axes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            double[] vector = DistanceKernel.toUnitVector(latitudes[i], longitudes[i]);
+            xs[i] = vector[0];
+            ys[i] = vector[1];
+            zs[i] = vector[2];
+        }
+        buildTree(0, size);
+    }
+
+    /**
+     * Builds an index over every airport in the database
+     *
+     * @param connection connection to the database
+     * @return the index
+     * @throws SQLException if error from database
+     */
+    public static AirportSpatialIndex build(Connection connection) throws SQLException {
+        int[] ids = new int[64];
+        double[] latitudes = new double[64];
+        double[] longitudes = new double[64];
+        int size = 0;
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet resultSet = statement.executeQuery("SELECT ID, Latitude, Longitude FROM Airport")) {
+                while (resultSet.next()) {
+                    if (size == ids.length) {
+                        ids = Arrays.copyOf(ids, size * 2);
+                        latitudes = Arrays.copyOf(latitudes, size * 2);
+                        longitudes = Arrays.copyOf(longitudes, size * 2);
+                    }
+                    ids[size] = resultSet.getInt("ID");
+                    latitudes[size] = resultSet.getDouble("Latitude");
+                    longitudes[size] = resultSet.getDouble("Longitude");
+                    size++;
+                }
+            }
+        }
+        return new AirportSpatialIndex(Arrays.copyOf(ids, size), Arrays.copyOf(latitudes, size), Arrays.copyOf(longitudes, size));
+    }
+
+    private double coordinate(int i, int axis) {
+        return axis == 0 ? xs[i] : axis == 1 ? ys[i] : zs[i];
+    }
+
+    /**
+     * Orders the points in the range so that the middle one splits it on the axis with the largest spread, then
+     * does the same for each half
+     */
+    private void buildTree(int start, int end) {
+        if (end - start <= 1) {
+            return;
+        }
+
+        int axis = 0;
+        double largestSpread = -1;
+        for (int a = 0; a < 3; a++) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = start; i < end; i++) {
+                min = Math.min(min, coordinate(i, a));
+                max = Math.max(max, coordinate(i, a));
+            }
+            if (max - min > largestSpread) {
+                largestSpread = max - min;
+                axis = a;
+            }
+        }
+
+        int middle = (start + end) >>> 1;
+        select(start, end - 1, middle, axis);
+        axes[middle] = (byte) axis;
+        buildTree(start, middle);
+        buildTree(middle + 1, end);
+    }
+
+    /**
+     * Quickselect: partially sorts the range [left, right] so that the point at position k is where it would be if
+     * the range was sorted on the axis
+     */
+    private void select(int left, int right, int k, int axis) {
+        while (left < right) {
+            double pivot = coordinate((left + right) >>> 1, axis);
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (coordinate(i, axis) < pivot) {
+                    i++;
+                }
+                while (coordinate(j, axis) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+        double temp = latitudes[i];
+        latitudes[i] = latitudes[j];
+        latitudes[j] = temp;
+        temp = longitudes[i];
+        longitudes[i] = longitudes[j];
+        longitudes[j] = temp;
+        temp = xs[i];
+        xs[i] = xs[j];
+        xs[j] = temp;
+        temp = ys[i];
+        ys[i] = ys[j];
+        ys[j] = temp;
+        temp = zs[i];
+        zs[i] = zs[j];
+        zs[j] = temp;
+    }
+
+    private double chordSquared(int i, double x, double y, double z) {
+        double dx = xs[i] - x;
+        double dy = ys[i] - y;
+        double dz = zs[i] - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Gets the number of airports in the index
+     *
+     * @return number of airports
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * Finds the airports closest to a point
+     *
+     * @param latitude  latitude of the point in degrees
+     * @param longitude longitude of the point in degrees
+     * @param count     maximum number of airports to find
+     * @return up to `count` airports, closest first
+     */
+    public List<Neighbour> findNearest(double latitude, double longitude, int count) {
+        double[] point = DistanceKernel.toUnitVector(latitude, longitude);
+        count = Math.min(count, size());
+        // Max-heap of the best points found so far, so the worst one can be replaced
+        int[] heap = new int[Math.max(count, 0)];
+        double[] heapDistances = new double[heap.length];
+        int heapSize = findNearest(0, size(), point[0], point[1], point[2], heap, heapDistances, 0);
+
+        List<Neighbour> nearest = new ArrayList<>(heapSize);
+        for (int i = 0; i < heapSize; i++) {
+            nearest.add(new Neighbour(ids[heap[i]], DistanceKernel.chordSquaredToDistance(heapDistances[i])));
+        }
+        nearest.sort((a, b) -> Double.compare(a.getDistance(), b.getDistance()));
+        return nearest;
+    }
+
+    /**
+     * Recursive part of the nearest neighbour search
+     *
+     * @return new number of points in the heap
+     */
+    private int findNearest(int start, int end, double x, double y, double z, int[] heap, double[] heapDistances, int heapSize) {
+        if (start >= end || heap.length == 0) {
+            return heapSize;
+        }
+        int middle = (start + end) >>> 1;
+
+        double distance = chordSquared(middle, x, y, z);
+        if (heapSize < heap.length) {
+            heapSize = heapPush(heap, heapDistances, heapSize, middle, distance);
+        } else if (distance < heapDistances[0]) {
+            heapReplaceTop(heap, heapDistances, heapSize, middle, distance);
+        }
+
+        int axis = axes[middle];
+        double difference = (axis == 0 ? x : axis == 1 ? y : z) - coordinate(middle, axis);
+        boolean goLeft = difference < 0;
+        heapSize = goLeft ?
+                findNearest(start, middle, x, y, z, heap, heapDistances, heapSize) :
+                findNearest(middle + 1, end, x, y, z, heap, heapDistances, heapSize);
+        // Only search the other side if the splitting plane is closer than the worst point found
+        if (heapSize < heap.length || difference * difference < heapDistances[0]) {
+            heapSize = goLeft ?
+                    findNearest(middle + 1, end, x, y, z, heap, heapDistances, heapSize) :
+                    findNearest(start, middle, x, y, z, heap, heapDistances, heapSize);
+        }
+        return heapSize;
+    }
+
+    private static int heapPush(int[] heap, double[] distances, int size, int point, double distance) {
+        int i = size;
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (distances[parent] >= distance) {
+                break;
+            }
+            heap[i] = heap[parent];
+            distances[i] = distances[parent];
+            i = parent;
+        }
+        heap[i] = point;
+        distances[i] = distance;
+        return size + 1;
+    }
+
+    private static void heapReplaceTop(int[] heap, double[] distances, int size, int point, double distance) {
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && distances[child + 1] > distances[child]) {
+                child++;
+            }
+            if (distances[child] <= distance) {
+                break;
+            }
+            heap[i] = heap[child];
+            distances[i] = distances[child];
+            i = child;
+        }
+        heap[i] = point;
+        distances[i] = distance;
+    }
+
+    /**
+     * Finds every airport within a distance of a point
+     *
+     * @param latitude  latitude of the point in degrees
+     * @param longitude longitude of the point in degrees
+     * @param radius    maximum great circle distance in km
+     * @return airports within the radius, closest first
+     */
+    public List<Neighbour> findWithinRadius(double latitude, double longitude, double radius) {
+        double[] point = DistanceKernel.toUnitVector(latitude, longitude);
+        List<Neighbour> found = new ArrayList<>();
+        findWithinRadius(0, size(), point[0], point[1], point[2], DistanceKernel.distanceToChordSquared(radius), found);
+        found.sort((a, b) -> Double.compare(a.getDistance(), b.getDistance()));
+        return found;
+    }
+
+    private void findWithinRadius(int start, int end, double x, double y, double z, double maxChordSquared, List<Neighbour> found) {
+        if (start >= end) {
+            return;
+        }
+        int middle = (start + end) >>> 1;
+
+        double distance = chordSquared(middle, x, y, z);
+        if (distance <= maxChordSquared) {
+            found.add(new Neighbour(ids[middle], DistanceKernel.chordSquaredToDistance(distance)));
+        }
+
+        int axis = axes[middle];
+        double difference = (axis == 0 ? x : axis == 1 ? y : z) - coordinate(middle, axis);
+        if (difference < 0 || difference * difference <= maxChordSquared) {
+            findWithinRadius(start, middle, x, y, z, maxChordSquared, found);
+        }
+        if (difference >= 0 || difference * difference <= maxChordSquared) {
+            findWithinRadius(middle + 1, end, x, y, z, maxChordSquared, found);
+        }
+    }
+
+    /**
+     * Creates a copy of the index with an airport added, or moved if it is already in the index
+     *
+     * @param id        database ID of the airport
+     * @param latitude  latitude in degrees
+     * @param longitude longitude in degrees
+     * @return the new index
+     */
+    public AirportSpatialIndex withAirport(int id, double latitude, double longitude) {
+        return withAirports(new int[]{id}, new double[]{latitude}, new double[]{longitude});
+    }
+
+    /**
+     * Creates a copy of the index with several airports added or moved, building the tree once for all of them
+     *
+     * @param airportIds database IDs of the airports
+     * @param latitudes  latitude of each airport in degrees
+     * @param longitudes longitude of each airport in degrees
+     * @return the new index, or this index if there are no airports
+     */
+    public AirportSpatialIndex withAirports(int[] airportIds, double[] latitudes, double[] longitudes) {
+        if (airportIds.length == 0) {
+            return this;
+        }
+        Map<Integer, Integer> positions = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            positions.put(ids[i], i);
+        }
+
+        int size = size();
+        int[] newIds = Arrays.copyOf(ids, size + airportIds.length);
+        double[] newLatitudes = Arrays.copyOf(this.latitudes, newIds.length);
+        double[] newLongitudes = Arrays.copyOf(this.longitudes, newIds.length);
+        for (int i = 0; i < airportIds.length; i++) {
+            Integer position = positions.get(airportIds[i]);
+            if (position == null) {
+                position = size++;
+                positions.put(airportIds[i], position);
+            }
+            newIds[position] = airportIds[i];
+            newLatitudes[position] = latitudes[i];
+            newLongitudes[position] = longitudes[i];
+        }
+        return new AirportSpatialIndex(Arrays.copyOf(newIds, size), Arrays.copyOf(newLatitudes, size), Arrays.copyOf(newLongitudes, size));
+    }
+
+    /**
+     * Creates a copy of the index without an airport
+     *
+     * @param id database ID of the airport
+     * @return the new index, or this index if it does not contain the airport
+     */
+    public AirportSpatialIndex withoutAirport(int id) {
+        int position = indexOf(id);
+        if (position == -1) {
+            return this;
+        }
+        int last = size() - 1;
+        int[] newIds = Arrays.copyOf(ids, last);
+        double[] newLatitudes = Arrays.copyOf(latitudes, last);
+        double[] newLongitudes = Arrays.copyOf(longitudes, last);
+        if (position != last) {
+            // Move the last airport into the gap
+            newIds[position] = ids[last];
+            newLatitudes[position] = latitudes[last];
+            newLongitudes[position] = longitudes[last];
+        }
+        return new AirportSpatialIndex(newIds, newLatitudes, newLongitudes);
+    }
+
+    private int indexOf(int id) {
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
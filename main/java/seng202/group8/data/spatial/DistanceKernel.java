@@ -0,0 +1,178 @@
+package seng202.group8.data.spatial;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+/**
+ * Great circle distances between a fixed set of airports, for code that needs a lot of them.
+ * <p>
+ * {@link seng202.group8.data.Route#getDistanceFromLongLat} converts both points to radians and takes their sines and
+ * cosines on every call. Here that is done once per airport: each airport is stored as the unit vector
+ * (cos(lat)cos(lon), cos(lat)sin(lon), sin(lat)) in three primitive arrays. The haversine of the angle between two
+ * airports is then a quarter of the squared chord between their vectors, which is only multiplies and adds.
+ * <p>
+ * {@link #distances(int[], int[], int, double[])} works in blocks: the vectors of each pair are gathered into
+ * contiguous scratch arrays first so that the chord loop has no indirect loads. On JDK 17 this is no faster than
+ * calling {@link #distance(int, int)} for each pair, as the atan2 dominates; see DistanceKernelBenchmark.
+ */
+public class DistanceKernel {
+    /**
+     * Radius used for distances; the same as {@link seng202.group8.data.Route#getDistanceFromLongLat}
+     */
+    public static final double EARTH_RADIUS = 6371;
+    private static final int BLOCK_SIZE = 256;
+
+    private final int[] airportIds;
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] zs;
+
+    /**
+     * Creates a kernel over the given airports
+     *
+     * @param airportIds database IDs of the airports, in ascending order
+     * @param latitudes  latitude of each airport in degrees
+     * @param longitudes longitude of each airport in degrees
+     */
+    public DistanceKernel(int[] airportIds, double[] latitudes, double[] longitudes) {
+        this.airportIds = airportIds;
+        int count = airportIds.length;
+        xs = new double[count];
+        ys = new double[count];
+        zs = new double[count];
+        for (int i = 0; i < count; i++) {
+            double[] vector = toUnitVector(latitudes[i], longitudes[i]);
+            xs[i] = vector[0];
+            ys[i] = vector[1];
+            zs[i] = vector[2];
+        }
+    }
+
+    /**
+     * Creates a kernel over every airport in the database
+     *
+     * @param connection connection to the database
+     * @return the kernel
+     * @throws SQLException if error from database
+     */
+    public static DistanceKernel build(Connection connection) throws SQLException {
+        int[] ids = new int[256];
+        double[] latitudes = new double[256];
+        double[] longitudes = new double[256];
+        int count = 0;
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT ID, Latitude, Longitude FROM Airport ORDER BY ID")) {
+            while (resultSet.next()) {
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, count * 2);
+                    latitudes = Arrays.copyOf(latitudes, count * 2);
+                    longitudes = Arrays.copyOf(longitudes, count * 2);
+                }
+                ids[count] = resultSet.getInt("ID");
+                latitudes[count] = resultSet.getDouble("Latitude");
+                longitudes[count] = resultSet.getDouble("Longitude");
+                count++;
+            }
+        }
+        return new DistanceKernel(Arrays.copyOf(ids, count), latitudes, longitudes);
+    }
+
+    /**
+     * Gets the number of airports in the kernel
+     *
+     * @return number of airports
+     */
+    public int size() {
+        return airportIds.length;
+    }
+
+    /**
+     * Gets the index of an airport from its database ID
+     *
+     * @param airportId ID of the airport
+     * @return index of the airport, or -1 if it is not in the kernel
+     */
+    public int getIndex(int airportId) {
+        int index = Arrays.binarySearch(airportIds, airportId);
+        return index < 0 ? -1 : index;
+    }
+
+    /**
+     * Gets the great circle distance between two airports
+     *
+     * @param from index of the first airport
+     * @param to   index of the second airport
+     * @return distance in km
+     */
+    public double distance(int from, int to) {
+        double dx = xs[from] - xs[to];
+        double dy = ys[from] - ys[to];
+        double dz = zs[from] - zs[to];
+        return chordSquaredToDistance(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * Gets the great circle distances between many pairs of airports
+     *
+     * @param from  index of the first airport of each pair
+     * @param to    index of the second airport of each pair
+     * @param count number of pairs
+     * @param out   array the distance of each pair is written to, in km
+     */
+    public void distances(int[] from, int[] to, int count, double[] out) {
+        double[] dx = new double[BLOCK_SIZE];
+        double[] dy = new double[BLOCK_SIZE];
+        double[] dz = new double[BLOCK_SIZE];
+        for (int start = 0; start < count; start += BLOCK_SIZE) {
+            int length = Math.min(BLOCK_SIZE, count - start);
+            for (int i = 0; i < length; i++) {
+                int a = from[start + i];
+                int b = to[start + i];
+                dx[i] = xs[a] - xs[b];
+                dy[i] = ys[a] - ys[b];
+                dz[i] = zs[a] - zs[b];
+            }
+            for (int i = 0; i < length; i++) {
+                out[start + i] = dx[i] * dx[i] + dy[i] * dy[i] + dz[i] * dz[i];
+            }
+            for (int i = start; i < start + length; i++) {
+                out[i] = chordSquaredToDistance(out[i]);
+            }
+        }
+    }
+
+    /**
+     * Converts a latitude and longitude to a point on the unit sphere
+     *
+     * @param latitude  latitude in degrees
+     * @param longitude longitude in degrees
+     * @return x, y and z coordinates
+     */
+    public static double[] toUnitVector(double latitude, double longitude) {
+        double lat = Math.toRadians(latitude);
+        double lng = Math.toRadians(longitude);
+        double cosLatitude = Math.cos(lat);
+        return new double[]{cosLatitude * Math.cos(lng), cosLatitude * Math.sin(lng), Math.sin(lat)};
+    }
+
+    /**
+     * Converts a great circle distance to the squared chord between two unit vectors that far apart
+     */
+    static double distanceToChordSquared(double distance) {
+        double angle = Math.min(Math.PI, distance / EARTH_RADIUS);
+        double chord = 2 * Math.sin(angle / 2);
+        return chord * chord;
+    }
+
+    /**
+     * Converts the squared chord between two unit vectors to the great circle distance between them. The haversine
+     * of the angle is chord^2 / 4
+     */
+    static double chordSquaredToDistance(double chordSquared) {
+        double haversine = Math.min(1, chordSquared / 4);
+        return 2 * EARTH_RADIUS * Math.atan2(Math.sqrt(haversine), Math.sqrt(1 - haversine));
+    }
+}
@@ -6,16 +6,23 @@ import seng202.group8.io.ConstraintsError;
 import seng202.group8.io.Database;
 import seng202.group8.io.SortOrder;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Class responsible for interfacing program with database for Airline data
  */
 public class AirlineDataController extends DataController<Airline> {
+    /**
+     * Airlines with the code the airline filters apply to
+     */
+    public static final String FILTERED_AIRLINES_QUERY = "SELECT *, coalesce(IATA, ICAO) AS Code FROM Airline";
     private static AirlineDataController singleton;
     private PreparedStatement addToDatabaseStatement = null;
     private PreparedStatement batchAddToDatabaseStatement = null;
@@ -24,6 +31,8 @@ public class AirlineDataController extends DataController<Airline> {
     private PreparedStatement getEntityByNameStatement = null;
     private PreparedStatement getEntityByCodeStatement = null;
     private PreparedStatement getAllEntitiesStatement = null;
+    private PreparedStatement searchStatement = null;
+    private final ResultCache<Airline> resultCache = new ResultCache<>(200);
 
     /**
      * Gets the singleton instance for the DataController
@@ -74,6 +83,9 @@ public class AirlineDataController extends DataController<Airline> {
             tryClose(getAllEntitiesStatement);
            getAllEntitiesStatement = Database.databaseConnection.prepareStatement("SELECT * FROM Airline");
 
+            tryClose(searchStatement);
+            searchStatement = Database.databaseConnection.prepareStatement("SELECT Airline.* FROM AirlineSearch JOIN Airline ON Airline.ID = AirlineSearch.rowid WHERE AirlineSearch MATCH ? ORDER BY bm25(AirlineSearch, 10.0, 5.0) LIMIT ?");
+
             return true;
         } catch (SQLException exception) {
             AlertHelper.showErrorAlert(exception);
@@ -143,6 +155,20 @@ public class AirlineDataController extends DataController<Airline> {
         batchAddToDatabaseStatement.setString(5, airline.getCountry());
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Set<String> getChangedColumns(Airline before, Airline after) {
+        HashSet<String> changedColumns = new HashSet<>();
+        addIfChanged(changedColumns, Airline.NAME, before.getName(), after.getName());
+        addIfChanged(changedColumns, Airline.CALLSIGN, before.getCallsign(), after.getCallsign());
+        addIfChanged(changedColumns, Airline.IATA, before.getIata(), after.getIata());
+        addIfChanged(changedColumns, Airline.ICAO, before.getIcao(), after.getIcao());
+        addIfChanged(changedColumns, Airline.COUNTRY, before.getCountry(), after.getCountry());
+        return changedColumns;
+    }
+
     /**
      * Updates an Airline object in the database
      *
@@ -241,6 +267,33 @@ public class AirlineDataController extends DataController<Airline> {
     }
 
 
+    /**
+     * Searches airlines by name and callsign using the full-text search index. Every word typed must match the start of a
+     * word in the name or callsign, and results are ranked by relevance with matches on the name ranked higher
+     *
+     * @param text  text typed by the user, e.g. 'chri int'
+     * @param limit maximum number of results
+     * @return list of matching airlines, most relevant first; empty if the text contains no words
+     * @throws SQLException Error connecting to database, or some similar unrecoverable error
+     */
+    public List<Airline> search(String text, int limit) throws SQLException {
+        ArrayList<Airline> results = new ArrayList<>();
+        String query = Database.generateFullTextSearchQuery(text);
+        if (query == null) {
+            return results;
+        }
+
+        searchStatement.setString(1, query);
+        searchStatement.setInt(2, limit);
+        try(ResultSet resultSet = searchStatement.executeQuery()) {
+            while (resultSet.next()) {
+                results.add(makeAirline(resultSet));
+            }
+        }
+
+        return results;
+    }
+
     /**
      * Attempts to retrieve all airlines from the database
      *
@@ -260,24 +313,45 @@ public class AirlineDataController extends DataController<Airline> {
     }
 
 
+    /**
+     * Generates the WHERE clause selecting the airlines that pass the filters
+     *
+     * @param filters filters to apply, or null for none
+     * @return the WHERE clause, or an empty string if nothing is filtered out
+     */
+    public static String generateFilterWhereClause(FiltersController filters) {
+        if (filters == null) {
+            return "";
+        }
+        String country = Database.generateTextualFilterSQLText("Country", filters.getCountryFilter());
+        String name = Database.generateTextualFilterSQLText("Name", filters.getAirlineNameFilter());
+        String code = Database.generateTextualFilterSQLText("Code", filters.getAirlineCodeFilter());
+        return Database.mergeSQLWhereClauses(country, name, code);
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
-    public List<Airline> getSortedFilteredEntities(String sortColumn, SortOrder order, int numRows, int offset) throws SQLException {
-        Database.establishConnection();
-        String SQLQuery = "SELECT *, coalesce(IATA, ICAO) AS Code FROM Airline";
-
-//        Filters.
-        FiltersController filters = FiltersController.getSingleton();
+    protected String getFilteredQuery() {
+        return FILTERED_AIRLINES_QUERY + generateFilterWhereClause(FiltersController.getSingleton());
+    }
 
+    /**
+     * Gets the cache of the pages returned by getSortedFilteredEntities, e.g. to show its hit rate
+     *
+     * @return the result cache
+     */
+    public ResultCache<Airline> getResultCache() {
+        return resultCache;
+    }
 
-        if (filters != null) {
-            String country = Database.generateTextualFilterSQLText("Country", filters.getCountryFilter());
-            String name = Database.generateTextualFilterSQLText("Name", filters.getAirlineNameFilter());
-            String code = Database.generateTextualFilterSQLText("Code", filters.getAirlineCodeFilter());
-            SQLQuery += Database.mergeSQLWhereClauses(country, name, code);
-        }
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getSortedFilteredQuery(String sortColumn, SortOrder order) {
+        String SQLQuery = FILTERED_AIRLINES_QUERY + generateFilterWhereClause(FiltersController.getSingleton());
 
         if (sortColumn != null && order != null) {
             if (sortColumn.equals("Code")) { //Sorts by code prioritising IATA's over ICAO's. This is because IATA's are always shown when available
@@ -286,23 +360,61 @@ public class AirlineDataController extends DataController<Airline> {
                 SQLQuery += " ORDER BY " + sortColumn + " " + order.getSQLCode() + " NULLS LAST";
             }
         }
+        return SQLQuery;
+    }
 
-        SQLQuery += String.format(" LIMIT %d OFFSET %d", numRows, offset);
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Airline> getSortedFilteredEntities(String sortColumn, SortOrder order, int numRows, int offset) throws SQLException {
+        String SQLQuery = getSortedFilteredQuery(sortColumn, order) + String.format(" LIMIT %d OFFSET %d", numRows, offset);
 
         if (SQLQuery.contains(";")) {
             return null;
         }
 
-        ArrayList<Airline> airlines = new ArrayList<>();
+        long version = getResultVersion();
+        ArrayList<Airline> airlines = resultCache.get(SQLQuery, version);
+        if (airlines != null) {
+            return airlines;
+        }
 
-        try(PreparedStatement statement = Database.databaseConnection.prepareStatement(SQLQuery)) {
-            try(ResultSet resultSet = statement.executeQuery()) {
+        Database.establishConnection();
+        airlines = readAirlines(Database.databaseConnection, SQLQuery);
+        resultCache.put(SQLQuery, version, airlines);
+        return airlines;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Airline> readSortedFilteredPage(String sortedFilteredQuery, int numRows, int offset) throws SQLException {
+        String SQLQuery = sortedFilteredQuery + String.format(" LIMIT %d OFFSET %d", numRows, offset);
+        if (SQLQuery.contains(";")) {
+            return null;
+        }
+        return readAirlines(Database.getReadConnection(), SQLQuery);
+    }
+
+    /**
+     * Reads airlines from the database. Only reads, so can be called off the JavaFX thread with a read connection
+     *
+     * @param connection connection to read through
+     * @param SQLQuery   query selecting them
+     * @return the airlines
+     * @throws SQLException if error from database
+     */
+    private ArrayList<Airline> readAirlines(Connection connection, String SQLQuery) throws SQLException {
+        ArrayList<Airline> airlines = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(SQLQuery)) {
+            try (ResultSet resultSet = statement.executeQuery()) {
                 while (resultSet.next()) {
                     airlines.add(makeAirline(resultSet));
                 }
             }
         }
-
         return airlines;
     }
 
@@ -7,11 +7,19 @@ import seng202.group8.io.ConstraintsError;
 import seng202.group8.io.Database;
 import seng202.group8.io.SortOrder;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * Class responsible for interfacing program with database for Airport data
@@ -19,12 +27,25 @@ import java.util.List;
 public class AirportDataController extends DataController<Airport> {
     private static AirportDataController singleton;
 
+    /**
+     * Most codes looked up by a single query of {@link #getEntities(Collection)}; each code is bound twice
+     */
+    private static final int BULK_CHUNK_SIZE = 400;
+
+    /**
+     * Extra columns of `Airport a` that the airport filters use: its number of routes and its code
+     */
+    public static final String FILTERED_AIRPORT_COLUMNS = ", (SELECT COUNT(*) FROM Route WHERE Source IN (a.IATA, a.ICAO)) AS Routes, coalesce(IATA, ICAO) AS Code";
+
     private PreparedStatement addToDatabaseStatement = null;
     private PreparedStatement batchAddToDatabaseStatement = null;
     private PreparedStatement updateInDatabaseStatement = null;
     private PreparedStatement getEntityFromIDStatement = null;
     private PreparedStatement getEntityFromCodeStatement = null;
     private PreparedStatement getAllEntitiesStatement = null;
+    private PreparedStatement searchStatement = null;
+    private PreparedStatement clearRouteDistancesStatement = null;
+    private final ResultCache<Airport> resultCache = new ResultCache<>(300);
 
     /**
      * Gets the singleton instance for the DataController
@@ -70,6 +91,12 @@ public class AirportDataController extends DataController<Airport> {
             tryClose(getAllEntitiesStatement);
             getAllEntitiesStatement = Database.databaseConnection.prepareStatement("SELECT * FROM Airport");
 
+            tryClose(searchStatement);
+            searchStatement = Database.databaseConnection.prepareStatement("SELECT Airport.* FROM AirportSearch JOIN Airport ON Airport.ID = AirportSearch.rowid WHERE AirportSearch MATCH ? ORDER BY bm25(AirportSearch, 10.0, 1.0) LIMIT ?");
+
+            tryClose(clearRouteDistancesStatement);
+            clearRouteDistancesStatement = Database.databaseConnection.prepareStatement("UPDATE Route SET Distance = NULL " +
+                    "WHERE Source IN (UPPER(?), UPPER(?), UPPER(?), UPPER(?)) OR Destination IN (UPPER(?), UPPER(?), UPPER(?), UPPER(?))");
 
             return true;
         } catch (SQLException exception) {
@@ -114,14 +141,18 @@ public class AirportDataController extends DataController<Airport> {
             throw new ConstraintsError(Database.generateUniquenessFailedErrorMessage(e));
         }
 
+        Airport added = null;
         try(ResultSet resultSet = addToDatabaseStatement.getGeneratedKeys()) {
             if (resultSet.next()) {
                 int id = resultSet.getInt(1);
-                if (returnNew) return getEntity(id);
+                if (returnNew) added = getEntity(id);
             }
         }
 
-        return null;
+        // Routes to the new airport could not have had a distance until now
+        RouteDataController.updateDistancesOfAirports(Database.databaseConnection, airport.getIata(), airport.getIcao());
+
+        return added;
     }
 
     /**
@@ -159,6 +190,25 @@ public class AirportDataController extends DataController<Airport> {
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Set<String> getChangedColumns(Airport before, Airport after) {
+        HashSet<String> changedColumns = new HashSet<>();
+        addIfChanged(changedColumns, Airport.NAME, before.getName(), after.getName());
+        addIfChanged(changedColumns, Airport.CITY, before.getCity(), after.getCity());
+        addIfChanged(changedColumns, Airport.COUNTRY, before.getCountry(), after.getCountry());
+        addIfChanged(changedColumns, Airport.IATA, before.getIata(), after.getIata());
+        addIfChanged(changedColumns, Airport.ICAO, before.getIcao(), after.getIcao());
+        addIfChanged(changedColumns, Airport.LATITUDE, before.getLatitude(), after.getLatitude());
+        addIfChanged(changedColumns, Airport.LONGITUDE, before.getLongitude(), after.getLongitude());
+        addIfChanged(changedColumns, Airport.ALTITUDE, before.getAltitude(), after.getAltitude());
+        addIfChanged(changedColumns, Airport.TIMEZONE, before.getTimezone(), after.getTimezone());
+        addIfChanged(changedColumns, Airport.DST, before.getDst(), after.getDst());
+        return changedColumns;
+    }
+
     /**
      * Updates an Airport object in the database
      *
@@ -167,6 +217,8 @@ public class AirportDataController extends DataController<Airport> {
      * @throws ConstraintsError Exception if a uniqueness constraint in the database is violated
      */
     public void updateInDatabase(Airport airport) throws SQLException {
+        Airport old = getEntity(airport.getId());
+
         updateInDatabaseStatement.setString(1, airport.getName());
         updateInDatabaseStatement.setString(2, airport.getCity());
         updateInDatabaseStatement.setString(3, airport.getCountry());
@@ -184,6 +236,22 @@ public class AirportDataController extends DataController<Airport> {
         } catch (SQLException e) {
             throw new ConstraintsError(Database.generateUniquenessFailedErrorMessage(e));
         }
+
+        if (old != null && old.getLatitude() == airport.getLatitude() && old.getLongitude() == airport.getLongitude()
+                && Objects.equals(old.getIata(), airport.getIata()) && Objects.equals(old.getIcao(), airport.getIcao())) {
+            return; // Route distances are unaffected
+        }
+
+        // Routes using either the old or new codes need their distance worked out again
+        String[] codes = {
+                old == null ? null : old.getIata(), old == null ? null : old.getIcao(), airport.getIata(), airport.getIcao()
+        };
+        for (int i = 0; i < codes.length; i++) {
+            clearRouteDistancesStatement.setString(i + 1, codes[i]);
+            clearRouteDistancesStatement.setString(i + 1 + codes.length, codes[i]);
+        }
+        clearRouteDistancesStatement.executeUpdate();
+        RouteDataController.updateDistancesOfAirports(Database.databaseConnection, codes);
     }
 
     /**
@@ -247,6 +315,75 @@ public class AirportDataController extends DataController<Airport> {
         return null;
     }
 
+    /**
+     * Gets the airports with any of the given codes in one query per chunk of codes
+     *
+     * @param codes IATA or ICAO codes of the airports to get
+     * @return the airports found, in no particular order
+     * @throws SQLException Fatal error in database
+     */
+    public List<Airport> getEntities(Collection<String> codes) throws SQLException {
+        return getEntities(Database.databaseConnection, codes);
+    }
+
+    /**
+     * Gets the airports with any of the given codes through the given connection. Uses its own statements, so it can
+     * be called off the JavaFX thread with {@link Database#getReadConnection()}
+     *
+     * @param connection connection to read through
+     * @param codes      IATA or ICAO codes of the airports to get
+     * @return the airports found, in no particular order
+     * @throws SQLException Fatal error in database
+     */
+    public List<Airport> getEntities(Connection connection, Collection<String> codes) throws SQLException {
+        List<String> remaining = new ArrayList<>(codes);
+        List<Airport> airports = new ArrayList<>();
+        for (int start = 0; start < remaining.size(); start += BULK_CHUNK_SIZE) {
+            List<String> chunk = remaining.subList(start, Math.min(remaining.size(), start + BULK_CHUNK_SIZE));
+            String parameters = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            String query = "SELECT * FROM Airport WHERE IATA IN (" + parameters + ") OR ICAO IN (" + parameters + ")";
+            try (PreparedStatement statement = connection.prepareStatement(query)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    statement.setString(i + 1, chunk.get(i));
+                    statement.setString(chunk.size() + i + 1, chunk.get(i));
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        airports.add(makeAirport(resultSet));
+                    }
+                }
+            }
+        }
+        return airports;
+    }
+
+    /**
+     * Searches airports by name and city using the full-text search index. Every word typed must match the start of a
+     * word in the name or city, and results are ranked by relevance with matches on the name ranked higher
+     *
+     * @param text  text typed by the user, e.g. 'chri int'
+     * @param limit maximum number of results
+     * @return list of matching airports, most relevant first; empty if the text contains no words
+     * @throws SQLException Error connecting to database, or some similar unrecoverable error
+     */
+    public List<Airport> search(String text, int limit) throws SQLException {
+        ArrayList<Airport> results = new ArrayList<>();
+        String query = Database.generateFullTextSearchQuery(text);
+        if (query == null) {
+            return results;
+        }
+
+        searchStatement.setString(1, query);
+        searchStatement.setInt(2, limit);
+        try(ResultSet resultSet = searchStatement.executeQuery()) {
+            while (resultSet.next()) {
+                results.add(makeAirport(resultSet));
+            }
+        }
+
+        return results;
+    }
+
     /**
      * Attempts to retrieve all airports from the database
      *
@@ -267,27 +404,79 @@ public class AirportDataController extends DataController<Airport> {
 
 
     /**
-     * @param sortColumn The column to sort by
-     * @param order      The order (eg ascending, descending) to sort by
-     * @param numRows    Maximum numbers of rows to return
-     * @param offset     Offset for the rows being returned (e.g. numRows=50, offset=50 means it gets the 50-99th rows for the given sort order)
-     * @return Filtered list of airports
+     * Generates the WHERE clause for the airport filters, for use on `Airport a` with {@link #FILTERED_AIRPORT_COLUMNS}
+     *
+     * @param filters filters to apply, or null
+     * @return WHERE clause starting with a space, or an empty string if nothing is filtered
+     */
+    public static String generateFilterWhereClause(FiltersController filters) {
+        if (filters == null) {
+            return "";
+        }
+        String country = Database.generateTextualFilterSQLText("Country", filters.getCountryFilter());
+        String code = Database.generateTextualFilterSQLText("Code", filters.getAirportCodeFilter());
+        String name = Database.generateTextualFilterSQLText("Name", filters.getAirportNameFilter());
+        String numFlights = Database.generateFilterRangeSQLTextForInt("Routes", filters.getRouteNumberFilter().getBounds());
+        return Database.mergeSQLWhereClauses(country, numFlights, code, name);
+    }
+
+    /**
+     * Gets the IDs of every airport matching a filter. Takes the connection to use, so it can be called off the
+     * JavaFX thread
+     *
+     * @param connection  connection to the database
+     * @param whereClause clause from {@link #generateFilterWhereClause(FiltersController)}
+     * @return airport IDs in ascending order
      * @throws SQLException if error from database
      */
-    public List<Airport> getSortedFilteredEntities(String sortColumn, SortOrder order, int numRows, int offset) throws SQLException {
-        Database.establishConnection();
-        String SQLQuery = "SELECT a.*, IFNULL(r.NumRoutes, 0) as Routes, coalesce(IATA, ICAO) AS Code FROM Airport a LEFT JOIN (SELECT Source, COUNT(*) AS NumRoutes FROM Route GROUP BY Source) r ON a.IATA = r.Source OR a.ICAO = r.Source";
+    public static int[] getFilteredAirportIds(Connection connection, String whereClause) throws SQLException {
+        int[] ids = new int[1024];
+        int count = 0;
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT a.ID" + FILTERED_AIRPORT_COLUMNS + " FROM Airport a" + whereClause + " ORDER BY a.ID")) {
+            while (resultSet.next()) {
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, count * 2);
+                }
+                ids[count++] = resultSet.getInt(1);
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
 
-        //        Filters.
-        FiltersController filters = FiltersController.getSingleton();
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected String getFilteredQuery() {
+        return "SELECT a.ID" + FILTERED_AIRPORT_COLUMNS + " FROM Airport a"
+                + generateFilterWhereClause(FiltersController.getSingleton());
+    }
 
-        if (filters != null) {
-            String country = Database.generateTextualFilterSQLText("Country", filters.getCountryFilter());
-            String code = Database.generateTextualFilterSQLText("Code", filters.getAirportCodeFilter());
-            String name = Database.generateTextualFilterSQLText("Name", filters.getAirportNameFilter());
-            String numFlights = Database.generateFilterRangeSQLTextForInt("Routes", filters.getRouteNumberFilter().getBounds());
-            SQLQuery += Database.mergeSQLWhereClauses(country, numFlights, code, name);
-        }
+    /**
+     * Gets the cache of the pages returned by getSortedFilteredEntities, e.g. to show its hit rate
+     *
+     * @return the result cache
+     */
+    public ResultCache<Airport> getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * {@inheritDoc} Airports are listed with their route counts, so routes are read too
+     */
+    @Override
+    protected long getResultVersion() {
+        return getDataVersion() + RouteDataController.getSingleton().getDataVersion();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getSortedFilteredQuery(String sortColumn, SortOrder order) {
+        // Correlated count so only the airports on the page need counting, using the route source index
+        String SQLQuery = "SELECT a.*" + FILTERED_AIRPORT_COLUMNS + " FROM Airport a" + generateFilterWhereClause(FiltersController.getSingleton());
 
         if (sortColumn != null && order != null) {
             if ("Code".equals(sortColumn)) { //Sorts by code prioritising IATA's over ICAO's. This is because IATA's are always shown when available
@@ -296,23 +485,66 @@ public class AirportDataController extends DataController<Airport> {
                 SQLQuery += " ORDER BY " + sortColumn + " " + order.getSQLCode() + " NULLS LAST";
             }
         }
+        return SQLQuery;
+    }
 
-        SQLQuery += String.format(" LIMIT %d OFFSET %d", numRows, offset);
+    /**
+     * @param sortColumn The column to sort by
+     * @param order      The order (eg ascending, descending) to sort by
+     * @param numRows    Maximum numbers of rows to return
+     * @param offset     Offset for the rows being returned (e.g. numRows=50, offset=50 means it gets the 50-99th rows for the given sort order)
+     * @return Filtered list of airports
+     * @throws SQLException if error from database
+     */
+    public List<Airport> getSortedFilteredEntities(String sortColumn, SortOrder order, int numRows, int offset) throws SQLException {
+        String SQLQuery = getSortedFilteredQuery(sortColumn, order) + String.format(" LIMIT %d OFFSET %d", numRows, offset);
 
         if (SQLQuery.contains(";")) {
             // The is an attempt at causing an SQL Injection attack
             return null;
         }
-        ArrayList<Airport> airports = new ArrayList<>();
 
-        try(PreparedStatement statement = Database.databaseConnection.prepareStatement(SQLQuery)) {
-            try(ResultSet resultSet = statement.executeQuery()) {
+        long version = getResultVersion();
+        ArrayList<Airport> airports = resultCache.get(SQLQuery, version);
+        if (airports != null) {
+            return airports;
+        }
+
+        Database.establishConnection();
+        airports = readAirports(Database.databaseConnection, SQLQuery);
+        resultCache.put(SQLQuery, version, airports);
+        return airports;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Airport> readSortedFilteredPage(String sortedFilteredQuery, int numRows, int offset) throws SQLException {
+        String SQLQuery = sortedFilteredQuery + String.format(" LIMIT %d OFFSET %d", numRows, offset);
+        if (SQLQuery.contains(";")) {
+            return null;
+        }
+        return readAirports(Database.getReadConnection(), SQLQuery);
+    }
+
+    /**
+     * Reads airports from the database. Only reads, so can be called off the JavaFX thread with a read connection
+     *
+     * @param connection connection to read through
+     * @param SQLQuery   query selecting them
+     * @return the airports
+     * @throws SQLException if error from database
+     */
+    private ArrayList<Airport> readAirports(Connection connection, String SQLQuery) throws SQLException {
+        ArrayList<Airport> airports = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(SQLQuery)) {
+            try (ResultSet resultSet = statement.executeQuery()) {
                 while (resultSet.next()) {
                     airports.add(makeAirport(resultSet));
                 }
             }
         }
-
         return airports;
     }
 
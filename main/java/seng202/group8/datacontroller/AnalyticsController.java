@@ -0,0 +1,158 @@
+package seng202.group8.datacontroller;
+
+import seng202.group8.data.Airline;
+import seng202.group8.data.Airport;
+import seng202.group8.data.Route;
+import seng202.group8.data.network.FlightNetwork;
+import seng202.group8.data.network.NetworkAnalytics;
+import seng202.group8.io.Database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the {@link NetworkAnalytics} of the current flight network.
+ * <p>
+ * The analytics are worked out the first time they are needed and discarded whenever a route or airport changes, as
+ * a single route can change the reachability of every airport. Views should use {@link #getAnalyticsAsync()}, so the
+ * work is done off the JavaFX thread.
+ */
+public class AnalyticsController {
+    private static AnalyticsController singleton;
+
+    // Analytics are worked out one at a time on this thread, off the JavaFX thread
+    private static final ExecutorService ANALYTICS_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Network analytics");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private NetworkAnalytics analytics = null;
+
+    private final DataObserver<Route> routeObserver = change -> invalidate();
+    private final DataObserver<Airport> airportObserver = change -> invalidate();
+
+    /**
+     * Gets the singleton instance for the AnalyticsController
+     *
+     * @return the singleton instance
+     */
+    public static AnalyticsController getSingleton() {
+        if (singleton == null) {
+            singleton = new AnalyticsController();
+        }
+
+        return singleton;
+    }
+
+    /**
+     * Initializer for the analytics controller; subscribes to route and airport changes
+     */
+    protected AnalyticsController() {
+        RouteDataController.getSingleton().addObserver(DataController.OBSERVE_ALL, routeObserver);
+        AirportDataController.getSingleton().addObserver(DataController.OBSERVE_ALL, airportObserver);
+    }
+
+    /**
+     * Gets the analytics for the current flight network, working them out if they are out of date. The lock is not
+     * held while they are worked out, so the observers that discard them are never held up
+     *
+     * @return the analytics. They are never modified, so they can be kept and read while the database changes
+     * @throws SQLException if error from database while building the network
+     */
+    public NetworkAnalytics getAnalytics() throws SQLException {
+        Database.establishConnection();
+        return getAnalytics(Database.databaseConnection);
+    }
+
+    /**
+     * Gets the analytics for the current flight network, building the network through the given connection if it
+     * is out of date
+     *
+     * @param connection connection to build the network through
+     * @return the analytics
+     * @throws SQLException if error from database while building the network
+     */
+    private NetworkAnalytics getAnalytics(Connection connection) throws SQLException {
+        FlightNetwork network = NetworkController.getSingleton().getNetwork(connection);
+        synchronized (this) {
+            if (analytics != null && analytics.getNetwork() == network) {
+                return analytics;
+            }
+        }
+        NetworkAnalytics computed = NetworkAnalytics.compute(network);
+        synchronized (this) {
+            analytics = computed; // If the network changed meanwhile, they are worked out again on the next call
+        }
+        return computed;
+    }
+
+    /**
+     * Gets the analytics for the current flight network, working them out on a background thread if they are out of
+     * date. Analytics that are up to date are given straight away
+     *
+     * @return future completing with the analytics, or completing exceptionally with a
+     * {@link CompletionException} wrapping the SQLException if there was a database error
+     */
+    public CompletableFuture<NetworkAnalytics> getAnalyticsAsync() {
+        synchronized (this) {
+            FlightNetwork network = NetworkController.getSingleton().getBuiltNetwork();
+            if (analytics != null && network != null && analytics.getNetwork() == network) {
+                return CompletableFuture.completedFuture(analytics);
+            }
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return getAnalytics(Database.getReadConnection());
+            } catch (SQLException exception) {
+                throw new CompletionException(exception);
+            }
+        }, ANALYTICS_EXECUTOR);
+    }
+
+    /**
+     * Gets the airports used by the most routes of an airline, under either its IATA or ICAO code
+     *
+     * @param airline airline to find the hubs of
+     * @param count   maximum number of hubs to return
+     * @return hubs, most routes first; empty if the airline has no routes
+     * @throws SQLException if error from database
+     */
+    public List<NetworkAnalytics.Hub> getTopHubsForAirline(Airline airline, int count) throws SQLException {
+        return getTopHubsForAirline(getAnalytics(), airline, count);
+    }
+
+    /**
+     * Gets the airports used by the most routes of an airline, under either its IATA or ICAO code
+     *
+     * @param current analytics to find the hubs in, e.g. from {@link #getAnalyticsAsync()}
+     * @param airline airline to find the hubs of
+     * @param count   maximum number of hubs to return
+     * @return hubs, most routes first; empty if the airline has no routes
+     */
+    public static List<NetworkAnalytics.Hub> getTopHubsForAirline(NetworkAnalytics current, Airline airline, int count) {
+        FlightNetwork network = current.getNetwork();
+        int[] airlines = new int[2];
+        int found = 0;
+        for (String code : new String[]{airline.getIata(), airline.getIcao()}) {
+            int index = code == null ? -1 : network.getAirlineIndex(code);
+            if (index != -1 && (found == 0 || airlines[0] != index)) {
+                airlines[found++] = index;
+            }
+        }
+        return current.getTopHubsForAirline(Arrays.copyOf(airlines, found), count);
+    }
+
+    /**
+     * Discards the current analytics so that they are worked out again the next time they are needed
+     */
+    public synchronized void invalidate() {
+        analytics = null;
+    }
+}
@@ -0,0 +1,159 @@
+package seng202.group8.datacontroller;
+
+import seng202.group8.data.Data;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Describes a change to the table of a data controller: what kind of change it was, which rows it affected, which
+ * columns changed and the data version after it. Delivered to observers through
+ * {@link DataObserver#dataChangeEvent(DataChange)}, so they can update themselves incrementally instead of reloading.
+ *
+ * @param <DataType> type of data the table holds
+ */
+public class DataChange<DataType extends Data> {
+    /**
+     * Kinds of change
+     */
+    public enum Type {
+        /**
+         * A single row was added
+         */
+        INSERTED,
+        /**
+         * A single row was modified
+         */
+        UPDATED,
+        /**
+         * A single row was deleted, or if the change covers the whole table, any number of rows were
+         */
+        DELETED,
+        /**
+         * Rows were added in bulk, e.g. by an import. Every row added has an ID in the change's range
+         */
+        BULK_INSERTED,
+        /**
+         * Anything in the table may have changed, e.g. the database was switched
+         */
+        RELOADED
+    }
+
+    private final Type type;
+    private final DataType data;
+    private final int firstId;
+    private final int lastId;
+    private final Set<String> changedColumns;
+    private final long dataVersion;
+
+    /**
+     * @param type           kind of change
+     * @param data           the row added or modified, or null
+     * @param firstId        smallest ID affected, or OBSERVE_ALL if the change covers the whole table
+     * @param lastId         largest ID affected, or OBSERVE_ALL if the change covers the whole table
+     * @param changedColumns columns that changed, or null if any may have
+     * @param dataVersion    data version of the table after the change
+     */
+    public DataChange(Type type, DataType data, int firstId, int lastId, Set<String> changedColumns, long dataVersion) {
+        this.type = type;
+        this.data = data;
+        this.firstId = firstId;
+        this.lastId = lastId;
+        this.changedColumns = changedColumns == null ? null : Collections.unmodifiableSet(new HashSet<>(changedColumns));
+        this.dataVersion = dataVersion;
+    }
+
+    /**
+     * Gets the kind of change
+     *
+     * @return type of the change
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the row added or modified
+     *
+     * @return the row for INSERTED and UPDATED changes, otherwise null
+     */
+    public DataType getData() {
+        return data;
+    }
+
+    /**
+     * Gets the smallest ID affected
+     *
+     * @return smallest ID, or OBSERVE_ALL if the change covers the whole table
+     */
+    public int getFirstId() {
+        return firstId;
+    }
+
+    /**
+     * Gets the largest ID affected
+     *
+     * @return largest ID, or OBSERVE_ALL if the change covers the whole table
+     */
+    public int getLastId() {
+        return lastId;
+    }
+
+    /**
+     * Checks if the change covers the whole table rather than a range of IDs
+     *
+     * @return true if any row may have been affected
+     */
+    public boolean isWholeTable() {
+        return firstId == DataController.OBSERVE_ALL;
+    }
+
+    /**
+     * Checks if a row may have been affected
+     *
+     * @param id ID of the row
+     * @return true if the row is in the change's range
+     */
+    public boolean affects(int id) {
+        return isWholeTable() || (id >= firstId && id <= lastId);
+    }
+
+    /**
+     * Gets the columns that changed
+     *
+     * @return names of the changed columns, as in the column constants of the data classes, or null if any may have
+     * changed
+     */
+    public Set<String> getChangedColumns() {
+        return changedColumns;
+    }
+
+    /**
+     * Checks if any of the given columns may have changed
+     *
+     * @param columns names of the columns, as in the column constants of the data classes
+     * @return true if any of the columns changed, or the changed columns are not known
+     */
+    public boolean hasChanged(String... columns) {
+        if (changedColumns == null) {
+            return true;
+        }
+        for (String column : columns) {
+            if (changedColumns.contains(column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the data version of the table after the change
+     *
+     * @return the data version
+     * @see DataController#getDataVersion()
+     */
+    public long getDataVersion() {
+        return dataVersion;
+    }
+}
@@ -7,11 +7,23 @@ import seng202.group8.io.ConstraintsError;
 import seng202.group8.io.Database;
 import seng202.group8.io.SortOrder;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.sql.Statement;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Interface for data controllers, which are responsible for all database operations for a specific data type,
@@ -25,9 +37,27 @@ public abstract class DataController<DataType extends Data> {
      */
     public static final int OBSERVE_ALL = -2;
     /**
-     * Hashmap where the key is the ID of the object being observed
+     * Hashmap where the key is the ID of the object being observed. The sets are copy-on-write, so observers can be
+     * added and notified from any thread
      */
-    protected HashMap<Integer, HashSet<DataObserver<DataType>>> observers;
+    protected ConcurrentHashMap<Integer, CopyOnWriteArraySet<DataObserver<DataType>>> observers;
+    private final ObserverDispatcher<DataType> dispatcher = new ObserverDispatcher<>(this);
+    private static volatile Executor notificationExecutor = Runnable::run;
+
+    // Filtered counts are worked out one at a time on this thread, off the JavaFX thread
+    private static final ExecutorService COUNT_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Filtered row counter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // IDs of the rows added by batch inserts since observers were last told of them; 0 if there are none
+    private int batchInsertedFirstId = 0;
+    private int batchInsertedLastId = 0;
+    /**
+     * Incremented whenever the table may have changed, so cached query results can tell they are out of date
+     */
+    private final AtomicLong dataVersion = new AtomicLong();
+    private final ResultCache<Integer> countCache = new ResultCache<>(16); // Counts of filtered rows, one per query
 
     /**
      * Gets the prepared statement used by `executeBatch`
@@ -37,7 +67,27 @@ public abstract class DataController<DataType extends Data> {
     protected abstract PreparedStatement getBatchAddToDatabaseStatement();
 
     public DataController() {
-        observers = new HashMap<>();
+        observers = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Sets the executor observers of every data controller are notified on, e.g. Platform::runLater so they are
+     * always notified on the JavaFX thread. Changes raised before the executor runs are merged, so each observer is
+     * told once. By default observers are notified straight away on the thread making the change
+     *
+     * @param executor executor to deliver change events on
+     */
+    public static void setNotificationExecutor(Executor executor) {
+        notificationExecutor = executor;
+    }
+
+    /**
+     * Gets the executor observers are notified on
+     *
+     * @return the notification executor
+     */
+    static Executor getNotificationExecutor() {
+        return notificationExecutor;
     }
 
 
@@ -48,6 +98,33 @@ public abstract class DataController<DataType extends Data> {
      */
     public abstract boolean onDBChange();
 
+    /**
+     * Gets the version of the table's data. It is incremented by every save, delete and batch insert, and when the
+     * database is switched
+     *
+     * @return the data version
+     */
+    public long getDataVersion() {
+        return dataVersion.get();
+    }
+
+    /**
+     * Records that the table may have changed, invalidating results cached from it
+     */
+    public void incrementDataVersion() {
+        dataVersion.incrementAndGet();
+    }
+
+    /**
+     * Gets the version of everything {@link #getSortedFilteredEntities(String, SortOrder, int, int)} reads, which
+     * changes whenever any of it changes. By default only this table is read
+     *
+     * @return the version of the data the sorted, filtered entities come from
+     */
+    protected long getResultVersion() {
+        return getDataVersion();
+    }
+
     /**
      * Deletes the row in the database with the given id, regardless of if it exists or not
      *
@@ -71,6 +148,8 @@ public abstract class DataController<DataType extends Data> {
         try(PreparedStatement statement = Database.databaseConnection.prepareStatement(SQLQuery)) {
             statement.setInt(1, id);
             statement.executeUpdate();
+        } finally {
+            incrementDataVersion();
         }
     }
 
@@ -95,6 +174,122 @@ public abstract class DataController<DataType extends Data> {
      */
     public abstract List<DataType> getSortedFilteredEntities(String sortColumn, SortOrder order, int numRows, int offset) throws SQLException;
 
+    /**
+     * Builds the query {@link #getSortedFilteredEntities(String, SortOrder, int, int)} runs, without its LIMIT, from the
+     * current filters. Reads the filters, so should be called on the JavaFX thread; the query can then be read a page
+     * at a time off it with {@link #readSortedFilteredPage(String, int, int)}
+     *
+     * @param sortColumn The column to sort by
+     * @param order      The order (eg ascending, descending) to sort by
+     * @return the query, or null if the table has no sorted, filtered view
+     */
+    public String getSortedFilteredQuery(String sortColumn, SortOrder order) {
+        return null;
+    }
+
+    /**
+     * Reads a page of a query from {@link #getSortedFilteredQuery(String, SortOrder)}. Only reads from the database,
+     * and does not use the result cache, so can be called off the JavaFX thread
+     *
+     * @param sortedFilteredQuery query to read
+     * @param numRows             Maximum numbers of rows to return
+     * @param offset              Offset for the rows being returned
+     * @return the page, or null if the query could not be read
+     * @throws SQLException Error connecting to database, or some similar unrecoverable error
+     */
+    public List<DataType> readSortedFilteredPage(String sortedFilteredQuery, int numRows, int offset) throws SQLException {
+        return null;
+    }
+
+    /**
+     * Gets the query selecting every entity that passes the filters, i.e. every entity
+     * {@link #getSortedFilteredEntities(String, SortOrder, int, int)} could return, without ORDER BY or LIMIT. Reads the
+     * filters, so should be called on the JavaFX thread
+     *
+     * @return the query, or null if the table is not filtered
+     */
+    protected String getFilteredQuery() {
+        return null;
+    }
+
+    /**
+     * Counts the entities that pass the filters. Counts are cached per filter state until the data they read changes,
+     * so counting the same filters again does not query the database
+     *
+     * @return number of filtered entities
+     * @throws SQLException Error connecting to database, or some similar unrecoverable error
+     */
+    public int getFilteredCount() throws SQLException {
+        String SQLQuery = getFilteredQuery();
+        long version = getResultVersion();
+        Integer cached = getCachedCount(SQLQuery, version);
+        if (cached != null) {
+            return cached;
+        }
+        Database.establishConnection();
+        return count(Database.databaseConnection, SQLQuery, version);
+    }
+
+    /**
+     * Counts the entities that pass the filters on a background thread, so the count can run while a page of them is
+     * read. The filters are read on the calling thread, and a cached count is given straight away. The count runs on
+     * its own read-only connection, so it only ever sees committed rows, e.g. never half of an import
+     *
+     * @return future completing with the number of filtered entities, or completing exceptionally with a
+     * {@link java.util.concurrent.CompletionException} wrapping the SQLException if there was a database error
+     */
+    public CompletableFuture<Integer> getFilteredCountAsync() {
+        String SQLQuery = getFilteredQuery();
+        long version = getResultVersion();
+        Integer cached = getCachedCount(SQLQuery, version);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return count(Database.getReadConnection(), SQLQuery, version);
+            } catch (SQLException exception) {
+                throw new CompletionException(exception);
+            }
+        }, COUNT_EXECUTOR);
+    }
+
+    /**
+     * Gets a cached count
+     *
+     * @param SQLQuery query selecting the rows
+     * @param version  current data version of everything the query reads
+     * @return the count, or null if it is not cached at this version
+     */
+    private Integer getCachedCount(String SQLQuery, long version) {
+        if (SQLQuery == null || SQLQuery.contains(";")) {
+            return 0; // Nothing to count, or not safe to run
+        }
+        List<Integer> cached = countCache.get(SQLQuery, version);
+        return cached == null ? null : cached.get(0);
+    }
+
+    /**
+     * Counts the rows a query gives with COUNT(*), and caches the count
+     *
+     * @param connection connection to count through
+     * @param SQLQuery   query selecting the rows, without ORDER BY or LIMIT
+     * @param version    data version of everything the query reads, when the query was made
+     * @return number of rows
+     * @throws SQLException Error connecting to database, or some similar unrecoverable error
+     */
+    private int count(Connection connection, String SQLQuery, long version) throws SQLException {
+        int count = 0;
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM (" + SQLQuery + ")")) {
+            if (resultSet.next()) {
+                count = resultSet.getInt(1);
+            }
+        }
+        countCache.put(SQLQuery, version, Collections.singletonList(count));
+        return count;
+    }
+
     /**
      * Inserts a data object to the database
      *
@@ -125,6 +320,32 @@ public abstract class DataController<DataType extends Data> {
      */
     protected abstract void updateInDatabase(DataType data) throws SQLException, ConstraintsError;
 
+    /**
+     * Works out which columns an update changes, so observers can ignore updates to columns they do not use.
+     * By default the columns are not known
+     *
+     * @param before the object as it was before it was edited, given to {@link #save(Data, Data)}
+     * @param after  the object about to be saved
+     * @return names of the columns that differ, as in the column constants of the data class, or null if not known
+     */
+    protected Set<String> getChangedColumns(DataType before, DataType after) {
+        return null;
+    }
+
+    /**
+     * Adds a column to a set of changed columns if its value differs
+     *
+     * @param changedColumns set to add to
+     * @param column         name of the column
+     * @param before         value before the change
+     * @param after          value after the change
+     */
+    protected static void addIfChanged(Set<String> changedColumns, String column, Object before, Object after) {
+        if (!Objects.equals(before, after)) {
+            changedColumns.add(column);
+        }
+    }
+
     /**
      * Saves or updates the data object to the database, and notifies observers
      * @param data      data object to update
@@ -135,18 +356,7 @@ public abstract class DataController<DataType extends Data> {
      * @throws ConstraintsError if insert or update fails due to uniqueness constraint being violated
      */
     public DataType save(DataType data, boolean returnNew) throws SQLException, ConstraintsError {
-        DataType saved = data;
-        if (data.isMemoryOnly()) {
-            saved = addToDatabase(data, returnNew);
-            if (!returnNew) {
-                return null;
-            }
-        } else {
-            updateInDatabase(data);
-        }
-
-        notifyObservers(saved.getId());
-        return saved;
+        return save(data, null, returnNew);
     }
 
     /**
@@ -158,7 +368,50 @@ public abstract class DataController<DataType extends Data> {
      * @throws ConstraintsError if insert or update fails due to uniqueness constraint being violated
      */
     public DataType save(DataType data) throws SQLException, ConstraintsError {
-        return save(data, true);
+        return save(data, null, true);
+    }
+
+    /**
+     * Updates a data object that was edited from a copy of it, so observers can be told which columns changed.
+     * Otherwise the same as {@link #save(Data)}
+     *
+     * @param data     data object to update
+     * @param previous the object as it was before it was edited, i.e. as it is in the database. May be null if not
+     *                 known, or if data is new
+     * @return if a save, returns the a new data object with the right ID, if update, returns the given data object
+     * @throws SQLException     if SQL error occurs
+     * @throws ConstraintsError if insert or update fails due to uniqueness constraint being violated
+     */
+    public DataType save(DataType data, DataType previous) throws SQLException, ConstraintsError {
+        return save(data, previous, true);
+    }
+
+    /**
+     * Saves or updates the data object to the database, and notifies observers. The changed columns are only worked
+     * out if the previous state is given, so no extra query is needed to find them
+     */
+    private DataType save(DataType data, DataType previous, boolean returnNew) throws SQLException, ConstraintsError {
+        DataType saved = data;
+        boolean inserted = data.isMemoryOnly();
+        Set<String> changedColumns = null;
+        try {
+            if (inserted) {
+                saved = addToDatabase(data, returnNew);
+                if (!returnNew) {
+                    return null;
+                }
+            } else {
+                changedColumns = previous == null ? null : getChangedColumns(previous, data);
+                updateInDatabase(data);
+            }
+        } finally {
+            incrementDataVersion(); // Even a failed update may have changed some rows
+        }
+
+        checkIdObserverMethods(saved.getId());
+        dispatcher.changed(inserted ? DataChange.Type.INSERTED : DataChange.Type.UPDATED, saved.getId(), null,
+                changedColumns, false, null);
+        return saved;
     }
 
     /**
@@ -178,12 +431,14 @@ public abstract class DataController<DataType extends Data> {
                 Database.databaseConnection.setAutoCommit(false);
             }
             results = batchAddToDatabaseStatement.executeBatch();
+            recordBatchInserts(results);
 
             if (!isTesting) {
                 Database.databaseConnection.commit();
                 Database.databaseConnection.setAutoCommit(true);
             }
             batchAddToDatabaseStatement.clearBatch();
+            incrementDataVersion();
         } catch (SQLException e) {
             // I dont think this can ever happen because of the 'OR IGNORE'
             AlertHelper.showGenericErrorAlert(e, true,
@@ -207,6 +462,35 @@ public abstract class DataController<DataType extends Data> {
         return executeBatch(false);
     }
 
+    /**
+     * Records the IDs of the rows a batch insert added, for {@link #notifyObserversOfBatchInserts()}. Rows added in
+     * one batch are given consecutive IDs, ending with the last inserted row ID
+     *
+     * @param results results of the batch, 1 for each row added
+     * @throws SQLException if an SQL error occurs
+     */
+    private void recordBatchInserts(int[] results) throws SQLException {
+        int added = 0;
+        for (int result : results) {
+            if (result > 0) {
+                added++;
+            }
+        }
+        if (added == 0) {
+            return;
+        }
+
+        try (Statement statement = Database.databaseConnection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT last_insert_rowid()")) {
+            int lastId = resultSet.getInt(1);
+            int firstId = lastId - added + 1;
+            synchronized (this) {
+                batchInsertedFirstId = batchInsertedFirstId == 0 ? firstId : Math.min(batchInsertedFirstId, firstId);
+                batchInsertedLastId = Math.max(batchInsertedLastId, lastId);
+            }
+        }
+    }
+
 
     /**
      * Checks if the ID is valid - errors specific to observer method
@@ -231,13 +515,7 @@ public abstract class DataController<DataType extends Data> {
     public void addObserver(int id, DataObserver<DataType> observer) {
         checkIdObserverMethods(id);
 
-        if (observers.containsKey(id)) {
-            observers.get(id).add(observer); // Add to the set
-        } else {
-            HashSet<DataObserver<DataType>> observerSet = new HashSet<>(); // Create a new set
-            observerSet.add(observer);
-            observers.put(id, observerSet);
-        }
+        observers.computeIfAbsent(id, key -> new CopyOnWriteArraySet<>()).add(observer);
     }
 
     /**
@@ -249,29 +527,35 @@ public abstract class DataController<DataType extends Data> {
     public void removeObserver(int id, DataObserver<DataType> observer) {
         checkIdObserverMethods(id);
 
-        if (observers.containsKey(id)) {
-            observers.get(id).remove(observer);
-            if (observers.get(id).isEmpty()) {
-                // If no one is observing that object, get rid of it
-                observers.remove(id);
-            }
-        }
+        observers.computeIfPresent(id, (key, observerSet) -> {
+            observerSet.remove(observer);
+            return observerSet.isEmpty() ? null : observerSet; // If no one is observing that object, get rid of it
+        });
+    }
+
+    /**
+     * Gets the observers of the object with the given ID
+     *
+     * @param id ID of the object, or OBSERVE_ALL for the global observers
+     * @return the observers; must not be modified
+     */
+    Set<DataObserver<DataType>> getObservers(int id) {
+        Set<DataObserver<DataType>> observerSet = observers.get(id);
+        return observerSet == null ? Collections.emptySet() : observerSet;
     }
 
     /**
      * Notifies all observers, except the one given, that a change has occurred in an object
-     * May be useful if the object modifying the data object is itself an observer
+     * May be useful if the object modifying the data object is itself an observer.
+     * The object is fetched from the database when the observers are notified; if that fails, the error is shown
+     * to the user then
      *
      * @param id     ID of the object of interest
      * @param except observer that is not notified of the change
-     * @throws SQLException if error getting entity from database
      */
-    public void notifyObservers(int id, DataObserver<DataType> except) throws SQLException {
-        DataType data = getEntity(id);
-        if (data == null) {
-            return;
-        }
-        notifyObservers(data, except);
+    public void notifyObservers(int id, DataObserver<DataType> except) {
+        checkIdObserverMethods(id);
+        dispatcher.changed(DataChange.Type.UPDATED, id, null, null, false, except);
     }
 
     /**
@@ -280,29 +564,10 @@ public abstract class DataController<DataType extends Data> {
      *
      * @param data   data object of interest
      * @param except observer that is not notified of the change
-     * @throws SQLException if error getting id of data from database
      */
     public void notifyObservers(DataType data, DataObserver<DataType> except) {
         checkIdObserverMethods(data.getId());
-
-        HashSet<DataObserver<DataType>> globalObservers = observers.get(OBSERVE_ALL);
-        if (globalObservers != null) {
-            for (DataObserver<DataType> observer : globalObservers) {
-                if (observer != except) {
-                    observer.dataChangedEvent(data);
-                }
-            }
-        }
-
-        if (observers.containsKey(data.getId())) {
-            // If data object null (not found) or there are no observers, don't bother
-            for (DataObserver<DataType> observer : observers.get(data.getId())) {
-                if (observer != except && (globalObservers == null || !globalObservers.contains(observer))) {
-                    observer.dataChangedEvent(data);
-                }
-            }
-        }
-
+        dispatcher.changed(DataChange.Type.UPDATED, data.getId(), data, null, false, except);
     }
 
     /**
@@ -311,26 +576,57 @@ public abstract class DataController<DataType extends Data> {
      * @param data The data object of interest. Null if there is no single object of interest (eg. a change across the entire datacontroller)
      */
     public void notifyGlobalObservers(DataType data) {
-        HashSet<DataObserver<DataType>> globalObservers = observers.get(OBSERVE_ALL);
-        if (globalObservers != null) {
-            for (DataObserver<DataType> observer : globalObservers) {
-                observer.dataChangedEvent(data);
+        notifyGlobalObservers(data, null);
+    }
+
+    /**
+     * Notifies the observers that are observing the global state of this data controller, except the one given
+     *
+     * @param data   The data object of interest. Null if there is no single object of interest
+     * @param except observer that is not notified of the change
+     */
+    public void notifyGlobalObservers(DataType data, DataObserver<DataType> except) {
+        if (data == null) {
+            synchronized (this) {
+                batchInsertedFirstId = 0; // Covered by the reload
+                batchInsertedLastId = 0;
             }
+            dispatcher.bulkChanged(DataChange.Type.RELOADED, OBSERVE_ALL, OBSERVE_ALL, except);
+        } else {
+            dispatcher.changed(DataChange.Type.UPDATED, data.getId(), data, null, true, except);
         }
     }
 
     /**
-     * Notifies all observers that a change has occurred in an object
+     * Notifies the global observers of the rows added by batch inserts since they were last told, e.g. at the end of
+     * an import, so they can load just those rows. If no rows were added they are told the whole table may have
+     * changed, as with {@link #notifyGlobalObservers(Data)}
+     */
+    public void notifyObserversOfBatchInserts() {
+        int firstId;
+        int lastId;
+        synchronized (this) {
+            firstId = batchInsertedFirstId;
+            lastId = batchInsertedLastId;
+            batchInsertedFirstId = 0;
+            batchInsertedLastId = 0;
+        }
+        if (firstId == 0) {
+            notifyGlobalObservers(null);
+        } else {
+            dispatcher.bulkChanged(DataChange.Type.BULK_INSERTED, firstId, lastId, null);
+        }
+    }
+
+    /**
+     * Notifies all observers that a change has occurred in an object.
+     * The object is fetched from the database when the observers are notified; if that fails, the error is shown
+     * to the user then
      *
      * @param id ID of the object of interest
-     * @throws SQLException if error getting entity by id from database
      */
-    public void notifyObservers(int id) throws SQLException {
-        DataType data = getEntity(id);
-        if (data == null) {
-            return;
-        }
-        notifyObservers(data);
+    public void notifyObservers(int id) {
+        notifyObservers(id, null);
     }
 
     /**
@@ -339,18 +635,7 @@ public abstract class DataController<DataType extends Data> {
      * @param data data object to notify
      */
     public void notifyObservers(DataType data) {
-        checkIdObserverMethods(data.getId());
-        notifyGlobalObservers(data);
-        HashSet<DataObserver<DataType>> globalObservers = observers.get(OBSERVE_ALL);
-
-        if (observers.containsKey(data.getId())) {
-            for (DataObserver<DataType> observer : observers.get(data.getId())) {
-                if (globalObservers == null || !globalObservers.contains(observer)) {
-                    // If both globally observing and observing the specific object, don't call it twice
-                    observer.dataChangedEvent(data);
-                }
-            }
-        }
+        notifyObservers(data, null);
     }
 
     /**
@@ -360,14 +645,10 @@ public abstract class DataController<DataType extends Data> {
      */
     public void notifyObserversOfDeletion(int id) {
         checkIdObserverMethods(id);
-
-        HashSet<DataObserver<DataType>> globalObservers = observers.get(OBSERVE_ALL);
-
-        if (globalObservers != null) {
-            for (DataObserver<DataType> observer : globalObservers) {
-                observer.dataChangedEvent(null);
-                // Passing null on deletion event for global observer
-            }
+        if (id == OBSERVE_ALL) {
+            dispatcher.bulkChanged(DataChange.Type.DELETED, OBSERVE_ALL, OBSERVE_ALL, null);
+        } else {
+            dispatcher.changed(DataChange.Type.DELETED, id, null, null, true, null);
         }
     }
 
@@ -3,16 +3,21 @@ package seng202.group8.datacontroller;
 import seng202.group8.data.Data;
 
 /**
- * Interface that observers to Data objects should follow. Events are triggered on data modification and deletion
+ * Interface that observers to Data objects should follow. Events are triggered on data insertion, modification and
+ * deletion, each described by a {@link DataChange}
  * <p>
- * If the observer subscribes to OBSERVE_ALL, all events from this will go to `dataChangedEvent` for insertions, modifications and deletions (with the last receiving NULL)
+ * Observers of a single object are told when it is inserted or modified. Observers subscribed to OBSERVE_ALL are also
+ * told of deletions and bulk changes, which may cover many objects and carry no data
  */
 public interface DataObserver<DataType extends Data> {
 
     /**
-     * Method that is called when a data object the observer has subscribed to is modified OR the subscriber is a global subscriber and a data object has been changed/added/deleted
+     * Method that is called with a description of each change to a data object the observer has subscribed to, or of
+     * any change to the table if the observer subscribed to OBSERVE_ALL. Observers that can update themselves
+     * incrementally, e.g. by only loading the rows of a bulk insert, can use the kind of change and the IDs it covers;
+     * others can reload whenever {@link DataChange#getData()} is null
      *
-     * @param data data object that was modified or NULL if the observer has subscribed to OBSERVE_ALL and an object was deleted
+     * @param change what changed
      */
-    void dataChangedEvent(DataType data);
+    void dataChangeEvent(DataChange<DataType> change);
 }
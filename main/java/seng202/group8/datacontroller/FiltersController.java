@@ -3,14 +3,32 @@ package seng202.group8.datacontroller;
 import seng202.group8.AlertHelper;
 import seng202.group8.data.Airline;
 import seng202.group8.data.Airport;
+import seng202.group8.data.Route;
+import seng202.group8.data.filters.FacetIndex;
 import seng202.group8.data.filters.FilterChangeObserver;
+import seng202.group8.data.filters.FilterRange;
 import seng202.group8.data.filters.NumericFilter;
 import seng202.group8.data.filters.TextualFilter;
+import seng202.group8.data.filters.ValueDistribution;
 import seng202.group8.io.Database;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 /**
  * Stores Current Filters for view and a list of FilterChangeObservers
@@ -33,79 +51,984 @@ public class FiltersController {
     private NumericFilter priceFilter;
     private NumericFilter flightNumberFilter;
     private NumericFilter durationFilter;
+    private NumericFilter distanceFilter;
 
 
-    private DataObserver<Airport> airportObserver = new DataObserver<Airport>() {
+    /**
+     * Options taken from one field of the entities of one table, for some filters. Counts how many entities have each
+     * value so that a single change can add or remove just the options it affects
+     */
+    private static class OptionIndex {
+        private final HashMap<Integer, String[]> valuesById = new HashMap<>();
+        private final ArrayList<TreeMap<String, Integer>> counts = new ArrayList<>();
+        private final TextualFilter[][] filters;
 
-        @Override
-        public void dataChangedEvent(Airport data) {
-            try {
-                List<Airport> airports = AirportDataController.getSingleton().getAllEntities();
+        /**
+         * @param filters for each field, the filters whose options are that field's values
+         */
+        private OptionIndex(TextualFilter[]... filters) {
+            this.filters = filters;
+            for (int field = 0; field < filters.length; field++) {
+                counts.add(new TreeMap<>());
+            }
+        }
 
-                ArrayList<String> airportCodes = new ArrayList<String>();
-                for (Airport airport : airports) {
-                    airportCodes.add(airport.getCode());
+        /**
+         * Replaces every option, e.g. after the table was bulk loaded
+         *
+         * @param ids    entity IDs
+         * @param values values of each field for each entity, in the same order as the IDs
+         */
+        private void reset(List<Integer> ids, List<String[]> values) {
+            valuesById.clear();
+            counts.forEach(TreeMap::clear);
+            for (int i = 0; i < ids.size(); i++) {
+                valuesById.put(ids.get(i), values.get(i));
+                for (int field = 0; field < filters.length; field++) {
+                    String value = values.get(i)[field];
+                    if (value != null) {
+                        counts.get(field).merge(value, 1, Integer::sum);
+                    }
                 }
+            }
+            for (int field = 0; field < filters.length; field++) {
+                ArrayList<String> options = new ArrayList<>(counts.get(field).keySet());
+                for (TextualFilter filter : filters[field]) {
+                    filter.setOptions(options);
+                }
+            }
+        }
 
-                ArrayList<String> airportNames = new ArrayList<String>();
-                for (Airport airport : airports) {
-                    airportNames.add(airport.getName());
+        /**
+         * Records that an entity was added or changed
+         *
+         * @param id     ID of the entity
+         * @param values new value of each field
+         */
+        private void put(int id, String[] values) {
+            String[] previous = valuesById.put(id, values);
+            for (int field = 0; field < filters.length; field++) {
+                if (previous == null || !Objects.equals(previous[field], values[field])) {
+                    if (previous != null) {
+                        decrement(field, previous[field]);
+                    }
+                    increment(field, values[field]);
                 }
+            }
+        }
 
-                startFilter.setOptions(airportCodes);
-                destinationFilter.setOptions(airportCodes);
-                airportCodeFilter.setOptions(airportCodes);
+        /**
+         * Records that many entities were added or changed, e.g. by an import. The options of each filter are set
+         * once, rather than added one at a time
+         *
+         * @param ids    entity IDs
+         * @param values values of each field for each entity, in the same order as the IDs
+         */
+        private void putAll(List<Integer> ids, List<String[]> values) {
+            boolean[] optionsChanged = new boolean[filters.length];
+            for (int i = 0; i < ids.size(); i++) {
+                String[] previous = valuesById.put(ids.get(i), values.get(i));
+                for (int field = 0; field < filters.length; field++) {
+                    String value = values.get(i)[field];
+                    if (previous != null && !Objects.equals(previous[field], value) && previous[field] != null
+                            && counts.get(field).merge(previous[field], -1, Integer::sum) == 0) {
+                        counts.get(field).remove(previous[field]);
+                        optionsChanged[field] = true;
+                    }
+                    if ((previous == null || !Objects.equals(previous[field], value)) && value != null
+                            && counts.get(field).merge(value, 1, Integer::sum) == 1) {
+                        optionsChanged[field] = true;
+                    }
+                }
+            }
+            for (int field = 0; field < filters.length; field++) {
+                if (optionsChanged[field]) {
+                    ArrayList<String> options = new ArrayList<>(counts.get(field).keySet());
+                    for (TextualFilter filter : filters[field]) {
+                        filter.setOptions(options);
+                    }
+                }
+            }
+        }
 
-                airportNameFilter.setOptions(airportNames);
-            } catch (SQLException sql) {
-                AlertHelper.showErrorAlert(sql, "Database error occurred while updating airport filters");
+        /**
+         * Records that an entity was deleted
+         *
+         * @param id ID the entity had
+         */
+        private void remove(int id) {
+            String[] previous = valuesById.remove(id);
+            if (previous != null) {
+                for (int field = 0; field < filters.length; field++) {
+                    decrement(field, previous[field]);
+                }
             }
         }
-    };
 
-    private DataObserver<Airline> airlineObserver = new DataObserver<Airline>() {
+        private void increment(int field, String value) {
+            if (value != null && counts.get(field).merge(value, 1, Integer::sum) == 1) {
+                for (TextualFilter filter : filters[field]) {
+                    filter.addAvailableOption(value);
+                }
+            }
+        }
 
-        @Override
-        public void dataChangedEvent(Airline data) {
-            try {
-                List<Airline> airlines = AirlineDataController.getSingleton().getAllEntities();
+        private void decrement(int field, String value) {
+            if (value != null && counts.get(field).merge(value, -1, Integer::sum) == 0) {
+                counts.get(field).remove(value);
+                for (TextualFilter filter : filters[field]) {
+                    filter.removeAvailableOption(value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Number of routes leaving each airport, for the number of flights filter. Routes are counted by source code, and
+     * each airport gets the routes of both its codes, as with {@link AirportDataController#FILTERED_AIRPORT_COLUMNS}
+     */
+    private static class AirportRouteCounts {
+        // Source codes are numbered, so each route only needs an int; there are far more routes than airports
+        private final HashMap<String, Integer> codeKeys = new HashMap<>();
+        private final ArrayList<String> codes = new ArrayList<>();
+        private int[] routesByKey = new int[0];
+        private int[] sourceKeyByRoute = new int[0]; // Key + 1 of the source of each route ID, or 0 if there is no route
+        private final HashMap<Integer, String[]> codesByAirport = new HashMap<>();
+        private final HashMap<String, ArrayList<Integer>> airportsByCode = new HashMap<>();
+        private final ValueDistribution distribution;
+
+        /**
+         * @param distribution distribution of the route counts, kept up to date by this
+         */
+        private AirportRouteCounts(ValueDistribution distribution) {
+            this.distribution = distribution;
+        }
+
+        /**
+         * Replaces every route, e.g. after the routes were bulk loaded
+         *
+         * @param ids     route IDs
+         * @param sources source airport code of each route, in the same order as the IDs
+         */
+        private void resetRoutes(List<Integer> ids, List<String> sources) {
+            Arrays.fill(routesByKey, 0);
+            sourceKeyByRoute = new int[ids.isEmpty() ? 0 : Collections.max(ids) + 1];
+            for (int i = 0; i < ids.size(); i++) {
+                int key = getKey(sources.get(i));
+                sourceKeyByRoute[ids.get(i)] = key + 1;
+                routesByKey[key]++;
+            }
+            recount();
+        }
+
+        /**
+         * Replaces every airport, e.g. after the airports were bulk loaded
+         *
+         * @param ids          airport IDs
+         * @param airportCodes IATA and ICAO code of each airport, in the same order as the IDs
+         */
+        private void resetAirports(List<Integer> ids, List<String[]> airportCodes) {
+            codesByAirport.clear();
+            airportsByCode.clear();
+            for (int i = 0; i < ids.size(); i++) {
+                addAirport(ids.get(i), airportCodes.get(i));
+            }
+            recount();
+        }
 
-                ArrayList<String> airlineNames = new ArrayList<>();
-                for (Airline airline : airlines) {
-                    airlineNames.add(airline.getName());
+        /**
+         * Records that a route was added or changed
+         *
+         * @param id     ID of the route
+         * @param source new source airport code of the route
+         */
+        private void putRoute(int id, String source) {
+            int key = getKey(source);
+            if (id >= sourceKeyByRoute.length) {
+                sourceKeyByRoute = Arrays.copyOf(sourceKeyByRoute, Math.max(id + 1, sourceKeyByRoute.length * 2));
+            }
+            if (sourceKeyByRoute[id] != key + 1) {
+                removeRoute(id);
+                sourceKeyByRoute[id] = key + 1;
+                changeRoutes(key, 1);
+            }
+        }
+
+        /**
+         * Records that a route was deleted
+         *
+         * @param id ID the route had
+         */
+        private void removeRoute(int id) {
+            if (id >= 0 && id < sourceKeyByRoute.length && sourceKeyByRoute[id] != 0) {
+                int key = sourceKeyByRoute[id] - 1;
+                sourceKeyByRoute[id] = 0;
+                changeRoutes(key, -1);
+            }
+        }
+
+        /**
+         * Records that an airport was added or changed
+         *
+         * @param id           ID of the airport
+         * @param airportCodes new IATA and ICAO code of the airport
+         */
+        private void putAirport(int id, String[] airportCodes) {
+            removeAirport(id);
+            addAirport(id, airportCodes);
+            distribution.put(id, countRoutes(airportCodes));
+        }
+
+        /**
+         * Records that an airport was deleted
+         *
+         * @param id ID the airport had
+         */
+        private void removeAirport(int id) {
+            String[] previous = codesByAirport.remove(id);
+            if (previous != null) {
+                for (String code : previous) {
+                    if (code != null) {
+                        airportsByCode.get(code).remove((Integer) id);
+                    }
                 }
+            }
+            distribution.remove(id);
+        }
+
+        private int getKey(String code) {
+            Integer key = codeKeys.get(code);
+            if (key == null) {
+                key = codes.size();
+                codeKeys.put(code, key);
+                codes.add(code);
+                if (key == routesByKey.length) {
+                    routesByKey = Arrays.copyOf(routesByKey, Math.max(16, key * 2));
+                }
+            }
+            return key;
+        }
+
+        private void addAirport(int id, String[] airportCodes) {
+            codesByAirport.put(id, airportCodes);
+            for (String code : airportCodes) {
+                if (code != null) {
+                    airportsByCode.computeIfAbsent(code, c -> new ArrayList<>()).add(id);
+                }
+            }
+        }
 
-                ArrayList<String> airlineCodes = new ArrayList<>();
-                for (Airline airline : airlines) {
-                    airlineCodes.add(airline.getCode());
+        private void changeRoutes(int key, int change) {
+            routesByKey[key] += change;
+            for (int airport : airportsByCode.getOrDefault(codes.get(key), new ArrayList<>())) {
+                distribution.put(airport, countRoutes(codesByAirport.get(airport)));
+            }
+        }
+
+        private int countRoutes(String[] airportCodes) {
+            int routes = 0;
+            for (String code : airportCodes) {
+                Integer key = code == null ? null : codeKeys.get(code);
+                if (key != null) {
+                    routes += routesByKey[key];
                 }
+            }
+            return routes;
+        }
 
-                airlineNameFilter.setOptions(airlineNames);
-                airlineCodeFilter.setOptions(airlineCodes);
-            } catch (SQLException sql) {
-                AlertHelper.showErrorAlert(sql, "Database error occurred while updating airline filters");
+        private void recount() {
+            ArrayList<Integer> ids = new ArrayList<>(codesByAirport.keySet());
+            ArrayList<Integer> routes = new ArrayList<>();
+            for (int id : ids) {
+                routes.add(countRoutes(codesByAirport.get(id)));
             }
+            distribution.reset(ids, routes);
+        }
+    }
+
+    private OptionIndex airportOptions;
+    private OptionIndex airlineOptions;
+    private final ValueDistribution priceDistribution = new ValueDistribution();
+    private final ValueDistribution durationDistribution = new ValueDistribution();
+    private final ValueDistribution distanceDistribution = new ValueDistribution();
+    private final ValueDistribution airportRoutesDistribution = new ValueDistribution();
+    private final AirportRouteCounts airportRouteCounts = new AirportRouteCounts(airportRoutesDistribution);
+
+    private DataObserver<Airport> airportObserver = this::airportChanged;
+    private DataObserver<Airline> airlineObserver = this::airlineChanged;
+    private DataObserver<Route> routeObserver = this::routeChanged;
+
+    /**
+     * Tables whose rows the textual filters can be counted against
+     */
+    public enum FacetTable {
+        AIRPORT, AIRLINE, ROUTE
+    }
+
+    /**
+     * A snapshot of the filters of a table, to count the options of its textual filters against. Taken on the JavaFX
+     * thread, as the numeric filters read their bounds from their views, so the counting can be done on another thread
+     */
+    public static class FacetQuery {
+        private final FacetTable table;
+        private final TextualFilter[] textualFilters;
+        private final List<Set<String>> selected = new ArrayList<>();
+        private final List<FilterRange<Integer>> ranges = new ArrayList<>();
+        private final String key;
+        private final long generation;
+
+        private FacetQuery(FiltersController filters, FacetTable table) {
+            this.table = table;
+            switch (table) {
+                case AIRPORT:
+                    textualFilters = new TextualFilter[]{filters.countryFilter, filters.airportCodeFilter, filters.airportNameFilter};
+                    ranges.add(filters.flightNumberFilter.getBounds());
+                    break;
+                case AIRLINE:
+                    textualFilters = new TextualFilter[]{filters.countryFilter, filters.airlineCodeFilter, filters.airlineNameFilter};
+                    break;
+                default:
+                    textualFilters = new TextualFilter[]{filters.airlineNameFilter, filters.startFilter, filters.destinationFilter};
+                    ranges.add(filters.priceFilter.getBounds());
+                    ranges.add(filters.durationFilter.getBounds());
+                    // Mirrors RouteDataController.generateFilterWhereClause, which keeps routes with no distance
+                    ranges.add(filters.distanceFilter.isFullRange() ? null : filters.distanceFilter.getBounds());
+                    break;
+            }
+
+            StringBuilder builder = new StringBuilder(table.name());
+            for (TextualFilter filter : textualFilters) {
+                TreeSet<String> options = new TreeSet<>(filter.getSelectedOptions());
+                selected.add(options);
+                builder.append('\n').append(options);
+            }
+            for (FilterRange<Integer> range : ranges) {
+                builder.append('\n').append(range == null ? "all" : range.min + ".." + range.max);
+            }
+            key = builder.toString();
+            generation = filters.facetGeneration;
+        }
+    }
+
+    /**
+     * Most sets of facet counts kept, by the filters they were counted for
+     */
+    private static final int FACET_CACHE_SIZE = 16;
+
+    private final Map<String, Map<TextualFilter, Map<String, Integer>>> facetCache = new LinkedHashMap<String, Map<TextualFilter, Map<String, Integer>>>(FACET_CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Map<TextualFilter, Map<String, Integer>>> eldest) {
+            return size() > FACET_CACHE_SIZE;
         }
     };
+    private final EnumMap<FacetTable, FacetIndex> facetIndexes = new EnumMap<>(FacetTable.class);
+    private long facetGeneration = 0; // Bumped whenever the data changes, so indexes and counts from before are not kept
+
+    /**
+     * Options for all of the textual filters and the distributions of the numeric filters, read from a database in one
+     * go. Used to load the options of a database before switching to it
+     */
+    public static class FilterOptions {
+        private final ArrayList<Integer> airportIds = new ArrayList<>();
+        private final ArrayList<String[]> airportValues = new ArrayList<>(); // Code and name
+        private final ArrayList<String[]> airportCodes = new ArrayList<>(); // IATA and ICAO
+        private final ArrayList<Integer> airlineIds = new ArrayList<>();
+        private final ArrayList<String[]> airlineValues = new ArrayList<>();
+        private final ArrayList<String> countryNames = new ArrayList<>();
+        private final ArrayList<Integer> routeIds = new ArrayList<>();
+        private final ArrayList<String> routeSources = new ArrayList<>();
+        private final ArrayList<Integer> routePrices = new ArrayList<>();
+        private final ArrayList<Integer> routeDurations = new ArrayList<>();
+        private final ArrayList<Integer> routeDistances = new ArrayList<>(); // Rounded to the kilometre
+    }
+
+    /**
+     * Reads the options for all textual filters and the distributions of the numeric filters from the database behind
+     * the given connection. Does not use the prepared statements of the data controllers, so can be run on a
+     * background thread against a database that is not yet in use
+     *
+     * @param connection connection to the database to read from
+     * @return options for every textual filter
+     * @throws SQLException if error from database
+     */
+    public static FilterOptions loadFilterOptions(Connection connection) throws SQLException {
+        FilterOptions options = new FilterOptions();
+        try (Statement statement = connection.createStatement()) {
+            loadAirportAndAirlineOptions(statement, options);
+            loadRouteStatistics(statement, options);
+
+            try (ResultSet resultSet = statement.executeQuery("SELECT Name FROM Country")) {
+                while (resultSet.next()) {
+                    options.countryNames.add(resultSet.getString("Name"));
+                }
+            }
+        }
+        Collections.sort(options.countryNames);
+        return options;
+    }
+
+    /**
+     * Reads the airport and airline options, and the codes of the airports
+     *
+     * @param statement statement to read with
+     * @param options   options to add to
+     * @throws SQLException if error from database
+     */
+    private static void loadAirportAndAirlineOptions(Statement statement, FilterOptions options) throws SQLException {
+        loadAirportOptions(statement, options, "");
+        loadAirlineOptions(statement, options, "");
+    }
+
+    /**
+     * Reads the airport options and codes
+     *
+     * @param statement statement to read with
+     * @param options   options to add to
+     * @param where     WHERE clause choosing the airports to read, or an empty string for all of them
+     * @throws SQLException if error from database
+     */
+    private static void loadAirportOptions(Statement statement, FilterOptions options, String where) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery("SELECT ID, coalesce(IATA, ICAO) AS Code, Name, IATA, ICAO FROM Airport" + where)) {
+            while (resultSet.next()) {
+                options.airportIds.add(resultSet.getInt("ID"));
+                options.airportValues.add(new String[]{resultSet.getString("Code"), resultSet.getString("Name")});
+                options.airportCodes.add(new String[]{resultSet.getString("IATA"), resultSet.getString("ICAO")});
+            }
+        }
+    }
 
     /**
-     * Gets the singleton instance for the Filters
+     * Reads the airline options
+     *
+     * @param statement statement to read with
+     * @param options   options to add to
+     * @param where     WHERE clause choosing the airlines to read, or an empty string for all of them
+     * @throws SQLException if error from database
+     */
+    private static void loadAirlineOptions(Statement statement, FilterOptions options, String where) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery("SELECT ID, coalesce(IATA, ICAO) AS Code, Name FROM Airline" + where)) {
+            while (resultSet.next()) {
+                options.airlineIds.add(resultSet.getInt("ID"));
+                options.airlineValues.add(new String[]{resultSet.getString("Code"), resultSet.getString("Name")});
+            }
+        }
+    }
+
+    /**
+     * Reads the values of every route that the numeric filters have distributions of, in one scan of the routes
+     *
+     * @param statement statement to read with
+     * @param options   options to add to
+     * @throws SQLException if error from database
+     */
+    private static void loadRouteStatistics(Statement statement, FilterOptions options) throws SQLException {
+        loadRouteStatistics(statement, options, "");
+    }
+
+    /**
+     * Reads the values of the chosen routes that the numeric filters have distributions of
+     *
+     * @param statement statement to read with
+     * @param options   options to add to
+     * @param where     WHERE clause choosing the routes to read, or an empty string for all of them
+     * @throws SQLException if error from database
+     */
+    private static void loadRouteStatistics(Statement statement, FilterOptions options, String where) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery("SELECT ID, Source, Price, TimeLength, Distance FROM Route" + where)) {
+            while (resultSet.next()) {
+                options.routeIds.add(resultSet.getInt("ID"));
+                options.routeSources.add(resultSet.getString("Source"));
+                int price = resultSet.getInt("Price");
+                options.routePrices.add(resultSet.wasNull() ? null : price);
+                int duration = resultSet.getInt("TimeLength");
+                options.routeDurations.add(resultSet.wasNull() ? null : duration);
+                double distance = resultSet.getDouble("Distance");
+                options.routeDistances.add(resultSet.wasNull() ? null : roundDistance(distance));
+            }
+        }
+    }
+
+    /**
+     * Rounds a route distance to the whole kilometres the distance filter works in
+     *
+     * @param distance distance in km, or null if it is unknown
+     * @return rounded distance, or null if it is unknown
+     */
+    private static Integer roundDistance(Double distance) {
+        return distance == null ? null : (int) Math.round(distance);
+    }
+
+    /**
+     * Replaces the options of every textual filter and the distributions of the numeric filters with the given ones
+     *
+     * @param options options loaded by {@link #loadFilterOptions(Connection)}
+     */
+    public void setFilterOptions(FilterOptions options) {
+        invalidateFacetCounts();
+        setAirportAndAirlineOptions(options);
+        setRouteStatistics(options);
+
+        countryFilter.setOptions(options.countryNames);
+    }
+
+    /**
+     * Replaces the airport and airline options
+     *
+     * @param options options with the airports and airlines loaded
+     */
+    private void setAirportAndAirlineOptions(FilterOptions options) {
+        airportOptions.reset(options.airportIds, options.airportValues);
+        airlineOptions.reset(options.airlineIds, options.airlineValues);
+        airportRouteCounts.resetAirports(options.airportIds, options.airportCodes);
+        flightNumberFilter.distributionChanged();
+    }
+
+    /**
+     * Replaces the distributions of the route values
+     *
+     * @param options options with the routes loaded
+     */
+    private void setRouteStatistics(FilterOptions options) {
+        priceDistribution.reset(options.routeIds, options.routePrices);
+        durationDistribution.reset(options.routeIds, options.routeDurations);
+        distanceDistribution.reset(options.routeIds, options.routeDistances);
+        airportRouteCounts.resetRoutes(options.routeIds, options.routeSources);
+        routeDistributionsChanged();
+    }
+
+    /**
+     * Updates the limits of the filters whose distributions depend on the routes
+     */
+    private void routeDistributionsChanged() {
+        priceFilter.distributionChanged();
+        durationFilter.distributionChanged();
+        distanceFilter.distributionChanged();
+        flightNumberFilter.distributionChanged();
+    }
+
+    /**
+     * Takes a snapshot of the filters of a table to count the options of its textual filters against. Reads the
+     * filters, so should be called on the JavaFX thread; the counting itself can then be done on any thread
+     *
+     * @param table table to count rows of
+     * @return snapshot for {@link #countFacets(FacetQuery)}
+     */
+    public FacetQuery createFacetQuery(FacetTable table) {
+        synchronized (facetCache) {
+            return new FacetQuery(this, table);
+        }
+    }
+
+    /**
+     * Counts how many rows each option of each textual filter would give, with every other filter applied but not
+     * the filter itself, so the counts show what ticking another option would add. The table is read into a
+     * {@link FacetIndex} the first time, and counted in one pass over it; indexes and counts are kept until the data
+     * changes
+     *
+     * @param query snapshot from {@link #createFacetQuery(FacetTable)}
+     * @return for each textual filter, the number of rows for each option; options with no rows are left out
+     * @throws SQLException if error from database
+     */
+    public Map<TextualFilter, Map<String, Integer>> countFacets(FacetQuery query) throws SQLException {
+        Database.establishConnection();
+        return countFacets(query, Database.databaseConnection);
+    }
+
+    /**
+     * Counts how many rows each option of each textual filter would give, reading the table through the given
+     * connection if it is not indexed yet. Uses its own statements, so can be called off the JavaFX thread with
+     * {@link Database#getReadConnection()}
+     *
+     * @param query      snapshot from {@link #createFacetQuery(FacetTable)}
+     * @param connection connection to read the table through
+     * @return for each textual filter, the number of rows for each option; options with no rows are left out
+     * @throws SQLException if error from database
+     */
+    public Map<TextualFilter, Map<String, Integer>> countFacets(FacetQuery query, Connection connection) throws SQLException {
+        FacetIndex index;
+        synchronized (facetCache) {
+            Map<TextualFilter, Map<String, Integer>> cached = facetCache.get(query.key);
+            if (cached != null) {
+                return cached;
+            }
+            index = query.generation == facetGeneration ? facetIndexes.get(query.table) : null;
+        }
+
+        if (index == null) {
+            index = loadFacetIndex(connection, query.table);
+            synchronized (facetCache) {
+                if (query.generation == facetGeneration) {
+                    facetIndexes.put(query.table, index);
+                }
+            }
+        }
+
+        List<Map<String, Integer>> dimensionCounts = index.count(query.selected, query.ranges);
+        HashMap<TextualFilter, Map<String, Integer>> counts = new HashMap<>();
+        for (int i = 0; i < query.textualFilters.length; i++) {
+            counts.put(query.textualFilters[i], dimensionCounts.get(i));
+        }
+
+        synchronized (facetCache) {
+            if (query.generation == facetGeneration) {
+                facetCache.put(query.key, counts);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Reads the columns of a table that the filters use into an index, with the textual columns in the order of
+     * {@link FacetQuery}'s filters and the numeric columns in the order of its ranges
+     *
+     * @param connection connection to the database to read from
+     * @param table      table to read
+     * @return index of the table
+     * @throws SQLException if error from database
+     */
+    private static FacetIndex loadFacetIndex(Connection connection, FacetTable table) throws SQLException {
+        String[] textColumns;
+        String[] numberColumns;
+        String query;
+        switch (table) {
+            case AIRPORT:
+                textColumns = new String[]{"Country", "Code", "Name"};
+                numberColumns = new String[]{"Routes"};
+                query = "SELECT a.Country, a.Name" + AirportDataController.FILTERED_AIRPORT_COLUMNS + " FROM Airport a";
+                break;
+            case AIRLINE:
+                textColumns = new String[]{"Country", "Code", "Name"};
+                numberColumns = new String[0];
+                query = "SELECT Country, coalesce(IATA, ICAO) AS Code, Name FROM Airline";
+                break;
+            default:
+                // Joined as for the route table, so a code shared by two airlines counts its routes for both
+                textColumns = new String[]{"Name", Route.SOURCE_AIRPORT_CODE, Route.DESTINATION_AIRPORT_CODE};
+                numberColumns = new String[]{Route.PRICE, Route.FLIGHT_DURATION, Route.DISTANCE};
+                query = "SELECT a.Name, r.Source, r.Destination, r.Price, r.TimeLength, r.Distance" + RouteDataController.FILTERED_ROUTES_FROM;
+                break;
+        }
+
+        FacetIndex.Builder builder = new FacetIndex.Builder(textColumns.length, numberColumns.length);
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(query)) {
+            String[] values = new String[textColumns.length];
+            double[] numbers = new double[numberColumns.length];
+            while (resultSet.next()) {
+                for (int i = 0; i < textColumns.length; i++) {
+                    values[i] = resultSet.getString(textColumns[i]);
+                }
+                for (int i = 0; i < numberColumns.length; i++) {
+                    numbers[i] = resultSet.getDouble(numberColumns[i]);
+                    if (resultSet.wasNull()) {
+                        numbers[i] = Double.NaN;
+                    }
+                }
+                builder.addRow(values, numbers);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Updates the airport options when the airports change. The facet counts may change with any change, even one
+     * that leaves the options as they are
+     *
+     * @param change what changed
+     */
+    private void airportChanged(DataChange<Airport> change) {
+        invalidateFacetCounts();
+        switch (change.getType()) {
+            case INSERTED:
+            case UPDATED:
+                if (change.hasChanged(Airport.NAME, Airport.IATA, Airport.ICAO)) {
+                    Airport data = change.getData();
+                    airportOptions.put(data.getId(), new String[]{data.getCode(), data.getName()});
+                    airportRouteCounts.putAirport(data.getId(), new String[]{data.getIata(), data.getIcao()});
+                    flightNumberFilter.distributionChanged();
+                }
+                if (change.hasChanged(Airport.LATITUDE, Airport.LONGITUDE, Airport.IATA, Airport.ICAO)) {
+                    // Routes using old codes lose their distance, and can only be found by it
+                    boolean codesChanged = change.getType() == DataChange.Type.UPDATED && change.hasChanged(Airport.IATA, Airport.ICAO);
+                    reloadRouteDistances(change.getData(), codesChanged);
+                }
+                break;
+            case DELETED:
+                if (change.isWholeTable()) {
+                    reloadOptions();
+                } else {
+                    airportOptions.remove(change.getFirstId());
+                    airportRouteCounts.removeAirport(change.getFirstId());
+                    flightNumberFilter.distributionChanged();
+                }
+                break;
+            case BULK_INSERTED:
+                loadInsertedRows(change, true, false, false);
+                break;
+            default:
+                reloadOptions(); // Bulk change, e.g. switching databases
+                break;
+        }
+    }
+
+    /**
+     * Updates the airline options when the airlines change
+     *
+     * @param change what changed
+     */
+    private void airlineChanged(DataChange<Airline> change) {
+        invalidateFacetCounts();
+        switch (change.getType()) {
+            case INSERTED:
+            case UPDATED:
+                if (change.hasChanged(Airline.NAME, Airline.IATA, Airline.ICAO)) {
+                    Airline data = change.getData();
+                    airlineOptions.put(data.getId(), new String[]{data.getCode(), data.getName()});
+                }
+                break;
+            case DELETED:
+                if (change.isWholeTable()) {
+                    reloadOptions();
+                } else {
+                    airlineOptions.remove(change.getFirstId());
+                }
+                break;
+            case BULK_INSERTED:
+                loadInsertedRows(change, false, true, false);
+                break;
+            default:
+                reloadOptions();
+                break;
+        }
+    }
+
+    /**
+     * Updates the distributions of the route values when the routes change
+     *
+     * @param change what changed
+     */
+    private void routeChanged(DataChange<Route> change) {
+        invalidateFacetCounts();
+        switch (change.getType()) {
+            case INSERTED:
+            case UPDATED:
+                if (change.hasChanged(Route.PRICE, Route.FLIGHT_DURATION, Route.DISTANCE, Route.SOURCE_AIRPORT_CODE,
+                        Route.DESTINATION_AIRPORT_CODE)) {
+                    Route data = change.getData();
+                    priceDistribution.put(data.getId(), data.getPrice());
+                    durationDistribution.put(data.getId(), data.getFlightDuration());
+                    distanceDistribution.put(data.getId(), roundDistance(data.getDistance()));
+                    airportRouteCounts.putRoute(data.getId(), data.getSourceAirportCode());
+                    routeDistributionsChanged();
+                }
+                break;
+            case DELETED:
+                if (change.isWholeTable()) {
+                    reloadRouteStatistics();
+                } else {
+                    priceDistribution.remove(change.getFirstId());
+                    durationDistribution.remove(change.getFirstId());
+                    distanceDistribution.remove(change.getFirstId());
+                    airportRouteCounts.removeRoute(change.getFirstId());
+                    routeDistributionsChanged();
+                }
+                break;
+            case BULK_INSERTED:
+                loadInsertedRows(change, false, false, true);
+                break;
+            default:
+                reloadRouteStatistics();
+                break;
+        }
+    }
+
+    /**
+     * Discards the facet indexes and counts, as the data they were read from has changed
+     */
+    private void invalidateFacetCounts() {
+        synchronized (facetCache) {
+            facetIndexes.clear();
+            facetCache.clear();
+            facetGeneration++;
+        }
+    }
+
+    /**
+     * Reloads the airport and airline options from the current database
+     */
+    private void reloadOptions() {
+        try {
+            Database.establishConnection();
+            FilterOptions options = new FilterOptions();
+            try (Statement statement = Database.databaseConnection.createStatement()) {
+                loadAirportAndAirlineOptions(statement, options);
+            }
+            setAirportAndAirlineOptions(options);
+        } catch (SQLException sql) {
+            AlertHelper.showErrorAlert(sql, "Database error occurred while updating filters");
+        }
+    }
+
+    /**
+     * Adds the rows of a bulk insert to the options and distributions, reading only the inserted rows rather than
+     * reloading the whole table
+     *
+     * @param change   the bulk insert
+     * @param airports true if the rows are airports
+     * @param airlines true if the rows are airlines
+     * @param routes   true if the rows are routes
+     */
+    private void loadInsertedRows(DataChange<?> change, boolean airports, boolean airlines, boolean routes) {
+        String where = String.format(" WHERE ID BETWEEN %d AND %d", change.getFirstId(), change.getLastId());
+        try {
+            Database.establishConnection();
+            FilterOptions options = new FilterOptions();
+            try (Statement statement = Database.databaseConnection.createStatement()) {
+                if (airports) {
+                    loadAirportOptions(statement, options, where);
+                }
+                if (airlines) {
+                    loadAirlineOptions(statement, options, where);
+                }
+                if (routes) {
+                    loadRouteStatistics(statement, options, where);
+                }
+            }
+
+            if (airports) {
+                airportOptions.putAll(options.airportIds, options.airportValues);
+                for (int i = 0; i < options.airportIds.size(); i++) {
+                    airportRouteCounts.putAirport(options.airportIds.get(i), options.airportCodes.get(i));
+                }
+                flightNumberFilter.distributionChanged();
+            }
+            if (airlines) {
+                airlineOptions.putAll(options.airlineIds, options.airlineValues);
+            }
+            if (routes) {
+                for (int i = 0; i < options.routeIds.size(); i++) {
+                    int id = options.routeIds.get(i);
+                    priceDistribution.put(id, options.routePrices.get(i));
+                    durationDistribution.put(id, options.routeDurations.get(i));
+                    distanceDistribution.put(id, options.routeDistances.get(i));
+                    airportRouteCounts.putRoute(id, options.routeSources.get(i));
+                }
+                routeDistributionsChanged();
+            }
+        } catch (SQLException sql) {
+            AlertHelper.showErrorAlert(sql, "Database error occurred while updating filters");
+        }
+    }
+
+    /**
+     * Reloads the distributions of the route values from the current database
+     */
+    private void reloadRouteStatistics() {
+        try {
+            Database.establishConnection();
+            FilterOptions options = new FilterOptions();
+            try (Statement statement = Database.databaseConnection.createStatement()) {
+                loadRouteStatistics(statement, options);
+            }
+            setRouteStatistics(options);
+        } catch (SQLException sql) {
+            AlertHelper.showErrorAlert(sql, "Database error occurred while updating filters");
+        }
+    }
+
+    /**
+     * Reads the distances of the routes to and from an airport again after it was added or moved, as saving an
+     * airport works them out without telling the route observers
+     *
+     * @param airport      the airport
+     * @param codesChanged true if the airport's codes changed, so routes using the old codes have lost their distance
+     */
+    private void reloadRouteDistances(Airport airport, boolean codesChanged) {
+        String query = "SELECT ID, Distance FROM Route WHERE Source IN (?, ?) OR Destination IN (?, ?)";
+        if (codesChanged) {
+            query += " OR Distance IS NULL";
+        }
+        try {
+            Database.establishConnection();
+            try (PreparedStatement statement = Database.databaseConnection.prepareStatement(query)) {
+                String[] codes = {airport.getIata(), airport.getIcao()};
+                for (int i = 0; i < codes.length; i++) {
+                    statement.setString(i + 1, codes[i]);
+                    statement.setString(i + 3, codes[i]);
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        double distance = resultSet.getDouble("Distance");
+                        distanceDistribution.put(resultSet.getInt("ID"), resultSet.wasNull() ? null : roundDistance(distance));
+                    }
+                }
+            }
+            distanceFilter.distributionChanged();
+        } catch (SQLException sql) {
+            AlertHelper.showErrorAlert(sql, "Database error occurred while updating filters");
+        }
+    }
+
+    /**
+     * Gets the observer which updates the airport filter options when the airports change
+     *
+     * @return the airport observer
+     */
+    public DataObserver<Airport> getAirportObserver() {
+        return airportObserver;
+    }
+
+    /**
+     * Gets the observer which updates the airline filter options when the airlines change
+     *
+     * @return the airline observer
+     */
+    public DataObserver<Airline> getAirlineObserver() {
+        return airlineObserver;
+    }
+
+    /**
+     * Gets the observer which updates the numeric filter distributions when the routes change
+     *
+     * @return the route observer
+     */
+    public DataObserver<Route> getRouteObserver() {
+        return routeObserver;
+    }
+
+    /**
+     * Gets the singleton instance for the Filters. If it does not exist yet, it is created with the options read from
+     * the database on this thread
      *
      * @return the singleton instance
      */
     public static FiltersController getSingleton() {
+        return getSingleton(null);
+    }
+
+    /**
+     * Gets the singleton instance for the Filters, creating it with the given options if it does not exist yet. The
+     * options can be read ahead of time on a background thread with {@link #loadFilterOptions(Connection)}, so that
+     * creating the filters does not read every route on the JavaFX thread
+     *
+     * @param options options to create the filters with, or null to read them from the database
+     * @return the singleton instance
+     */
+    public static FiltersController getSingleton(FilterOptions options) {
         if (singleton == null) {
-            singleton = new FiltersController();
+            singleton = new FiltersController(options);
         }
 
         return singleton;
     }
 
     /**
-     * Constructor for filters controllers; attempts to initialize all filters with an empty list of options
-     * and subscribe to relevant data types
+     * Constructor for filters controllers; attempts to initialize all filters with the given options, reading them
+     * from the database if there are none, and subscribe to relevant data types
+     *
+     * @param options options to initialize the filters with, or null to read them from the database
      */
-    private FiltersController() {
+    private FiltersController(FilterOptions options) {
         ArrayList<String> items = new ArrayList<>();
         airlineNameFilter = new TextualFilter("By Airline Name", items);
 
@@ -127,13 +1050,29 @@ public class FiltersController {
 
         durationFilter = new NumericFilter("By Duration", 0, 50000, 100);
 
+        // Half the circumference of the earth is just over 20000 km; the limits follow the distances once they are known
+        distanceFilter = new NumericFilter("By Distance", 0, 20100, 100);
+
+        airportOptions = new OptionIndex(new TextualFilter[]{startFilter, destinationFilter, airportCodeFilter}, new TextualFilter[]{airportNameFilter});
+        airlineOptions = new OptionIndex(new TextualFilter[]{airlineCodeFilter}, new TextualFilter[]{airlineNameFilter});
+
+        priceFilter.setDistribution(priceDistribution);
+        durationFilter.setDistribution(durationDistribution);
+        distanceFilter.setDistribution(distanceDistribution);
+        flightNumberFilter.setDistribution(airportRoutesDistribution);
+
         // If testing, filters don't work, so if add observer is at the top, subscription will occur and when
         // the observer methods are called, it will try and access uninitialized filters
         AirlineDataController.getSingleton().addObserver(DataController.OBSERVE_ALL, airlineObserver);
         AirportDataController.getSingleton().addObserver(DataController.OBSERVE_ALL, airportObserver);
+        RouteDataController.getSingleton().addObserver(DataController.OBSERVE_ALL, routeObserver);
 
-        airlineObserver.dataChangedEvent(null);
-        airportObserver.dataChangedEvent(null);
+        if (options == null) {
+            reloadOptions();
+            reloadRouteStatistics();
+        } else {
+            setFilterOptions(options);
+        }
     }
 
 
@@ -238,4 +1177,12 @@ public class FiltersController {
     public NumericFilter getDurationFilter() {
         return durationFilter;
     }
+
+    /**
+     * Gets the filter for filtering by the distance between the airports of a route
+     * @return The filter for filtering by the distance between the airports of a route
+     */
+    public NumericFilter getDistanceFilter() {
+        return distanceFilter;
+    }
 }
@@ -0,0 +1,116 @@
+package seng202.group8.datacontroller;
+
+import seng202.group8.data.Airport;
+import seng202.group8.data.Route;
+import seng202.group8.data.network.FlightNetwork;
+import seng202.group8.io.Database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Keeps an in-memory {@link FlightNetwork} in sync with the database.
+ * <p>
+ * The network is built the first time it is needed. Saving a single route patches the current network, while
+ * anything that can not be applied as a patch (deleting a route, bulk imports, changes to airports or switching
+ * databases) discards it so that it is rebuilt on the next call to {@link #getNetwork()}.
+ */
+public class NetworkController {
+    private static NetworkController singleton;
+
+    private FlightNetwork network = null;
+    private long changes = 0; // Incremented whenever the network is patched or discarded
+
+    private final DataObserver<Route> routeObserver = this::routeChanged;
+    private final DataObserver<Airport> airportObserver = change -> invalidate();
+
+    /**
+     * Gets the singleton instance for the NetworkController
+     *
+     * @return the singleton instance
+     */
+    public static NetworkController getSingleton() {
+        if (singleton == null) {
+            singleton = new NetworkController();
+        }
+
+        return singleton;
+    }
+
+    /**
+     * Initializer for the network controller; subscribes to route and airport changes
+     */
+    protected NetworkController() {
+        RouteDataController.getSingleton().addObserver(DataController.OBSERVE_ALL, routeObserver);
+        AirportDataController.getSingleton().addObserver(DataController.OBSERVE_ALL, airportObserver);
+    }
+
+    /**
+     * Gets the network for the current database, building it if it is out of date. The lock is not held while it is
+     * built, so the observers that patch or discard it are never held up
+     *
+     * @return the flight network. It is never modified, so it can be kept and read while the database changes
+     * @throws SQLException if error from database while building the network
+     */
+    public FlightNetwork getNetwork() throws SQLException {
+        Database.establishConnection();
+        return getNetwork(Database.databaseConnection);
+    }
+
+    /**
+     * Gets the network for the current database, building it through the given connection if it is out of date.
+     * Off the JavaFX thread, pass {@link Database#getReadConnection()}
+     *
+     * @param connection connection to build the network through
+     * @return the flight network. It is never modified, so it can be kept and read while the database changes
+     * @throws SQLException if error from database while building the network
+     */
+    public FlightNetwork getNetwork(Connection connection) throws SQLException {
+        long buildChanges;
+        synchronized (this) {
+            if (network != null) {
+                return network;
+            }
+            buildChanges = changes;
+        }
+        FlightNetwork built = FlightNetwork.build(connection);
+        synchronized (this) {
+            if (network == null && changes == buildChanges) {
+                network = built; // Not kept if a route or airport changed while it was built, as it may have missed it
+            }
+        }
+        return built;
+    }
+
+    /**
+     * Gets the network if it has been built and is up to date, without building it
+     *
+     * @return the flight network, or null if it needs to be built
+     */
+    public synchronized FlightNetwork getBuiltNetwork() {
+        return network;
+    }
+
+    /**
+     * Discards the current network so that it is rebuilt from the database the next time it is needed
+     */
+    public synchronized void invalidate() {
+        network = null;
+        changes++;
+    }
+
+    /**
+     * Patches the network when a route is added or modified. Deletions and bulk changes carry no route, so discard it
+     *
+     * @param change what changed
+     */
+    private synchronized void routeChanged(DataChange<Route> change) {
+        Route route = change.getData();
+        changes++;
+        if (route == null) {
+            network = null;
+        } else if (network != null) {
+            network = network.withRoute(route);
+        }
+    }
+}
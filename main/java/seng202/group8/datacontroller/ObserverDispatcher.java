@@ -0,0 +1,253 @@
+package seng202.group8.datacontroller;
+
+import seng202.group8.AlertHelper;
+import seng202.group8.data.Data;
+import seng202.group8.datacontroller.DataChange.Type;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Delivers a data controller's change events to its observers using the notification executor
+ * (see {@link DataController#setNotificationExecutor(java.util.concurrent.Executor)}).
+ * <p>
+ * Events raised before the executor gets round to delivering them are merged: only the latest change to each object is
+ * delivered, and global observers due a bulk change are not also sent the single object changes it covers. Objects
+ * given only by ID are fetched from the database once, when their event is delivered. With the default executor,
+ * events are delivered straight away on the calling thread.
+ *
+ * @param <DataType> type of data the controller manages
+ */
+class ObserverDispatcher<DataType extends Data> {
+    private final DataController<DataType> dataController;
+
+    // Guarded by this
+    private final LinkedHashMap<Integer, Event<DataType>> pendingEvents = new LinkedHashMap<>();
+    private Event<DataType> pendingBulkEvent = null;
+    private boolean flushScheduled = false;
+
+    /**
+     * A change waiting to be delivered
+     */
+    private static class Event<DataType extends Data> {
+        private Type type;
+        private DataType data; // Changed object, or null if it must be fetched or there is none
+        private int firstId;
+        private int lastId;
+        private Set<String> changedColumns; // Null if any may have changed
+        private long dataVersion;
+        private boolean globalOnly; // If observers of the single object are not told
+        private final Set<DataObserver<DataType>> except = new HashSet<>(); // Observers not told of the change
+
+        private Event(Type type, DataType data, int firstId, int lastId, Set<String> changedColumns,
+                      boolean globalOnly, DataObserver<DataType> except, long dataVersion) {
+            this.type = type;
+            this.data = data;
+            this.firstId = firstId;
+            this.lastId = lastId;
+            this.changedColumns = changedColumns == null ? null : new HashSet<>(changedColumns);
+            this.globalOnly = globalOnly || type == Type.DELETED;
+            this.dataVersion = dataVersion;
+            if (except != null) {
+                this.except.add(except);
+            }
+        }
+
+        /**
+         * Merges a newer event for the same object into this one. The newer state wins, an insert followed by updates
+         * is still an insert, a delete followed by an insert is an update of every column, and an observer is only
+         * left out if every merged event left it out
+         *
+         * @param newer the newer event
+         */
+        private void mergeSingle(Event<DataType> newer) {
+            if (type == Type.INSERTED && newer.type == Type.UPDATED) {
+                changedColumns = null;
+            } else if (type == Type.DELETED && newer.type == Type.INSERTED) {
+                type = Type.UPDATED; // Observers still hold the deleted object, so it is replaced rather than added
+                changedColumns = null;
+            } else if (type == Type.UPDATED && newer.type == Type.UPDATED && changedColumns != null
+                    && newer.changedColumns != null) {
+                changedColumns.addAll(newer.changedColumns);
+            } else {
+                type = newer.type;
+                changedColumns = newer.changedColumns == null ? null : new HashSet<>(newer.changedColumns);
+            }
+            data = newer.data;
+            globalOnly = (globalOnly && newer.globalOnly) || type == Type.DELETED;
+            mergeCommon(newer);
+        }
+
+        /**
+         * Merges a newer bulk change into this one. Bulk inserts merge into one covering both ranges; anything else
+         * becomes a reload of the whole table
+         *
+         * @param newer the newer bulk change
+         */
+        private void mergeBulk(Event<DataType> newer) {
+            if (type == Type.BULK_INSERTED && newer.type == Type.BULK_INSERTED) {
+                firstId = Math.min(firstId, newer.firstId);
+                lastId = Math.max(lastId, newer.lastId);
+            } else if (type != newer.type) {
+                type = Type.RELOADED;
+                firstId = DataController.OBSERVE_ALL;
+                lastId = DataController.OBSERVE_ALL;
+            }
+            mergeCommon(newer);
+        }
+
+        private void mergeCommon(Event<DataType> newer) {
+            dataVersion = newer.dataVersion;
+            except.retainAll(newer.except);
+        }
+
+        private boolean affects(int id) {
+            return firstId == DataController.OBSERVE_ALL || (id >= firstId && id <= lastId);
+        }
+
+        private DataChange<DataType> toChange(DataType data) {
+            return new DataChange<>(type, data, firstId, lastId, changedColumns, dataVersion);
+        }
+    }
+
+    /**
+     * @param dataController controller whose observers are notified
+     */
+    ObserverDispatcher(DataController<DataType> dataController) {
+        this.dataController = dataController;
+    }
+
+    /**
+     * Queues a change to a single object
+     *
+     * @param type           INSERTED, UPDATED or DELETED
+     * @param id             ID of the object
+     * @param data           the object, or null to fetch it when the change is delivered
+     * @param changedColumns columns that changed, or null if any may have
+     * @param globalOnly     true to only notify global observers
+     * @param except         observer not notified, or null
+     */
+    void changed(Type type, int id, DataType data, Set<String> changedColumns, boolean globalOnly,
+                 DataObserver<DataType> except) {
+        Event<DataType> event = new Event<>(type, data, id, id, changedColumns, globalOnly, except,
+                dataController.getDataVersion());
+        synchronized (this) {
+            Event<DataType> pending = pendingEvents.get(id);
+            if (pending == null) {
+                pendingEvents.put(id, event);
+            } else {
+                pending.mergeSingle(event);
+            }
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * Queues a change that may affect many objects
+     *
+     * @param type    BULK_INSERTED, DELETED or RELOADED
+     * @param firstId smallest ID affected, or OBSERVE_ALL for the whole table
+     * @param lastId  largest ID affected, or OBSERVE_ALL for the whole table
+     * @param except  observer not notified, or null
+     */
+    void bulkChanged(Type type, int firstId, int lastId, DataObserver<DataType> except) {
+        Event<DataType> event = new Event<>(type, null, firstId, lastId, null, true, except,
+                dataController.getDataVersion());
+        synchronized (this) {
+            if (pendingBulkEvent == null) {
+                pendingBulkEvent = event;
+            } else {
+                pendingBulkEvent.mergeBulk(event);
+            }
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * Has the executor deliver the pending events, if it is not already going to
+     */
+    private void scheduleFlush() {
+        synchronized (this) {
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        DataController.getNotificationExecutor().execute(this::flush);
+    }
+
+    /**
+     * Delivers every pending event
+     */
+    private void flush() {
+        Event<DataType> bulkEvent;
+        List<Map.Entry<Integer, Event<DataType>>> events;
+        synchronized (this) {
+            bulkEvent = pendingBulkEvent;
+            events = new ArrayList<>(pendingEvents.entrySet());
+            pendingBulkEvent = null;
+            pendingEvents.clear();
+            flushScheduled = false; // Events raised by the observers below are delivered by a new flush
+        }
+
+        Set<DataObserver<DataType>> globalObservers = dataController.getObservers(DataController.OBSERVE_ALL);
+        if (bulkEvent != null) {
+            DataChange<DataType> change = bulkEvent.toChange(null);
+            for (DataObserver<DataType> observer : globalObservers) {
+                if (!bulkEvent.except.contains(observer)) {
+                    observer.dataChangeEvent(change);
+                }
+            }
+        }
+
+        for (Map.Entry<Integer, Event<DataType>> entry : events) {
+            int id = entry.getKey();
+            Event<DataType> event = entry.getValue();
+            DataType data = event.data;
+            if (event.type != Type.DELETED && data == null) {
+                data = fetch(id);
+                if (data == null) {
+                    continue; // Deleted since, or never existed
+                }
+            }
+            DataChange<DataType> change = event.toChange(data);
+
+            for (DataObserver<DataType> observer : globalObservers) {
+                if (event.except.contains(observer)
+                        || (bulkEvent != null && bulkEvent.affects(id) && !bulkEvent.except.contains(observer))) {
+                    continue; // Left out, or already told of a bulk change covering the object
+                }
+                observer.dataChangeEvent(change);
+            }
+
+            if (!event.globalOnly) {
+                for (DataObserver<DataType> observer : dataController.getObservers(id)) {
+                    // If both globally observing and observing the specific object, don't call it twice
+                    if (!event.except.contains(observer) && !globalObservers.contains(observer)) {
+                        observer.dataChangeEvent(change);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets an object from the database so its change can be delivered
+     *
+     * @param id ID of the object
+     * @return the object, or null if it could not be found
+     */
+    private DataType fetch(int id) {
+        try {
+            return dataController.getEntity(id);
+        } catch (SQLException exception) {
+            AlertHelper.showErrorAlert(exception, "Unable to fetch changed data from the database");
+            return null;
+        }
+    }
+}
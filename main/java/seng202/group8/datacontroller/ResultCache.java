@@ -0,0 +1,197 @@
+package seng202.group8.datacontroller;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Least recently used cache of the pages returned by a data controller's
+ * {@link DataController#getSortedFilteredEntities(String, seng202.group8.io.SortOrder, int, int)}, so flipping back to
+ * a filter combination, sort or page that was seen recently does not query the database again.
+ * <p>
+ * Pages are keyed by the SQL of the query that made them, which holds the filters, sort column, order and page. Each
+ * page is stamped with the data version it was read at; asking for a different version empties the cache, as the
+ * data may have changed since.
+ *
+ * @param <DataType> type of entity cached
+ */
+public class ResultCache<DataType> {
+    /**
+     * Most pages kept in a cache
+     */
+    public static final int CAPACITY = 64;
+
+    private final int estimatedBytesPerRow;
+    private final LinkedHashMap<String, List<DataType>> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<DataType>> eldest) {
+            if (size() > CAPACITY) {
+                cachedRows -= eldest.getValue().size();
+                evictions++;
+                return true;
+            }
+            return false;
+        }
+    };
+    private long version = -1;
+    private int cachedRows = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long invalidations = 0;
+
+    /**
+     * @param estimatedBytesPerRow rough size in memory of one cached entity, used by {@link #getEstimatedBytes()}
+     */
+    public ResultCache(int estimatedBytesPerRow) {
+        this.estimatedBytesPerRow = estimatedBytesPerRow;
+    }
+
+    /**
+     * Gets a cached page
+     *
+     * @param key     SQL of the query
+     * @param version current data version of everything the query reads
+     * @return a copy of the cached page, or null if it is not cached at this version
+     */
+    public synchronized ArrayList<DataType> get(String key, long version) {
+        checkVersion(version);
+        List<DataType> page = pages.get(key);
+        if (page == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return new ArrayList<>(page); // Callers may modify the list they are given
+    }
+
+    /**
+     * Caches a page
+     *
+     * @param key     SQL of the query
+     * @param version data version the page was read at
+     * @param page    entities returned by the query
+     */
+    public synchronized void put(String key, long version, List<DataType> page) {
+        checkVersion(version);
+        List<DataType> old = pages.put(key, new ArrayList<>(page));
+        if (old != null) {
+            cachedRows -= old.size();
+        }
+        cachedRows += page.size();
+    }
+
+    /**
+     * Empties the cache if its pages were read at a different data version
+     *
+     * @param version current data version
+     */
+    private void checkVersion(long version) {
+        if (version != this.version) {
+            if (!pages.isEmpty()) {
+                invalidations++;
+            }
+            clear();
+            this.version = version;
+        }
+    }
+
+    /**
+     * Removes every cached page
+     */
+    public synchronized void clear() {
+        pages.clear();
+        cachedRows = 0;
+    }
+
+    /**
+     * Gets the number of lookups that found their page
+     *
+     * @return number of hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of lookups that had to query the database
+     *
+     * @return number of misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the fraction of lookups that found their page
+     *
+     * @return hit rate from 0 to 1, or 0 if there have been no lookups
+     */
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * Gets the number of pages dropped to make room for newer ones
+     *
+     * @return number of evictions
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Gets the number of times the cache was emptied because the data changed
+     *
+     * @return number of invalidations
+     */
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * Gets the number of pages cached
+     *
+     * @return number of pages
+     */
+    public synchronized int getPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * Gets the number of entities cached, over all pages
+     *
+     * @return number of entities
+     */
+    public synchronized int getRowCount() {
+        return cachedRows;
+    }
+
+    /**
+     * Gets a rough estimate of the memory used by the cached pages. Entities shared with the rest of the program are
+     * counted in full
+     *
+     * @return estimated size in bytes
+     */
+    public synchronized long getEstimatedBytes() {
+        long bytes = 0;
+        for (String key : pages.keySet()) {
+            bytes += 2L * key.length();
+        }
+        return bytes + (long) cachedRows * estimatedBytesPerRow;
+    }
+
+    /**
+     * Gets a one line human-readable summary of the cache's metrics
+     *
+     * @param name name of the cached table
+     * @return the summary
+     */
+    public synchronized String getReport(String name) {
+        return String.format("%s: %.0f%% hit rate (%d hits, %d misses), %d pages, %d rows, ~%d KB, %d evictions, %d invalidations",
+                name, getHitRate() * 100, hits, misses, pages.size(), cachedRows, getEstimatedBytes() / 1024,
+                evictions, invalidations);
+    }
+}
@@ -1,27 +1,42 @@
 package seng202.group8.datacontroller;
 
 import javafx.beans.property.DoubleProperty;
+import org.javatuples.Triplet;
 import seng202.group8.AlertHelper;
 import seng202.group8.data.Airline;
 import seng202.group8.data.Airport;
 import seng202.group8.data.Route;
+import seng202.group8.data.filters.NumericFilter;
+import seng202.group8.data.spatial.DistanceKernel;
 import seng202.group8.io.ConstraintsError;
 import seng202.group8.io.Database;
 import seng202.group8.io.SortOrder;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 
 /**
  * Class responsible for interfacing program with database for Route data
  */
 public class RouteDataController extends DataController<Route> {
+    private static final int BULK_CHUNK_SIZE = 500;
+
+    /**
+     * Routes joined to the name of their airline, which the route filters apply to
+     */
+    public static final String FILTERED_ROUTES_FROM = " FROM Route r LEFT JOIN Airline a ON r.Airline = a.IATA OR r.Airline = a.ICAO";
     private static RouteDataController singleton;
 
     private AirportDataController airportDC;
@@ -38,6 +53,9 @@ public class RouteDataController extends DataController<Route> {
     private PreparedStatement deleteTakeoffTimesStatement = null;
     private PreparedStatement getEntityByIdStatement = null;
     private PreparedStatement getEntityByAirportAirlineTripletStatement = null;
+    private PreparedStatement updateDistanceStatement = null;
+    private PreparedStatement getAirportCoordinatesStatement = null;
+    private final ResultCache<Route> resultCache = new ResultCache<>(400);
 
     /**
      * Gets the singleton instance for the DataController
@@ -70,7 +88,7 @@ public class RouteDataController extends DataController<Route> {
             Database.establishConnection();
 
             tryClose(addToDatabaseStatement);
-            addToDatabaseStatement = Database.databaseConnection.prepareStatement("INSERT INTO Route(Airline, Source, Destination, Equipment, Price, Codeshare, TimeLength) VALUES (UPPER(?), UPPER(?), UPPER(?), ?, ?, ?, ?)", PreparedStatement.RETURN_GENERATED_KEYS);
+            addToDatabaseStatement = Database.databaseConnection.prepareStatement("INSERT INTO Route(Airline, Source, Destination, Equipment, Price, Codeshare, TimeLength, Distance) VALUES (UPPER(?), UPPER(?), UPPER(?), ?, ?, ?, ?, ?)", PreparedStatement.RETURN_GENERATED_KEYS);
 
             tryClose(batchAddToDatabaseStatement);
             batchAddToDatabaseStatement = Database.databaseConnection.prepareStatement("INSERT OR IGNORE INTO Route(Airline, Source, Destination, Equipment, Price, Codeshare, TimeLength) VALUES (UPPER(?), UPPER(?), UPPER(?), ?, ?, ?, ?)", PreparedStatement.RETURN_GENERATED_KEYS);
@@ -93,6 +111,14 @@ public class RouteDataController extends DataController<Route> {
             tryClose(getEntityByAirportAirlineTripletStatement);
             getEntityByAirportAirlineTripletStatement = Database.databaseConnection.prepareStatement("SELECT * FROM Route WHERE Source = ? AND Destination = ? AND Airline = ?");
 
+            tryClose(updateDistanceStatement);
+            updateDistanceStatement = Database.databaseConnection.prepareStatement("UPDATE Route SET Distance = ? WHERE ID = ?");
+
+            tryClose(getAirportCoordinatesStatement);
+            getAirportCoordinatesStatement = Database.databaseConnection.prepareStatement("SELECT s.Latitude, s.Longitude, " +
+                    "d.Latitude, d.Longitude FROM Airport s, Airport d " +
+                    "WHERE (s.ICAO = ? OR s.IATA = ?) AND (d.ICAO = ? OR d.IATA = ?) LIMIT 1");
+
             return true;
         } catch (SQLException exception) {
             AlertHelper.showErrorAlert(exception);
@@ -118,6 +144,7 @@ public class RouteDataController extends DataController<Route> {
     @Override
     protected Route addToDatabase(Route route, boolean returnNew) throws SQLException, ConstraintsError {
         setStatementValues(addToDatabaseStatement, route);
+        setDistanceValue(addToDatabaseStatement, 8, getDistance(route));
 
         try {
             addToDatabaseStatement.executeUpdate();
@@ -214,6 +241,26 @@ public class RouteDataController extends DataController<Route> {
         updateRouteStatement.setInt(8, route.getId());
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Set<String> getChangedColumns(Route before, Route after) {
+        HashSet<String> changedColumns = new HashSet<>();
+        addIfChanged(changedColumns, Route.AIRLINE_CODE, before.getAirlineCode(), after.getAirlineCode());
+        addIfChanged(changedColumns, Route.SOURCE_AIRPORT_CODE, before.getSourceAirportCode(), after.getSourceAirportCode());
+        addIfChanged(changedColumns, Route.DESTINATION_AIRPORT_CODE, before.getDestinationAirportCode(), after.getDestinationAirportCode());
+        addIfChanged(changedColumns, Route.PLANE_TYPES, before.getPlaneTypesRaw(), after.getPlaneTypesRaw());
+        addIfChanged(changedColumns, Route.PRICE, before.getPrice(), after.getPrice());
+        addIfChanged(changedColumns, Route.IS_CODE_SHARE, before.isCodeShare(), after.isCodeShare());
+        addIfChanged(changedColumns, Route.FLIGHT_DURATION, before.getFlightDuration(), after.getFlightDuration());
+        addIfChanged(changedColumns, Route.TAKEOFF_TIMES, before.getTakeoffTimes(), after.getTakeoffTimes());
+        if (changedColumns.contains(Route.SOURCE_AIRPORT_CODE) || changedColumns.contains(Route.DESTINATION_AIRPORT_CODE)) {
+            changedColumns.add(Route.DISTANCE); // Worked out again from the airports
+        }
+        return changedColumns;
+    }
+
     /**
      * Updates an Route object in the database
      *
@@ -230,12 +277,208 @@ public class RouteDataController extends DataController<Route> {
             throw new ConstraintsError(Database.generateUniquenessFailedErrorMessage(e));
         }
 
+        setDistanceValue(updateDistanceStatement, 1, getDistance(route));
+        updateDistanceStatement.setInt(2, route.getId());
+        updateDistanceStatement.executeUpdate();
+
         deleteTakeoffTimesStatement.setInt(1, route.getId());
         deleteTakeoffTimesStatement.executeUpdate();
 
         insertTakeoffTimes(route.getId(), route.getTakeoffTimes());
     }
 
+    /**
+     * Works out the distance between the source and destination airports of a route
+     *
+     * @param route route to get the distance of
+     * @return distance in km, or null if either airport does not exist
+     * @throws SQLException if error from database
+     */
+    private Double getDistance(Route route) throws SQLException {
+        return getDistanceBetweenAirports(route.getSourceAirportCode(), route.getDestinationAirportCode());
+    }
+
+    /**
+     * Works out the distance between two airports, reading both of their coordinates in one query
+     *
+     * @param sourceAirportCode      IATA or ICAO code of the source airport
+     * @param destinationAirportCode IATA or ICAO code of the destination airport
+     * @return distance in km, or null if either airport does not exist
+     * @throws SQLException if error from database
+     */
+    public Double getDistanceBetweenAirports(String sourceAirportCode, String destinationAirportCode) throws SQLException {
+        getAirportCoordinatesStatement.setString(1, sourceAirportCode);
+        getAirportCoordinatesStatement.setString(2, sourceAirportCode);
+        getAirportCoordinatesStatement.setString(3, destinationAirportCode);
+        getAirportCoordinatesStatement.setString(4, destinationAirportCode);
+        try (ResultSet resultSet = getAirportCoordinatesStatement.executeQuery()) {
+            if (!resultSet.next()) {
+                return null;
+            }
+            return Route.getDistanceFromLongLat(resultSet.getDouble(1), resultSet.getDouble(2), resultSet.getDouble(3), resultSet.getDouble(4));
+        }
+    }
+
+    /**
+     * Binds a distance to a prepared statement, which may be null
+     */
+    private static void setDistanceValue(PreparedStatement statement, int index, Double distance) throws SQLException {
+        if (distance == null) {
+            statement.setNull(index, Types.REAL);
+        } else {
+            statement.setDouble(index, distance);
+        }
+    }
+
+    /**
+     * Works out the distance of every route that does not have one, using a single pass over the routes with
+     * trigonometry precomputed per airport. Routes whose source or destination airport does not exist are left as
+     * null. Only uses the given connection, so can be run by a migration on a database not yet in use.
+     * <p>
+     * If the connection is in auto-commit mode, the updates are committed together; otherwise the caller is
+     * responsible for committing them
+     *
+     * @param connection connection to the database to update
+     * @param progress   progress of the updates, between 0 and 1. May be null
+     * @return number of routes updated
+     * @throws SQLException if error from database
+     */
+    public static int fillMissingDistances(Connection connection, DoubleProperty progress) throws SQLException {
+        String sql = "SELECT r.ID, s.ID AS SourceID, d.ID AS DestinationID FROM Route r " +
+                "JOIN Airport s ON (r.Source = s.IATA OR r.Source = s.ICAO) " +
+                "JOIN Airport d ON (r.Destination = d.IATA OR r.Destination = d.ICAO) " +
+                "WHERE r.Distance IS NULL";
+
+        DistanceKernel distanceKernel = DistanceKernel.build(connection);
+        int count = 0;
+        int[] routeIds = new int[BULK_CHUNK_SIZE];
+        int[] sourceIndexes = new int[BULK_CHUNK_SIZE];
+        int[] destinationIndexes = new int[BULK_CHUNK_SIZE];
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            while (resultSet.next()) {
+                if (count == routeIds.length) {
+                    routeIds = Arrays.copyOf(routeIds, count * 2);
+                    sourceIndexes = Arrays.copyOf(sourceIndexes, count * 2);
+                    destinationIndexes = Arrays.copyOf(destinationIndexes, count * 2);
+                }
+                routeIds[count] = resultSet.getInt("ID");
+                sourceIndexes[count] = distanceKernel.getIndex(resultSet.getInt("SourceID"));
+                destinationIndexes[count] = distanceKernel.getIndex(resultSet.getInt("DestinationID"));
+                count++;
+            }
+        }
+
+        double[] distances = new double[count];
+        distanceKernel.distances(sourceIndexes, destinationIndexes, count, distances);
+        writeDistances(connection, routeIds, distances, count, progress);
+        return count;
+    }
+
+    /**
+     * Works out the distance again of every route from or to one of the given airport codes, e.g. after an airport
+     * was added or moved. Only the airports of those routes are read, so saving one airport does not go over every
+     * route. Routes whose other airport does not exist are left as they are
+     *
+     * @param connection connection to the database to update
+     * @param codes      IATA and ICAO codes of the airports; null codes are ignored
+     * @return number of routes updated
+     * @throws SQLException if error from database
+     */
+    public static int updateDistancesOfAirports(Connection connection, String... codes) throws SQLException {
+        String placeholders = String.join(", ", Collections.nCopies(codes.length, "UPPER(?)"));
+        String sql = "SELECT r.ID, s.Latitude AS SourceLatitude, s.Longitude AS SourceLongitude, " +
+                "d.Latitude AS DestinationLatitude, d.Longitude AS DestinationLongitude FROM Route r " +
+                "JOIN Airport s ON (r.Source = s.IATA OR r.Source = s.ICAO) " +
+                "JOIN Airport d ON (r.Destination = d.IATA OR r.Destination = d.ICAO) " +
+                "WHERE r.Source IN (" + placeholders + ") OR r.Destination IN (" + placeholders + ")";
+
+        // Each route gets its own pair of entries in the kernel: 2i for the source and 2i + 1 for the destination
+        int count = 0;
+        int[] routeIds = new int[16];
+        double[] latitudes = new double[32];
+        double[] longitudes = new double[32];
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < codes.length; i++) {
+                statement.setString(i + 1, codes[i]);
+                statement.setString(i + 1 + codes.length, codes[i]);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    if (count == routeIds.length) {
+                        routeIds = Arrays.copyOf(routeIds, count * 2);
+                        latitudes = Arrays.copyOf(latitudes, count * 4);
+                        longitudes = Arrays.copyOf(longitudes, count * 4);
+                    }
+                    routeIds[count] = resultSet.getInt("ID");
+                    latitudes[2 * count] = resultSet.getDouble("SourceLatitude");
+                    longitudes[2 * count] = resultSet.getDouble("SourceLongitude");
+                    latitudes[2 * count + 1] = resultSet.getDouble("DestinationLatitude");
+                    longitudes[2 * count + 1] = resultSet.getDouble("DestinationLongitude");
+                    count++;
+                }
+            }
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        int[] kernelIds = new int[2 * count];
+        int[] sourceIndexes = new int[count];
+        int[] destinationIndexes = new int[count];
+        for (int i = 0; i < count; i++) {
+            kernelIds[2 * i] = 2 * i;
+            kernelIds[2 * i + 1] = 2 * i + 1;
+            sourceIndexes[i] = 2 * i;
+            destinationIndexes[i] = 2 * i + 1;
+        }
+        DistanceKernel distanceKernel = new DistanceKernel(kernelIds, latitudes, longitudes);
+        double[] distances = new double[count];
+        distanceKernel.distances(sourceIndexes, destinationIndexes, count, distances);
+        writeDistances(connection, routeIds, distances, count, null);
+        return count;
+    }
+
+    /**
+     * Sets the distance of routes in batches. If the connection is in auto-commit mode, the updates are committed
+     * together, or all rolled back if one fails; otherwise the caller is responsible for committing them
+     *
+     * @param connection connection to the database to update
+     * @param routeIds   IDs of the routes
+     * @param distances  distance of each route
+     * @param count      number of routes
+     * @param progress   progress of the updates, between 0 and 1. May be null
+     * @throws SQLException if error from database
+     */
+    private static void writeDistances(Connection connection, int[] routeIds, double[] distances, int count,
+                                       DoubleProperty progress) throws SQLException {
+        boolean commitMode = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (PreparedStatement statement = connection.prepareStatement("UPDATE Route SET Distance = ? WHERE ID = ?")) {
+            for (int i = 0; i < count; i++) {
+                statement.setDouble(1, distances[i]);
+                statement.setInt(2, routeIds[i]);
+                statement.addBatch();
+                if ((i + 1) % BULK_CHUNK_SIZE == 0 || i == count - 1) {
+                    statement.executeBatch();
+                    if (progress != null) {
+                        progress.set((i + 1.0) / count);
+                    }
+                }
+            }
+            if (commitMode) {
+                connection.commit();
+            }
+        } catch (SQLException e) {
+            if (commitMode) {
+                connection.rollback();
+            }
+            throw e;
+        } finally {
+            connection.setAutoCommit(commitMode);
+        }
+    }
+
     /**
      * Adds generated route stats to a batch to be executed later
      *
@@ -261,26 +504,34 @@ public class RouteDataController extends DataController<Route> {
     }
 
     /**
-     * Commit the batches that contain the updated stats for routes
+     * Commit the batches that contain the updated stats for routes, if there are any. The data version is incremented
+     * so that results cached before they were written are not used
      *
      * @throws SQLException If an error occurs with the database or is a database constraint is violated
      */
     private void commitUpdateWithGeneratedStats() throws SQLException {
+        if (updateRouteStatementSize == 0 && addTakeoffTimesToDatabaseStatementSize == 0) {
+            return;
+        }
         boolean commitMode = Database.databaseConnection.getAutoCommit();
         Database.databaseConnection.setAutoCommit(false);
-        if (updateRouteStatementSize != 0) {
-            updateRouteStatement.executeBatch();
-            updateRouteStatement.clearBatch();
-            updateRouteStatementSize = 0;
-        }
-        if (addTakeoffTimesToDatabaseStatementSize != 0) {
-            addTakeoffTimesToDatabaseStatement.executeBatch();
-            addTakeoffTimesToDatabaseStatement.clearBatch();
-            addTakeoffTimesToDatabaseStatementSize = 0;
-        }
+        try {
+            if (updateRouteStatementSize != 0) {
+                updateRouteStatement.executeBatch();
+                updateRouteStatement.clearBatch();
+                updateRouteStatementSize = 0;
+            }
+            if (addTakeoffTimesToDatabaseStatementSize != 0) {
+                addTakeoffTimesToDatabaseStatement.executeBatch();
+                addTakeoffTimesToDatabaseStatement.clearBatch();
+                addTakeoffTimesToDatabaseStatementSize = 0;
+            }
 
-        Database.databaseConnection.commit();
-        Database.databaseConnection.setAutoCommit(commitMode);
+            Database.databaseConnection.commit();
+            Database.databaseConnection.setAutoCommit(commitMode);
+        } finally {
+            incrementDataVersion(); // Even a failed batch may have changed some rows
+        }
     }
 
     /**
@@ -329,32 +580,92 @@ public class RouteDataController extends DataController<Route> {
         }
 
         int time = resultSet.getInt("TimeLength");
+        double distance = resultSet.getDouble(Route.DISTANCE);
+        boolean distanceUnknown = resultSet.wasNull();
         List<Integer> takeoffTimes = getTakeoffTimes ? getTakeoffTimes(id) : new ArrayList<>();
-        return new Route(id, airline, source, destination, equipment, price, codeshare, time, takeoffTimes);
+        Route route = new Route(id, airline, source, destination, equipment, price, codeshare, time, takeoffTimes);
+        route.setDistance(distanceUnknown ? null : distance);
+        return route;
     }
 
     /**
-     * @param sortColumn The column to sort by
-     * @param order      The order (eg ascending, descending) to sort by
-     * @param numRows    Maximum numbers of rows to return
-     * @param offset     Offset for the rows being returned (e.g. numRows=50, offset=50 means it gets the 50-99th rows for the given sort order)
-     * @return Filtered list of routes
+     * Generates the WHERE clause for the route filters, for use after {@link #FILTERED_ROUTES_FROM}
+     *
+     * @param filters filters to apply, or null
+     * @return WHERE clause starting with a space, or an empty string if nothing is filtered
+     */
+    public static String generateFilterWhereClause(FiltersController filters) {
+        if (filters == null) {
+            return "";
+        }
+        String airline = Database.generateTextualFilterSQLText("Name", filters.getAirlineNameFilter());
+        String source = Database.generateTextualFilterSQLText(Route.SOURCE_AIRPORT_CODE, filters.getStartFilter());
+        String dest = Database.generateTextualFilterSQLText(Route.DESTINATION_AIRPORT_CODE, filters.getDestinationFilter());
+        String price = Database.generateFilterRangeSQLTextForInt(Route.PRICE, filters.getPriceFilter().getBounds());
+        String duration = Database.generateFilterRangeSQLTextForInt(Route.FLIGHT_DURATION, filters.getDurationFilter().getBounds());
+        // Routes with an unknown airport have no distance; only hide them once the distance filter is narrowed
+        NumericFilter distanceFilter = filters.getDistanceFilter();
+        String distance = distanceFilter.isFullRange() ? null : Database.generateFilterRangeSQLTextForInt(Route.DISTANCE, distanceFilter.getBounds());
+        return Database.mergeSQLWhereClauses(airline, source, dest, price, duration, distance);
+    }
+
+    /**
+     * Gets the IDs of every route matching a filter. Takes the connection to use, so it can be called off the JavaFX
+     * thread
+     *
+     * @param connection  connection to the database
+     * @param whereClause clause from {@link #generateFilterWhereClause(FiltersController)}
+     * @return route IDs in ascending order
      * @throws SQLException if error from database
      */
-    public ArrayList<Route> getSortedFilteredEntities(String sortColumn, SortOrder order, int numRows, int offset) throws SQLException {
-        Database.establishConnection();
-        String SQLQuery = "SELECT r.*, a.Name FROM Route r LEFT JOIN (SELECT Name, IATA, ICAO FROM Airline) a ON r.Airline = a.IATA OR r.Airline = a.ICAO";
+    public static int[] getFilteredRouteIds(Connection connection, String whereClause) throws SQLException {
+        int[] ids = new int[1024];
+        int count = 0;
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT r.ID" + FILTERED_ROUTES_FROM + whereClause + " ORDER BY r.ID")) {
+            while (resultSet.next()) {
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, count * 2);
+                }
+                ids[count++] = resultSet.getInt(1);
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected String getFilteredQuery() {
+        return "SELECT r.ID, a.Name" + FILTERED_ROUTES_FROM + generateFilterWhereClause(FiltersController.getSingleton());
+    }
 
-        FiltersController filters = FiltersController.getSingleton();
+    /**
+     * Gets the cache of the pages returned by getSortedFilteredEntities, e.g. to show its hit rate
+     *
+     * @return the result cache
+     */
+    public ResultCache<Route> getResultCache() {
+        return resultCache;
+    }
 
-        if (filters != null) {
-            String airline = Database.generateTextualFilterSQLText("Name", filters.getAirlineNameFilter());
-            String source = Database.generateTextualFilterSQLText(Route.SOURCE_AIRPORT_CODE, filters.getStartFilter());
-            String dest = Database.generateTextualFilterSQLText(Route.DESTINATION_AIRPORT_CODE, filters.getDestinationFilter());
-            String price = Database.generateFilterRangeSQLTextForInt(Route.PRICE, filters.getPriceFilter().getBounds());
-            String duration = Database.generateFilterRangeSQLTextForInt(Route.FLIGHT_DURATION, filters.getDurationFilter().getBounds());
-            SQLQuery += Database.mergeSQLWhereClauses(airline, source, dest, price, duration);
-        }
+    /**
+     * {@inheritDoc} Routes are listed with their airline's name, and their distances change when an airport is moved, so
+     * airlines and airports are read too
+     */
+    @Override
+    protected long getResultVersion() {
+        return getDataVersion() + AirlineDataController.getSingleton().getDataVersion()
+                + AirportDataController.getSingleton().getDataVersion();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getSortedFilteredQuery(String sortColumn, SortOrder order) {
+        String SQLQuery = "SELECT r.*, a.Name" + FILTERED_ROUTES_FROM + generateFilterWhereClause(FiltersController.getSingleton());
 
         if (sortColumn != null && order != null) {
             if (sortColumn.equals("Duration")) {
@@ -364,25 +675,68 @@ public class RouteDataController extends DataController<Route> {
             }
 
         }
+        return SQLQuery;
+    }
 
-        SQLQuery += String.format(" LIMIT %d OFFSET %d", numRows, offset);
+    /**
+     * @param sortColumn The column to sort by
+     * @param order      The order (eg ascending, descending) to sort by
+     * @param numRows    Maximum numbers of rows to return
+     * @param offset     Offset for the rows being returned (e.g. numRows=50, offset=50 means it gets the 50-99th rows for the given sort order)
+     * @return Filtered list of routes
+     * @throws SQLException if error from database
+     */
+    public ArrayList<Route> getSortedFilteredEntities(String sortColumn, SortOrder order, int numRows, int offset) throws SQLException {
+        String SQLQuery = getSortedFilteredQuery(sortColumn, order) + String.format(" LIMIT %d OFFSET %d", numRows, offset);
 
         if (SQLQuery.contains(";")) {
             return null;
         }
 
-        ArrayList<Route> routes = new ArrayList<>();
+        // Write any queued stats first, so a page cached before them is not used
+        Database.establishConnection();
+        commitUpdateWithGeneratedStats();
+        long version = getResultVersion();
+        ArrayList<Route> routes = resultCache.get(SQLQuery, version);
+        if (routes != null) {
+            return routes;
+        }
 
-        try (PreparedStatement statement = Database.databaseConnection.prepareStatement(SQLQuery)) {
+        routes = readRoutes(Database.databaseConnection, SQLQuery);
+        resultCache.put(SQLQuery, version, routes);
+        return routes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Route> readSortedFilteredPage(String sortedFilteredQuery, int numRows, int offset) throws SQLException {
+        String SQLQuery = sortedFilteredQuery + String.format(" LIMIT %d OFFSET %d", numRows, offset);
+        if (SQLQuery.contains(";")) {
+            return null;
+        }
+        return readRoutes(Database.getReadConnection(), SQLQuery);
+    }
+
+    /**
+     * Reads routes from the database. Only reads, so can be called off the JavaFX thread with a read connection
+     *
+     * @param connection connection to read through
+     * @param SQLQuery   query selecting them
+     * @return the routes
+     * @throws SQLException if error from database
+     */
+    private ArrayList<Route> readRoutes(Connection connection, String SQLQuery) throws SQLException {
+        ArrayList<Route> routes = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(SQLQuery)) {
             try (ResultSet resultSet = statement.executeQuery()) {
                 while (resultSet.next()) {
                     routes.add(makeRoute(resultSet, false));
                 }
             }
         }
-
-        commitUpdateWithGeneratedStats();
-        batchGetTakeoffTimes(routes); // makeRoute doesn't get takeoff times; way too slow
+        batchGetTakeoffTimes(connection, routes); // makeRoute doesn't get takeoff times; way too slow
         return routes;
     }
 
@@ -416,12 +770,23 @@ public class RouteDataController extends DataController<Route> {
      * @throws SQLException if error from database
      */
     public void batchGetTakeoffTimes(List<Route> routes) throws SQLException {
+        Database.establishConnection();
+        batchGetTakeoffTimes(Database.databaseConnection, routes);
+    }
+
+    /**
+     * Gets all the takeoff times for the given routes through the given connection, clearing the current times and
+     * setting them. If an error occurs while setting the takeoff time, it will fail silently
+     *
+     * @param connection connection to read through
+     * @param routes     list of routes ID of the route
+     * @throws SQLException if error from database
+     */
+    private static void batchGetTakeoffTimes(Connection connection, List<Route> routes) throws SQLException {
         if (routes.size() == 0) {
             return; // No routes, no takeoff times needed
         }
 
-        Database.establishConnection();
-
         String sql = "SELECT * FROM TakeoffTimes";
         // this becomes expanded to SELECT * FROM TakeoffTimes WHERE Route IN (routeId1, routeId2, ...)
 
@@ -435,7 +800,7 @@ public class RouteDataController extends DataController<Route> {
 
         sql += Database.mergeSQLWhereClauses(Database.generateIdFilterSQLText("Route", ids));
 
-        try (Statement statement = Database.databaseConnection.createStatement()) {
+        try (Statement statement = connection.createStatement()) {
             try (ResultSet resultSet = statement.executeQuery(sql)) {
                 while (resultSet.next()) {
                     // Find the route the takeoff time belongs to, and add it to the array
@@ -504,6 +869,50 @@ public class RouteDataController extends DataController<Route> {
         return null;
     }
 
+    /**
+     * Gets many routes at once from the combination of their source and destination airport codes and airline code.
+     * Takeoff times are not loaded
+     *
+     * @param triplets source airport, destination airport and airline code of each route
+     * @return the routes that exist, in no particular order
+     * @throws SQLException error connecting to database, or some similar unrecoverable error
+     */
+    public List<Route> getEntities(List<Triplet<String, String, String>> triplets) throws SQLException {
+        return getEntities(Database.databaseConnection, triplets);
+    }
+
+    /**
+     * Gets many routes at once through the given connection. Takeoff times are not loaded. Uses its own statements, so
+     * it can be called off the JavaFX thread with {@link Database#getReadConnection()}
+     *
+     * @param connection connection to read through
+     * @param triplets   source airport, destination airport and airline code of each route
+     * @return the routes that exist, in no particular order
+     * @throws SQLException error connecting to database, or some similar unrecoverable error
+     */
+    public List<Route> getEntities(Connection connection, List<Triplet<String, String, String>> triplets) throws SQLException {
+        List<Route> routes = new ArrayList<>();
+        for (int start = 0; start < triplets.size(); start += BULK_CHUNK_SIZE / 3) {
+            List<Triplet<String, String, String>> chunk = triplets.subList(start, Math.min(triplets.size(), start + BULK_CHUNK_SIZE / 3));
+            String query = "SELECT * FROM Route WHERE " +
+                    String.join(" OR ", Collections.nCopies(chunk.size(), "(Source = ? AND Destination = ? AND Airline = ?)"));
+            try (PreparedStatement statement = connection.prepareStatement(query)) {
+                int index = 1;
+                for (Triplet<String, String, String> triplet : chunk) {
+                    statement.setString(index++, triplet.getValue0());
+                    statement.setString(index++, triplet.getValue1());
+                    statement.setString(index++, triplet.getValue2());
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        routes.add(makeRoute(resultSet, false));
+                    }
+                }
+            }
+        }
+        return routes;
+    }
+
     /**
      * Checks that a route is allowed: airline/airports exist, source and destination airports not equal
      *
@@ -557,7 +966,7 @@ public class RouteDataController extends DataController<Route> {
      * @throws SQLException if database error occurs while retreiving, saving or commiting changes
      */
     public void autoGenerateValuesForAllRoutesWithPriceZero(DoubleProperty progress) throws SQLException {
-        String sql = "SELECT Route.*, Source.Latitude srcLat, Source.Longitude srcLng, Destination.Latitude dstLat, Destination.Longitude dstLng FROM Route\n" +
+        String sql = "SELECT Route.*, Source.ID srcId, Destination.ID dstId FROM Route\n" +
                 "JOIN Airport Source ON Route.Source = Source.IATA OR Route.Source = Source.ICAO\n" +
                 "JOIN Airport Destination ON Route.Destination = Destination.IATA OR Route.Destination = Destination.ICAO\n" +
                 "WHERE Route.Price = 0;";
@@ -577,47 +986,63 @@ public class RouteDataController extends DataController<Route> {
             }
         }
 
+        // Distances are worked out a chunk of routes at a time, using trig precomputed once per airport
+        DistanceKernel distanceKernel = DistanceKernel.build(Database.databaseConnection);
+        int[] ids = new int[BULK_CHUNK_SIZE];
+        String[] airlines = new String[BULK_CHUNK_SIZE];
+        String[] sources = new String[BULK_CHUNK_SIZE];
+        String[] destinations = new String[BULK_CHUNK_SIZE];
+        String[] equipment = new String[BULK_CHUNK_SIZE];
+        char[] codeshares = new char[BULK_CHUNK_SIZE];
+        int[] sourceIndexes = new int[BULK_CHUNK_SIZE];
+        int[] destinationIndexes = new int[BULK_CHUNK_SIZE];
+        double[] distances = new double[BULK_CHUNK_SIZE];
 
         try (Statement statement = Database.databaseConnection.createStatement()) {
             try (ResultSet resultSet = statement.executeQuery(sql)) {
-                while (resultSet.next()) {
-                    int id = resultSet.getInt("ID");
-                    String airline = resultSet.getString("Airline");
-                    String source = resultSet.getString("Source");
-                    String destination = resultSet.getString("Destination");
-                    String equipment = resultSet.getString("Equipment");
-
-                    // Ensure codeshare is 'N' if NULL in database
-                    char codeshare = 'N';
-                    if (resultSet.getString("Codeshare") != null) {
-                        codeshare = resultSet.getString("Codeshare").charAt(0);
+                boolean hasNext = resultSet.next();
+                while (hasNext) {
+                    int chunkSize = 0;
+                    while (hasNext && chunkSize < BULK_CHUNK_SIZE) {
+                        ids[chunkSize] = resultSet.getInt("ID");
+                        airlines[chunkSize] = resultSet.getString("Airline");
+                        sources[chunkSize] = resultSet.getString("Source");
+                        destinations[chunkSize] = resultSet.getString("Destination");
+                        equipment[chunkSize] = resultSet.getString("Equipment");
+
+                        // Ensure codeshare is 'N' if NULL in database
+                        codeshares[chunkSize] = 'N';
+                        if (resultSet.getString("Codeshare") != null) {
+                            codeshares[chunkSize] = resultSet.getString("Codeshare").charAt(0);
+                        }
+
+                        sourceIndexes[chunkSize] = distanceKernel.getIndex(resultSet.getInt("srcId"));
+                        destinationIndexes[chunkSize] = distanceKernel.getIndex(resultSet.getInt("dstId"));
+                        chunkSize++;
+                        hasNext = resultSet.next();
                     }
 
-                    double srcLat = resultSet.getDouble("srcLat");
-                    double srcLng = resultSet.getDouble("srcLng");
-                    double dstLat = resultSet.getDouble("dstLat");
-                    double dstLng = resultSet.getDouble("dstLng");
-
-
-                    double distance = Route.getDistanceFromLongLat(srcLat, srcLng, dstLat, dstLng);
-                    int duration = 0;
-                    int price = 0;
-                    ArrayList<Integer> takeoffTimes = new ArrayList<>();
-                    if (distance > 0.1) {
-                        // Division by zero could happen
-                        duration = Route.generateFlightDuration(distance, Route.PLANE_SPEED);
-                        price = Route.generatePrice(Route.TIME_TO_COST, duration);
-                        takeoffTimes = Route.generateTakeoffTimes(duration);
+                    distanceKernel.distances(sourceIndexes, destinationIndexes, chunkSize, distances);
+
+                    for (int i = 0; i < chunkSize; i++) {
+                        double distance = distances[i];
+                        int duration = 0;
+                        int price = 0;
+                        ArrayList<Integer> takeoffTimes = new ArrayList<>();
+                        if (distance > 0.1) {
+                            // Division by zero could happen
+                            duration = Route.generateFlightDuration(distance, Route.PLANE_SPEED);
+                            price = Route.generatePrice(Route.TIME_TO_COST, duration);
+                            takeoffTimes = Route.generateTakeoffTimes(duration);
+                        }
+
+                        Route route = new Route(ids[i], airlines[i], sources[i], destinations[i], equipment[i], price, codeshares[i], duration, takeoffTimes);
+                        updateWithGeneratedStats(route);
                     }
-
-                    Route route = new Route(id, airline, source, destination, equipment, price, codeshare, duration, takeoffTimes);
-                    updateWithGeneratedStats(route);
-                    updateNum ++;
-                    // Don't want to update the progress bar too often
+                    updateNum += chunkSize;
+                    // Don't want to update the progress bar too often, so only once per chunk
                     if (progress != null)
-                        if (updateNum % 500 == 0)
-                            progress.set(0.5 + ((updateNum / (double)numberOfRows)) * 0.4);
-
+                        progress.set(0.5 + ((updateNum / (double)numberOfRows)) * 0.4);
                 }
 
                 // This represents the final 10% of the progress bar
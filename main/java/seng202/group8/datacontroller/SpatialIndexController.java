@@ -0,0 +1,157 @@
+package seng202.group8.datacontroller;
+
+import seng202.group8.data.Airport;
+import seng202.group8.data.spatial.AirportSpatialIndex;
+import seng202.group8.io.Database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps an {@link AirportSpatialIndex} of every airport in sync with the database.
+ * <p>
+ * Like the flight network, the index is built the first time it is needed. Saved airports are queued and moved in
+ * the index all at once the next time it is needed, so saving many airports only rebuilds the tree once. Deletions,
+ * bulk imports and switching databases discard the index to be rebuilt later.
+ */
+public class SpatialIndexController {
+    private static SpatialIndexController singleton;
+
+    private AirportSpatialIndex index = null;
+    private final Map<Integer, double[]> savedAirports = new LinkedHashMap<>(); // Latitude and longitude by airport ID, not yet moved in the index
+    private long changes = 0; // Incremented whenever the index is changed or discarded
+
+    private final DataObserver<Airport> airportObserver = this::airportChanged;
+
+    /**
+     * Gets the singleton instance for the SpatialIndexController
+     *
+     * @return the singleton instance
+     */
+    public static SpatialIndexController getSingleton() {
+        if (singleton == null) {
+            singleton = new SpatialIndexController();
+        }
+
+        return singleton;
+    }
+
+    /**
+     * Initializer for the spatial index controller; subscribes to airport changes
+     */
+    protected SpatialIndexController() {
+        AirportDataController.getSingleton().addObserver(DataController.OBSERVE_ALL, airportObserver);
+    }
+
+    /**
+     * Gets the spatial index for the current database, building it if it is out of date
+     *
+     * @return the index. It is never modified, so it can be kept and read while the database changes
+     * @throws SQLException if error from database while building the index
+     */
+    public AirportSpatialIndex getIndex() throws SQLException {
+        Database.establishConnection();
+        return getIndex(Database.databaseConnection);
+    }
+
+    /**
+     * Gets the spatial index for the current database, building it through the given connection if it is out of
+     * date. Off the JavaFX thread, pass {@link Database#getReadConnection()}. The lock is not held while it is built,
+     * so the observer that updates it is never held up
+     *
+     * @param connection connection to build the index through
+     * @return the index. It is never modified, so it can be kept and read while the database changes
+     * @throws SQLException if error from database while building the index
+     */
+    public AirportSpatialIndex getIndex(Connection connection) throws SQLException {
+        long buildChanges;
+        synchronized (this) {
+            AirportSpatialIndex built = getBuiltIndex();
+            if (built != null) {
+                return built;
+            }
+            buildChanges = changes;
+        }
+        AirportSpatialIndex built = AirportSpatialIndex.build(connection);
+        synchronized (this) {
+            if (index == null && changes == buildChanges) {
+                index = built; // Not kept if an airport changed while it was built, as it may have missed it
+            }
+        }
+        return built;
+    }
+
+    /**
+     * Gets the index if it has been built, moving any airports saved since, without building it
+     *
+     * @return the index, or null if it needs to be built
+     */
+    public synchronized AirportSpatialIndex getBuiltIndex() {
+        if (index != null && !savedAirports.isEmpty()) {
+            int[] ids = new int[savedAirports.size()];
+            double[] latitudes = new double[ids.length];
+            double[] longitudes = new double[ids.length];
+            int i = 0;
+            for (Map.Entry<Integer, double[]> airport : savedAirports.entrySet()) {
+                ids[i] = airport.getKey();
+                latitudes[i] = airport.getValue()[0];
+                longitudes[i] = airport.getValue()[1];
+                i++;
+            }
+            index = index.withAirports(ids, latitudes, longitudes);
+            savedAirports.clear();
+        }
+        return index;
+    }
+
+    /**
+     * Finds the airports closest to the given airport, not including itself
+     *
+     * @param airport airport to search around; must be in the database
+     * @param count   maximum number of airports to return
+     * @return up to `count` airports, closest first
+     * @throws SQLException if error from database
+     */
+    public List<Airport> findNearbyAirports(Airport airport, int count) throws SQLException {
+        List<Airport> nearby = new ArrayList<>(count);
+        for (AirportSpatialIndex.Neighbour neighbour : getIndex().findNearest(airport.getLatitude(), airport.getLongitude(), count + 1)) {
+            if (neighbour.getAirportId() != airport.getId() && nearby.size() < count) {
+                Airport found = AirportDataController.getSingleton().getEntity(neighbour.getAirportId());
+                if (found != null) {
+                    nearby.add(found);
+                }
+            }
+        }
+        return nearby;
+    }
+
+    /**
+     * Discards the current index so that it is rebuilt from the database the next time it is needed
+     */
+    public synchronized void invalidate() {
+        index = null;
+        savedAirports.clear();
+        changes++;
+    }
+
+    /**
+     * Queues a saved airport to be moved or added in the index. Deletions and bulk changes carry no airport, so
+     * discard the index
+     *
+     * @param change what changed
+     */
+    private synchronized void airportChanged(DataChange<Airport> change) {
+        Airport airport = change.getData();
+        changes++;
+        if (airport == null) {
+            index = null;
+            savedAirports.clear();
+        } else if (index != null) {
+            savedAirports.put(airport.getId(), new double[]{airport.getLatitude(), airport.getLongitude()});
+        }
+    }
+}
@@ -2,13 +2,19 @@ package seng202.group8.datacontroller;
 
 import seng202.group8.AlertHelper;
 import seng202.group8.data.Airport;
+import seng202.group8.data.Data;
+import seng202.group8.data.DateTimeHelpers;
 import seng202.group8.data.Route;
 import seng202.group8.data.Trip;
 import seng202.group8.data.TripFlight;
+import seng202.group8.data.network.FlightNetwork;
+import seng202.group8.data.network.ItinerarySearch;
+import seng202.group8.data.spatial.AirportSpatialIndex;
 import seng202.group8.io.ConstraintsError;
 import seng202.group8.io.Database;
 import seng202.group8.io.SortOrder;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -20,6 +26,10 @@ import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Class responsible for interfacing program with database for Trip data
@@ -50,6 +60,23 @@ public class TripDataController extends DataController<Trip> {
     private PreparedStatement getEntityByIdStatement = null;
     private PreparedStatement getEntityByNameStatement = null;
     private PreparedStatement getAllTripNamesStatement = null;
+    private ItinerarySearch itinerarySearch = null;
+
+    /**
+     * Rough driving speed used to estimate if a traveller could get between airports by ground, in km/h
+     */
+    public static final int GROUND_TRANSFER_SPEED = 100;
+    /**
+     * Maximum number of alternative airports suggested in a sanity check warning
+     */
+    public static final int MAX_GROUND_TRANSFER_ALTERNATIVES = 3;
+
+    // The flight network and spatial index used by the sanity check are built on this thread, off the JavaFX thread
+    private static final ExecutorService SANITY_CHECK_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Trip sanity check");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     /**
      * Gets the singleton instance for the DataController
@@ -415,9 +442,34 @@ public class TripDataController extends DataController<Trip> {
         }
     }
 
+    /**
+     * Builds the flight network and spatial index used by {@link #tripSanityCheck(Trip)} on a background thread if
+     * they are out of date, so the check itself does not have to. If they are up to date, nothing is done
+     *
+     * @return future completing once they are built, or completing exceptionally with a {@link CompletionException}
+     * wrapping the SQLException if there was a database error
+     */
+    public CompletableFuture<Void> prepareSanityCheckAsync() {
+        if (NetworkController.getSingleton().getBuiltNetwork() != null && SpatialIndexController.getSingleton().getBuiltIndex() != null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> {
+            try {
+                Connection connection = Database.getReadConnection();
+                NetworkController.getSingleton().getNetwork(connection);
+                SpatialIndexController.getSingleton().getIndex(connection);
+            } catch (SQLException exception) {
+                throw new CompletionException(exception);
+            }
+        }, SANITY_CHECK_EXECUTOR);
+    }
+
     /**
      * Checks if a trip would be possible/probable, with errors such as takeoff before landing, route not existing, and warnings such as landing at one airport but having another flight a few hours later from an airport a thousand kilometers away.
      *
+     * The flight network and spatial index are built if they are out of date; on the JavaFX thread, wait for
+     * {@link #prepareSanityCheckAsync()} first.
+     *
      * @param trip trip object with all the flights in sorted order
      * @return list of WarningErrors, with indexes correlating to the flight. If null, there was no issue for the flight
      * @throws SQLException if error from database
@@ -504,7 +556,7 @@ public class TripDataController extends DataController<Trip> {
                         layoverTime.minusHours(24).isNegative()) {
                     // If distance between airports is large compared with time, could be a missing flight
                     // If time between flights more than a day or so, it's probably fine
-                    int hoursByCar = (int) Math.floor(distanceBetweenPreviousDestinationAndCurrentSource / 100);
+                    int hoursByCar = (int) Math.floor(distanceBetweenPreviousDestinationAndCurrentSource / GROUND_TRANSFER_SPEED);
                     // Reasonable estimate at how long it would take to drive
                     if (layoverTime.minusHours(hoursByCar).isNegative()) {
                         message = String.format("No connecting flight between %s and %s, which are %d km away",
@@ -512,6 +564,14 @@ public class TripDataController extends DataController<Trip> {
                                 sourceAirportName,
                                 distanceBetweenPreviousDestinationAndCurrentSource.intValue()
                         );
+                        List<String> alternatives = findGroundTransferAlternatives(previousDestinationAirport, destinationAirport, layoverTime);
+                        if (!alternatives.isEmpty()) {
+                            message += String.format(". Airports within driving distance of %s with flights to %s: %s",
+                                    previousDestinationAirport.getName(),
+                                    destinationAirportName,
+                                    String.join(", ", alternatives)
+                            );
+                        }
                     }
                 }
             }
@@ -529,6 +589,44 @@ public class TripDataController extends DataController<Trip> {
         return errors;
     }
 
+    /**
+     * Finds airports that could be driven to from where the traveller lands in the time they have, which have a route
+     * to where they want to go next
+     *
+     * @param landedAt    airport the traveller is at
+     * @param destination airport the traveller is trying to get to
+     * @param available   time before the next flight
+     * @return up to {@link #MAX_GROUND_TRANSFER_ALTERNATIVES} airport codes and their distances, closest first
+     * @throws SQLException if error from database
+     */
+    private List<String> findGroundTransferAlternatives(Airport landedAt, Airport destination, Duration available) throws SQLException {
+        FlightNetwork network = NetworkController.getSingleton().getNetwork();
+        int destinationIndex = network.getAirportIndexById(destination.getId());
+        double radius = available.toMinutes() / 60.0 * GROUND_TRANSFER_SPEED;
+
+        List<String> alternatives = new ArrayList<>();
+        if (destinationIndex == -1) {
+            return alternatives;
+        }
+        for (AirportSpatialIndex.Neighbour neighbour : SpatialIndexController.getSingleton().getIndex()
+                .findWithinRadius(landedAt.getLatitude(), landedAt.getLongitude(), radius)) {
+            int airport = network.getAirportIndexById(neighbour.getAirportId());
+            if (airport == -1 || neighbour.getAirportId() == landedAt.getId()) {
+                continue;
+            }
+            for (int e = network.getFirstEdge(airport); e < network.getEdgeEnd(airport); e++) {
+                if (network.getEdgeTarget(e) == destinationIndex) {
+                    alternatives.add(String.format("%s (%d km)", network.getAirportCode(airport), Math.round(neighbour.getDistance())));
+                    break;
+                }
+            }
+            if (alternatives.size() == MAX_GROUND_TRANSFER_ALTERNATIVES) {
+                break;
+            }
+        }
+        return alternatives;
+    }
+
     /**
      * Takes a TripFlight object and returns the landing time of that flight in UTC.
      *
@@ -560,6 +658,91 @@ public class TripDataController extends DataController<Trip> {
     }
 
 
+    /**
+     * Gets the itinerary search for the current flight network, only making a new one if the network has changed
+     *
+     * @return itinerary search
+     * @throws SQLException if error from database while building the network
+     */
+    private synchronized ItinerarySearch getItinerarySearch() throws SQLException {
+        FlightNetwork network = NetworkController.getSingleton().getNetwork();
+        if (itinerarySearch == null || itinerarySearch.getNetwork() != network) {
+            itinerarySearch = new ItinerarySearch(network);
+        }
+        return itinerarySearch;
+    }
+
+    /**
+     * Finds the sequence of flights that gets from the origin to the destination as early as possible
+     *
+     * @param originCode      IATA/ICAO code of the airport to start from
+     * @param destinationCode IATA/ICAO code of the airport to get to
+     * @param departure       earliest time the first flight can take off
+     * @return list of flights in order, which are not in the database, or null if either airport is not in the
+     * database or there is no way to get to the destination
+     * @throws SQLException if error from database
+     */
+    public List<TripFlight> findEarliestArrivalItinerary(String originCode, String destinationCode, ZonedDateTime departure) throws SQLException {
+        return findItinerary(originCode, destinationCode, departure, false);
+    }
+
+    /**
+     * Finds the sequence of flights from the origin to the destination with the lowest total price. If there are
+     * several, the one that arrives earliest is used
+     *
+     * @param originCode      IATA/ICAO code of the airport to start from
+     * @param destinationCode IATA/ICAO code of the airport to get to
+     * @param departure       earliest time the first flight can take off
+     * @return list of flights in order, which are not in the database, or null if either airport is not in the
+     * database or there is no way to get to the destination
+     * @throws SQLException if error from database
+     */
+    public List<TripFlight> findCheapestItinerary(String originCode, String destinationCode, ZonedDateTime departure) throws SQLException {
+        return findItinerary(originCode, destinationCode, departure, true);
+    }
+
+    /**
+     * Runs an itinerary search and converts the result to trip flights
+     *
+     * @param originCode      IATA/ICAO code of the airport to start from
+     * @param destinationCode IATA/ICAO code of the airport to get to
+     * @param departure       earliest time the first flight can take off
+     * @param cheapest        if true, minimizes price instead of arrival time
+     * @return list of flights, or null if there is no itinerary
+     * @throws SQLException if error from database
+     */
+    private List<TripFlight> findItinerary(String originCode, String destinationCode, ZonedDateTime departure, boolean cheapest) throws SQLException {
+        ItinerarySearch search = getItinerarySearch();
+        int origin = search.getNetwork().getAirportIndex(originCode);
+        int destination = search.getNetwork().getAirportIndex(destinationCode);
+        if (origin == -1 || destination == -1) {
+            return null;
+        }
+
+        long departureMinute = DateTimeHelpers.toEpochMinute(departure);
+        ItinerarySearch.Itinerary itinerary = cheapest ?
+                search.findCheapest(origin, destination, departureMinute) :
+                search.findEarliestArrival(origin, destination, departureMinute);
+        if (itinerary == null) {
+            return null;
+        }
+
+        List<TripFlight> flights = new ArrayList<>(itinerary.getLegCount());
+        for (int leg = 0; leg < itinerary.getLegCount(); leg++) {
+            // The network doesn't keep the codes the route was saved with, and flights must use the same codes
+            // for the route to be found again
+            Route route = RouteDataController.getSingleton().getEntity(itinerary.getRouteId(leg));
+            if (route == null) {
+                return null; // Deleted since the network was built
+            }
+            long takeoff = itinerary.getTakeoffMinute(leg);
+            flights.add(new TripFlight(Data.UNKNOWN_ID, route.getSourceAirportCode(), route.getDestinationAirportCode(),
+                    route.getAirlineCode(), (int) Math.floorMod(takeoff, 24 * 60L),
+                    LocalDate.ofEpochDay(Math.floorDiv(takeoff, 24 * 60L)), null));
+        }
+        return flights;
+    }
+
     /**
      * To subscribe to changes in the current trip
      * @param observer object observing the current trip
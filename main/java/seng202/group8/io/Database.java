@@ -1,6 +1,10 @@
 package seng202.group8.io;
 
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import javafx.concurrent.Task;
 import org.apache.commons.io.FileUtils;
+import org.sqlite.SQLiteConfig;
 import org.sqlite.SQLiteException;
 import seng202.group8.AlertHelper;
 import seng202.group8.data.Country;
@@ -24,7 +28,11 @@ import java.util.regex.Pattern;
  */
 public class Database {
 
-    public static Connection databaseConnection = null;
+    /**
+     * Connection used by the JavaFX thread for reads and writes. Swapped when the database is switched, so
+     * background threads should read through {@link #getReadConnection()} instead
+     */
+    public static volatile Connection databaseConnection = null;
     public static Pattern uniqueConstraintFailedRegExp = Pattern.compile("UNIQUE constraint failed: \\w+\\.(\\w+)");
     public static HashMap<String, Country> countries; // Hash map with name of country (all lowercase) being the key
     public static final String defaultDatabasePath = "/seng202/group8/defaultDatabase.db";
@@ -35,6 +43,25 @@ public class Database {
     public static final int ERROR_CODE_FATAL_ERROR_ON_DATABASE_LOAD = 4;
     public static final int ERROR_CODE_INFINITE_LOOP_ON_DATABASE_LOAD = 5;
 
+    // Held while the connection is being opened or swapped, so the path and connection always match
+    private static final Object connectionLock = new Object();
+    // Incremented whenever the database is switched, so read connections to the old database are replaced
+    private static volatile int connectionGeneration = 0;
+    private static final ThreadLocal<ReadConnection> readConnection = new ThreadLocal<>();
+
+    /**
+     * A read-only connection owned by a single thread, and the database it was opened on
+     */
+    private static class ReadConnection {
+        private final Connection connection;
+        private final int generation;
+
+        private ReadConnection(Connection connection, int generation) {
+            this.connection = connection;
+            this.generation = generation;
+        }
+    }
+
 
     /**
      * Establishes connection with the database
@@ -60,21 +87,28 @@ public class Database {
 
         if (databaseConnection != null) return; // We are already connected to the database
 
+        synchronized (connectionLock) {
+            establishConnectionLocked(counter);
+        }
+    }
+
+    /**
+     * Establishes connection with the database. Must hold the connection lock
+     *
+     * @param counter counter to use to prevent infinite loops
+     */
+    private static void establishConnectionLocked(int counter) {
+        // establishConnection can be called from several threads at once during tests; only the first one connects
+        if (databaseConnection != null) return;
+
         try {
             if (databasePath == null) {
                 setDatabasePath(counter);
+                return; // setDatabasePath calls establishConnection
             }
 
-            // Somehow, establishConnection is called multiple times during tests in parallel
-            // Takes time to connect the first time, and the second one gets called while establishing the connection
-            // Hence, databaseConnection is null so a second connection gets generated, causing a lock
-            Connection temporaryConnection = DriverManager.getConnection("jdbc:sqlite:" + databasePath.getPath());
-            if (databaseConnection != null) {
-                temporaryConnection.close();
-                return;
-            } else {
-                databaseConnection = temporaryConnection;
-            }
+            databaseConnection = openConnection(databasePath);
+            connectionGeneration++;
 
             if (databaseIsEmpty()) {
                 databaseConnection.close(); // Need to close connection to overwrite file
@@ -84,6 +118,8 @@ public class Database {
                 return; // Don't need to load countries: setDatabasePath calls establishConnection
             }
 
+            SchemaMigrator.migrate(databaseConnection, null);
+            enableWriteAheadLog(databaseConnection);
             loadAllCountries();
         } catch (SQLiteException e) {
             dealWithExceptionOnDatabaseLoad(counter);
@@ -155,7 +191,7 @@ public class Database {
      * @throws SQLException if error from database
      */
     protected static void setDatabasePath(int counter) throws IOException, SQLException {
-        setDatabasePath(Paths.get("./", defaultDatabaseName).toUri(), counter);
+        setDatabasePath(getDefaultDatabasePath(), counter);
     }
 
     /**
@@ -172,7 +208,7 @@ public class Database {
      * Shows an alert and exits the program if an exception occurs while calling `setDatabasePath`
      * @param throwables exception thrown by `setDatabasePath`
      */
-    public static void exitProgramOnSetDatabasePathException(Exception throwables) {
+    public static void exitProgramOnSetDatabasePathException(Throwable throwables) {
         AlertHelper.showGenericErrorAlert(throwables, true,
                 "A fatal error occurred loading the database",
                 "A fatal error occurred while loading the database",
@@ -190,26 +226,380 @@ public class Database {
      * @throws SQLException error from database
      */
     protected static void setDatabasePath(URI uri, int counter) throws IOException, SQLException {
-        if (databaseConnection != null) {
-            databaseConnection.close();
+        URI newPath = new File(new File(uri).getCanonicalPath()).toURI();
+        Connection oldConnection;
+        synchronized (connectionLock) {
+            oldConnection = databaseConnection;
+            if (oldConnection != null && newPath.equals(databasePath)) {
+                // Reopening the same file, which may be overwritten with the default database, so close it first
+                closeQuietly(oldConnection);
+                oldConnection = null;
+            }
             databaseConnection = null;
-        }
-        if (databasePath != null) {
-            previousDatabasePath = databasePath;
+            if (databasePath != null) {
+                previousDatabasePath = databasePath;
+            }
+
+            databasePath = newPath;
+            establishConnection(counter);
         }
 
-        databasePath = new File(new File(uri).getCanonicalPath()).toURI();
-        establishConnection(counter);
+        // Statements are regenerated before the old connection is closed, so they never point at a closed connection
+        for (DataController<?> dc : getDataControllers()) {
+            dc.onDBChange();
+            dc.incrementDataVersion();
+        }
+        closeQuietly(oldConnection);
+        for (DataController<?> dc : getDataControllers()) {
+            dc.notifyGlobalObservers(null); // Needed to update filters bounds, so notify all observers
+        }
+    }
 
-        for (DataController dc : new DataController[]{
+    /**
+     * Gets every data controller with prepared statements on the database connection
+     *
+     * @return the data controllers
+     */
+    private static List<DataController<?>> getDataControllers() {
+        return List.of(
                 AirlineDataController.getSingleton(),
                 AirportDataController.getSingleton(),
                 RouteDataController.getSingleton(),
                 TripDataController.getSingleton()
-        }) {
+        );
+    }
+
+    /**
+     * Opens an instrumented connection to the database at the given path
+     *
+     * @param path path of the database
+     * @return the connection
+     * @throws SQLException if the connection could not be opened
+     */
+    private static Connection openConnection(URI path) throws SQLException {
+        return QueryStatistics.instrument(DriverManager.getConnection("jdbc:sqlite:" + path.getPath()));
+    }
+
+    /**
+     * Opens an instrumented read-only connection to the database at the given path
+     *
+     * @param path path of the database
+     * @return the connection
+     * @throws SQLException if the connection could not be opened
+     */
+    private static Connection openReadConnection(URI path) throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        return QueryStatistics.instrument(DriverManager.getConnection("jdbc:sqlite:" + path.getPath(), config.toProperties()));
+    }
+
+    /**
+     * Puts the database in write-ahead log mode, so read connections on other threads neither block nor are blocked
+     * by writes, and only ever see committed data
+     *
+     * @param connection connection to the database
+     * @throws SQLException if error from database
+     */
+    private static void enableWriteAheadLog(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode = WAL");
+        }
+    }
+
+    /**
+     * Closes a connection that is no longer in use, ignoring any error, as there is nothing left to lose
+     *
+     * @param connection connection to close, or null
+     */
+    private static void closeQuietly(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("Could not close the previous database connection: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gets a read-only connection to the current database for the calling thread. Background threads should read
+     * through this rather than {@link #databaseConnection}, which belongs to the JavaFX thread and is closed when the
+     * database is switched. Each thread gets its own connection, which is replaced the next time it is asked for after
+     * a switch; reads through it only see committed data
+     *
+     * @return the calling thread's read connection
+     * @throws SQLException if the connection could not be opened
+     */
+    public static Connection getReadConnection() throws SQLException {
+        establishConnection();
+        ReadConnection current = readConnection.get();
+        int generation;
+        URI path;
+        synchronized (connectionLock) {
+            generation = connectionGeneration;
+            path = databasePath;
+        }
+        if (current != null) {
+            if (current.generation == generation) {
+                return current.connection;
+            }
+            closeQuietly(current.connection);
+            readConnection.remove();
+        }
+
+        Connection connection = openReadConnection(path);
+        readConnection.set(new ReadConnection(connection, generation));
+        return connection;
+    }
+
+    /**
+     * Everything needed to start using a database, loaded ahead of time so that switching to it is near-instant.
+     * Created by {@link #prepareDatabase(URI)} and consumed by {@link #switchToPreparedDatabase(PreparedDatabase)}
+     */
+    public static class PreparedDatabase {
+        private final URI path;
+        private final Connection connection;
+        private final HashMap<String, Country> countries;
+        private final FiltersController.FilterOptions filterOptions;
+
+        private PreparedDatabase(URI path, Connection connection, HashMap<String, Country> countries, FiltersController.FilterOptions filterOptions) {
+            this.path = path;
+            this.connection = connection;
+            this.countries = countries;
+            this.filterOptions = filterOptions;
+        }
+
+        /**
+         * Gets the canonical path of the prepared database
+         *
+         * @return path of the database
+         */
+        public URI getPath() {
+            return path;
+        }
+
+        /**
+         * Closes the connection of a prepared database that is no longer going to be switched to
+         */
+        public void discard() {
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+                // Never used, so nothing to lose
+            }
+        }
+    }
+
+    /**
+     * Opens and warms up a database without touching the database currently in use.
+     * See {@link #prepareDatabase(URI, DoubleProperty)}
+     *
+     * @param uri path of the database to open
+     * @return the prepared database, ready to be switched to
+     * @throws IOException if the file could not be read or written to
+     * @throws SQLException if the file is not a valid database (a SQLiteException), or some other database error
+     */
+    public static PreparedDatabase prepareDatabase(URI uri) throws IOException, SQLException {
+        return prepareDatabase(uri, null);
+    }
+
+    /**
+     * Opens and warms up a database without touching the database currently in use. Copies the default database
+     * if the file is empty, applies any pending schema migrations, and loads the countries and the filter options.
+     * Safe to call from a background thread, as it only uses its own connection
+     *
+     * @param uri      path of the database to open
+     * @param progress progress of the schema migrations, between 0 and 1. May be null
+     * @return the prepared database, ready to be switched to
+     * @throws IOException if the file could not be read or written to
+     * @throws SQLException if the file is not a valid database (a SQLiteException), a migration failed, or some other database error
+     */
+    public static PreparedDatabase prepareDatabase(URI uri, DoubleProperty progress) throws IOException, SQLException {
+        URI path = new File(new File(uri).getCanonicalPath()).toURI();
+        Connection connection = openConnection(path);
+        try {
+            if (databaseIsEmpty(connection)) {
+                connection.close(); // Need to close connection to overwrite file
+                copyDefaultDatabaseToPath(path);
+                connection = openConnection(path);
+            }
+
+            SchemaMigrator.migrate(connection, progress);
+            enableWriteAheadLog(connection);
+            HashMap<String, Country> preparedCountries = loadAllCountries(connection);
+            FiltersController.FilterOptions filterOptions = FiltersController.loadFilterOptions(connection);
+            return new PreparedDatabase(path, connection, preparedCountries, filterOptions);
+        } catch (IOException | SQLException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Switches to a database that has already been opened by {@link #prepareDatabase(URI)}.
+     * Must be called from the thread that uses the database (i.e. the JavaFX application thread).
+     * The prepared statements are regenerated and the observers notified, but the filter options are taken from
+     * the prepared database rather than re-read. The old connection is closed last, once nothing uses it; an error
+     * closing it is ignored
+     *
+     * @param prepared the database to switch to
+     */
+    public static void switchToPreparedDatabase(PreparedDatabase prepared) {
+        Connection oldConnection;
+        synchronized (connectionLock) {
+            oldConnection = databaseConnection;
+            if (databasePath != null) {
+                previousDatabasePath = databasePath;
+            }
+            databasePath = prepared.path;
+            databaseConnection = prepared.connection;
+            countries = prepared.countries;
+            connectionGeneration++;
+        }
+
+        FiltersController filtersController = FiltersController.getSingleton(prepared.filterOptions);
+        AirlineDataController airlineDC = AirlineDataController.getSingleton();
+        AirportDataController airportDC = AirportDataController.getSingleton();
+        RouteDataController routeDC = RouteDataController.getSingleton();
+        TripDataController tripDC = TripDataController.getSingleton();
+        for (DataController<?> dc : getDataControllers()) {
             dc.onDBChange();
-            dc.notifyGlobalObservers(null); // Needed to update filters bounds, so notify all observers
+            dc.incrementDataVersion();
         }
+        closeQuietly(oldConnection);
+
+        filtersController.setFilterOptions(prepared.filterOptions);
+        // Filter options are already up to date, so don't let the filters controller reload them
+        airlineDC.notifyGlobalObservers(null, filtersController.getAirlineObserver());
+        airportDC.notifyGlobalObservers(null, filtersController.getAirportObserver());
+        routeDC.notifyGlobalObservers(null, filtersController.getRouteObserver());
+        tripDC.notifyGlobalObservers(null);
+    }
+
+    /**
+     * Opens and warms up a database on a background thread, without touching the database currently in use.
+     * See {@link #prepareDatabase(URI, DoubleProperty)}. The progress of any schema migrations is published through
+     * the task's progress, so it can be bound to a progress bar
+     *
+     * @param uri path of the database to open
+     * @return the task that was started, which succeeds with the prepared database
+     */
+    public static Task<PreparedDatabase> prepareDatabaseInBackground(URI uri) {
+        Task<PreparedDatabase> task = new Task<>() {
+            @Override
+            protected PreparedDatabase call() throws Exception {
+                // Migrations report progress on this thread; updateProgress hands it to the JavaFX thread
+                DoubleProperty progress = new SimpleDoubleProperty();
+                progress.addListener((observable, oldValue, newValue) -> updateProgress(newValue.doubleValue(), 1));
+                return prepareDatabase(uri, progress);
+            }
+        };
+
+        Thread thread = new Thread(task);
+        thread.setDaemon(true);
+        thread.start();
+        return task;
+    }
+
+    /**
+     * Reads the filter options of the current database on a background thread, through a read-only connection of its
+     * own, e.g. so the filters can be created at start-up without reading every route on the JavaFX thread
+     *
+     * @return the task that was started
+     * @see FiltersController#getSingleton(FiltersController.FilterOptions)
+     */
+    public static Task<FiltersController.FilterOptions> loadFilterOptionsInBackground() {
+        Task<FiltersController.FilterOptions> task = new Task<>() {
+            @Override
+            protected FiltersController.FilterOptions call() throws Exception {
+                establishConnection();
+                try (Connection connection = openReadConnection(databasePath)) {
+                    return FiltersController.loadFilterOptions(connection);
+                }
+            }
+        };
+
+        Thread thread = new Thread(task);
+        thread.setDaemon(true);
+        thread.start();
+        return task;
+    }
+
+    /**
+     * Switches to the database at the given path without blocking the UI. The database is opened and warmed up
+     * on a background thread while the old database stays usable, then swapped in on the JavaFX thread.
+     * If the new database can't be opened, the old database is kept and an error is shown.
+     *
+     * @param uri        path of the database to switch to
+     * @param onSwitched run on the JavaFX thread once the new database is in use, or null
+     * @return the task that was started, which fails if the database could not be switched to. Its progress is the
+     * progress of any schema migrations the new database needs
+     */
+    public static Task<PreparedDatabase> setDatabasePathInBackground(URI uri, Runnable onSwitched) {
+        Task<PreparedDatabase> task = prepareDatabaseInBackground(uri);
+
+        task.setOnSucceeded(event -> {
+            switchToPreparedDatabase(task.getValue());
+            if (onSwitched != null) {
+                onSwitched.run();
+            }
+        });
+
+        task.setOnFailed(event -> {
+            Throwable exception = task.getException();
+            if (exception instanceof SQLiteException) {
+                AlertHelper.showGenericErrorAlert(null, false,
+                        "Bad database selected",
+                        "The current database will continue to be used",
+                        String.format("'%s' is not a valid database.", uri.getPath()),
+                        null
+                );
+            } else {
+                AlertHelper.showGenericErrorAlert(exception, true,
+                        "Database Error",
+                        "Could not open the selected database",
+                        "The database may be corrupted or may not be a database generated by this program. " +
+                                "The current database will continue to be used.\n\n"
+                                + AlertHelper.sendReportToDevWithStacktraceString,
+                        null
+                );
+            }
+        });
+        return task;
+    }
+
+    /**
+     * Checks if opening the database at the given path would apply schema migrations, so that it can be opened in the
+     * background behind a progress dialog instead. A missing or empty file gets a copy of the default database, which
+     * always needs migrating
+     *
+     * @param uri path of the database
+     * @return true if there are pending migrations; false if not, or if the file is not a valid database, so that the
+     * usual error handling of {@link #setDatabasePath(URI)} deals with it
+     */
+    public static boolean hasPendingMigrations(URI uri) {
+        File file = new File(uri);
+        if (!file.exists() || file.length() == 0) {
+            return true;
+        }
+
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath(), config.toProperties())) {
+            return databaseIsEmpty(connection) || !SchemaMigrator.getPendingMigrations(connection).isEmpty();
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Gets the path of the database used when none is given
+     *
+     * @return path of the default database
+     */
+    public static URI getDefaultDatabasePath() {
+        return Paths.get("./", defaultDatabaseName).toUri();
     }
 
     /**
@@ -235,7 +625,18 @@ public class Database {
      * @throws SQLException if an SQL error occurs
      */
     protected static boolean databaseIsEmpty() throws SQLException {
-        try(Statement statement = databaseConnection.createStatement()) {
+        return databaseIsEmpty(databaseConnection);
+    }
+
+    /**
+     * Checks if the database behind the given connection has no tables
+     *
+     * @param connection connection to the database to check
+     * @return bool whether the database is empty
+     * @throws SQLException if an SQL error occurs (e.g. the file is not a database)
+     */
+    protected static boolean databaseIsEmpty(Connection connection) throws SQLException {
+        try(Statement statement = connection.createStatement()) {
             try(ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM sqlite_master;")) {
                 return (resultSet.next() && resultSet.getInt(1) == 0);
             }
@@ -250,18 +651,30 @@ public class Database {
     protected static void loadAllCountries() throws SQLException {
         countries = new HashMap<>();
         establishConnection();
+        countries = loadAllCountries(databaseConnection);
+    }
 
-        try(PreparedStatement statement = databaseConnection.prepareStatement("SELECT * FROM COUNTRY")) {
+    /**
+     * Loads all countries from the database behind the given connection
+     *
+     * @param connection connection to the database to read from
+     * @return hash map with the name of the country (all lowercase) being the key
+     * @throws SQLException if error from database
+     */
+    protected static HashMap<String, Country> loadAllCountries(Connection connection) throws SQLException {
+        HashMap<String, Country> loadedCountries = new HashMap<>();
+        try(PreparedStatement statement = connection.prepareStatement("SELECT * FROM COUNTRY")) {
             try(ResultSet resultSet = statement.executeQuery()) {
                 while (resultSet.next()) {
                     int id = resultSet.getInt("ID");
                     String iso = resultSet.getString("ISO");
                     String name = resultSet.getString("Name");
                     Country country = new Country(id, name, iso);
-                    countries.put(name.toLowerCase(), country);
+                    loadedCountries.put(name.toLowerCase(), country);
                 }
             }
         }
+        return loadedCountries;
     }
 
     /**
@@ -420,6 +833,31 @@ public class Database {
         return generateTextualFilterSQLText(propertyName, filter.getSelectedOptions());
     }
 
+    /**
+     * Converts text typed by the user into an FTS5 query that matches rows containing every word, with the last
+     * characters of each word allowed to be a prefix (e.g. 'chri int' becomes '"chri"* "int"*').
+     * Punctuation is dropped, so the user can't accidentally use FTS5 operators
+     *
+     * @param text text to search for
+     * @return FTS5 MATCH expression, or null if the text contains no words
+     */
+    public static String generateFullTextSearchQuery(String text) {
+        if (text == null) {
+            return null;
+        }
+
+        StringBuilder query = new StringBuilder();
+        for (String word : text.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                if (query.length() != 0) {
+                    query.append(' ');
+                }
+                query.append('"').append(word).append("\"*");
+            }
+        }
+        return query.length() == 0 ? null : query.toString();
+    }
+
     /**
      * Merges where clauses into a single string in form `WHERE propertyName filterDefinition AND propertyName filterDefinition`
      *
@@ -252,6 +252,7 @@ public class Import {
 
         if (fileType.equals("Airport") || fileType.equals("Route")) {
             try {
+                RouteDataController.fillMissingDistances(Database.databaseConnection, null);
                 routeDC.autoGenerateValuesForAllRoutesWithPriceZero(progress);
             } catch (SQLException exception) {
                 AlertHelper.showGenericErrorAlert(exception, true,
@@ -260,17 +261,19 @@ public class Import {
                         "Price, duration and takeoff times are automatically generated for routes which have a price of zero. The algorithm uses the distance between the source and destination airport to do so. This process failed and so the filters for price and duration may have unexpected results. To force this process to run, import the file again. If this process fails repeatedly, contact the developers with a copy of your database and the following stack trace:",
                         null
                 );
+            } finally {
+                routeDC.incrementDataVersion(); // Route distances, prices and durations were generated after the batch
             }
         }
 
         DataController<?> finalDc = dc;
         if (progress != null) {
             Platform.runLater(() -> {
-                // Remember to notify the observers observing this data type that data might have been added by the import
-                finalDc.notifyGlobalObservers(null); // DO NOT DELETE! PLEASE! THIS IS ACTUALLY IMPORTANT, YOU CAN'T JUST GET RID OF IT WHEN YOU FEEL LIKE IT
+                // Remember to notify the observers observing this data type of the rows added by the import
+                finalDc.notifyObserversOfBatchInserts(); // DO NOT DELETE! PLEASE! THIS IS ACTUALLY IMPORTANT, YOU CAN'T JUST GET RID OF IT WHEN YOU FEEL LIKE IT
             });
         } else {
-            finalDc.notifyGlobalObservers(null); // DO NOT DELETE! PLEASE! THIS IS ACTUALLY IMPORTANT, YOU CAN'T JUST GET RID OF IT WHEN YOU FEEL LIKE IT
+            finalDc.notifyObserversOfBatchInserts(); // DO NOT DELETE! PLEASE! THIS IS ACTUALLY IMPORTANT, YOU CAN'T JUST GET RID OF IT WHEN YOU FEEL LIKE IT
         }
 
         HashSet<Integer> numErrors = new HashSet<>(); // Line numbers where errors occurred. Need hashset as a single row can have multiple errors e.g. DataConstraintsExcption
@@ -0,0 +1,212 @@
+package seng202.group8.io;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Describes the secondary indexes the data views depend on. The default database only has the indexes implied by
+ * UNIQUE constraints, so sorting or filtering by most columns falls back to a full scan and a temporary B-tree.
+ * The indexes here cover every sort column offered by the tables and the columns the filters search by.
+ * <p>
+ * The indexes are created by the migrations in {@link SchemaMigrator}, which have their own fixed copies of the
+ * statements; this list is only used to check a database against, and changing it does not change any migration.
+ * <p>
+ * Also inspects the plans of recorded queries (see {@link QueryStatistics}) to point out any that still need one.
+ */
+public class IndexAdvisor {
+
+    /**
+     * An index that should exist in the database
+     */
+    public static class IndexDefinition {
+        private final String name;
+        private final String table;
+        private final String columns;
+
+        /**
+         * Creates an index definition
+         *
+         * @param name    name of the index
+         * @param table   table the index is on
+         * @param columns comma separated columns or expressions being indexed
+         */
+        public IndexDefinition(String name, String table, String columns) {
+            this.name = name;
+            this.table = table;
+            this.columns = columns;
+        }
+
+        /**
+         * Gets the name of the index
+         *
+         * @return name of the index
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the SQL statement that creates the index if it does not exist
+         *
+         * @return SQL text
+         */
+        public String getCreateSQL() {
+            return String.format("CREATE INDEX IF NOT EXISTS \"%s\" ON %s (%s)", name, table, columns);
+        }
+    }
+
+    /**
+     * Indexes for the sort and filter columns of the data views, as left by the latest migration
+     */
+    public static final List<IndexDefinition> INDEXES = List.of(
+            // Route: sorting by duration or price, and the filters on those columns.
+            // Airline sorts/filters are served by the existing UNIQUE (Airline, Source, Destination) index.
+            // Source and destination are filtered by equality, so each is indexed together with the columns the
+            // filtered rows are sorted by, which lets a filtered sort read its page straight from the index. These
+            // also cover sorting by source or destination alone, and the per-airport route counts
+            new IndexDefinition("Route Price Index", "Route", "Price"),
+            new IndexDefinition("Route TimeLength Index", "Route", "TimeLength"),
+            new IndexDefinition("Route Source Price Index", "Route", "Source, Price"),
+            new IndexDefinition("Route Source TimeLength Index", "Route", "Source, TimeLength"),
+            new IndexDefinition("Route Source Destination Index", "Route", "Source, Destination"),
+            new IndexDefinition("Route Destination Price Index", "Route", "Destination, Price"),
+            new IndexDefinition("Route Destination TimeLength Index", "Route", "Destination, TimeLength"),
+            new IndexDefinition("Route Destination Source Index", "Route", "Destination, Source"),
+
+            // Airport: every sort column except the computed route count, on its own and after the country filter.
+            // The code is displayed, sorted and filtered as coalesce(IATA, ICAO), so it needs an expression index
+            new IndexDefinition("Airport Name Index", "Airport", "Name"),
+            new IndexDefinition("Airport City Index", "Airport", "City"),
+            new IndexDefinition("Airport Code Index", "Airport", "coalesce(IATA, ICAO)"),
+            new IndexDefinition("Airport Altitude Index", "Airport", "Altitude"),
+            new IndexDefinition("Airport Timezone Index", "Airport", "Timezone"),
+            new IndexDefinition("Airport Country Name Index", "Airport", "Country, Name"),
+            new IndexDefinition("Airport Country City Index", "Airport", "Country, City"),
+            new IndexDefinition("Airport Country Code Index", "Airport", "Country, coalesce(IATA, ICAO)"),
+            new IndexDefinition("Airport Country Altitude Index", "Airport", "Country, Altitude"),
+            new IndexDefinition("Airport Country Timezone Index", "Airport", "Country, Timezone"),
+
+            // Airline: name and callsign are already UNIQUE, but not after the country filter
+            new IndexDefinition("Airline Code Index", "Airline", "coalesce(IATA, ICAO)"),
+            new IndexDefinition("Airline Country Name Index", "Airline", "Country, Name"),
+            new IndexDefinition("Airline Country Code Index", "Airline", "Country, coalesce(IATA, ICAO)"),
+            new IndexDefinition("Airline Country Callsign Index", "Airline", "Country, Callsign")
+    );
+
+    /**
+     * Gets the indexes from {@link #INDEXES} that do not exist in the database
+     *
+     * @param connection connection to the database to check
+     * @return list of missing indexes
+     * @throws SQLException if error from database
+     */
+    public static List<IndexDefinition> getMissingIndexes(Connection connection) throws SQLException {
+        Set<String> existing = new HashSet<>();
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet resultSet = statement.executeQuery("SELECT name FROM sqlite_master WHERE type = 'index'")) {
+                while (resultSet.next()) {
+                    existing.add(resultSet.getString("name"));
+                }
+            }
+        }
+
+        List<IndexDefinition> missing = new ArrayList<>();
+        for (IndexDefinition index : INDEXES) {
+            if (!existing.contains(index.getName())) {
+                missing.add(index);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Creates any of the indexes from {@link #INDEXES} that do not exist yet, in a single transaction.
+     * If the connection is already in a transaction, the caller is responsible for committing it.
+     * Safe to call on every connection: if all indexes exist, this is a single query on sqlite_master
+     *
+     * @param connection connection to the database to add indexes to
+     * @return number of indexes created
+     * @throws SQLException if error from database
+     */
+    public static int ensureIndexes(Connection connection) throws SQLException {
+        List<IndexDefinition> missing = getMissingIndexes(connection);
+        if (missing.isEmpty()) {
+            return 0;
+        }
+
+        boolean ownTransaction = connection.getAutoCommit();
+        if (ownTransaction) {
+            connection.setAutoCommit(false);
+        }
+        try (Statement statement = connection.createStatement()) {
+            for (IndexDefinition index : missing) {
+                statement.executeUpdate(index.getCreateSQL());
+            }
+            if (ownTransaction) {
+                connection.commit();
+            }
+        } catch (SQLException e) {
+            if (ownTransaction) {
+                connection.rollback();
+            }
+            throw e;
+        } finally {
+            if (ownTransaction) {
+                connection.setAutoCommit(true);
+            }
+        }
+        return missing.size();
+    }
+
+    /**
+     * Checks if a query plan contains a step that reads a whole table without an index, or sorts with a
+     * temporary B-tree
+     *
+     * @param plan query plan from {@link QueryStatistics#explainQueryPlan(Connection, String)}
+     * @return true if the plan has a full scan or temporary sort
+     */
+    public static boolean planNeedsIndex(String plan) {
+        for (String step : plan.split("\n")) {
+            boolean fullScan = step.startsWith("SCAN TABLE") && !step.contains(" USING ");
+            if (fullScan || step.startsWith("USE TEMP B-TREE")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Goes through the recorded statements and reports any whose plan still has a full scan or temporary sort,
+     * along with that plan
+     *
+     * @param connection connection to use to get query plans. If it is instrumented, the plans are got from the
+     *                   connection it wraps, so they are not recorded as statements themselves
+     * @param limit      maximum number of statements to check, starting from the one with the most total time
+     * @return report listing the statements, or a message saying none were found
+     */
+    public static String adviseFromStatistics(Connection connection, int limit) {
+        Connection rawConnection = QueryStatistics.getRawConnection(connection);
+        StringBuilder report = new StringBuilder();
+        List<QueryStatistics.StatementStatistics> statistics = QueryStatistics.getStatistics();
+        for (int i = 0; i < Math.min(limit, statistics.size()); i++) {
+            String sql = statistics.get(i).getSql();
+            // Statements without a WHERE or ORDER BY are meant to read the whole table
+            if (sql.startsWith("SELECT") && (sql.contains(" WHERE ") || sql.contains(" ORDER BY "))) {
+                String plan = QueryStatistics.explainQueryPlan(rawConnection, sql);
+                if (planNeedsIndex(plan)) {
+                    report.append(sql).append('\n').append(plan).append('\n');
+                }
+            }
+        }
+        if (report.length() == 0) {
+            report.append("No full scans or temporary sorts found");
+        }
+        return report.toString();
+    }
+}
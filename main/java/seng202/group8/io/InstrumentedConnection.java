@@ -0,0 +1,232 @@
+package seng202.group8.io;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Dynamic proxies around a JDBC connection and the statements and result sets it creates, which time each
+ * execution and report it to {@link QueryStatistics}. The time for a query includes reading its results, since
+ * SQLite does most of its work while stepping through rows.
+ */
+class InstrumentedConnection implements InvocationHandler {
+    private final Connection connection;
+
+    private InstrumentedConnection(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Wraps a connection in an instrumented proxy
+     *
+     * @param connection connection to wrap
+     * @return the proxy
+     */
+    static Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new InstrumentedConnection(connection)
+        );
+    }
+
+    /**
+     * Gets the connection an instrumented proxy wraps
+     *
+     * @param connection connection that may be an instrumented proxy
+     * @return the wrapped connection, or the given connection if it is not instrumented
+     */
+    static Connection unwrap(Connection connection) {
+        if (Proxy.isProxyClass(connection.getClass())
+                && Proxy.getInvocationHandler(connection) instanceof InstrumentedConnection) {
+            return ((InstrumentedConnection) Proxy.getInvocationHandler(connection)).connection;
+        }
+        return connection;
+    }
+
+    /**
+     * Calls the method on the real object, rethrowing the original exception rather than the reflection wrapper
+     * so that callers can still catch SQLException and SQLiteException
+     */
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Handles the methods of Object, which should act on the proxy itself rather than the real object
+     *
+     * @return true if the method was one of equals or hashCode
+     */
+    private static boolean isObjectMethod(Method method) {
+        return method.getName().equals("equals") || method.getName().equals("hashCode");
+    }
+
+    private static Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+        if (method.getName().equals("equals")) {
+            return proxy == args[0];
+        }
+        return System.identityHashCode(proxy);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (isObjectMethod(method)) {
+            return invokeObjectMethod(proxy, method, args);
+        }
+
+        Object result = invokeTarget(connection, method, args);
+        if (result instanceof PreparedStatement && method.getName().equals("prepareStatement")) {
+            return Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class},
+                    new StatementHandler((Statement) result, connection, (String) args[0])
+            );
+        } else if (result instanceof Statement && method.getName().equals("createStatement")) {
+            return Proxy.newProxyInstance(
+                    Statement.class.getClassLoader(),
+                    new Class<?>[]{Statement.class},
+                    new StatementHandler((Statement) result, connection, null)
+            );
+        }
+        return result;
+    }
+
+    /**
+     * Times the executions of a statement. For prepared statements, the SQL is known up front; for plain
+     * statements it is passed to each execute call
+     */
+    private static class StatementHandler implements InvocationHandler {
+        private final Statement statement;
+        private final Connection rawConnection;
+        private final String preparedSql;
+        private ResultSetHandler openResultSet;
+
+        private StatementHandler(Statement statement, Connection rawConnection, String preparedSql) {
+            this.statement = statement;
+            this.rawConnection = rawConnection;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (isObjectMethod(method)) {
+                return invokeObjectMethod(proxy, method, args);
+            }
+
+            String name = method.getName();
+            String sql = (args != null && args.length > 0 && args[0] instanceof String) ? (String) args[0] : preparedSql;
+            switch (name) {
+                case "executeQuery": {
+                    finishOpenResultSet(); // Re-executing a statement implicitly closes its previous result set
+                    long start = System.nanoTime();
+                    ResultSet resultSet = (ResultSet) invokeTarget(statement, method, args);
+                    openResultSet = new ResultSetHandler(resultSet, rawConnection, sql, System.nanoTime() - start);
+                    return Proxy.newProxyInstance(
+                            ResultSet.class.getClassLoader(),
+                            new Class<?>[]{ResultSet.class},
+                            openResultSet
+                    );
+                }
+                case "executeUpdate":
+                case "executeLargeUpdate":
+                case "execute":
+                case "executeBatch": {
+                    finishOpenResultSet();
+                    long start = System.nanoTime();
+                    Object result = invokeTarget(statement, method, args);
+                    long elapsed = System.nanoTime() - start;
+                    QueryStatistics.record(rawConnection, sql, elapsed, countRows(result));
+                    return result;
+                }
+                case "close":
+                    finishOpenResultSet();
+                    return invokeTarget(statement, method, args);
+                default:
+                    return invokeTarget(statement, method, args);
+            }
+        }
+
+        /**
+         * Counts the rows modified from the result of an execute method
+         */
+        private long countRows(Object result) {
+            if (result instanceof Integer) {
+                return Math.max(0, (Integer) result);
+            } else if (result instanceof Long) {
+                return Math.max(0, (Long) result);
+            } else if (result instanceof int[]) {
+                long total = 0;
+                for (int count : (int[]) result) {
+                    total += Math.max(0, count);
+                }
+                return total;
+            }
+            return 0;
+        }
+
+        private void finishOpenResultSet() {
+            if (openResultSet != null) {
+                openResultSet.finish();
+                openResultSet = null;
+            }
+        }
+    }
+
+    /**
+     * Counts rows and accumulates the time spent stepping through a result set. The query is recorded once the
+     * last row has been read or the result set is closed, whichever comes first
+     */
+    private static class ResultSetHandler implements InvocationHandler {
+        private final ResultSet resultSet;
+        private final Connection rawConnection;
+        private final String sql;
+        private long elapsed;
+        private long rows = 0;
+        private boolean finished = false;
+
+        private ResultSetHandler(ResultSet resultSet, Connection rawConnection, String sql, long elapsed) {
+            this.resultSet = resultSet;
+            this.rawConnection = rawConnection;
+            this.sql = sql;
+            this.elapsed = elapsed;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (isObjectMethod(method)) {
+                return invokeObjectMethod(proxy, method, args);
+            }
+
+            if (method.getName().equals("next")) {
+                long start = System.nanoTime();
+                Boolean hasRow = (Boolean) invokeTarget(resultSet, method, args);
+                elapsed += System.nanoTime() - start;
+                if (hasRow) {
+                    rows++;
+                } else {
+                    finish();
+                }
+                return hasRow;
+            } else if (method.getName().equals("close")) {
+                finish();
+            }
+            return invokeTarget(resultSet, method, args);
+        }
+
+        private void finish() {
+            if (!finished) {
+                finished = true;
+                QueryStatistics.record(rawConnection, sql, elapsed, rows);
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package seng202.group8.io;
+
+import javafx.beans.property.DoubleProperty;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A single change to the database schema. Migrations are identified by the schema version they upgrade the
+ * database to, which is stored in `PRAGMA user_version`. See {@link SchemaMigrator}
+ */
+public interface Migration {
+    /**
+     * Gets the schema version the database is at after this migration has been applied.
+     * Versions start at 1 and each migration's version is one more than the previous one
+     *
+     * @return schema version
+     */
+    int getVersion();
+
+    /**
+     * Gets a short description of what the migration does, shown while it is running
+     *
+     * @return description of the migration
+     */
+    String getDescription();
+
+    /**
+     * Applies the migration. Called inside a transaction, so must not commit or change the auto-commit mode;
+     * if an exception is thrown, every change made is rolled back
+     *
+     * @param connection connection to the database being migrated
+     * @param progress   progress of the migration, between 0 and 1. May be null
+     * @throws SQLException if error from database
+     */
+    void apply(Connection connection, DoubleProperty progress) throws SQLException;
+}
@@ -0,0 +1,339 @@
+package seng202.group8.io;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.FileHandler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+import java.util.regex.Pattern;
+
+/**
+ * Collects timing statistics for every SQL statement run through an instrumented connection
+ * (see {@link #instrument(Connection)}). Statements are grouped by their normalized SQL text, so the same query
+ * with different literals or IN list lengths is counted as one statement.
+ * <p>
+ * Statements slower than the slow query threshold are written, along with their query plan, to a rotating log file
+ * in the temp directory.
+ */
+public class QueryStatistics {
+    /**
+     * Latency histogram buckets are powers of two in microseconds: bucket i holds latencies in [2^i, 2^(i+1)) us
+     */
+    public static final int NUM_LATENCY_BUCKETS = 32;
+    public static final String SLOW_QUERY_LOG_PATTERN = "%t/seng202-group8-slow-queries.%g.log";
+    public static final int SLOW_QUERY_LOG_FILE_SIZE = 1024 * 1024;
+    public static final int SLOW_QUERY_LOG_FILE_COUNT = 3;
+
+    private static final Pattern stringLiteralPattern = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern numberLiteralPattern = Pattern.compile("(?<![\\w.])-?\\d+(\\.\\d+)?(?![\\w.])");
+    private static final Pattern inListPattern = Pattern.compile("IN\\s*\\(\\s*\\?(\\s*,\\s*\\?)*\\s*\\)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern whitespacePattern = Pattern.compile("\\s+");
+
+    private static final Map<String, StatementStatistics> statistics = new ConcurrentHashMap<>();
+    private static volatile boolean enabled = true;
+    private static volatile long slowQueryThresholdNanos = 100_000_000L;
+    private static Logger slowQueryLogger;
+
+    /**
+     * Statistics for a single (normalized) SQL statement
+     */
+    public static class StatementStatistics {
+        private final String sql;
+        private long calls;
+        private long rows;
+        private long totalNanos;
+        private long maxNanos;
+        private final long[] latencyHistogram = new long[NUM_LATENCY_BUCKETS];
+
+        private StatementStatistics(String sql) {
+            this.sql = sql;
+        }
+
+        private synchronized void record(long nanos, long rowCount) {
+            calls++;
+            rows += rowCount;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+            latencyHistogram[bucketFor(nanos)]++;
+        }
+
+        /**
+         * Gets the normalized SQL text of the statement
+         *
+         * @return normalized SQL
+         */
+        public String getSql() {
+            return sql;
+        }
+
+        /**
+         * Gets the number of times the statement has been executed
+         *
+         * @return number of calls
+         */
+        public synchronized long getCalls() {
+            return calls;
+        }
+
+        /**
+         * Gets the total number of rows returned or modified by the statement over all calls
+         *
+         * @return total number of rows
+         */
+        public synchronized long getRows() {
+            return rows;
+        }
+
+        /**
+         * Gets the total time spent executing the statement over all calls
+         *
+         * @return total time in nanoseconds
+         */
+        public synchronized long getTotalNanos() {
+            return totalNanos;
+        }
+
+        /**
+         * Gets the time taken by the slowest call of the statement
+         *
+         * @return maximum time in nanoseconds
+         */
+        public synchronized long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * Gets a copy of the latency histogram. Bucket i counts calls that took [2^i, 2^(i+1)) microseconds
+         *
+         * @return copy of the histogram
+         */
+        public synchronized long[] getLatencyHistogram() {
+            return latencyHistogram.clone();
+        }
+
+        /**
+         * Estimates a latency percentile from the histogram. As buckets are powers of two, this is an upper bound
+         * that may be up to twice the real value
+         *
+         * @param percentile percentile to get, between 0 and 100
+         * @return upper bound of the bucket containing the percentile, in microseconds, or 0 if never called
+         */
+        public synchronized long getLatencyPercentileMicros(double percentile) {
+            long target = (long) Math.ceil(calls * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < NUM_LATENCY_BUCKETS; i++) {
+                seen += latencyHistogram[i];
+                if (seen >= target && seen != 0) {
+                    return 1L << (i + 1);
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Wraps a connection so that every statement it creates records its statistics here
+     *
+     * @param connection connection to wrap
+     * @return an instrumented connection, which behaves identically to the given connection
+     */
+    public static Connection instrument(Connection connection) {
+        return InstrumentedConnection.wrap(connection);
+    }
+
+    /**
+     * Gets the connection an instrumented connection wraps, so statements can be run without being recorded
+     *
+     * @param connection connection from {@link #instrument(Connection)}
+     * @return the un-instrumented connection, or the given connection if it is not instrumented
+     */
+    public static Connection getRawConnection(Connection connection) {
+        return InstrumentedConnection.unwrap(connection);
+    }
+
+    /**
+     * Records a single execution of a statement, and logs it if it was slow
+     *
+     * @param rawConnection un-instrumented connection the statement was run on, used to get the query plan
+     * @param sql           SQL text of the statement
+     * @param nanos         time taken to execute the statement and read its results
+     * @param rows          number of rows returned or modified
+     */
+    static void record(Connection rawConnection, String sql, long nanos, long rows) {
+        if (!enabled || sql == null) {
+            return;
+        }
+        String normalized = normalize(sql);
+        statistics.computeIfAbsent(normalized, StatementStatistics::new).record(nanos, rows);
+
+        if (nanos >= slowQueryThresholdNanos) {
+            logSlowQuery(rawConnection, sql, nanos, rows);
+        }
+    }
+
+    /**
+     * Normalizes SQL text so that statements that only differ by their literals are grouped together.
+     * String and number literals become '?', IN lists of any length become 'IN (?)' and whitespace is collapsed
+     *
+     * @param sql SQL text
+     * @return normalized SQL text
+     */
+    public static String normalize(String sql) {
+        String normalized = stringLiteralPattern.matcher(sql).replaceAll("?");
+        normalized = numberLiteralPattern.matcher(normalized).replaceAll("?");
+        normalized = inListPattern.matcher(normalized).replaceAll("IN (?)");
+        return whitespacePattern.matcher(normalized).replaceAll(" ").trim();
+    }
+
+    /**
+     * Gets the index of the latency histogram bucket the given time falls in
+     *
+     * @param nanos time in nanoseconds
+     * @return index of the bucket
+     */
+    static int bucketFor(long nanos) {
+        long micros = nanos / 1000;
+        if (micros <= 0) {
+            return 0;
+        }
+        return Math.min(NUM_LATENCY_BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+    }
+
+    /**
+     * Gets the query plan for a statement. Parameters are left unbound, which SQLite treats as NULL
+     *
+     * @param rawConnection un-instrumented connection to run `EXPLAIN QUERY PLAN` on
+     * @param sql           SQL text of the statement
+     * @return the query plan, one step per line
+     */
+    public static String explainQueryPlan(Connection rawConnection, String sql) {
+        StringBuilder plan = new StringBuilder();
+        try (PreparedStatement statement = rawConnection.prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    plan.append(resultSet.getString("detail")).append('\n');
+                }
+            }
+        } catch (SQLException e) {
+            plan.append("Could not get query plan: ").append(e.getMessage()).append('\n');
+        }
+        return plan.toString();
+    }
+
+    /**
+     * Writes a slow statement and its query plan to the slow query log
+     */
+    private static void logSlowQuery(Connection rawConnection, String sql, long nanos, long rows) {
+        Logger logger = getSlowQueryLogger();
+        if (logger == null) {
+            return;
+        }
+        String plan = explainQueryPlan(rawConnection, sql);
+        logger.warning(String.format("Slow query (%.1f ms, %d rows): %s%n%s", nanos / 1e6, rows, sql, plan));
+    }
+
+    /**
+     * Gets the logger for slow queries, creating the rotating log file the first time a slow query is logged
+     *
+     * @return the logger, or null if the log file could not be created
+     */
+    private static synchronized Logger getSlowQueryLogger() {
+        if (slowQueryLogger == null) {
+            try {
+                FileHandler handler = new FileHandler(SLOW_QUERY_LOG_PATTERN, SLOW_QUERY_LOG_FILE_SIZE, SLOW_QUERY_LOG_FILE_COUNT, true);
+                handler.setFormatter(new SimpleFormatter());
+                Logger logger = Logger.getLogger(QueryStatistics.class.getName());
+                logger.setUseParentHandlers(false);
+                logger.setLevel(Level.ALL);
+                logger.addHandler(handler);
+                slowQueryLogger = logger;
+            } catch (IOException e) {
+                // Logging slow queries is best-effort; keep collecting statistics regardless
+                return null;
+            }
+        }
+        return slowQueryLogger;
+    }
+
+    /**
+     * Gets the statistics of all statements, sorted by total time spent in them (worst offenders first)
+     *
+     * @return list of statistics
+     */
+    public static List<StatementStatistics> getStatistics() {
+        List<StatementStatistics> sorted = new ArrayList<>(statistics.values());
+        sorted.sort(Comparator.comparingLong(StatementStatistics::getTotalNanos).reversed());
+        return sorted;
+    }
+
+    /**
+     * Gets a human-readable report of the statements that have taken the most total time
+     *
+     * @param limit maximum number of statements to include
+     * @return the report
+     */
+    public static String getReport(int limit) {
+        StringBuilder report = new StringBuilder();
+        List<StatementStatistics> sorted = getStatistics();
+        for (int i = 0; i < Math.min(limit, sorted.size()); i++) {
+            StatementStatistics stats = sorted.get(i);
+            report.append(String.format("#%d  total %.1f ms, %d calls, %d rows, p50 <%d us, p99 <%d us, max %.1f ms%n    %s%n%n",
+                    i + 1,
+                    stats.getTotalNanos() / 1e6,
+                    stats.getCalls(),
+                    stats.getRows(),
+                    stats.getLatencyPercentileMicros(50),
+                    stats.getLatencyPercentileMicros(99),
+                    stats.getMaxNanos() / 1e6,
+                    stats.getSql()
+            ));
+        }
+        if (report.length() == 0) {
+            report.append("No queries recorded");
+        }
+        return report.toString();
+    }
+
+    /**
+     * Removes all recorded statistics
+     */
+    public static void reset() {
+        statistics.clear();
+    }
+
+    /**
+     * Enables or disables collection of statistics
+     *
+     * @param isEnabled true to collect statistics
+     */
+    public static void setEnabled(boolean isEnabled) {
+        enabled = isEnabled;
+    }
+
+    /**
+     * Sets the minimum time a statement must take before it is written to the slow query log
+     *
+     * @param millis threshold in milliseconds
+     */
+    public static void setSlowQueryThresholdMillis(long millis) {
+        slowQueryThresholdNanos = millis * 1_000_000L;
+    }
+
+    /**
+     * Gets the minimum time a statement must take before it is written to the slow query log
+     *
+     * @return threshold in milliseconds
+     */
+    public static long getSlowQueryThresholdMillis() {
+        return slowQueryThresholdNanos / 1_000_000L;
+    }
+}
@@ -0,0 +1,313 @@
+package seng202.group8.io;
+
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import seng202.group8.datacontroller.RouteDataController;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Upgrades databases to the schema the program expects. The schema version of a database is stored in
+ * `PRAGMA user_version` (0 for the default database and any database made before migrations existed), and every
+ * migration with a higher version is applied in order, each one in its own transaction along with the version bump.
+ * If a migration fails, the database is left at the last version that succeeded.
+ */
+public class SchemaMigrator {
+
+    /**
+     * All migrations, in the order they are applied
+     */
+    private static final List<Migration> migrations = new ArrayList<>();
+
+    static {
+        // The statements of each migration are fixed once released, rather than read from IndexAdvisor.INDEXES, so a
+        // database migrated today ends up the same as one migrated when the migration was written
+        register(new SQLMigration(1, "Adding indexes for sorting and filtering",
+                "CREATE INDEX IF NOT EXISTS \"Route Source Index\" ON Route (Source)",
+                "CREATE INDEX IF NOT EXISTS \"Route Destination Index\" ON Route (Destination)",
+                "CREATE INDEX IF NOT EXISTS \"Route Price Index\" ON Route (Price)",
+                "CREATE INDEX IF NOT EXISTS \"Route TimeLength Index\" ON Route (TimeLength)",
+                "CREATE INDEX IF NOT EXISTS \"Airport Name Index\" ON Airport (Name)",
+                "CREATE INDEX IF NOT EXISTS \"Airport City Index\" ON Airport (City)",
+                "CREATE INDEX IF NOT EXISTS \"Airport Country Index\" ON Airport (Country)",
+                "CREATE INDEX IF NOT EXISTS \"Airport Code Index\" ON Airport (coalesce(IATA, ICAO))",
+                "CREATE INDEX IF NOT EXISTS \"Airport Altitude Index\" ON Airport (Altitude)",
+                "CREATE INDEX IF NOT EXISTS \"Airport Timezone Index\" ON Airport (Timezone)",
+                "CREATE INDEX IF NOT EXISTS \"Airline Country Index\" ON Airline (Country)",
+                "CREATE INDEX IF NOT EXISTS \"Airline Code Index\" ON Airline (coalesce(IATA, ICAO))"
+        ));
+
+        // External content FTS5 tables: the text lives only in the Airport/Airline tables, and triggers keep the
+        // search indexes in sync with every insert, update and delete
+        register(new SQLMigration(2, "Adding full-text search for airports and airlines",
+                "CREATE VIRTUAL TABLE AirportSearch USING fts5(Name, City, content = 'Airport', content_rowid = 'ID', " +
+                        "tokenize = 'unicode61 remove_diacritics 2', prefix = '2 3')",
+                "CREATE TRIGGER \"Airport Search Insert\" AFTER INSERT ON Airport BEGIN " +
+                        "INSERT INTO AirportSearch(rowid, Name, City) VALUES (new.ID, new.Name, new.City); END",
+                "CREATE TRIGGER \"Airport Search Delete\" AFTER DELETE ON Airport BEGIN " +
+                        "INSERT INTO AirportSearch(AirportSearch, rowid, Name, City) VALUES ('delete', old.ID, old.Name, old.City); END",
+                "CREATE TRIGGER \"Airport Search Update\" AFTER UPDATE OF Name, City ON Airport BEGIN " +
+                        "INSERT INTO AirportSearch(AirportSearch, rowid, Name, City) VALUES ('delete', old.ID, old.Name, old.City); " +
+                        "INSERT INTO AirportSearch(rowid, Name, City) VALUES (new.ID, new.Name, new.City); END",
+                "INSERT INTO AirportSearch(AirportSearch) VALUES ('rebuild')",
+
+                "CREATE VIRTUAL TABLE AirlineSearch USING fts5(Name, Callsign, content = 'Airline', content_rowid = 'ID', " +
+                        "tokenize = 'unicode61 remove_diacritics 2', prefix = '2 3')",
+                "CREATE TRIGGER \"Airline Search Insert\" AFTER INSERT ON Airline BEGIN " +
+                        "INSERT INTO AirlineSearch(rowid, Name, Callsign) VALUES (new.ID, new.Name, new.Callsign); END",
+                "CREATE TRIGGER \"Airline Search Delete\" AFTER DELETE ON Airline BEGIN " +
+                        "INSERT INTO AirlineSearch(AirlineSearch, rowid, Name, Callsign) VALUES ('delete', old.ID, old.Name, old.Callsign); END",
+                "CREATE TRIGGER \"Airline Search Update\" AFTER UPDATE OF Name, Callsign ON Airline BEGIN " +
+                        "INSERT INTO AirlineSearch(AirlineSearch, rowid, Name, Callsign) VALUES ('delete', old.ID, old.Name, old.Callsign); " +
+                        "INSERT INTO AirlineSearch(rowid, Name, Callsign) VALUES (new.ID, new.Name, new.Callsign); END",
+                "INSERT INTO AirlineSearch(AirlineSearch) VALUES ('rebuild')"
+        ));
+
+        // Distance is stored so routes can be filtered and sorted by it. It is null when either airport is unknown.
+        register(new Migration() {
+            @Override
+            public int getVersion() {
+                return 3;
+            }
+
+            @Override
+            public String getDescription() {
+                return "Working out the distance of every route";
+            }
+
+            @Override
+            public void apply(Connection connection, DoubleProperty progress) throws SQLException {
+                try (Statement statement = connection.createStatement()) {
+                    statement.executeUpdate("ALTER TABLE Route ADD COLUMN Distance REAL");
+                    RouteDataController.fillMissingDistances(connection, progress);
+                    statement.executeUpdate("CREATE INDEX IF NOT EXISTS \"Route Distance Index\" ON Route (Distance)");
+                }
+            }
+        });
+
+        // Composite (filter column, sort column) indexes, so a filtered table is read in order from an index rather
+        // than sorted in a temporary B-tree. The single column indexes they start with are no longer needed
+        register(new SQLMigration(4, "Adding indexes for sorting filtered rows",
+                "CREATE INDEX IF NOT EXISTS \"Route Source Price Index\" ON Route (Source, Price)",
+                "CREATE INDEX IF NOT EXISTS \"Route Source TimeLength Index\" ON Route (Source, TimeLength)",
+                "CREATE INDEX IF NOT EXISTS \"Route Source Destination Index\" ON Route (Source, Destination)",
+                "CREATE INDEX IF NOT EXISTS \"Route Source Distance Index\" ON Route (Source, Distance)",
+                "CREATE INDEX IF NOT EXISTS \"Route Destination Price Index\" ON Route (Destination, Price)",
+                "CREATE INDEX IF NOT EXISTS \"Route Destination TimeLength Index\" ON Route (Destination, TimeLength)",
+                "CREATE INDEX IF NOT EXISTS \"Route Destination Source Index\" ON Route (Destination, Source)",
+                "CREATE INDEX IF NOT EXISTS \"Route Destination Distance Index\" ON Route (Destination, Distance)",
+                "CREATE INDEX IF NOT EXISTS \"Airport Country Name Index\" ON Airport (Country, Name)",
+                "CREATE INDEX IF NOT EXISTS \"Airport Country City Index\" ON Airport (Country, City)",
+                "CREATE INDEX IF NOT EXISTS \"Airport Country Code Index\" ON Airport (Country, coalesce(IATA, ICAO))",
+                "CREATE INDEX IF NOT EXISTS \"Airport Country Altitude Index\" ON Airport (Country, Altitude)",
+                "CREATE INDEX IF NOT EXISTS \"Airport Country Timezone Index\" ON Airport (Country, Timezone)",
+                "CREATE INDEX IF NOT EXISTS \"Airline Country Name Index\" ON Airline (Country, Name)",
+                "CREATE INDEX IF NOT EXISTS \"Airline Country Code Index\" ON Airline (Country, coalesce(IATA, ICAO))",
+                "CREATE INDEX IF NOT EXISTS \"Airline Country Callsign Index\" ON Airline (Country, Callsign)",
+                "DROP INDEX IF EXISTS \"Route Source Index\"",
+                "DROP INDEX IF EXISTS \"Route Destination Index\"",
+                "DROP INDEX IF EXISTS \"Airport Country Index\"",
+                "DROP INDEX IF EXISTS \"Airline Country Index\""
+        ));
+    }
+
+    /**
+     * A migration which runs a fixed list of SQL statements
+     */
+    static class SQLMigration implements Migration {
+        private final int version;
+        private final String description;
+        private final String[] statements;
+
+        /**
+         * Creates a migration which runs the given statements in order
+         *
+         * @param version     schema version after the migration
+         * @param description short description of the migration
+         * @param statements  SQL statements to run
+         */
+        SQLMigration(int version, String description, String... statements) {
+            this.version = version;
+            this.description = description;
+            this.statements = statements;
+        }
+
+        @Override
+        public int getVersion() {
+            return version;
+        }
+
+        @Override
+        public String getDescription() {
+            return description;
+        }
+
+        @Override
+        public void apply(Connection connection, DoubleProperty progress) throws SQLException {
+            try (Statement statement = connection.createStatement()) {
+                for (int i = 0; i < statements.length; i++) {
+                    statement.executeUpdate(statements[i]);
+                    if (progress != null) {
+                        progress.set((i + 1.0) / statements.length);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a migration to the list of migrations
+     *
+     * @param migration migration to add
+     * @throws IllegalArgumentException if a migration with the same version already exists
+     */
+    static void register(Migration migration) {
+        for (Migration existing : migrations) {
+            if (existing.getVersion() == migration.getVersion()) {
+                throw new IllegalArgumentException("Duplicate migration version " + migration.getVersion());
+            }
+        }
+        migrations.add(migration);
+        migrations.sort(Comparator.comparingInt(Migration::getVersion));
+    }
+
+    /**
+     * Gets the schema version of the latest migration, which every database is migrated to
+     *
+     * @return latest schema version
+     */
+    public static int getLatestVersion() {
+        return migrations.isEmpty() ? 0 : migrations.get(migrations.size() - 1).getVersion();
+    }
+
+    /**
+     * Gets the schema version of a database
+     *
+     * @param connection connection to the database
+     * @return value of `PRAGMA user_version`
+     * @throws SQLException if error from database
+     */
+    public static int getSchemaVersion(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet resultSet = statement.executeQuery("PRAGMA user_version")) {
+                return resultSet.next() ? resultSet.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Sets the schema version of a database. If in a transaction, only takes effect when it is committed
+     *
+     * @param connection connection to the database
+     * @param version    new schema version
+     * @throws SQLException if error from database
+     */
+    private static void setSchemaVersion(Connection connection, int version) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("PRAGMA user_version = " + version); // PRAGMA can't take parameters
+        }
+    }
+
+    /**
+     * Gets the migrations that have not been applied to a database, in the order they need to be applied
+     *
+     * @param connection connection to the database
+     * @return list of pending migrations
+     * @throws SQLException if error from database, or if the database is from a newer version of the program
+     */
+    public static List<Migration> getPendingMigrations(Connection connection) throws SQLException {
+        return getPendingMigrations(connection, migrations);
+    }
+
+    /**
+     * Gets the migrations from the given list that have not been applied to a database
+     *
+     * @param connection    connection to the database
+     * @param allMigrations every migration, sorted by version
+     * @return list of pending migrations
+     * @throws SQLException if error from database, or if the database is newer than the last migration
+     */
+    static List<Migration> getPendingMigrations(Connection connection, List<Migration> allMigrations) throws SQLException {
+        int version = getSchemaVersion(connection);
+        int latestVersion = allMigrations.isEmpty() ? 0 : allMigrations.get(allMigrations.size() - 1).getVersion();
+        if (version > latestVersion) {
+            throw new SQLException(String.format(
+                    "The database is at schema version %d, but this version of the program only supports up to version %d",
+                    version, latestVersion));
+        }
+
+        List<Migration> pending = new ArrayList<>();
+        for (Migration migration : allMigrations) {
+            if (migration.getVersion() > version) {
+                pending.add(migration);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Applies all pending migrations to a database, in order. Each migration and its version bump are committed
+     * together, so the database is never left half-migrated
+     *
+     * @param connection connection to the database
+     * @param progress   overall progress of the migrations, between 0 and 1. May be null
+     * @return number of migrations applied
+     * @throws SQLException if a migration fails, or if the database is from a newer version of the program
+     */
+    public static int migrate(Connection connection, DoubleProperty progress) throws SQLException {
+        return migrate(connection, migrations, progress);
+    }
+
+    /**
+     * Applies the pending migrations from the given list to a database, in order
+     *
+     * @param connection    connection to the database
+     * @param allMigrations every migration, sorted by version
+     * @param progress      overall progress of the migrations, between 0 and 1. May be null
+     * @return number of migrations applied
+     * @throws SQLException if a migration fails, or if the database is newer than the last migration
+     */
+    static int migrate(Connection connection, List<Migration> allMigrations, DoubleProperty progress) throws SQLException {
+        List<Migration> pending = getPendingMigrations(connection, allMigrations);
+        if (pending.isEmpty()) {
+            return 0;
+        }
+
+        boolean commitMode = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            for (int i = 0; i < pending.size(); i++) {
+                Migration migration = pending.get(i);
+                DoubleProperty migrationProgress = new SimpleDoubleProperty(0);
+                if (progress != null) {
+                    final int completed = i;
+                    migrationProgress.addListener((observable, oldValue, newValue) ->
+                            progress.set((completed + newValue.doubleValue()) / pending.size()));
+                }
+
+                try {
+                    migration.apply(connection, migrationProgress);
+                    setSchemaVersion(connection, migration.getVersion());
+                    connection.commit();
+                } catch (SQLException | RuntimeException e) {
+                    connection.rollback();
+                    throw new SQLException(String.format("Migration to schema version %d (%s) failed: %s",
+                            migration.getVersion(), migration.getDescription(), e.getMessage()), e);
+                }
+
+                if (progress != null) {
+                    progress.set((i + 1.0) / pending.size());
+                }
+            }
+        } finally {
+            connection.setAutoCommit(commitMode);
+        }
+        return pending.size();
+    }
+}
@@ -67,6 +67,18 @@ public class DataViewController {
     @FXML
     private Slider rowsLoadedSlider;
 
+    @FXML
+    private CheckBox scrollAllCheckBox;
+
+    @FXML
+    private Label rowCountLabel;
+
+    @FXML
+    private TextField pageField;
+
+    @FXML
+    private Label pageCountLabel;
+
     @FXML
     private Button createNewButton;
 
@@ -180,15 +192,16 @@ public class DataViewController {
 
                 rootController.showFilters();
                 dataTabPane.setPrefWidth(600);
+                currentTableController.setShown(false);
                 switch (currentTab.getId()) {
                     case "routeTab":
                         filters.showFlightFilters();
                         detailRootController.setDetailsContentType("route");
                         currentTableController = routeTableController;
-                        sortColumnBox.setItems(FXCollections.observableList(Arrays.asList("Airline", "Source", "Destination", "Duration", "Price")));
+                        sortColumnBox.setItems(FXCollections.observableList(Arrays.asList("Airline", "Source", "Destination", "Duration", "Distance", "Price")));
                         sortColumnBox.setValue("Airline");
                         createNewButton.setText("+ New Route");
-                        loadData();
+                        showCurrentTable();
                         break;
                     case "airlinesTab":
                         filters.showAirlineFilters();
@@ -197,7 +210,7 @@ public class DataViewController {
                         sortColumnBox.setItems(FXCollections.observableList(Arrays.asList("Name", "Callsign", "Code", "Country")));
                         sortColumnBox.setValue("Name");
                         createNewButton.setText("+ New Airline");
-                        loadData();
+                        showCurrentTable();
                         break;
                     case "airportsTab":
                         detailRootController.setDetailsContentType("airport");
@@ -206,7 +219,7 @@ public class DataViewController {
                         sortColumnBox.setItems(FXCollections.observableList(Arrays.asList("Name", "City", "Country", "Code", "Altitude", "Timezone", "Routes")));
                         sortColumnBox.setValue("Name");
                         createNewButton.setText("+ New Airport");
-                        loadData();
+                        showCurrentTable();
                         break;
                     case "mapTab":
                         rootController.hideFilters();
@@ -221,6 +234,15 @@ public class DataViewController {
         }
     }
 
+    /**
+     * Loads the current table and marks it as shown. Only the shown table is re-queried when the filters or data
+     * change; the others are marked stale and catch up here when their tab is selected
+     */
+    private void showCurrentTable() {
+        loadData();
+        currentTableController.setShown(true);
+    }
+
     /**
      * Selects the tab in the tab pane that has the given Id. If there is no tab with the given id, no tab will be selected.
      * @param tabId The id of the tab to be selected
@@ -239,7 +261,7 @@ public class DataViewController {
      * @param disableButtonVal value for disabling switch
      * @param controller Table Controller
      */
-    public void setControlButtonsEnabled(int disableButtonVal, TableController controller) {
+    public void setControlButtonsEnabled(int disableButtonVal, TableController<?> controller) {
         if (controller == currentTableController) {
             switch (disableButtonVal) {
                 case 1:
@@ -263,6 +285,35 @@ public class DataViewController {
         }
     }
 
+    /**
+     * Shows which rows the table is showing out of how many, and which page it is on
+     *
+     * @param rowText   description of the rows shown, e.g. "Rows 1-500 of 61,432"
+     * @param page      number of the page shown, from 1
+     * @param pageCount number of pages, or -1 if the rows are still being counted
+     * @param controller Table Controller
+     */
+    public void setRowCount(String rowText, int page, int pageCount, TableController<?> controller) {
+        if (controller == currentTableController) {
+            rowCountLabel.setText(rowText);
+            pageField.setText(String.valueOf(page));
+            pageCountLabel.setText(pageCount < 0 ? "" : String.format("of %,d", pageCount));
+        }
+    }
+
+    /**
+     * Triggered when a page number is entered. Shows that page of the current table, or restores the current page
+     * number if what was entered is not a number
+     */
+    @FXML
+    private void jumpToPage() {
+        try {
+            currentTableController.goToPage(Integer.parseInt(pageField.getText().trim()), (int) staticRowsLoadedSlider.getValue());
+        } catch (NumberFormatException e) {
+            currentTableController.update((int) staticRowsLoadedSlider.getValue(), false, 'S');
+        }
+    }
+
     /**
      * Gets the number of rows currently set in the row slider
      *
@@ -272,6 +323,21 @@ public class DataViewController {
         return staticRowsLoadedSlider.getValue();
     }
 
+    /**
+     * Triggers when the 'Scroll all rows' box is toggled. Switches every table between showing pages of the slider's
+     * size and scrolling through every filtered row, which are loaded in blocks as they are scrolled to. Hidden tables
+     * switch when they are next shown
+     */
+    @FXML
+    private void scrollAllToggled() {
+        boolean virtualized = scrollAllCheckBox.isSelected();
+        rowsLoadedSlider.setDisable(virtualized);
+        pageField.setDisable(virtualized);
+        routeTableController.setVirtualized(virtualized);
+        airlineTableController.setVirtualized(virtualized);
+        airportTableController.setVirtualized(virtualized);
+    }
+
     /**
      * Triggers when the 'Next' button is pressed.
      * Calls update on the current tableController allowing the user to see the next chosen amount of objects
@@ -1,12 +1,27 @@
 package seng202.group8.viewcontrollers;
 
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.layout.VBox;
+import javafx.util.Duration;
+import seng202.group8.AlertHelper;
+import seng202.group8.data.filters.TextualFilter;
 import seng202.group8.datacontroller.FiltersController;
+import seng202.group8.datacontroller.FiltersController.FacetQuery;
+import seng202.group8.datacontroller.FiltersController.FacetTable;
+import seng202.group8.io.Database;
+import seng202.group8.viewcontrollers.filterviews.FilterView;
 import seng202.group8.viewcontrollers.filterviews.NumericFilterView;
 import seng202.group8.viewcontrollers.filterviews.TextualFilterView;
 
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * A controller for the Filters View component. This is the components that contains all the JavaFX filter components.
  * Responsible for displaying the relevant filters for each type of data.
@@ -29,49 +44,104 @@ public class FiltersViewController {
     private NumericFilterView priceFilterView = new NumericFilterView(filters.getPriceFilter());
     private NumericFilterView flightNumberFilterView = new NumericFilterView(filters.getRouteNumberFilter());
     private NumericFilterView durationFilterView = new NumericFilterView(filters.getDurationFilter());
+    private NumericFilterView distanceFilterView = new NumericFilterView(filters.getDistanceFilter());
+
+    // Option counts are worked out one at a time on this thread, off the JavaFX thread
+    private final ExecutorService countExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Filter option counter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong latestCount = new AtomicLong(); // Number of the newest count; older ones are dropped
+    private FacetTable shownTable = null; // Table whose filters are shown, or null if they are not counted
+
+    // Applies wait this long for further applies, so a burst of them notifies each observer once
+    private static final Duration APPLY_DELAY = Duration.millis(150);
+    private final PauseTransition applyDelay = new PauseTransition(APPLY_DELAY);
 
+    /**
+     * Applies the filters. The observers are notified once the filters have not been applied again for
+     * {@link #APPLY_DELAY}, so repeated applies are merged into a single update of each table and the map
+     */
     @FXML
     public void applyFilters() {
-        filters.notifyAllObservers();
+        applyDelay.setOnFinished(event -> {
+            filters.notifyAllObservers();
+            refreshOptionCounts();
+        });
+        applyDelay.playFromStart();
+    }
+
+    /**
+     * Counts how many results each option of the shown textual filters would give on a background thread, then
+     * shows the counts next to the options
+     */
+    private void refreshOptionCounts() {
+        long count = latestCount.incrementAndGet();
+        if (shownTable == null) {
+            return;
+        }
+
+        FacetQuery query = filters.createFacetQuery(shownTable); // Reads the filter views, so on this thread
+        countExecutor.execute(() -> {
+            if (count != latestCount.get()) {
+                return;
+            }
+            try {
+                Map<TextualFilter, Map<String, Integer>> counts = filters.countFacets(query, Database.getReadConnection());
+                Platform.runLater(() -> {
+                    if (count == latestCount.get()) {
+                        counts.forEach(TextualFilter::setOptionCounts);
+                    }
+                });
+            } catch (SQLException throwables) {
+                Platform.runLater(() -> {
+                    if (count == latestCount.get()) {
+                        AlertHelper.showErrorAlert(throwables, "Database error occurred while counting filter options");
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Shows the filters of a table on the filterPane, and counts their options
+     *
+     * @param table table the filters are for, or null if their options are not counted
+     * @param views filter views to show
+     */
+    private void showFilters(FacetTable table, FilterView... views) {
+        filterPane.getChildren().clear();
+        filterPane.getChildren().addAll(views);
+        shownTable = table;
+        refreshOptionCounts();
     }
 
     /**
      * Displays the filters relevant to filtering Airports on the filterPane
      */
     public void showAirportsFilters() {
-        filterPane.getChildren().clear();
-        filterPane.getChildren().add(countryFilterView);
-        filterPane.getChildren().add(flightNumberFilterView);
-        filterPane.getChildren().add(airportCodeFilterView);
-        filterPane.getChildren().add(airportNameFilterView);
+        showFilters(FacetTable.AIRPORT, countryFilterView, flightNumberFilterView, airportCodeFilterView, airportNameFilterView);
     }
 
     /**
      * Displays the filters relevant to filtering Airlines on the filterPane
      */
     public void showAirlineFilters() {
-        filterPane.getChildren().clear();
-        filterPane.getChildren().add(countryFilterView);
-        filterPane.getChildren().add(airlineCodeFilterView);
-        filterPane.getChildren().add(airlineNameFilterView);
+        showFilters(FacetTable.AIRLINE, countryFilterView, airlineCodeFilterView, airlineNameFilterView);
     }
 
     /**
      * Displays the filters relevant to filtering Flights on the filterPane
      */
     public void showFlightFilters() {
-        filterPane.getChildren().clear();
-        filterPane.getChildren().add(airlineNameFilterView);
-        filterPane.getChildren().add(startFilterView);
-        filterPane.getChildren().add(destinationFilterView);
-        filterPane.getChildren().add(priceFilterView);
-        filterPane.getChildren().add(durationFilterView);
+        showFilters(FacetTable.ROUTE, airlineNameFilterView, startFilterView, destinationFilterView, priceFilterView, durationFilterView, distanceFilterView);
     }
 
     /**
      * Displays the filters relevant to filtering the map on the filterPane
      */
     public void showMapFilters() {
-        filterPane.getChildren().clear();
+        showFilters(null);
     }
 }
@@ -0,0 +1,97 @@
+package seng202.group8.viewcontrollers;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Large amounts of data for the map, packed so that the page does not have to parse it as script.
+ * <p>
+ * Integers and doubles are written to two separate streams, which the page gets as base64 encoded little endian
+ * buffers and reads as an Int32Array and Float64Array (see `BulkReader` in helper.js). Strings, which are rarer, are
+ * kept in a JSON array. Each stream is read back in the order it was written.
+ */
+public class MapBulkData {
+    private int[] ints = new int[256];
+    private int intCount = 0;
+    private double[] doubles = new double[256];
+    private int doubleCount = 0;
+    private final List<String> strings = new ArrayList<>();
+
+    /**
+     * Adds an integer to the integer stream
+     *
+     * @param value value to add
+     * @return this, for chaining
+     */
+    public MapBulkData addInt(int value) {
+        if (intCount == ints.length) {
+            ints = Arrays.copyOf(ints, intCount * 2);
+        }
+        ints[intCount++] = value;
+        return this;
+    }
+
+    /**
+     * Adds a double to the double stream
+     *
+     * @param value value to add
+     * @return this, for chaining
+     */
+    public MapBulkData addDouble(double value) {
+        if (doubleCount == doubles.length) {
+            doubles = Arrays.copyOf(doubles, doubleCount * 2);
+        }
+        doubles[doubleCount++] = value;
+        return this;
+    }
+
+    /**
+     * Adds a string to the string stream
+     *
+     * @param value value to add. Null is sent as an empty string
+     * @return this, for chaining
+     */
+    public MapBulkData addString(String value) {
+        strings.add(value);
+        return this;
+    }
+
+    /**
+     * Gets the integer stream. Called by the page
+     *
+     * @return base64 encoded 32 bit little endian integers
+     */
+    public String getInts() {
+        ByteBuffer buffer = ByteBuffer.allocate(intCount * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asIntBuffer().put(ints, 0, intCount);
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+
+    /**
+     * Gets the double stream. Called by the page
+     *
+     * @return base64 encoded 64 bit little endian doubles
+     */
+    public String getDoubles() {
+        ByteBuffer buffer = ByteBuffer.allocate(doubleCount * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asDoubleBuffer().put(doubles, 0, doubleCount);
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+
+    /**
+     * Gets the string stream. Called by the page
+     *
+     * @return JSON array of strings
+     */
+    public String getStrings() {
+        StringBuilder builder = new StringBuilder("[");
+        for (String string : strings) {
+            builder.append(builder.length() == 1 ? "" : ",").append(MapModel.jsonString(string));
+        }
+        return builder.append(']').toString();
+    }
+}
@@ -0,0 +1,271 @@
+package seng202.group8.viewcontrollers;
+
+import seng202.group8.data.Airport;
+import seng202.group8.data.Route;
+import seng202.group8.data.TripFlight;
+import seng202.group8.data.network.FlightNetwork;
+import seng202.group8.data.network.NetworkTiles;
+
+import java.util.*;
+
+/**
+ * Java side copy of what the map is showing, used to send the map only what has changed.
+ * <p>
+ * Each airport, route and flight is kept as the JSON the map was last sent for it. Airports and routes are keyed by
+ * their database ID and flights by their position in the trip. {@link #prepare} compares the new contents against
+ * this and gives a delta for `applyMapDelta` in main.js, which is recorded with {@link #commit} once it is sent:
+ * <pre>
+ * {"airports": {"remove": [id, ...], "put": [airport, ...]},
+ *  "routes":   {"remove": [id, ...], "put": [route, ...]},
+ *  "flights":  {"length": n, "put": [{"index": i, "flight": flight}, ...]}}
+ * </pre>
+ * A put replaces any existing item with the same key. Flights at or after `length` are removed.
+ */
+public class MapModel {
+    /**
+     * Contents of the map as JSON. Never modified once made, so it can be read from any thread
+     */
+    private static class Contents {
+        private static final Contents EMPTY = new Contents(new HashMap<>(), new HashMap<>(), new ArrayList<>());
+
+        private final Map<Integer, String> airports;
+        private final Map<Integer, String> routes;
+        private final List<String> flights;
+
+        private Contents(Map<Integer, String> airports, Map<Integer, String> routes, List<String> flights) {
+            this.airports = airports;
+            this.routes = routes;
+            this.flights = flights;
+        }
+    }
+
+    /**
+     * A delta worked out by {@link #prepare}, and the contents the map will have once it is applied
+     */
+    public static class Update {
+        private final Contents base;
+        private final Contents contents;
+        private final String delta;
+
+        private Update(Contents base, Contents contents, String delta) {
+            this.base = base;
+            this.contents = contents;
+            this.delta = delta;
+        }
+
+        /**
+         * Gets the delta to send to the map
+         *
+         * @return the delta as a JSON string, or null if nothing changed
+         */
+        public String getDelta() {
+            return delta;
+        }
+    }
+
+    private volatile Contents shown = Contents.EMPTY;
+
+    /**
+     * Forgets everything the map was sent, e.g. after the page is reloaded
+     */
+    public void clear() {
+        shown = Contents.EMPTY;
+    }
+
+    /**
+     * Works out what needs to be sent to the map to show the given contents, without changing what the model thinks
+     * the map is showing. Safe to call off the JavaFX thread
+     *
+     * @param newAirports airports to show
+     * @param newRoutes   routes to show
+     * @param newFlights  flights of the trip, in order
+     * @return the update, to be passed to {@link #commit(Update)} once its delta is sent
+     */
+    public Update prepare(Collection<Airport> newAirports, Collection<Route> newRoutes, List<TripFlight> newFlights) {
+        Contents base = shown;
+        Map<Integer, String> airportsJson = new HashMap<>();
+        for (Airport airport : newAirports) {
+            airportsJson.put(airport.getId(), airportToJson(airport));
+        }
+        Map<Integer, String> routesJson = new HashMap<>();
+        for (Route route : newRoutes) {
+            routesJson.put(route.getId(), routeToJson(route));
+        }
+
+        List<String> flightsJson = new ArrayList<>(newFlights.size());
+        StringBuilder flightPuts = new StringBuilder();
+        for (int i = 0; i < newFlights.size(); i++) {
+            String json = flightToJson(newFlights.get(i));
+            flightsJson.add(json);
+            if (i >= base.flights.size() || !base.flights.get(i).equals(json)) {
+                appendSeparator(flightPuts).append("{\"index\":").append(i).append(",\"flight\":").append(json).append('}');
+            }
+        }
+        boolean flightsRemoved = base.flights.size() > newFlights.size();
+
+        Contents contents = new Contents(airportsJson, routesJson, flightsJson);
+        String airportDelta = diff(base.airports, airportsJson);
+        String routeDelta = diff(base.routes, routesJson);
+        if (airportDelta == null && routeDelta == null && flightPuts.length() == 0 && !flightsRemoved) {
+            return new Update(base, contents, null);
+        }
+
+        return new Update(base, contents, "{\"airports\":" + (airportDelta == null ? "{}" : airportDelta) +
+                ",\"routes\":" + (routeDelta == null ? "{}" : routeDelta) +
+                ",\"flights\":{\"length\":" + newFlights.size() + ",\"put\":[" + flightPuts + "]}}");
+    }
+
+    /**
+     * Records that the delta of an update has been sent to the map
+     *
+     * @param update update that was sent
+     * @return false if the map changed since the update was prepared, in which case the update is ignored
+     */
+    public boolean commit(Update update) {
+        if (update.base != shown) {
+            return false;
+        }
+        shown = update.contents;
+        return true;
+    }
+
+    /**
+     * Works out the removes and puts needed to turn one set of items into another
+     *
+     * @param previous JSON of each item the map has, by ID
+     * @param current  JSON of each item the map should have, by ID
+     * @return delta object with "remove" and "put" arrays, or null if they are the same
+     */
+    private static String diff(Map<Integer, String> previous, Map<Integer, String> current) {
+        StringBuilder removes = new StringBuilder();
+        for (Integer id : previous.keySet()) {
+            if (!current.containsKey(id)) {
+                appendSeparator(removes).append(id);
+            }
+        }
+        StringBuilder puts = new StringBuilder();
+        for (Map.Entry<Integer, String> entry : current.entrySet()) {
+            if (!entry.getValue().equals(previous.get(entry.getKey()))) {
+                appendSeparator(puts).append(entry.getValue());
+            }
+        }
+        if (removes.length() == 0 && puts.length() == 0) {
+            return null;
+        }
+        return "{\"remove\":[" + removes + "],\"put\":[" + puts + "]}";
+    }
+
+    /**
+     * Adds a comma to a JSON array being built if it already has an element
+     */
+    private static StringBuilder appendSeparator(StringBuilder builder) {
+        if (builder.length() != 0) {
+            builder.append(',');
+        }
+        return builder;
+    }
+
+    /**
+     * Creates the JSON representation of an airport
+     *
+     * @param airport airport to convert
+     * @return JSON object for the airport
+     */
+    public static String airportToJson(Airport airport) {
+        return "{\"id\":" + airport.getId() +
+                ",\"name\":" + jsonString(airport.getName()) +
+                ",\"iata\":" + jsonString(airport.getIata()) +
+                ",\"icao\":" + jsonString(airport.getIcao()) +
+                ",\"lat\":" + airport.getLatitude() +
+                ",\"lng\":" + airport.getLongitude() + "}";
+    }
+
+    /**
+     * Creates the JSON representation of a route
+     *
+     * @param route route to convert
+     * @return JSON object for the route
+     */
+    public static String routeToJson(Route route) {
+        StringBuilder planes = new StringBuilder();
+        for (String plane : route.getPlaneTypes()) {
+            appendSeparator(planes).append(jsonString(plane));
+        }
+        return "{\"id\":" + route.getId() +
+                ",\"src\":" + jsonString(route.getSourceAirportCode()) +
+                ",\"dst\":" + jsonString(route.getDestinationAirportCode()) +
+                ",\"airline\":" + jsonString(route.getAirlineCode()) +
+                ",\"duration\":" + route.getFlightDuration() +
+                ",\"planes\":[" + planes + "]}";
+    }
+
+    /**
+     * Creates the JSON representation of a flight
+     *
+     * @param flight flight to convert
+     * @return JSON object for the flight
+     */
+    public static String flightToJson(TripFlight flight) {
+        return "{\"src\":" + jsonString(flight.getSourceCode()) +
+                ",\"dst\":" + jsonString(flight.getDestinationCode()) +
+                ",\"airline\":" + jsonString(flight.getAirlineCode()) +
+                ",\"takeoff\":" + flight.getUTCTakeoffDateTime().toEpochSecond() * 1000 + "}";
+    }
+
+    /**
+     * Adds one tile of the whole network layer to data for `addNetworkTiles` in main.js. Each tile is written as:
+     * <pre>
+     * ints:    zoom, x, y, clusterCount, bundleCount,
+     *          then id, airports for each cluster, then fromId, toId, routes for each bundle
+     * doubles: lat, lng for each cluster, then fromLat, fromLng, toLat, toLng for each bundle
+     * strings: label for each cluster
+     * </pre>
+     *
+     * @param data  data to add to
+     * @param level clusters and bundles of the zoom level the tile is in
+     * @param x     column of the tile
+     * @param y     row of the tile
+     */
+    public static void appendNetworkTile(MapBulkData data, NetworkTiles.Level level, int x, int y) {
+        FlightNetwork network = level.getNetwork();
+        int[] clusters = level.getTileClusters(x, y);
+        int[] bundles = level.getTileBundles(x, y);
+        data.addInt(level.getZoom()).addInt(x).addInt(y).addInt(clusters.length).addInt(bundles.length);
+        for (int c : clusters) {
+            data.addInt(c).addInt(level.getClusterSize(c));
+            data.addDouble(level.getClusterLatitude(c)).addDouble(level.getClusterLongitude(c));
+            data.addString(network.getAirportCode(level.getClusterLabel(c)));
+        }
+        for (int b : bundles) {
+            int from = level.getBundleFrom(b);
+            int to = level.getBundleTo(b);
+            data.addInt(from).addInt(to).addInt(level.getBundleSize(b));
+            data.addDouble(level.getClusterLatitude(from)).addDouble(level.getClusterLongitude(from));
+            data.addDouble(level.getClusterLatitude(to)).addDouble(level.getClusterLongitude(to));
+        }
+    }
+
+    /**
+     * Escapes a string for use in JSON. The result is also safe to use in JS source
+     *
+     * @param str string, or null
+     * @return quoted and escaped string; null becomes an empty string
+     */
+    public static String jsonString(String str) {
+        if (str == null) {
+            return "\"\"";
+        }
+        StringBuilder builder = new StringBuilder(str.length() + 2).append('"');
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.append('"').toString();
+    }
+}
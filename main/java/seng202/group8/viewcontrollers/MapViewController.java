@@ -1,26 +1,41 @@
 package seng202.group8.viewcontrollers;
 
 import com.sun.javafx.webkit.WebConsoleListener;
+import javafx.application.Platform;
 import javafx.beans.value.ObservableValue;
 import javafx.concurrent.Worker.State;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.Tab;
+import javafx.scene.control.ToggleButton;
 import javafx.scene.web.WebEngine;
 import javafx.scene.web.WebView;
 import netscape.javascript.JSObject;
+import org.javatuples.Triplet;
 import seng202.group8.AlertHelper;
 import seng202.group8.data.Airport;
 import seng202.group8.data.Route;
 import seng202.group8.data.Trip;
 import seng202.group8.data.TripFlight;
+import seng202.group8.data.filters.FilterChangeObserver;
+import seng202.group8.data.network.FlightNetwork;
+import seng202.group8.data.network.NetworkTiles;
 import seng202.group8.datacontroller.AirlineDataController;
 import seng202.group8.datacontroller.AirportDataController;
+import seng202.group8.datacontroller.DataController;
+import seng202.group8.datacontroller.DataObserver;
+import seng202.group8.datacontroller.FiltersController;
+import seng202.group8.datacontroller.NetworkController;
 import seng202.group8.datacontroller.RouteDataController;
 import seng202.group8.datacontroller.TripDataController;
+import seng202.group8.io.Database;
 
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Controller for the map view. Is essentially a JS interface for a FX WebView, using the Google Maps API.
@@ -35,13 +50,49 @@ public class MapViewController implements TripDataController.CurrentTripObserver
     private WebView webView;
     @FXML
     private Button reloadButton;
+    @FXML
+    private ToggleButton networkButton;
 
     private WebEngine engine;
     private boolean pageLoaded = false;
 
     private Timer pageLoadFailsTimer = null;
 
-    private String previousJS = ""; // previous JS sent; slightly reduces load on map
+    private final MapModel mapModel = new MapModel(); // What the map is showing, so only changes are sent to it
+
+    // Map updates are built one at a time on this thread, off the JavaFX thread. Only the thread itself uses the caches
+    private final ExecutorService updateExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Map update builder");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong latestUpdate = new AtomicLong(); // Number of the newest trip change; older ones are dropped
+
+    // Route and airport lookups of the flights in the trip; cleared whenever routes or airports change
+    private final HashMap<String, Route> routeCache = new HashMap<>();
+    private final HashMap<String, Airport> airportCache = new HashMap<>();
+    private final DataObserver<Route> routeObserver = change -> {
+        updateExecutor.execute(routeCache::clear);
+        Platform.runLater(this::refreshNetworkLayer);
+    };
+    private final DataObserver<Airport> airportObserver = change -> {
+        updateExecutor.execute(() -> {
+            routeCache.clear();
+            airportCache.clear();
+        });
+        Platform.runLater(this::refreshNetworkLayer);
+    };
+
+    // Whole network layer. The tiles are built on the update thread for the network and filters they were made from
+    private boolean networkMode = false;
+    private final AtomicLong networkVersion = new AtomicLong(); // Bumped when the network or filters change
+    private NetworkTiles networkTiles = null;
+    private String networkTilesFilters = null;
+    private final FilterChangeObserver filterObserver = this::refreshNetworkLayer;
+
+    // Data waiting for the page to take it, by ID. Only used on the JavaFX thread
+    private final HashMap<Integer, MapBulkData> bulkData = new HashMap<>();
+    private int nextBulkDataId = 0;
 
     @FXML
     public void initialize() {
@@ -51,6 +102,9 @@ public class MapViewController implements TripDataController.CurrentTripObserver
         airlineDC = AirlineDataController.getSingleton();
         tripDC = TripDataController.getSingleton();
         tripDC.subscribeToCurrentTrip(this);
+        routeDC.addObserver(DataController.OBSERVE_ALL, routeObserver);
+        airportDC.addObserver(DataController.OBSERVE_ALL, airportObserver);
+        FiltersController.getSingleton().addObserver(filterObserver);
 
         //engine.load("https://www.youtube.com/watch?v=dQw4w9WgXcQ");
 
@@ -104,6 +158,34 @@ public class MapViewController implements TripDataController.CurrentTripObserver
         loadPage();
     }
 
+    @FXML
+    private void networkButtonPressed() {
+        setNetworkMode(networkButton.isSelected());
+    }
+
+    /**
+     * Shows or hides every airport and route matching the current filters, clustered to suit the zoom level
+     *
+     * @param enabled true to show the whole network
+     */
+    public void setNetworkMode(boolean enabled) {
+        networkMode = enabled;
+        networkVersion.incrementAndGet();
+        if (pageLoaded) {
+            engine.executeScript(enabled ? "showNetworkLayer(" + NetworkTiles.MAX_ZOOM + ");" : "hideNetworkLayer();");
+        }
+    }
+
+    /**
+     * Makes the map ask for the network layer again after the network or filters change
+     */
+    private void refreshNetworkLayer() {
+        networkVersion.incrementAndGet();
+        if (pageLoaded && networkMode) {
+            engine.executeScript("showNetworkLayer(" + NetworkTiles.MAX_ZOOM + ");");
+        }
+    }
+
     /**
      * Some kind of magic that allows JS to call Java methods
      */
@@ -116,240 +198,253 @@ public class MapViewController implements TripDataController.CurrentTripObserver
                 pageLoadFailsTimer = null;
             }
             // If trip id set before the page loads, it will error out, so need this to set trip when it loads
+            mapModel.clear(); // The page starts out empty
+            bulkData.clear();
             sendTripToJS(tripDC.getCurrentlyOpenTrip());
+            setNetworkMode(networkMode);
         }
-    }
 
+        /**
+         * Asks for tiles of the whole network layer, which are sent to `addNetworkTiles` once they are built
+         *
+         * @param zoom  zoom level the tiles are for
+         * @param tiles tiles wanted, as "x/y" separated by commas
+         */
+        public void requestNetworkTiles(int zoom, String tiles) {
+            if (!networkMode) {
+                return;
+            }
+            FiltersController filters = FiltersController.getSingleton();
+            String airportWhere = AirportDataController.generateFilterWhereClause(filters);
+            String routeWhere = RouteDataController.generateFilterWhereClause(filters);
+            long version = networkVersion.get();
+            updateExecutor.execute(() -> buildNetworkTiles(version, zoom, tiles, airportWhere, routeWhere));
+        }
 
-    /**
-     * Create as JS representation of airport
-     *
-     * @param airport airport object to convert
-     * @return JS object for the airport as a string
-     */
-    protected String airportToJs(Airport airport) {
-        return String.format("new Airport(%s, %s, %s, %f, %f)",
-                escapeJSString(airport.getName()),
-                escapeJSString(airport.getIata()),
-                escapeJSString(airport.getIcao()),
-                airport.getLatitude(),
-                airport.getLongitude()
-        );
+        /**
+         * Hands over data the page was told is ready. Each piece of data can only be taken once
+         *
+         * @param id ID the page was given for the data
+         * @return the data, or null if there is none with the ID
+         */
+        public MapBulkData takeBulkData(int id) {
+            return bulkData.remove(id);
+        }
     }
 
-    /**
-     * Create as JS representation of the route
-     *
-     * @param route route object to convert
-     * @return JS object for the route as a string
-     */
-    protected String routeToJs(Route route) {
-        return String.format("new Route(%s, %s, %s, %d, %s)",
-                escapeJSString(route.getSourceAirportCode()),
-                escapeJSString(route.getDestinationAirportCode()),
-                escapeJSString(route.getAirlineCode()),
-                route.getFlightDuration(),
-                toArray(route.getPlaneTypes(), val -> escapeJSString(val))
-        );
-    }
 
     /**
-     * Create as JS representation of the flight
-     *
-     * @param flight flight object to convert
-     * @return JS object for the flight as a string
-     */
-    protected String flightToJs(TripFlight flight) {
-        return String.format("new Flight(%s, %s, %s, %s, new Date(%d))",
-                escapeJSString(null), // comment not used by JS
-                escapeJSString(flight.getSourceCode()),
-                escapeJSString(flight.getDestinationCode()),
-                escapeJSString(flight.getAirlineCode()),
-                flight.getUTCTakeoffDateTime().toEpochSecond() * 1000
-        );
+     * Refreshes the map view
+     * **/
+    public void refreshMap() {
+        sendTripToJS(tripDC.getCurrentlyOpenTrip());
     }
 
     /**
-     * Create as JS representation of the trip
-     *
-     * @param trip trip object to convert
-     * @return JS object for the trip as a string
+     * Gets the key a route is cached under
      */
-    protected String tripToJs(Trip trip) {
-        return String.format("new Trip(%s, %s, %s)",
-                escapeJSString(null), // name not used by JS
-                escapeJSString(null), // comment not used by JS
-                toArray(trip.getFlights(), flight -> flightToJs(flight))
-        );
+    private static String routeKey(String sourceCode, String destinationCode, String airlineCode) {
+        return sourceCode + " " + destinationCode + " " + airlineCode;
     }
 
     /**
-     * Escapes string for JS use
+     * Loads the routes of the given flights and their airports into the caches, looking up everything that is not
+     * already cached in batches. Routes and airports that do not exist are cached as null
      *
-     * @param str string, or null
-     * @return escaped string
+     * @param connection connection to read through
+     * @param flights    flights to load the routes of
+     * @throws SQLException if error from database
      */
-    protected String escapeJSString(String str) {
-        if (str == null) {
-            return "\"\"";
+    private void loadRoutesAndAirports(Connection connection, List<TripFlight> flights) throws SQLException {
+        LinkedHashMap<String, Triplet<String, String, String>> missingRoutes = new LinkedHashMap<>();
+        for (TripFlight flight : flights) {
+            String key = routeKey(flight.getSourceCode(), flight.getDestinationCode(), flight.getAirlineCode());
+            if (!routeCache.containsKey(key)) {
+                missingRoutes.put(key, new Triplet<>(flight.getSourceCode(), flight.getDestinationCode(), flight.getAirlineCode()));
+            }
+        }
+        if (!missingRoutes.isEmpty()) {
+            for (Route route : routeDC.getEntities(connection, new ArrayList<>(missingRoutes.values()))) {
+                routeCache.put(routeKey(route.getSourceAirportCode(), route.getDestinationAirportCode(), route.getAirlineCode()), route);
+            }
+            for (String key : missingRoutes.keySet()) {
+                routeCache.putIfAbsent(key, null);
+            }
         }
-        return "\"" + str
-                .replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\t", "\\t")
-                + "\"";
-        // Prevent quotes in name causing JS injection, and replace
-    }
 
-    /**
-     * Refreshes the map view
-     * **/
-    public void refreshMap() {
-        sendTripToJS(tripDC.getCurrentlyOpenTrip());
+        LinkedHashSet<String> missingAirports = new LinkedHashSet<>();
+        for (TripFlight flight : flights) {
+            Route route = routeCache.get(routeKey(flight.getSourceCode(), flight.getDestinationCode(), flight.getAirlineCode()));
+            if (route != null) {
+                for (String code : new String[]{route.getSourceAirportCode(), route.getDestinationAirportCode()}) {
+                    if (!airportCache.containsKey(code)) {
+                        missingAirports.add(code);
+                    }
+                }
+            }
+        }
+        if (!missingAirports.isEmpty()) {
+            for (Airport airport : airportDC.getEntities(connection, missingAirports)) {
+                for (String code : new String[]{airport.getIata(), airport.getIcao()}) {
+                    if (code != null && missingAirports.contains(code)) {
+                        airportCache.putIfAbsent(code, airport);
+                    }
+                }
+            }
+            for (String code : missingAirports) {
+                airportCache.putIfAbsent(code, null);
+            }
+        }
     }
 
     /**
-     * Interface which converts an object to a JS string
+     * Attempts to show the trip in the map view. What has changed since the map was last updated is worked out in the
+     * background; only sending it to the JS running on the page happens on the JavaFX thread. If the trip changes
+     * again before that, the older update is dropped
      *
-     * @param <T> type of object to convert
+     * @param trip trip to show in the map view. May be null
      */
-    public interface ToJSString<T> {
-        /**
-         * Method which converts the given object to the string
-         *
-         * @param val object to convert
-         * @return JS string representation of the object
-         */
-        String toJS(T val);
+    protected void sendTripToJS(Trip trip) {
+        if (!pageLoaded) {
+            // setTrip will run with this ID when the page loads
+            return;
+        }
+
+        // Copy the flights, as the trip may be edited while the update is being built
+        List<TripFlight> flights = trip == null ? Collections.emptyList() : new ArrayList<>(trip.getFlights());
+        long update = latestUpdate.incrementAndGet();
+        updateExecutor.execute(() -> buildUpdate(update, flights));
     }
 
     /**
-     * Converts the given array of elements into a JS array
+     * Works out what to send to the map to show the given flights, then sends it on the JavaFX thread if no newer
+     * trip change has been made. Runs on the update thread
      *
-     * @param elements  elements to convert
-     * @param converter method which converts an element into its JS representation
-     * @param <T>       type of the element
-     * @return array of elements as a JS array
+     * @param update  number of the trip change this is for
+     * @param flights flights of the trip
      */
-    protected <T> String toArray(T[] elements, ToJSString<T> converter) {
-        ArrayList<T> list = new ArrayList<>(elements.length);
-        for (int i = 0; i < elements.length; i++) {
-            list.add(elements[i]);
+    private void buildUpdate(long update, List<TripFlight> flights) {
+        if (update != latestUpdate.get()) {
+            return; // A newer trip change is queued
         }
-        return toArray(list, converter);
-    }
 
+        try {
+            loadRoutesAndAirports(Database.getReadConnection(), flights);
+            HashMap<Integer, Airport> airports = new HashMap<>();
+            HashMap<Integer, Route> routes = new HashMap<>();
+            for (TripFlight flight : flights) {
+                Route route = routeCache.get(routeKey(flight.getSourceCode(), flight.getDestinationCode(), flight.getAirlineCode()));
+                if (route != null) {
+                    routes.put(route.getId(), route);
+                    Airport source = airportCache.get(route.getSourceAirportCode());
+                    if (source != null) airports.put(source.getId(), source);
 
-    /**
-     * Converts the given list of elements into a JS array
-     *
-     * @param elements  elements to convert
-     * @param converter method which converts an element into its JS representation
-     * @param <T>       type of the element
-     * @return array of elements as a JS array
-     */
-    protected <T> String toArray(List<T> elements, ToJSString<T> converter) {
-        int numElements = elements.size();
-
-        StringBuilder output = new StringBuilder();
-        output.append("[");
-        for (int i = 0; i < numElements; i++) {
-            output.append(converter.toJS(elements.get(i)));
-            if (i + 1 != numElements) {
-                output.append(", ");
+                    Airport destination = airportCache.get(route.getDestinationAirportCode());
+                    if (destination != null) airports.put(destination.getId(), destination);
+                }
             }
-        }
-        output.append("]");
-        return output.toString();
-    }
 
-    /**
-     * Converts the given list of strings into a JS array
-     *
-     * @param elements  elements to convert
-     * @return array of elements as a JS array
-     */
-    protected String toArray(List<String> elements) {
-        int numElements = elements.size();
-
-        StringBuilder output = new StringBuilder();
-        output.append("[");
-        for (int i = 0; i < numElements; i++) {
-            output.append(elements.get(i));
-            if (i + 1 != numElements) {
-                output.append(", ");
+            MapModel.Update mapUpdate = mapModel.prepare(airports.values(), routes.values(), flights);
+            if (mapUpdate.getDelta() != null) {
+                Platform.runLater(() -> {
+                    if (update == latestUpdate.get() && mapModel.commit(mapUpdate)) {
+                        engine.executeScript("applyMapDelta(" + mapUpdate.getDelta() + ");");
+                    }
+                });
             }
+        } catch (SQLException throwables) {
+            Platform.runLater(() -> {
+                if (update == latestUpdate.get()) {
+                    AlertHelper.showErrorAlert(throwables, "Database error occurred while updating map view");
+                }
+            });
         }
-        output.append("]");
-        return output.toString();
     }
 
-
     /**
-     * Attempts to show the trip in the map view, sending the data to the JS running on the page
+     * Packs tiles of the whole network layer and sends them to the map on the JavaFX thread, unless
+     * the network or filters have changed since they were asked for. Runs on the update thread
      *
-     * @param trip trip to show in the map view. May be null
+     * @param version      network layer version the tiles were asked for in
+     * @param zoom         zoom level of the tiles
+     * @param tiles        tiles wanted, as "x/y" separated by commas
+     * @param airportWhere airport filter clause at the time of the request
+     * @param routeWhere   route filter clause at the time of the request
      */
-    protected void sendTripToJS(Trip trip) {
-        if (!pageLoaded) {
-            // setTrip will run with this ID when the page loads
+    private void buildNetworkTiles(long version, int zoom, String tiles, String airportWhere, String routeWhere) {
+        if (version != networkVersion.get()) {
             return;
         }
 
         try {
-            if (trip == null) {
-                String js = "setData([], [], new Trip('', '', []))";
-
-                if (!js.equals(previousJS)) {
-                    previousJS = js;
-                    engine.executeScript(js);
-                }
-                return;
+            Connection connection = Database.getReadConnection(); // The update thread's own, so it never shares one
+            FlightNetwork network = NetworkController.getSingleton().getNetwork(connection);
+            String filters = airportWhere + "\n" + routeWhere;
+            if (networkTiles == null || networkTiles.getNetwork() != network || !filters.equals(networkTilesFilters)) {
+                networkTiles = filterNetwork(connection, network, airportWhere, routeWhere);
+                networkTilesFilters = filters;
             }
 
-            HashSet<Airport> airports = new HashSet<>();
-            HashSet<Route> routes = new HashSet<>();
-
-            for (TripFlight flight : trip.getFlights()) {
-                Route route = routeDC.getEntity(flight.getSourceCode(), flight.getDestinationCode(), flight.getAirlineCode());
-                if (route != null) {
-                    routes.add(route);
-                    Airport source = airportDC.getEntity(route.getSourceAirportCode());
-                    if (source != null) airports.add(source);
-
-                    Airport destination = airportDC.getEntity(route.getDestinationAirportCode());
-                    if (destination != null) airports.add(destination);
+            NetworkTiles.Level level = networkTiles.getLevel(zoom);
+            int size = 1 << level.getZoom();
+            MapBulkData data = new MapBulkData();
+            int count = 0;
+            for (String tile : tiles.split(",")) {
+                String[] coordinates = tile.split("/");
+                if (coordinates.length != 2) {
+                    continue;
+                }
+                int x = Integer.parseInt(coordinates[0]);
+                int y = Integer.parseInt(coordinates[1]);
+                if (x >= 0 && x < size && y >= 0 && y < size) {
+                    MapModel.appendNetworkTile(data, level, x, y);
+                    count++;
                 }
             }
 
-            ArrayList<String> airportsSorted = new ArrayList<>(airports.size());
-            for (Airport airport: airports) {
-                airportsSorted.add(airportToJs(airport));
-            }
-            // HashSet does not offer stable ordering, so need to sort so string comparison of JS stays the same across function calls given the same arguments
-            Collections.sort(airportsSorted);
+            int tileCount = count;
+            Platform.runLater(() -> {
+                if (version == networkVersion.get() && networkMode) {
+                    // The page pulls the data rather than having it pasted into a script
+                    int id = nextBulkDataId++;
+                    bulkData.put(id, data);
+                    engine.executeScript("addNetworkTiles(" + id + ", " + tileCount + ");");
+                }
+            });
+        } catch (SQLException throwables) {
+            Platform.runLater(() -> {
+                if (version == networkVersion.get()) {
+                    AlertHelper.showErrorAlert(throwables, "Database error occurred while loading the network map");
+                }
+            });
+        }
+    }
 
-            ArrayList<String> routesSorted = new ArrayList<>(routes.size());
-            for (Route route: routes) {
-                routesSorted.add(routeToJs(route));
+    /**
+     * Picks out the airports and routes of a network matching the filters
+     *
+     * @param connection   connection to read the filtered IDs through
+     * @param network      the whole network
+     * @param airportWhere airport filter clause
+     * @param routeWhere   route filter clause
+     * @return view of the matching airports, and the matching routes between them
+     * @throws SQLException if error from database
+     */
+    private static NetworkTiles filterNetwork(Connection connection, FlightNetwork network, String airportWhere, String routeWhere) throws SQLException {
+        boolean[] airportShown = new boolean[network.getAirportCount()];
+        for (int id : AirportDataController.getFilteredAirportIds(connection, airportWhere)) {
+            int airport = network.getAirportIndexById(id);
+            if (airport != -1) {
+                airportShown[airport] = true;
             }
-            Collections.sort(routesSorted);
-
-            String js = "setData(" +
-                    toArray(airportsSorted) + "," +
-                    toArray(routesSorted) + "," +
-                    tripToJs(trip) +
-                    ");";
+        }
 
-            if (!js.equals(previousJS)) {
-                previousJS = js;
-                engine.executeScript(js);
-            }
-        } catch (SQLException throwables) {
-            AlertHelper.showErrorAlert(throwables, "Database error occurred while updating map view");
+        int[] routeIds = RouteDataController.getFilteredRouteIds(connection, routeWhere);
+        boolean[] edgeShown = new boolean[network.getEdgeCount()];
+        for (int edge = 0; edge < edgeShown.length; edge++) {
+            edgeShown[edge] = Arrays.binarySearch(routeIds, network.getEdgeRouteId(edge)) >= 0;
         }
+        return new NetworkTiles(network, airportShown, edgeShown);
     }
 
     /**
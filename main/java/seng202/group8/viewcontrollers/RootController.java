@@ -4,7 +4,9 @@ import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.SimpleDoubleProperty;
+import javafx.beans.value.ObservableValue;
 import javafx.concurrent.Task;
+import javafx.concurrent.WorkerStateEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.geometry.Insets;
@@ -22,8 +24,15 @@ import org.javatuples.Quartet;
 import seng202.group8.AlertHelper;
 import seng202.group8.Main;
 import seng202.group8.data.Trip;
+import seng202.group8.datacontroller.AirlineDataController;
+import seng202.group8.datacontroller.AirportDataController;
+import seng202.group8.datacontroller.DataController;
+import seng202.group8.datacontroller.FiltersController;
+import seng202.group8.datacontroller.RouteDataController;
 import seng202.group8.io.Database;
 import seng202.group8.io.Import;
+import seng202.group8.io.IndexAdvisor;
+import seng202.group8.io.QueryStatistics;
 import seng202.group8.viewcontrollers.detailcontrollers.DetailRootController;
 import seng202.group8.viewcontrollers.dialogs.CreditDialog;
 
@@ -32,7 +41,6 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Paths;
-import java.sql.SQLException;
 import java.util.Optional;
 
 /**
@@ -70,8 +78,68 @@ public class RootController extends Application {
 
     private FileChooser fileChooser = new FileChooser();
 
+    // Database opened once the window can show the progress of its migrations, or null if it is already open
+    private static URI databaseToMigrate = null;
+
+    /**
+     * Sets a database to open on start up, whose schema migrations are applied in the background behind a progress
+     * dialog before the main window is shown. Must be called before {@link #main(String[])}
+     *
+     * @param uri path of the database
+     */
+    public static void setDatabaseToMigrate(URI uri) {
+        databaseToMigrate = uri;
+    }
+
     @Override
     public void start(Stage primaryStage) throws IOException {
+        // Observers update the UI, so change events are delivered on the JavaFX thread, merging those raised meanwhile
+        DataController.setNotificationExecutor(Platform::runLater);
+        if (databaseToMigrate == null) {
+            // The filters are made from every route, so their options are read off the JavaFX thread first
+            Task<FiltersController.FilterOptions> filterOptions = Database.loadFilterOptionsInBackground();
+            filterOptions.addEventHandler(WorkerStateEvent.WORKER_STATE_SUCCEEDED,
+                    event -> FiltersController.getSingleton(filterOptions.getValue()));
+            // If they could not be read, the filters read them again when the window is made, and show the error
+            filterOptions.addEventHandler(WorkerStateEvent.WORKER_STATE_SUCCEEDED, event -> showMainWindowOrAlert(primaryStage));
+            filterOptions.addEventHandler(WorkerStateEvent.WORKER_STATE_FAILED, event -> showMainWindowOrAlert(primaryStage));
+            return;
+        }
+
+        Task<Database.PreparedDatabase> task = Database.prepareDatabaseInBackground(databaseToMigrate);
+        Dialog<Void> loadingDialog = showLoadingDialog("Upgrading Database",
+                "Upgrading '" + Paths.get(databaseToMigrate).getFileName() + "'...", task.progressProperty());
+        task.setOnSucceeded(event -> {
+            Database.switchToPreparedDatabase(task.getValue());
+            closeLoadingDialog(loadingDialog);
+            showMainWindowOrAlert(primaryStage);
+        });
+        task.setOnFailed(event -> {
+            closeLoadingDialog(loadingDialog);
+            Database.exitProgramOnSetDatabasePathException(task.getException());
+        });
+    }
+
+    /**
+     * Loads and shows the main window, telling the user if it could not be loaded. The database must be open
+     *
+     * @param primaryStage stage to show the window in
+     */
+    private void showMainWindowOrAlert(Stage primaryStage) {
+        try {
+            showMainWindow(primaryStage);
+        } catch (IOException e) {
+            AlertHelper.showErrorAlertIOErrorLoadingFXML(e, "Could not load the main window");
+        }
+    }
+
+    /**
+     * Loads and shows the main window. The database must be open
+     *
+     * @param primaryStage stage to show the window in
+     * @throws IOException if the window could not be loaded
+     */
+    private void showMainWindow(Stage primaryStage) throws IOException {
         Parent root = FXMLLoader.load(getClass().getResource("/seng202/group8/root.fxml"));
         primaryStage.setTitle("M.A.T.T.I.A.S");
         primaryStage.setScene(new Scene(root, 1250, 768));
@@ -115,6 +183,28 @@ public class RootController extends Application {
         CreditDialog.showCredits();
     }
 
+    /**
+     * Shows the statements that have taken the most time so far, to help track down slow queries
+     */
+    @FXML
+    private void showQueryDiagnostics() {
+        Alert alert = AlertHelper.generateAlertDialog(Alert.AlertType.INFORMATION,
+                "Query Diagnostics",
+                "Slowest statements by total time",
+                String.format("Statements slower than %d ms are logged with their query plan to '%s'",
+                        QueryStatistics.getSlowQueryThresholdMillis(),
+                        QueryStatistics.SLOW_QUERY_LOG_PATTERN.replace("%t", System.getProperty("java.io.tmpdir"))),
+                QueryStatistics.getReport(20)
+                        + "\n---- Statements with full scans or temporary sorts ----\n\n"
+                        + IndexAdvisor.adviseFromStatistics(Database.databaseConnection, 20)
+                        + "\n---- Table result caches ----\n\n"
+                        + AirlineDataController.getSingleton().getResultCache().getReport("Airlines") + "\n"
+                        + AirportDataController.getSingleton().getResultCache().getReport("Airports") + "\n"
+                        + RouteDataController.getSingleton().getResultCache().getReport("Routes") + "\n"
+        );
+        alert.showAndWait();
+    }
+
     /*
      * These methods are used when use selects a file to import from menu bar
      * runs importData method with a specific string representing a dataType
@@ -186,56 +276,39 @@ public class RootController extends Application {
                     );
                 }
             } else {
-                // ----------- Loading bar -------------
-
-                Dialog loadingBarDialog = new Dialog();
-                loadingBarDialog.setTitle("Importing " + dataType + "s");
-                GridPane gridPane = new GridPane();
-                gridPane.setPadding(new Insets(20, 20, 20, 20));
-                DoubleProperty progress = new SimpleDoubleProperty();
-                Label progressLabel = new Label("Importing " + dataType + "s...");
-                ProgressBar progressBar = new ProgressBar(0);
-                progressBar.progressProperty().bind(progress);
-                ProgressIndicator progressIndicator = new ProgressIndicator(0);
-                progressIndicator.progressProperty().bind(progress);
-                gridPane.add(progressLabel, 0, 0);
-                gridPane.add(progressBar, 0, 1);
-                gridPane.add(progressIndicator, 1, 1);
-                loadingBarDialog.getDialogPane().setContent(gridPane);
-
-                loadingBarDialog.show();
-
-                // -------------------------------------
-                Task<Void> task = new Task<>() {
+                Task<Quartet<Integer, Integer, Long, String>> task = new Task<>() {
                     @Override
-                    protected Void call() {
-                        Quartet<Integer, Integer, Long, String> importInfo = Import.importData(chosenFile.toString(), dataType, progress);
-                        int numRows = importInfo.getValue0();
-                        int numFailed = importInfo.getValue1();
-                        long durationMilliseconds = importInfo.getValue2();
-                        String errorMessage = importInfo.getValue3();
-                        Platform.runLater(() -> {
-                            Alert alert = AlertHelper.generateAlertDialog(Alert.AlertType.INFORMATION,
-                                    String.format("%s Import", dataType),
-                                    String.format("Imported %d of out %d rows (%d failure%s) in %d ms",
-                                            numRows - numFailed,
-                                            numRows,
-                                            numFailed,
-                                            numFailed == 1 ? "" : "s",
-                                            durationMilliseconds
-                                    ),
-                                    null,
-                                    errorMessage
-                            );
-                            // JavaFX, in its infinite wisdom, makes it literally impossible to close a dialog unless it has a button in it.
-                            loadingBarDialog.getDialogPane().getButtonTypes().add(ButtonType.CLOSE);
-                            loadingBarDialog.close();
-
-                            alert.showAndWait();
-                        });
-                        return null;
+                    protected Quartet<Integer, Integer, Long, String> call() {
+                        // The import reports progress on this thread; updateProgress hands it to the JavaFX thread
+                        DoubleProperty progress = new SimpleDoubleProperty();
+                        progress.addListener((observable, oldValue, newValue) -> updateProgress(newValue.doubleValue(), 1));
+                        return Import.importData(chosenFile.toString(), dataType, progress);
                     }
                 };
+                Dialog<Void> loadingBarDialog = showLoadingDialog("Importing " + dataType + "s", "Importing " + dataType + "s...", task.progressProperty());
+
+                task.setOnSucceeded(event -> {
+                    Quartet<Integer, Integer, Long, String> importInfo = task.getValue();
+                    int numRows = importInfo.getValue0();
+                    int numFailed = importInfo.getValue1();
+                    long durationMilliseconds = importInfo.getValue2();
+                    String errorMessage = importInfo.getValue3();
+                    Alert alert = AlertHelper.generateAlertDialog(Alert.AlertType.INFORMATION,
+                            String.format("%s Import", dataType),
+                            String.format("Imported %d of out %d rows (%d failure%s) in %d ms",
+                                    numRows - numFailed,
+                                    numRows,
+                                    numFailed,
+                                    numFailed == 1 ? "" : "s",
+                                    durationMilliseconds
+                            ),
+                            null,
+                            errorMessage
+                    );
+                    closeLoadingDialog(loadingBarDialog);
+
+                    alert.showAndWait();
+                });
                 Thread thread = new Thread(task);
                 thread.start();
             }
@@ -308,9 +381,14 @@ public class RootController extends Application {
                     }
                 }
 
-                Database.setDatabasePath(uri);
-                detailRootController.clearDetailViewObject();   // Clear the detail view so it won't display an old object that's not in the new database
-            } catch (IOException | SQLException e) {
+                // Open the new database in the background; the old one stays usable until the new one is ready
+                Task<Database.PreparedDatabase> task = Database.setDatabasePathInBackground(uri, () -> {
+                    detailRootController.clearDetailViewObject();   // Clear the detail view so it won't display an old object that's not in the new database
+                });
+                Dialog<Void> loadingDialog = showLoadingDialog("Opening Database", "Loading '" + chosenFile.getName() + "'...", task.progressProperty());
+                task.addEventHandler(WorkerStateEvent.WORKER_STATE_SUCCEEDED, event -> closeLoadingDialog(loadingDialog));
+                task.addEventHandler(WorkerStateEvent.WORKER_STATE_FAILED, event -> closeLoadingDialog(loadingDialog));
+            } catch (IOException e) {
                 AlertHelper.showGenericErrorAlert(e, true,
                         "Database Error",
                         "Could not open the selected database",
@@ -322,6 +400,47 @@ public class RootController extends Application {
         }
     }
 
+    /**
+     * Shows a non-blocking dialog with a progress bar, for use while a long task runs in the background
+     *
+     * @param title    title of the dialog
+     * @param text     text shown above the progress bar
+     * @param progress progress of the task, between 0 and 1, or negative if indeterminate. Must only change on the
+     *                 JavaFX thread, e.g. a task's progress property
+     * @return the dialog, which should be closed with {@link #closeLoadingDialog(Dialog)}
+     */
+    private Dialog<Void> showLoadingDialog(String title, String text, ObservableValue<? extends Number> progress) {
+        Dialog<Void> loadingBarDialog = new Dialog<>();
+        loadingBarDialog.setTitle(title);
+        GridPane gridPane = new GridPane();
+        gridPane.setPadding(new Insets(20, 20, 20, 20));
+        Label progressLabel = new Label(text);
+        ProgressBar progressBar = new ProgressBar(0);
+        progressBar.progressProperty().bind(progress);
+        ProgressIndicator progressIndicator = new ProgressIndicator(0);
+        progressIndicator.progressProperty().bind(progress);
+        gridPane.add(progressLabel, 0, 0);
+        gridPane.add(progressBar, 0, 1);
+        gridPane.add(progressIndicator, 1, 1);
+        loadingBarDialog.getDialogPane().setContent(gridPane);
+
+        loadingBarDialog.show();
+        return loadingBarDialog;
+    }
+
+    /**
+     * Closes a dialog created by {@link #showLoadingDialog(String, String, ObservableValue)}
+     *
+     * @param loadingBarDialog dialog to close
+     */
+    private void closeLoadingDialog(Dialog<Void> loadingBarDialog) {
+        // JavaFX, in its infinite wisdom, makes it literally impossible to close a dialog unless it has a button in it.
+        if (!loadingBarDialog.getDialogPane().getButtonTypes().contains(ButtonType.CLOSE)) {
+            loadingBarDialog.getDialogPane().getButtonTypes().add(ButtonType.CLOSE);
+        }
+        loadingBarDialog.close();
+    }
+
     /**
      * Hides the filters pane. This will create free space in the filters portion of the root SplitPane
      * that can be taken up by another node.
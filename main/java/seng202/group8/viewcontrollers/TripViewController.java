@@ -1,5 +1,6 @@
 package seng202.group8.viewcontrollers;
 
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.layout.HBox;
@@ -21,6 +22,7 @@ import java.io.IOException;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Controller for the trip view, which displays a currently selected trip, and can handle loading and importing trips.
@@ -34,6 +36,7 @@ public class TripViewController implements TripDataController.CurrentTripObserve
     public Button deleteButton;
     private final TripDataController tripDataController = TripDataController.getSingleton();
     private FileChooser fileChooser = new FileChooser();
+    private long latestSanityCheckRequest = 0; // Incremented so that a sanity check for flights no longer shown is dropped
 
     @FXML
     private VBox contentPane;
@@ -171,13 +174,43 @@ public class TripViewController implements TripDataController.CurrentTripObserve
     }
 
 
+    /**
+     * Runs the sanity check once the flight network it uses has been built in the background, and puts the messages
+     * in the flight subviews
+     */
+    private void sanityCheck() {
+        long request = ++latestSanityCheckRequest;
+        CompletableFuture<Void> prepared = tripDataController.prepareSanityCheckAsync();
+        if (prepared.isDone() && !prepared.isCompletedExceptionally()) {
+            showSanityCheck();
+            return;
+        }
+
+        prepared.whenCompleteAsync((ignored, exception) -> {
+            if (request != latestSanityCheckRequest) {
+                return; // The flights have changed since
+            }
+            if (exception != null && exception.getCause() instanceof SQLException) {
+                AlertHelper.showErrorAlert((SQLException) exception.getCause());
+            } else if (exception != null) {
+                AlertHelper.showGenericErrorAlert(exception.getCause(), true, null, "Unable to check the trip", null, null);
+            } else {
+                showSanityCheck();
+            }
+        }, Platform::runLater);
+    }
+
     /**
      * Runs the sanity check and puts the messages in the flight subviews
-     *
-     * @throws SQLException  If ta fatal error occurs in the database
      */
-    private void sanityCheck() throws SQLException {
-        List<TripDataController.WarningError> messages = tripDataController.tripSanityCheck(tripDataController.getCurrentlyOpenTrip());
+    private void showSanityCheck() {
+        List<TripDataController.WarningError> messages;
+        try {
+            messages = tripDataController.tripSanityCheck(tripDataController.getCurrentlyOpenTrip());
+        } catch (SQLException sqlException) {
+            AlertHelper.showErrorAlert(sqlException);
+            return;
+        }
 
         for (int i = 0; i < messages.size(); i++) {
             FlightViewController controller = (FlightViewController) contentPane.getChildren().get(i);
@@ -280,6 +313,7 @@ public class TripViewController implements TripDataController.CurrentTripObserve
      */
     @FXML
     public void refreshTripView() {
+        latestSanityCheckRequest++;
         contentPane.getChildren().clear();
         Trip trip = tripDataController.getCurrentlyOpenTrip();
         if (trip != null) {
@@ -304,11 +338,7 @@ public class TripViewController implements TripDataController.CurrentTripObserve
             contentPane.getChildren().add(new FlightViewController(trip.getFlights().get(i), this, i + 1));
         }
 
-        try {
-            sanityCheck();
-        } catch (SQLException sqlException) {
-            AlertHelper.showErrorAlert(sqlException);
-        }
+        sanityCheck();
     }
 
     /**
@@ -1,5 +1,6 @@
 package seng202.group8.viewcontrollers.detailcontrollers;
 
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.fxml.FXML;
 import javafx.scene.control.ChoiceBox;
@@ -9,16 +10,31 @@ import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.text.Font;
 import javafx.scene.text.Text;
+import seng202.group8.AlertHelper;
 import seng202.group8.data.Airline;
+import seng202.group8.data.network.FlightNetwork;
+import seng202.group8.data.network.NetworkAnalytics;
 import seng202.group8.datacontroller.AirlineDataController;
+import seng202.group8.datacontroller.AnalyticsController;
 import seng202.group8.datacontroller.DataConstraintsException;
 import seng202.group8.io.Database;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * A concrete subclass of DetailController that controls an airline details pane
  */
 public class AirlineDetailViewController extends DetailViewController<Airline> {
 
+    /**
+     * Number of hub airports listed under the airline's details
+     */
+    private static final int NUM_HUBS = 3;
+    private long latestHubsRequest = 0; // Number of the newest hubs lookup; older ones are dropped
+
     //FXML Components for View Box
     @FXML
     private VBox viewBox;
@@ -35,6 +51,9 @@ public class AirlineDetailViewController extends DetailViewController<Airline> {
     @FXML
     private Label countryLabel;
 
+    @FXML
+    private Label hubsLabel;
+
     @FXML
     private StackPane mainPane;
 
@@ -90,6 +109,56 @@ public class AirlineDetailViewController extends DetailViewController<Airline> {
         nameLabel.setText(item.getName());
         countryLabel.setText((item.getCountry()));
         callsignLabel.setText((item.getCallsign() == null? "No callsign": item.getCallsign()));
+        loadHubs(item);
+    }
+
+    /**
+     * Lists the airports used by the most routes of the given airline. The analytics are worked out on a background
+     * thread if they are out of date, e.g. after a route changed, and shown once they are ready
+     *
+     * @param item airline being shown
+     */
+    private void loadHubs(Airline item) {
+        long request = ++latestHubsRequest;
+        hubsLabel.setText("");
+        if (item.isMemoryOnly()) {
+            return;
+        }
+        CompletableFuture<NetworkAnalytics> analytics = AnalyticsController.getSingleton().getAnalyticsAsync();
+        if (analytics.isDone() && !analytics.isCompletedExceptionally()) {
+            showHubs(item, analytics.join());
+            return;
+        }
+        hubsLabel.setText("Working out hubs...");
+        analytics.whenCompleteAsync((result, exception) -> {
+            if (request != latestHubsRequest) {
+                return; // Another airline has been shown since
+            }
+            if (exception != null && exception.getCause() instanceof SQLException) {
+                hubsLabel.setText("");
+                AlertHelper.showErrorAlert((SQLException) exception.getCause());
+            } else if (exception != null) {
+                hubsLabel.setText("");
+                AlertHelper.showGenericErrorAlert(exception.getCause(), true, null, "Unable to work out the hubs of the airline", null, null);
+            } else {
+                showHubs(item, result);
+            }
+        }, Platform::runLater);
+    }
+
+    /**
+     * Lists the airports used by the most routes of an airline
+     *
+     * @param item      airline being shown
+     * @param analytics analytics of the network
+     */
+    private void showHubs(Airline item, NetworkAnalytics analytics) {
+        FlightNetwork network = analytics.getNetwork();
+        List<String> hubs = new ArrayList<>();
+        for (NetworkAnalytics.Hub hub : AnalyticsController.getTopHubsForAirline(analytics, item, NUM_HUBS)) {
+            hubs.add(String.format("%s (%d routes)", network.getAirportCode(hub.getAirport()), hub.getRouteCount()));
+        }
+        hubsLabel.setText(hubs.isEmpty() ? "No routes" : "Hubs: " + String.join(", ", hubs));
     }
 
     /**
@@ -116,6 +185,14 @@ public class AirlineDetailViewController extends DetailViewController<Airline> {
         countryEditSelector.setValue(selectedItem.getCountry());
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Airline copyOf(Airline item) {
+        return item.copy();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -3,16 +3,23 @@ package seng202.group8.viewcontrollers.detailcontrollers;
 import javafx.animation.Animation;
 import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.text.Font;
 import javafx.scene.text.Text;
 import javafx.util.Duration;
+import seng202.group8.AlertHelper;
 import seng202.group8.data.Airport;
+import seng202.group8.data.Route;
+import seng202.group8.data.network.FlightNetwork;
+import seng202.group8.data.network.NetworkAnalytics;
 import seng202.group8.datacontroller.AirportDataController;
+import seng202.group8.datacontroller.AnalyticsController;
 import seng202.group8.datacontroller.DataConstraintsException;
 import seng202.group8.datacontroller.RouteDataController;
+import seng202.group8.datacontroller.SpatialIndexController;
 import seng202.group8.io.Database;
 import seng202.group8.viewcontrollers.NumberSpinnerHelper;
 
@@ -23,6 +30,9 @@ import java.text.ParsePosition;
 import java.time.OffsetDateTime;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.UnaryOperator;
 
 
@@ -55,6 +65,12 @@ public class AirportDetailViewController extends DetailViewController<Airport> {
     @FXML
     private Label altitudeLabel;
 
+    @FXML
+    private Label nearbyAirportsLabel;
+
+    @FXML
+    private Label connectivityLabel;
+
     @FXML
     private TextField airportNameEditField;
 
@@ -87,6 +103,12 @@ public class AirportDetailViewController extends DetailViewController<Airport> {
 
     DecimalFormat latLongDecimalFormat = new DecimalFormat("0.00000");     // 5 decimal place format for latitude / longitude
 
+    /**
+     * Number of nearby airports listed under the airport's details
+     */
+    private static final int NUM_NEARBY_AIRPORTS = 3;
+    private long latestConnectivityRequest = 0; // Number of the newest connectivity lookup; older ones are dropped
+
     @FXML
     private void initialize() {
         dataController = AirportDataController.getSingleton();  // Very important - must get the data controller before we do anything!
@@ -189,6 +211,84 @@ public class AirportDetailViewController extends DetailViewController<Airport> {
         latLabel.setText("Lat: " + latLongDecimalFormat.format(item.getLatitude()));
         longLabel.setText("Long: " + latLongDecimalFormat.format(item.getLongitude()));
         altitudeLabel.setText("Altitude: " + item.getAltitude() + " ft");
+        loadNearbyAirports(item);
+        loadConnectivity(item);
+    }
+
+    /**
+     * Lists the closest airports to the given airport, and how far away they are
+     *
+     * @param item airport being shown
+     */
+    private void loadNearbyAirports(Airport item) {
+        nearbyAirportsLabel.setText("");
+        if (item.isMemoryOnly()) {
+            return;
+        }
+        try {
+            List<String> nearby = new ArrayList<>();
+            for (Airport airport : SpatialIndexController.getSingleton().findNearbyAirports(item, NUM_NEARBY_AIRPORTS)) {
+                double distance = Route.getDistanceFromLongLat(item.getLatitude(), item.getLongitude(), airport.getLatitude(), airport.getLongitude());
+                nearby.add(String.format("%s (%d km)", airport.getCode(), Math.round(distance)));
+            }
+            if (!nearby.isEmpty()) {
+                nearbyAirportsLabel.setText("Nearby: " + String.join(", ", nearby));
+            }
+        } catch (SQLException exception) {
+            AlertHelper.showErrorAlert(exception);
+        }
+    }
+
+    /**
+     * Shows how well connected the given airport is in the route network. The analytics are worked out on a background
+     * thread if they are out of date, e.g. after a route changed, and shown once they are ready
+     *
+     * @param item airport being shown
+     */
+    private void loadConnectivity(Airport item) {
+        long request = ++latestConnectivityRequest;
+        connectivityLabel.setText("");
+        if (item.isMemoryOnly()) {
+            return;
+        }
+        CompletableFuture<NetworkAnalytics> analytics = AnalyticsController.getSingleton().getAnalyticsAsync();
+        if (analytics.isDone() && !analytics.isCompletedExceptionally()) {
+            showConnectivity(item, analytics.join());
+            return;
+        }
+        connectivityLabel.setText("Working out connectivity...");
+        analytics.whenCompleteAsync((result, exception) -> {
+            if (request != latestConnectivityRequest) {
+                return; // Another airport has been shown since
+            }
+            if (exception != null && exception.getCause() instanceof SQLException) {
+                connectivityLabel.setText("");
+                AlertHelper.showErrorAlert((SQLException) exception.getCause());
+            } else if (exception != null) {
+                connectivityLabel.setText("");
+                AlertHelper.showGenericErrorAlert(exception.getCause(), true, null, "Unable to work out the connectivity of the airport", null, null);
+            } else {
+                showConnectivity(item, result);
+            }
+        }, Platform::runLater);
+    }
+
+    /**
+     * Shows how well connected an airport is
+     *
+     * @param item      airport being shown
+     * @param analytics analytics of the network
+     */
+    private void showConnectivity(Airport item, NetworkAnalytics analytics) {
+        FlightNetwork network = analytics.getNetwork();
+        int airport = network.getAirportIndexById(item.getId());
+        if (airport == -1 || analytics.getDegree(airport) == 0) {
+            connectivityLabel.setText("No routes");
+            return;
+        }
+        connectivityLabel.setText(String.format("%d direct destinations, %d airports within %d flights, #%d hub in %s",
+                analytics.getOutDegree(airport), analytics.getReachCount(airport), NetworkAnalytics.REACH_LEGS,
+                analytics.getCountryRank(airport), item.getCountry()));
     }
 
     /**
@@ -221,6 +321,14 @@ public class AirportDetailViewController extends DetailViewController<Airport> {
         altitudeEditSpinner.getValueFactory().setValue(item.getAltitude());
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Airport copyOf(Airport item) {
+        return item.copy();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -72,6 +72,15 @@ public abstract class DetailViewController<DataType extends Data> {
      */
     public abstract DataConstraintsException updateSelectedItem();
 
+    /**
+     * Makes a copy of an item for editing. The selected item may be shared with the tables and the result caches of
+     * the data controllers, so it must not be changed unless the edit is saved
+     *
+     * @param item item to copy
+     * @return the copy, with the same ID
+     */
+    protected abstract DataType copyOf(DataType item);
+
     /**
      * Attempts to create a new item with the values the user has entered into the edit fields.
      * Return a DataConstraintsException containing all the constraints that were violated when attempting to create the new item
@@ -128,15 +137,17 @@ public abstract class DetailViewController<DataType extends Data> {
         if (isCreatingNew) {    // If details pane is being used to create a new item
             e = createItem();
         } else {    // If pane is being used to update and existing item's information
+            selectedItem = copyOf(previousItem);    // Edit a copy, so a failed edit leaves the original unchanged
             e = updateSelectedItem();
         }
 
         if (e != null) {
             AlertHelper.showErrorAlert(e);
+            selectedItem = previousItem;
             return false;
         } else {
             try {
-                selectedItem = dataController.save(selectedItem);
+                selectedItem = dataController.save(selectedItem, isCreatingNew ? null : previousItem);
             } catch (ConstraintsError constraintsError) {
                 AlertHelper.showErrorAlert(constraintsError);
                 selectedItem = previousItem;    // Revert to originally selected item;
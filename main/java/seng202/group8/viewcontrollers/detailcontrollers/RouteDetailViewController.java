@@ -259,6 +259,14 @@ public class RouteDetailViewController extends DetailViewController<Route> {
         editTakeoffTimesList.setItems(FXCollections.observableArrayList(selectedItem.getTakeoffTimes()));
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Route copyOf(Route item) {
+        return item.copy();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -3,11 +3,16 @@ package seng202.group8.viewcontrollers.filterviews;
 import javafx.collections.FXCollections;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Spinner;
+import javafx.scene.control.SpinnerValueFactory.IntegerSpinnerValueFactory;
 import javafx.scene.layout.HBox;
+import javafx.scene.paint.Color;
 import seng202.group8.data.filters.FilterRange;
 import seng202.group8.data.filters.NumericFilter;
+import seng202.group8.data.filters.ValueDistribution;
 import seng202.group8.viewcontrollers.NumberSpinnerHelper;
 
 import java.io.IOException;
@@ -18,12 +23,19 @@ import java.util.List;
  * A custom JavaFX component that provides an interface for a NumericFilter object. Provides two number spinners, as well
  * as a combobox to select the mode of the filter (Between, Less than, and More than). If the Between mode is selected,
  * then the two spinners are used to enter the lower and upper bounds respectively. Otherwise, there is a single spinner
- * for a single value.
+ * for a single value. If the filter has a distribution, a sparkline of it is shown under the spinners, with the part
+ * inside the bounds highlighted.
  */
 public class NumericFilterView extends FilterView {
+    private static final int SPARKLINE_BUCKETS = 40;
+    private static final double SPARKLINE_HEIGHT = 24;
+    private static final Color SPARKLINE_SELECTED = Color.web("#3b7dd8");
+    private static final Color SPARKLINE_UNSELECTED = Color.web("#c8c8c8");
+
     private Spinner<Integer> topSpinner;
     private Spinner<Integer> bottomSpinner;
     private NumericFilter numericFilter;
+    private Canvas sparkline;
 
     @FXML
     HBox topHBox;
@@ -66,8 +78,10 @@ public class NumericFilterView extends FilterView {
         spinner.getEditor().setStyle("-fx-font-size: 14;");
         NumberSpinnerHelper.addIntegerFormat(spinner);
 
-        spinner.valueProperty().addListener((obs, oldValue, newValue) ->
-                clearButton.setDisable(false));
+        spinner.valueProperty().addListener((obs, oldValue, newValue) -> {
+            clearButton.setDisable(false);
+            drawSparkline();
+        });
         spinner.getEditor().textProperty().addListener((obs, oldValue, newValue) ->
                 clearButton.setDisable(false));
     }
@@ -82,6 +96,69 @@ public class NumericFilterView extends FilterView {
         } else {
             bottomHBox.setVisible(false);
         }
+        drawSparkline();
+    }
+
+    /**
+     * Updates the spinners to the filter's current limits after its distribution has changed. Spinners at the old
+     * limits move to the new ones, so a filter that was not narrowed still lets every value through
+     */
+    public void refreshLimits() {
+        if (topSpinner == null) return;
+
+        boolean cleared = clearButton.isDisable();
+        for (Spinner<Integer> spinner : List.of(topSpinner, bottomSpinner)) {
+            IntegerSpinnerValueFactory factory = (IntegerSpinnerValueFactory) spinner.getValueFactory();
+            int value = factory.getValue();
+            boolean atMin = value == factory.getMin();
+            boolean atMax = value == factory.getMax();
+            // Widen before narrowing, as the factory won't let the minimum pass the maximum
+            factory.setMin(Math.min(factory.getMin(), numericFilter.getMin()));
+            factory.setMax(Math.max(factory.getMax(), numericFilter.getMax()));
+            factory.setMin(numericFilter.getMin());
+            factory.setMax(numericFilter.getMax());
+            if (atMin) {
+                factory.setValue(numericFilter.getMin());
+            } else if (atMax) {
+                factory.setValue(numericFilter.getMax());
+            }
+        }
+        clearButton.setDisable(cleared);
+        drawSparkline();
+    }
+
+    /**
+     * Draws the histogram of the filter's distribution, highlighting the buckets that overlap the current bounds.
+     * Uses the histogram cached by the distribution, so is cheap enough to redraw whenever the bounds change
+     */
+    private void drawSparkline() {
+        if (sparkline == null) return;
+
+        GraphicsContext graphics = sparkline.getGraphicsContext2D();
+        graphics.clearRect(0, 0, sparkline.getWidth(), sparkline.getHeight());
+        ValueDistribution distribution = numericFilter.getDistribution();
+        sparkline.setVisible(distribution != null && distribution.getCount() != 0);
+        if (!sparkline.isVisible()) return;
+
+        int[] histogram = distribution.getHistogram(SPARKLINE_BUCKETS);
+        int width = distribution.getBucketWidth(SPARKLINE_BUCKETS);
+        int highest = 1;
+        for (int count : histogram) {
+            highest = Math.max(highest, count);
+        }
+
+        FilterRange<Integer> bounds = getBounds();
+        double barWidth = sparkline.getWidth() / histogram.length;
+        for (int i = 0; i < histogram.length; i++) {
+            if (histogram[i] == 0) continue;
+
+            long bucketMin = (long) distribution.getMin() + (long) i * width;
+            long bucketMax = bucketMin + width - 1;
+            boolean selected = (bounds.min == null || bucketMax >= bounds.min) && (bounds.max == null || bucketMin <= bounds.max);
+            double height = Math.max(1, SPARKLINE_HEIGHT * histogram[i] / highest);
+            graphics.setFill(selected ? SPARKLINE_SELECTED : SPARKLINE_UNSELECTED);
+            graphics.fillRect(i * barWidth, SPARKLINE_HEIGHT - height, Math.max(1, barWidth - 1), height);
+        }
     }
 
     /**
@@ -110,6 +187,12 @@ public class NumericFilterView extends FilterView {
         comboOptions.add("Less Than");
         combo.setItems(FXCollections.observableList(comboOptions));
         combo.getSelectionModel().selectFirst(); // Sets default selected value to "Between"
+
+        sparkline = new Canvas(200, SPARKLINE_HEIGHT);
+        sparkline.widthProperty().bind(topHBox.widthProperty());
+        sparkline.widthProperty().addListener((obs, oldValue, newValue) -> drawSparkline());
+        getExtension().add(sparkline);
+        drawSparkline();
     }
 
     /**
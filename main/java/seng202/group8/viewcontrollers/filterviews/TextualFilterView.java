@@ -1,19 +1,23 @@
 package seng202.group8.viewcontrollers.filterviews;
 
+import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
-import javafx.collections.transformation.FilteredList;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Node;
 import javafx.scene.control.TextField;
 import javafx.scene.control.TitledPane;
+import javafx.scene.control.cell.CheckBoxListCell;
+import javafx.util.StringConverter;
 import org.controlsfx.control.CheckListView;
 import seng202.group8.AlertHelper;
 import seng202.group8.data.filters.TextualFilter;
-import seng202.group8.data.filters.TextualFilterPredicate;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * A custom JavaFX control that contains a checklist that can be filtered by a text search bar.
@@ -23,7 +27,9 @@ import java.io.IOException;
  */
 public class TextualFilterView extends FilterView {
     private TextualFilter textualFilter;
-    private FilteredList<String> filteredOptionsList;
+    private final ObservableList<String> shownOptions = FXCollections.observableArrayList(); // Options matching the search
+    // Number of checked options shown above the rest, which are in the same order as the filter's options
+    private int pinnedCount = 0;
 
     @FXML
     TitledPane titledPane;
@@ -41,9 +47,30 @@ public class TextualFilterView extends FilterView {
         // For some reason initialize() gets called twice per TextualFilter, and checkList is always null the first time
         if (checkList == null) return;
 
-        checkList.setItems(filteredOptionsList);
+        checkList.setItems(shownOptions);
+        checkList.setCellFactory(listView -> new CheckBoxListCell<>(checkList::getItemBooleanProperty, new StringConverter<String>() {
+            @Override
+            public String toString(String option) {
+                Integer count = textualFilter.getOptionCount(option);
+                return count == null ? option : option + " (" + count + ")";
+            }
+
+            @Override
+            public String fromString(String text) {
+                return text;
+            }
+        }));
         setCheckListChangeListener();
-        filterOptions();
+        showMatchingOptions();
+    }
+
+    /**
+     * Redraws the options, to show the filter's latest option counts
+     */
+    public void refreshOptionCounts() {
+        if (checkList != null) {
+            checkList.refresh();
+        }
     }
 
     /**
@@ -51,17 +78,80 @@ public class TextualFilterView extends FilterView {
      */
     @FXML
     public void filterOptions() {
-        filteredOptionsList.setPredicate(new TextualFilterPredicate(searchBar.getText()));
-        // When text is empty, make the checked options appear at the top
+        showMatchingOptions();
+        forceSearchbarFocus();
+    }
+
+    /**
+     * Shows the options that contain the searchbar text, found with the filter's search index. When the text is
+     * empty, every option is shown with the checked options at the top
+     */
+    private void showMatchingOptions() {
+        List<String> matches = textualFilter.searchOptions(searchBar.getText());
+        pinnedCount = 0;
         if (searchBar.getText().length() == 0) {
-            textualFilter.getOptions().removeAll(textualFilter.getSelectedOptions());   // Remove checked options
-            textualFilter.getOptions().addAll(0, textualFilter.getSelectedOptions());   // Then re-add them to the top of the list
+            ArrayList<String> ordered = new ArrayList<>(matches.size());
+            for (String option : matches) {
+                if (textualFilter.getSelectedOptions().contains(option)) {
+                    ordered.add(option);
+                }
+            }
+            pinnedCount = ordered.size();
+            for (String option : matches) {
+                if (!textualFilter.getSelectedOptions().contains(option)) {
+                    ordered.add(option);
+                }
+            }
+            matches = ordered;
         }
-        // CheckList clears all checks when options are filtered, so need to re-check all items that has been checked
+        shownOptions.setAll(matches);
+        recheckSelectedOptions();
+    }
+
+    /**
+     * Shows an option that was added to the filter, if it matches the search, without redrawing the other options
+     *
+     * @param option the new option
+     */
+    public void optionAdded(String option) {
+        if (checkList == null || !TextualFilter.optionMatches(option, searchBar.getText())) {
+            return;
+        }
+        int index = Collections.binarySearch(shownOptions.subList(pinnedCount, shownOptions.size()), option);
+        shownOptions.add(pinnedCount + (index < 0 ? -index - 1 : index), option);
+        recheckSelectedOptions();
+    }
+
+    /**
+     * Stops showing an option that was removed from the filter, without redrawing the other options
+     *
+     * @param option the removed option
+     */
+    public void optionRemoved(String option) {
+        if (checkList == null) {
+            return;
+        }
+        int index = Collections.binarySearch(shownOptions.subList(pinnedCount, shownOptions.size()), option);
+        if (index >= 0) {
+            index += pinnedCount;
+        } else {
+            index = shownOptions.subList(0, pinnedCount).indexOf(option);
+            if (index == -1) {
+                return; // Not shown
+            }
+            pinnedCount--;
+        }
+        shownOptions.remove(index);
+        recheckSelectedOptions();
+    }
+
+    /**
+     * CheckList clears all checks whenever its items change, so re-checks the selected options
+     */
+    private void recheckSelectedOptions() {
         for (String checkedOption : textualFilter.getSelectedOptions()) {
             checkList.getCheckModel().check(checkedOption);
         }
-        forceSearchbarFocus();
     }
 
 
@@ -120,16 +210,11 @@ public class TextualFilterView extends FilterView {
     }
 
     /**
-     * Sets the text options that can be selected by the user
-     *
-     * @param options The text options that can be selected by the user
+     * Updates the checklist after the options that can be selected by the user have changed
      */
-    public void setOptions(ObservableList<String> options) {
-        filteredOptionsList = new FilteredList<String>(options);
+    public void refreshOptions() {
         if (checkList != null) {    // Guard against JavaFX initialisation shenanigans
-            checkList.setItems(filteredOptionsList);
-            setCheckListChangeListener();
-            filterOptions();  // Ensure new options are filtered by the text already in the searchbox
+            showMatchingOptions();  // Ensure new options are filtered by the text already in the searchbox
         }
     }
 
@@ -143,7 +228,6 @@ public class TextualFilterView extends FilterView {
         super(textualFilter);
         this.textualFilter = textualFilter;
         this.textualFilter.setFilterView(this);
-        setOptions(textualFilter.getOptions());
 
         FXMLLoader fxmlLoader = new FXMLLoader(getClass().getResource("/seng202/group8/textualFilter.fxml"));
         fxmlLoader.setRoot(this);
@@ -50,7 +50,8 @@ public class AirlineTableController extends TableController<Airline> {
         nameColumn.setCellValueFactory(new PropertyValueFactory<>("name"));
         callsignColumn.setCellValueFactory(new PropertyValueFactory<>("callsign"));
         countryColumn.setCellValueFactory(new PropertyValueFactory<>("country"));
-        codeColumn.setCellValueFactory(cellData -> new SimpleStringProperty(cellData.getValue().getCode()));
+        // Rows still being loaded by a scrolling table are null, and are shown empty
+        codeColumn.setCellValueFactory(cellData -> cellData.getValue() == null ? null : new SimpleStringProperty(cellData.getValue().getCode()));
     }
 
 
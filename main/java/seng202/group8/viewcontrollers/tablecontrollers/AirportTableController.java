@@ -60,9 +60,13 @@ public class AirportTableController extends TableController<Airport> {
         nameColumn.setCellValueFactory(new PropertyValueFactory<>("name"));
         cityColumn.setCellValueFactory(new PropertyValueFactory<>("city"));
         countryColumn.setCellValueFactory(new PropertyValueFactory<>("country"));
-        codeColumn.setCellValueFactory(cellData -> new SimpleStringProperty(cellData.getValue().getCode()));
+        // Rows still being loaded by a scrolling table are null, and are shown empty
+        codeColumn.setCellValueFactory(cellData -> cellData.getValue() == null ? null : new SimpleStringProperty(cellData.getValue().getCode()));
         altitudeColumn.setCellValueFactory(new PropertyValueFactory<>("altitude"));
         timezoneColumn.setCellValueFactory(cellData -> {
+                    if (cellData.getValue() == null) {
+                        return null;
+                    }
                     if (cellData.getValue().getTimezone() >= 0) {
                         return new SimpleStringProperty("+" + cellData.getValue().getTimezone());
                     }
@@ -73,6 +77,9 @@ public class AirportTableController extends TableController<Airport> {
 
         //Should get total routes for this airport
         totalRoutesColumn.setCellValueFactory(airport -> {
+            if (airport.getValue() == null) {
+                return null;
+            }
             try {
                 //Converts int into a ObservableValue<Integer>
                 return new SimpleIntegerProperty(AirportDataController.getSingleton().getTotalRoutes(airport.getValue().getCode())).asObject();
@@ -32,6 +32,9 @@ public class RouteTableController extends TableController<Route> {
     @FXML
     private TableColumn<Route, String> durationColumn;
 
+    @FXML
+    private TableColumn<Route, String> distanceColumn;
+
     @FXML
     private TableColumn<Route, String> priceColumn;
 
@@ -50,15 +53,26 @@ public class RouteTableController extends TableController<Route> {
      **/
     @FXML
     private void initialize() {
+        // Rows still being loaded by a scrolling table are null, and are shown empty
 
         airlineColumn.setCellValueFactory(new PropertyValueFactory<>("airlineCode"));
         sourceColumn.setCellValueFactory(new PropertyValueFactory<>("sourceAirportCode"));
         destinationColumn.setCellValueFactory(new PropertyValueFactory<>("destinationAirportCode"));
         durationColumn.setCellValueFactory(cellData -> {
+                if (cellData.getValue() == null) {
+                    return null;
+                }
                 int minutes = cellData.getValue().getFlightDuration();
                 return new SimpleStringProperty(String.format("%dh %dm", minutes / 60, minutes % 60)); //Sets takes duration in minutes and formats it.
         });
-        priceColumn.setCellValueFactory(cellData -> new SimpleStringProperty("$" + cellData.getValue().getPrice()));
+        distanceColumn.setCellValueFactory(cellData -> {
+                if (cellData.getValue() == null) {
+                    return null;
+                }
+                Double distance = cellData.getValue().getDistance();
+                return new SimpleStringProperty(distance == null ? "" : String.format("%.0f km", distance));
+        });
+        priceColumn.setCellValueFactory(cellData -> cellData.getValue() == null ? null : new SimpleStringProperty("$" + cellData.getValue().getPrice()));
     }
 
     /**
@@ -0,0 +1,285 @@
+package seng202.group8.viewcontrollers.tablecontrollers;
+
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+import seng202.group8.AlertHelper;
+
+import java.sql.SQLException;
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Read-only list of every sorted, filtered row of a table, so a TableView can scroll through the whole result set
+ * without it all being loaded.
+ * <p>
+ * Rows are loaded {@link #BLOCK_SIZE} at a time on a background thread, the first time a row of their block is asked
+ * for; until then the row is null, and the table shows it empty. The blocks either side of the one asked for are
+ * loaded too, so scrolling rarely reaches an empty row. At most {@link #MAX_BLOCKS} blocks are kept, dropping those
+ * furthest from the rows last asked for. The list should only be used on the JavaFX thread.
+ *
+ * @param <DataType> type of the rows
+ */
+public class RowWindow<DataType> extends ObservableListBase<DataType> {
+    /**
+     * Number of rows loaded at a time
+     */
+    public static final int BLOCK_SIZE = 100;
+
+    /**
+     * Most blocks kept loaded
+     */
+    public static final int MAX_BLOCKS = 24;
+
+    /**
+     * Loads the rows of a block
+     *
+     * @param <DataType> type of the rows
+     */
+    public interface BlockLoader<DataType> {
+        /**
+         * Loads the rows of a block. Called on a background thread
+         *
+         * @param offset position of the first row
+         * @param count  number of rows wanted
+         * @return up to count rows from the offset, or null if they could not be loaded
+         * @throws SQLException if error from database
+         */
+        List<DataType> load(int offset, int count) throws SQLException;
+    }
+
+    // Blocks of every window are loaded one at a time on this thread
+    private static final ExecutorService LOAD_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Table row loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Executor loadExecutor;
+    private final Executor resultExecutor;
+    private BlockLoader<DataType> loader = null;
+    private int size = 0;
+    private HashMap<Integer, List<DataType>> blocks = new HashMap<>();
+    private final HashSet<Integer> loading = new HashSet<>(); // Blocks queued or being loaded
+    private volatile int generation = 0; // Incremented on reset, so blocks loaded for older results are dropped
+    private volatile int lastBlock = 0; // Block of the row last asked for
+    private boolean errorShown = false; // Whether a load of this generation failed; only the first failure is shown
+
+    /**
+     * Creates an empty window, which loads its blocks on a shared background thread and adds them on the JavaFX thread
+     */
+    public RowWindow() {
+        this(LOAD_EXECUTOR, Platform::runLater);
+    }
+
+    /**
+     * Creates an empty window
+     *
+     * @param loadExecutor   executor that loads the blocks
+     * @param resultExecutor executor that adds loaded blocks to the window; must run them on the thread the window is
+     *                       used on
+     */
+    RowWindow(Executor loadExecutor, Executor resultExecutor) {
+        this.loadExecutor = loadExecutor;
+        this.resultExecutor = resultExecutor;
+    }
+
+    /**
+     * Empties the window and makes it list a new result set, e.g. after the filters or sort changed. Blocks being
+     * loaded for the old result set are dropped
+     *
+     * @param size   number of rows in the result set
+     * @param loader loads blocks of the result set
+     */
+    public void reset(int size, BlockLoader<DataType> loader) {
+        List<DataType> removed = view(blocks, this.size);
+        generation++;
+        this.size = size;
+        this.loader = loader;
+        blocks = new HashMap<>();
+        loading.clear();
+        errorShown = false;
+
+        if (size > 0 || !removed.isEmpty()) {
+            beginChange();
+            nextReplace(0, size, removed);
+            endChange();
+        }
+    }
+
+    /**
+     * Gets a row, loading its block and the blocks either side if they are not loaded
+     *
+     * @param index position of the row
+     * @return the row, or null if it is still being loaded
+     */
+    @Override
+    public DataType get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        int block = index / BLOCK_SIZE;
+        lastBlock = block;
+        request(block);
+        request(block + 1);
+        request(block - 1);
+        return rowAt(blocks, index);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of blocks held in memory
+     *
+     * @return number of loaded blocks, at most {@link #MAX_BLOCKS}
+     */
+    public int getLoadedBlockCount() {
+        return blocks.size();
+    }
+
+    /**
+     * Starts loading a block if it is in the result set and not loaded or being loaded
+     *
+     * @param block number of the block
+     */
+    private void request(int block) {
+        if (block < 0 || (long) block * BLOCK_SIZE >= size || blocks.containsKey(block) || !loading.add(block)) {
+            return;
+        }
+
+        int requestGeneration = generation;
+        BlockLoader<DataType> requestLoader = loader;
+        loadExecutor.execute(() -> {
+            // Skip blocks scrolled past, or of an old result set, before they are loaded
+            if (requestGeneration != generation || Math.abs(block - lastBlock) > MAX_BLOCKS / 2) {
+                resultExecutor.execute(() -> dropped(requestGeneration, block));
+                return;
+            }
+            try {
+                List<DataType> rows = requestLoader.load(block * BLOCK_SIZE, BLOCK_SIZE);
+                resultExecutor.execute(() -> loaded(requestGeneration, block, rows));
+            } catch (SQLException exception) {
+                resultExecutor.execute(() -> failed(requestGeneration, block, exception));
+            } catch (RuntimeException exception) {
+                resultExecutor.execute(() -> dropped(requestGeneration, block)); // So it is tried again
+                throw exception;
+            }
+        });
+    }
+
+    /**
+     * Adds a loaded block, dropping the furthest blocks if there are too many, and tells the table its rows changed
+     *
+     * @param requestGeneration generation the block was loaded for
+     * @param block             number of the block
+     * @param rows              rows of the block
+     */
+    private void loaded(int requestGeneration, int block, List<DataType> rows) {
+        if (requestGeneration != generation) {
+            return;
+        }
+        loading.remove(block);
+        if (rows == null || rows.isEmpty()) {
+            return;
+        }
+
+        beginChange();
+        blocks.put(block, rows);
+        int start = block * BLOCK_SIZE;
+        for (int i = start; i < Math.min(size, start + rows.size()); i++) {
+            nextSet(i, null);
+        }
+
+        while (blocks.size() > MAX_BLOCKS) {
+            int furthest = block;
+            for (int loadedBlock : blocks.keySet()) {
+                if (Math.abs(loadedBlock - lastBlock) > Math.abs(furthest - lastBlock)) {
+                    furthest = loadedBlock;
+                }
+            }
+            List<DataType> evicted = blocks.remove(furthest);
+            start = furthest * BLOCK_SIZE;
+            for (int i = start; i < Math.min(size, start + evicted.size()); i++) {
+                nextSet(i, evicted.get(i - start));
+            }
+        }
+        endChange();
+    }
+
+    /**
+     * Forgets a block that was skipped, so it is loaded if it is asked for again
+     *
+     * @param requestGeneration generation the block was requested for
+     * @param block             number of the block
+     */
+    private void dropped(int requestGeneration, int block) {
+        if (requestGeneration == generation) {
+            loading.remove(block);
+        }
+    }
+
+    /**
+     * Tells the user a block could not be loaded, once per result set
+     *
+     * @param requestGeneration generation the block was requested for
+     * @param block             number of the block
+     * @param exception         why it could not be loaded
+     */
+    private void failed(int requestGeneration, int block, SQLException exception) {
+        if (requestGeneration != generation) {
+            return;
+        }
+        loading.remove(block);
+        if (!errorShown) {
+            errorShown = true;
+            AlertHelper.showErrorAlert(exception, "Unable to fetch data from the database");
+        }
+    }
+
+    /**
+     * Gets a row from a set of blocks
+     *
+     * @param blocks loaded blocks
+     * @param index  position of the row
+     * @param <T>    type of the rows
+     * @return the row, or null if its block is not loaded
+     */
+    private static <T> T rowAt(Map<Integer, List<T>> blocks, int index) {
+        List<T> rows = blocks.get(index / BLOCK_SIZE);
+        int offset = index % BLOCK_SIZE;
+        return rows == null || offset >= rows.size() ? null : rows.get(offset);
+    }
+
+    /**
+     * Gets a read-only view of the rows of a set of blocks, to report them as removed without copying them
+     *
+     * @param blocks loaded blocks
+     * @param size   number of rows the blocks were for
+     * @param <T>    type of the rows
+     * @return list of the rows, with null for rows that were not loaded
+     */
+    private static <T> List<T> view(Map<Integer, List<T>> blocks, int size) {
+        return new AbstractList<>() {
+            @Override
+            public T get(int index) {
+                return rowAt(blocks, index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+}
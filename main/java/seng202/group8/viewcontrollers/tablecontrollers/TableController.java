@@ -1,11 +1,13 @@
 package seng202.group8.viewcontrollers.tablecontrollers;
 
 
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import seng202.group8.AlertHelper;
 import seng202.group8.data.Data;
 import seng202.group8.data.filters.FilterChangeObserver;
+import seng202.group8.datacontroller.DataChange;
 import seng202.group8.datacontroller.DataController;
 import seng202.group8.datacontroller.DataObserver;
 import seng202.group8.datacontroller.FiltersController;
@@ -16,6 +18,7 @@ import seng202.group8.viewcontrollers.detailcontrollers.DetailRootController;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Abstract class holding methods that are commonly used across all tableControllers. Also holds the currently viewible objects
@@ -31,6 +34,12 @@ public abstract class TableController<DataType extends Data> implements DataObse
     protected int currOffset = 0;
     protected DetailRootController detailRootController;    // The controller for the details panes, we need to send selected items to this controller
     protected DataViewController dataViewController;
+    private boolean shown = false;  // Whether the table is on screen; hidden tables are not re-queried
+    private boolean stale = false;  // Whether the filters or data changed since the table was last loaded
+    private boolean virtualized = false;  // Whether the table scrolls through every row rather than showing pages
+    private final RowWindow<DataType> rowWindow = new RowWindow<>();
+    private int total = -1;  // Number of filtered rows, or -1 if they are still being counted
+    private long latestRequest = 0;  // Number of the newest update; counts for older ones are dropped
 
 
     /**
@@ -72,8 +81,12 @@ public abstract class TableController<DataType extends Data> implements DataObse
      */
     public void update(int numRows, boolean isLoading, char event) {
         List<DataType> newItems = null;
-        //A value to determine which button should be disabled (0: none, 1: prevButton, 2: nextButton, 3: Both)
-        int buttonDisable = 0;
+        stale = false;
+        if (virtualized) {
+            updateRowWindow();
+            return;
+        }
+        int pageSize = Math.abs(numRows);
 
         try {
             if (event == 'N') {
@@ -82,29 +95,168 @@ public abstract class TableController<DataType extends Data> implements DataObse
                 currOffset -= numRows;
             }
 
-            if ((currOffset == 0 && !isLoading) || currOffset < 0 || isLoading) {
+            if (currOffset < 0 || isLoading) {
                 currOffset = 0;
-                buttonDisable = 1;
             }
 
-            newItems = dataController.getSortedFilteredEntities(sortColumn, sortOrder, Math.abs(numRows) + 1, currOffset);
-            if (newItems.size() < numRows + 1) {
-                if (buttonDisable == 1) {
-                    buttonDisable = 3;
-                } else {
-                    buttonDisable = 2;
-                }
+            // The total is counted on a background thread while the page is read, or given straight away if cached
+            CompletableFuture<Integer> totalCount = dataController.getFilteredCountAsync();
+            newItems = dataController.getSortedFilteredEntities(sortColumn, sortOrder, pageSize, currOffset);
+            currItems = FXCollections.observableArrayList(newItems);
+
+            long request = ++latestRequest;
+            int offset = currOffset;
+            int shown = newItems.size();
+            if ((shown > 0 || offset == 0) && shown < pageSize) {
+                // A page that is not full is the last, so the total is known without waiting for the count
+                showRowCount(offset, shown, pageSize, offset + shown);
+            } else if (totalCount.isDone() && !totalCount.isCompletedExceptionally()) {
+                showRowCount(offset, shown, pageSize, totalCount.join());
             } else {
-                newItems.remove(newItems.size() - 1);
+                showRowCount(offset, shown, pageSize, -1); // Assume there are more rows until the count arrives
+                totalCount.whenCompleteAsync((count, exception) -> {
+                    if (request != latestRequest) {
+                        return; // The table has been updated since
+                    }
+                    if (exception != null && exception.getCause() instanceof SQLException) {
+                        AlertHelper.showErrorAlert((SQLException) exception.getCause(), "Unable to count the rows in the database");
+                    } else if (exception != null) {
+                        AlertHelper.showGenericErrorAlert(exception.getCause(), true, null, "Unable to count the rows in the database", null, null);
+                    } else {
+                        showRowCount(offset, shown, pageSize, count);
+                    }
+                }, Platform::runLater);
             }
-            currItems = FXCollections.observableArrayList(newItems);
-            dataViewController.setControlButtonsEnabled(buttonDisable, this);
         } catch (SQLException e) {
             //Maybe alert the user that the program was unable to get data.
             AlertHelper.showErrorAlert(e, "Unable to fetch data from the database");
         }
     }
 
+    /**
+     * Shows which rows of the filtered results are on the page, and enables the prev/next buttons if there are rows
+     * before or after them
+     *
+     * @param offset   position of the first row of the page
+     * @param shown    number of rows on the page
+     * @param pageSize number of rows a full page has
+     * @param total    number of filtered rows, or -1 if they are still being counted
+     */
+    private void showRowCount(int offset, int shown, int pageSize, int total) {
+        this.total = total;
+        //A value to determine which button should be disabled (0: none, 1: prevButton, 2: nextButton, 3: Both)
+        int buttonDisable = offset == 0 ? 1 : 0;
+        boolean lastPage = total >= 0 ? offset + shown >= total : shown < pageSize;
+        if (lastPage) {
+            buttonDisable = buttonDisable == 1 ? 3 : 2;
+        }
+        dataViewController.setControlButtonsEnabled(buttonDisable, this);
+
+        String rowText;
+        if (total == 0) {
+            rowText = "No rows";
+        } else if (shown == 0) {
+            rowText = String.format("No rows past %,d", offset);
+        } else {
+            rowText = String.format("Rows %,d\u2013%,d", offset + 1, offset + shown);
+            if (total > 0) {
+                rowText += String.format(" of %,d", total);
+            }
+        }
+        int pageCount = total < 0 ? -1 : Math.max(1, (total + pageSize - 1) / pageSize);
+        dataViewController.setRowCount(rowText, offset / pageSize + 1, pageCount, this);
+    }
+
+    /**
+     * Shows a page of the filtered results
+     *
+     * @param page    number of the page, from 1; clamped to the pages there are if the total is known
+     * @param numRows number of rows on each page
+     */
+    public void goToPage(int page, int numRows) {
+        int pageSize = Math.abs(numRows);
+        if (total >= 0) {
+            page = Math.min(page, Math.max(1, (total + pageSize - 1) / pageSize));
+        }
+        currOffset = (Math.max(page, 1) - 1) * pageSize;
+        update(numRows, false, 'S');
+    }
+
+    /**
+     * Points the row window at the current filters and sort, so the table scrolls through every matching row. The
+     * rows are counted on a background thread, and the window is sized once the count arrives; until then the rows
+     * of the previous filters stay shown. The rows themselves are read in blocks as they are scrolled to, off the
+     * JavaFX thread, with a query built here so the blocks never read the filters
+     */
+    private void updateRowWindow() {
+        long request = ++latestRequest;
+        // The filters are read here, on the JavaFX thread, for both the count and the query the blocks are read with
+        CompletableFuture<Integer> totalCount = dataController.getFilteredCountAsync();
+        String query = dataController.getSortedFilteredQuery(sortColumn, sortOrder);
+        currItems = rowWindow;
+        dataViewController.setControlButtonsEnabled(3, this);
+        if (totalCount.isDone() && !totalCount.isCompletedExceptionally()) {
+            showRowWindow(totalCount.join(), query);
+            return;
+        }
+        total = -1;
+        dataViewController.setRowCount("Counting rows...", 1, 1, this);
+        totalCount.whenCompleteAsync((count, exception) -> {
+            if (request != latestRequest) {
+                return; // The table has been updated since
+            }
+            if (exception != null && exception.getCause() instanceof SQLException) {
+                AlertHelper.showErrorAlert((SQLException) exception.getCause(), "Unable to count the rows in the database");
+            } else if (exception != null) {
+                AlertHelper.showGenericErrorAlert(exception.getCause(), true, null, "Unable to count the rows in the database", null, null);
+            } else {
+                showRowWindow(count, query);
+            }
+        }, Platform::runLater);
+    }
+
+    /**
+     * Sizes the row window to the filtered rows and shows how many there are
+     *
+     * @param count number of filtered rows
+     * @param query query the rows are read with, from {@link DataController#getSortedFilteredQuery(String, SortOrder)}
+     */
+    private void showRowWindow(int count, String query) {
+        total = count;
+        rowWindow.reset(count, (offset, rows) -> dataController.readSortedFilteredPage(query, rows, offset));
+        dataViewController.setRowCount(count == 0 ? "No rows" : String.format("%,d rows", count), 1, 1, this);
+    }
+
+    /**
+     * Sets whether the table scrolls through every filtered row, loading them as they are scrolled to, instead of
+     * showing one page at a time
+     *
+     * @param virtualized true to scroll through every row, false to show pages
+     */
+    public void setVirtualized(boolean virtualized) {
+        if (this.virtualized == virtualized) {
+            return;
+        }
+        this.virtualized = virtualized;
+        if (shown) {
+            update((int) DataViewController.getRowsSliderValue(), true, 'S');
+        } else {
+            stale = true;
+        }
+    }
+
+    /**
+     * Sets whether the table is on screen. While hidden, filter and data changes only mark the table as stale, and a
+     * stale table is re-loaded when it is shown again
+     *
+     * @param shown true if the table's tab is selected
+     */
+    public void setShown(boolean shown) {
+        this.shown = shown;
+        if (shown && stale) {
+            update((int) DataViewController.getRowsSliderValue(), true, 'S');
+        }
+    }
 
     /**
      * Gives this table controller a reference to the detail root controller.
@@ -130,10 +282,14 @@ public abstract class TableController<DataType extends Data> implements DataObse
 
     /**
      * Called when a change in the filters has applied - part of the FilterChangeObserver interface.
-     * Will re-load the table, with the new filters applied.
+     * Will re-load the table, with the new filters applied, or mark it stale if it is not shown.
      *
      */
     public void filterChangedEvent() {
+        if (!shown) {
+            stale = true;
+            return;
+        }
         update((int) DataViewController.getRowsSliderValue(), true, 'S');
     }
 
@@ -141,7 +297,11 @@ public abstract class TableController<DataType extends Data> implements DataObse
      * {@inheritDoc}
      */
     @Override
-    public void dataChangedEvent(Data data) {
+    public void dataChangeEvent(DataChange<DataType> change) {
+        if (!shown) {
+            stale = true;
+            return;
+        }
         update((int) DataViewController.getRowsSliderValue(), false, 'S');
     }
 
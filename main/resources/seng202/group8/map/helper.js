@@ -93,4 +93,48 @@ class Rectangle {
         let y_overlap = Math.max(0, Math.min(this.bottom, rect.bottom) - Math.max(this.top, rect.top));
         return x_overlap * y_overlap;
     }
-}
\ No newline at end of file
+}
+
+
+/**
+ * Decodes base64 into bytes
+ * @param {String} base64 base64 encoded data
+ * @returns {ArrayBuffer} decoded bytes
+ */
+let decodeBase64 = base64 => {
+    let binary = atob(base64);
+    let bytes = new Uint8Array(binary.length);
+    for (let i = 0; i < binary.length; i++) {
+        bytes[i] = binary.charCodeAt(i);
+    }
+    return bytes.buffer;
+}
+
+/**
+ * Reads data packed by MapBulkData.java. Integers, doubles and strings are separate streams, each read in order
+ */
+class BulkReader {
+    /**
+     * @param {Object} data MapBulkData object taken from Java
+     */
+    constructor(data) {
+        this.ints = new Int32Array(decodeBase64(data.getInts()));
+        this.doubles = new Float64Array(decodeBase64(data.getDoubles()));
+        this.strings = JSON.parse(data.getStrings());
+        this.intIndex = 0;
+        this.doubleIndex = 0;
+        this.stringIndex = 0;
+    }
+
+    nextInt() {
+        return this.ints[this.intIndex++];
+    }
+
+    nextDouble() {
+        return this.doubles[this.doubleIndex++];
+    }
+
+    nextString() {
+        return this.strings[this.stringIndex++];
+    }
+}
@@ -14,9 +14,6 @@ const loadRandomDataOnLoad = false;
 
 let routesPolylines = [];
 
-let trip;
-
-
 /**
  * Sets the airports and updates the cluster
  * Only modifies airports that have changed for performance
@@ -90,66 +87,170 @@ let setRoutes = newRoutes => {
 }
 
 /*
-Airports that are part of routes that are part of the trip should not be clustered
-Routes that are part of the trip should have a popup thing
+The map is kept in sync with Java by deltas (see MapModel.java). Only flights whose flight, route or airports changed
+are redrawn; everything else on the map is left alone.
+
+Airports that are part of routes that are part of the trip are not clustered
+Routes that are part of the trip have a popup
 */
-let setTrip = newTrip => {
-    // Trip airports are not part of the cluster; need to remove them separately
-    let markersToRemove = new Set();
-    if (trip != undefined) {
-        trip.flights.forEach(flight => {
-            if (flight.isValid() && flight.route.isValid()) {
-                flight.route.sourceAirport.marker.setMap(null);
-                flight.route.destinationAirport.marker.setMap(null);
-            }
+let airportsById = {};
+let routesById = {};
+let routesByKey = {}; // Key is "source destination airline", the same as the flights using the route
+let trip = new Trip("", "", []);
+
+let routeKey = (sourceCode, destinationCode, airlineCode) => `${sourceCode} ${destinationCode} ${airlineCode}`;
+
+/**
+ * Removes an airport, noting its codes as changed
+ * @param {Airport} airport airport to remove
+ * @param {Set<String>} changedCodes codes of airports that have changed
+ */
+let removeAirport = (airport, changedCodes) => {
+    delete airportsById[airport.id];
+    [airport.iata, airport.icao].forEach(code => {
+        if (airportsDictionary[code] === airport) {
+            delete airportsDictionary[code];
+        }
+        changedCodes.add(code);
+    });
+    airport.marker.setMap(null);
+}
+
+/**
+ * Removes a route, noting it as changed
+ * @param {Route} route route to remove
+ * @param {Set<String>} changedRoutes keys of routes that have changed
+ */
+let removeRoute = (route, changedRoutes) => {
+    let key = routeKey(route.sourceCode, route.destinationCode, route.airlineCode);
+    delete routesById[route.id];
+    if (routesByKey[key] === route) {
+        delete routesByKey[key];
+    }
+    changedRoutes.add(key);
+}
 
-            if (flight.popup != undefined) {
-                flight.popup.setMap(null);
+/**
+ * Takes a flight off the map, hiding the markers of its airports if no other flight uses them
+ * @param {Flight} flight flight to hide
+ */
+let hideFlight = flight => {
+    if (flight.polyline != undefined) {
+        flight.polyline.setMap(null);
+        flight.polyline = undefined;
+    }
+    if (flight.popup != undefined) {
+        flight.popup.setMap(null);
+        flight.popup = undefined;
+    }
+    if (flight.shownAirports != undefined) {
+        flight.shownAirports.forEach(airport => {
+            if (--airport.useCount == 0) {
+                airport.marker.setMap(null);
             }
         });
+        flight.shownAirports = undefined;
     }
+    flight.route = undefined;
+}
 
+/**
+ * Puts a flight on the map if its route and airports exist
+ * @param {Flight} flight flight to show
+ */
+let showFlight = flight => {
+    flight.route = routesByKey[routeKey(flight.sourceCode, flight.destinationCode, flight.airlineCode)];
+    if (!flight.isValid()) {
+        return;
+    }
+    flight.route.getAirports(airportsDictionary);
+    if (!flight.route.isValid()) {
+        // Route and airports both have to exist so two checks
+        flight.route = undefined;
+        return;
+    }
+    flight.polyline = flight.route.generatePolyline();
+    flight.polyline.setMap(map);
+    flight.generatePopup().setMap(map);
+
+    flight.shownAirports = new Set([flight.route.sourceAirport, flight.route.destinationAirport]);
+    flight.shownAirports.forEach(airport => {
+        if (airport.useCount++ == 0) {
+            airport.marker.setMap(map);
+            airport.setIcon("rgb(255, 155, 0)"); // Different color for these markers
+        }
+    });
+}
 
-    trip = newTrip;
+/**
+ * Applies changes sent from Java to the airports, routes and flights on the map
+ * @param {Object} delta changes, in the format described in MapModel.java
+ */
+let applyMapDelta = delta => {
+    let changedCodes = new Set();
+    let changedRoutes = new Set();
+
+    (delta.airports.remove || []).forEach(id => removeAirport(airportsById[id], changedCodes));
+    (delta.airports.put || []).forEach(data => {
+        if (airportsById[data.id] != undefined) {
+            removeAirport(airportsById[data.id], changedCodes);
+        }
+        let airport = new Airport(data.name, data.iata, data.icao, data.lat, data.lng);
+        airport.id = data.id;
+        airport.useCount = 0;
+        airportsById[airport.id] = airport;
+        [airport.iata, airport.icao].forEach(code => {
+            if (code.length != 0) {
+                airportsDictionary[code] = airport;
+                changedCodes.add(code);
+            }
+        });
+    });
 
-    routesPolylines.forEach(polyline => polyline.setMap(null)); // Hide existing routes
-    routesPolylines = [];
+    (delta.routes.remove || []).forEach(id => removeRoute(routesById[id], changedRoutes));
+    (delta.routes.put || []).forEach(data => {
+        if (routesById[data.id] != undefined) {
+            removeRoute(routesById[data.id], changedRoutes);
+        }
+        let route = new Route(data.src, data.dst, data.airline, data.duration, data.planes);
+        route.id = data.id;
+        routesById[route.id] = route;
+        let key = routeKey(route.sourceCode, route.destinationCode, route.airlineCode);
+        routesByKey[key] = route;
+        changedRoutes.add(key);
+    });
 
+    // Flights past the end of the trip are gone
+    trip.flights.splice(delta.flights.length).forEach(hideFlight);
 
-    let airportsToAdd = new Set(); // Airports that need to be added to the map (i.e. their markers)
+    let changedFlights = new Set();
+    delta.flights.put.forEach(({index, flight: data}) => {
+        let flight = new Flight(null, data.src, data.dst, data.airline, new Date(data.takeoff));
+        flight.count = index + 1;
+        flight.trip = trip;
+        if (trip.flights[index] != undefined) {
+            hideFlight(trip.flights[index]);
+        }
+        trip.flights[index] = flight;
+        changedFlights.add(flight);
+    });
 
-    for(let i = trip.flights.length - 1; i >= 0; i--) {
-        // Need to do this backwards as the draw method dies if any aren't on the map when the popup
-        // for the first flight is drawn
+    // Redraw flights affected by a change. Done backwards as the popup draw method dies if any aren't on the map
+    // when the popup for the first flight is drawn
+    for (let i = trip.flights.length - 1; i >= 0; i--) {
         let flight = trip.flights[i];
-        flight.getRoute(routes);
-        if (flight.isValid()) {
-            flight.route.getAirports(airportsDictionary);
-            if (flight.route.isValid()) {
-                // Route and airports both have to exist so two checks
-                let polyline = flight.route.generatePolyline();
-                polyline.setMap(map);
-                routesPolylines.push(polyline);
-
-                let popup = flight.generatePopup();
-                popup.setMap(map);
-
-                airportsToAdd.add(flight.route.sourceAirport);
-                airportsToAdd.add(flight.route.destinationAirport);
-            }
+        if (changedFlights.has(flight) ||
+                changedRoutes.has(routeKey(flight.sourceCode, flight.destinationCode, flight.airlineCode)) ||
+                changedCodes.has(flight.sourceCode) || changedCodes.has(flight.destinationCode)) {
+            hideFlight(flight);
+            showFlight(flight);
         }
     }
 
-    airportsCluster.removeMarkers(Array.from(airportsToAdd).map(airport => airport.marker));
-    airportsToAdd.forEach(airport => {
-        airport.marker.setMap(map);
-        airport.setIcon("rgb(255, 155, 0)"); // Different color for these markers
-    });
-
     let bounds = new google.maps.LatLngBounds();
     let validFlightExists = false;
     trip.flights.forEach(flight => {
-        if (flight.isValid() && flight.route.isValid()) {
+        if (flight.isValid()) {
             validFlightExists = true;
             bounds.extend(flight.route.sourceAirport.latLng);
             bounds.extend(flight.route.destinationAirport.latLng);
@@ -160,24 +261,161 @@ let setTrip = newTrip => {
         bounds = defaultBounds;
     }
     map.fitBounds(bounds);
-
 }
 
 
-let setData = (newAirports, newRoutes, newTrip) => {
+/*
+Whole network layer. Java clusters the airports and bundles the routes matching the filters for each zoom level (see
+NetworkTiles.java) and sends them in 256 pixel tiles. Only tiles on screen are asked for, and the layer starts over
+when the zoom level changes.
+*/
+let networkMaxZoom = -1; // Highest zoom level Java clusters for; -1 while the layer is hidden
+let networkZoom = -1; // Zoom level of the tiles on the map
+let networkTilesRequested = new Set(); // "x/y" of tiles asked for at networkZoom
+let networkMarkers = {}; // Key is the cluster ID
+let networkLines = {}; // Key is "fromId toId"
 
-    // Hack; sometimes not all airports disappear
-    airportsCluster.clearMarkers();
-    airportsDictionary = {};
+/**
+ * Takes everything in the network layer off the map
+ */
+let clearNetworkLayer = () => {
+    Object.values(networkMarkers).forEach(marker => marker.setMap(null));
+    Object.values(networkLines).forEach(line => line.setMap(null));
+    networkMarkers = {};
+    networkLines = {};
+    networkTilesRequested = new Set();
+    networkZoom = -1;
+}
 
-    setAirports(newAirports);
-    setRoutes(newRoutes);
-    setTrip(newTrip);
+/**
+ * Shows the network layer, dropping anything already in it
+ * @param {number} maxZoom highest zoom level the tiles are clustered for; more zoomed in maps use its tiles
+ */
+let showNetworkLayer = maxZoom => {
+    clearNetworkLayer();
+    networkMaxZoom = maxZoom;
+    requestVisibleNetworkTiles();
+}
 
-    airportsCluster.clearMarkers();
+/**
+ * Hides the network layer
+ */
+let hideNetworkLayer = () => {
+    clearNetworkLayer();
+    networkMaxZoom = -1;
 }
 
+/**
+ * Asks Java for the tiles on screen that have not been asked for yet
+ */
+let requestVisibleNetworkTiles = () => {
+    let bounds = map.getBounds();
+    if (networkMaxZoom < 0 || bounds == undefined) {
+        return;
+    }
+    let zoom = Math.max(0, Math.min(Math.round(map.getZoom()), networkMaxZoom));
+    if (zoom != networkZoom) {
+        clearNetworkLayer();
+        networkZoom = zoom;
+    }
 
+    let size = 1 << zoom;
+    let tileX = lng => Math.floor((lng + 180) / 360 * size);
+    let tileY = lat => {
+        let sin = Math.sin(Math.max(-85.05, Math.min(85.05, lat)) * toRad);
+        return Math.min(size - 1, Math.max(0, Math.floor((0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI)) * size)));
+    };
+    let west = tileX(bounds.getSouthWest().lng());
+    let east = tileX(bounds.getNorthEast().lng());
+    if (east < west) {
+        east += size; // Crosses the antimeridian
+    }
+    east = Math.min(east, west + size - 1);
+
+    let missing = [];
+    for (let x = west; x <= east; x++) {
+        for (let y = tileY(bounds.getNorthEast().lat()); y <= tileY(bounds.getSouthWest().lat()); y++) {
+            let key = `${((x % size) + size) % size}/${y}`;
+            if (!networkTilesRequested.has(key)) {
+                networkTilesRequested.add(key);
+                missing.push(key);
+            }
+        }
+    }
+    if (missing.length != 0) {
+        java.requestNetworkTiles(zoom, missing.join(","));
+    }
+}
+
+/**
+ * Draws tiles of the network layer sent from Java. Tiles for a zoom level no longer shown are ignored
+ * @param {number} id ID to take the packed tiles from Java with, in the format described in MapModel.java
+ * @param {number} count number of tiles
+ */
+let addNetworkTiles = (id, count) => {
+    let data = java.takeBulkData(id);
+    if (data == null) {
+        return;
+    }
+    let reader = new BulkReader(data);
+    for (let tile = 0; tile < count; tile++) {
+        let zoom = reader.nextInt();
+        reader.nextInt(); // x and y are only needed to debug
+        reader.nextInt();
+        let clusterCount = reader.nextInt();
+        let bundleCount = reader.nextInt();
+        let current = zoom == networkZoom;
+
+        for (let i = 0; i < clusterCount; i++) {
+            let id = reader.nextInt();
+            let count = reader.nextInt();
+            let lat = reader.nextDouble();
+            let lng = reader.nextDouble();
+            let label = reader.nextString();
+            if (!current || networkMarkers[id] != undefined) {
+                continue;
+            }
+            let size = Math.round(12 + 4 * Math.log2(count));
+            networkMarkers[id] = new google.maps.Marker({
+                position: {lat: lat, lng: lng},
+                map: map,
+                icon: {
+                    url: svgToUrl(circleSvg("rgba(0, 162, 211, 0.7)", size)),
+                    anchor: new google.maps.Point(size / 2, size / 2),
+                    labelOrigin: new google.maps.Point(size / 2, size / 2)
+                },
+                label: {
+                    text: count == 1 ? label : `${count}`,
+                    color: "white",
+                    fontSize: "10px"
+                },
+                title: count == 1 ? label : `${label} and ${count - 1} other airports`
+            });
+        }
+
+        // A bundle is in the tiles of both of its ends, so may already be drawn
+        for (let i = 0; i < bundleCount; i++) {
+            let key = `${reader.nextInt()} ${reader.nextInt()}`;
+            let count = reader.nextInt();
+            let path = [
+                {lat: reader.nextDouble(), lng: reader.nextDouble()},
+                {lat: reader.nextDouble(), lng: reader.nextDouble()}
+            ];
+            if (!current || networkLines[key] != undefined) {
+                continue;
+            }
+            networkLines[key] = new google.maps.Polyline({
+                path: path,
+                geodesic: true,
+                strokeColor: "rgb(0, 162, 211)",
+                strokeOpacity: 0.4,
+                strokeWeight: 1 + Math.log2(count),
+                clickable: false,
+                map: map
+            });
+        }
+    }
+}
 
 
 let init = () => {
@@ -213,6 +451,7 @@ let init = () => {
     });
 
     map.fitBounds(defaultBounds);
+    map.addListener("idle", requestVisibleNetworkTiles);
 
     airportsCluster = new MarkerClusterer(
         map,
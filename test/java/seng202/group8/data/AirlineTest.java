@@ -122,4 +122,13 @@ public class AirlineTest {
         testAirline.setIata(null);
         assertEquals("ABC", testAirline.getCode()); // Fallback
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCopyEditedSeparately() throws DataConstraintsException {
+        Airline copy = testAirline.copy();
+        copy.setName("Renamed Airline");
+        assertEquals(testAirline.getId(), copy.getId());
+        assertEquals("Test Airline", testAirline.getName());
+        assertEquals("Test Callsign", copy.getCallsign());
+    }
+}
@@ -9,13 +9,18 @@ import seng202.group8.datacontroller.AirlineDataController;
 import seng202.group8.datacontroller.AirportDataController;
 import seng202.group8.datacontroller.DataConstraintsException;
 import seng202.group8.datacontroller.FiltersController;
+import seng202.group8.datacontroller.RouteDataController;
 import seng202.group8.io.ConstraintsError;
 import seng202.group8.io.Database;
 
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.junit.Assert.*;
 
@@ -211,4 +216,164 @@ public class FilterTests {
         AirportDataController.getSingleton().save(airport);
         assertTrue(filtersC.getAirportNameFilter().getOptions().contains("Mattias"));
     }
+
+    @Test
+    public void testFilterOptionsUpdatedByCodeChanged() throws SQLException, DataConstraintsException {
+        Airport airport = AirportDataController.getSingleton().save(new Airport("Matty G Airport", "Christchurch", "New Zealand", "998", "4268", 10, 10, 0, 0, 'Z'));
+        int codeCount = filtersC.getStartFilter().getOptions().size();
+        filtersC.getStartFilter().selectOption("998");
+
+        airport.setIata("997");
+        AirportDataController.getSingleton().save(airport);
+        assertFalse(filtersC.getStartFilter().getOptions().contains("998"));
+        assertTrue(filtersC.getStartFilter().getOptions().contains("997"));
+        assertEquals(codeCount, filtersC.getStartFilter().getOptions().size());
+        assertFalse(filtersC.getStartFilter().getSelectedOptions().contains("998"));
+    }
+
+    @Test
+    public void testSharedFilterOptionKeptUntilLastDeleted() throws SQLException, DataConstraintsException {
+        AirportDataController airportDC = AirportDataController.getSingleton();
+        Airport first = airportDC.save(new Airport("Shared Name Airport", "Christchurch", "New Zealand", "996", "4266", 10, 10, 0, 0, 'Z'));
+        Airport second = airportDC.save(new Airport("Shared Name Airport", "Christchurch", "New Zealand", "995", "4265", 10, 10, 0, 0, 'Z'));
+        assertEquals(1, filtersC.getAirportNameFilter().getOptions().filtered("Shared Name Airport"::equals).size());
+
+        airportDC.deleteFromDatabase(first.getId());
+        assertTrue(filtersC.getAirportNameFilter().getOptions().contains("Shared Name Airport"));
+        assertFalse(filtersC.getAirportCodeFilter().getOptions().contains("996"));
+
+        airportDC.deleteFromDatabase(second.getId());
+        assertFalse(filtersC.getAirportNameFilter().getOptions().contains("Shared Name Airport"));
+    }
+
+    @Test
+    public void testFacetIndexCountsEachFilterWithoutItself() {
+        FacetIndex index = new FacetIndex.Builder(2, 1)
+                .addRow(new String[]{"NZ", "CHC"}, 100)
+                .addRow(new String[]{"NZ", "AKL"}, 200)
+                .addRow(new String[]{"QF", "CHC"}, 300)
+                .addRow(new String[]{"QF", null}, Double.NaN)
+                .build();
+        ArrayList<HashSet<String>> selected = new ArrayList<>();
+        selected.add(new HashSet<>(Arrays.asList("NZ")));
+        selected.add(new HashSet<>());
+
+        List<Map<String, Integer>> counts = index.count(selected, Arrays.asList((FilterRange<Integer>) null));
+        assertEquals(Integer.valueOf(2), counts.get(0).get("NZ"));
+        assertEquals(Integer.valueOf(2), counts.get(0).get("QF")); // The airline filter is not applied to itself
+        assertEquals(Integer.valueOf(1), counts.get(1).get("CHC"));
+        assertEquals(Integer.valueOf(1), counts.get(1).get("AKL"));
+
+        counts = index.count(selected, Arrays.asList(new FilterRange<>(150, null)));
+        assertEquals(Integer.valueOf(1), counts.get(0).get("QF")); // Null values are outside the range
+        assertNull(counts.get(1).get("CHC"));
+    }
+
+    @Test
+    public void testFacetCountsUpdatedByDataChanged() throws SQLException, DataConstraintsException {
+        try {
+            filtersC.getCountryFilter().setSelectedOptions(Arrays.asList("New Zealand"));
+            Map<TextualFilter, Map<String, Integer>> counts = filtersC.countFacets(filtersC.createFacetQuery(FiltersController.FacetTable.AIRLINE));
+            assertEquals(Integer.valueOf(1), counts.get(filtersC.getAirlineNameFilter()).get("Air New Zealand"));
+            assertNull(counts.get(filtersC.getAirlineNameFilter()).get("Matty G Airlines"));
+
+            AirlineDataController.getSingleton().save(new Airline("Matty G Airlines", "MATTY G", "ZZ", "ZZZ", "New Zealand"));
+            counts = filtersC.countFacets(filtersC.createFacetQuery(FiltersController.FacetTable.AIRLINE));
+            assertEquals(Integer.valueOf(1), counts.get(filtersC.getAirlineNameFilter()).get("Matty G Airlines"));
+        } finally {
+            filtersC.getCountryFilter().setSelectedOptions(new ArrayList<>());
+        }
+    }
+
+    @Test
+    public void testValueDistributionHistogram() {
+        ValueDistribution distribution = new ValueDistribution();
+        distribution.reset(Arrays.asList(1, 2, 3, 4), Arrays.asList(10, 15, 29, null));
+        assertEquals(3, distribution.getCount());
+        assertEquals(Integer.valueOf(10), distribution.getMin());
+        assertEquals(Integer.valueOf(29), distribution.getMax());
+        assertEquals(5, distribution.getBucketWidth(4));
+        assertArrayEquals(new int[]{1, 1, 0, 1}, distribution.getHistogram(4));
+
+        distribution.put(2, 40);
+        distribution.remove(1);
+        assertEquals(Integer.valueOf(29), distribution.getMin());
+        assertEquals(Integer.valueOf(40), distribution.getMax());
+        assertArrayEquals(new int[]{1, 0, 0, 1}, distribution.getHistogram(4));
+    }
+
+    @Test
+    public void testNumericFilterLimitsFollowData() throws SQLException, DataConstraintsException {
+        NumericFilter priceFilter = filtersC.getPriceFilter();
+        NumericFilter routesFilter = filtersC.getRouteNumberFilter();
+        Airport airport = AirportDataController.getSingleton().save(new Airport("Matty G Airport", "Christchurch", "New Zealand", "998", "4268", 10, 10, 0, 0, 'Z'));
+        assertEquals(Integer.valueOf(0), routesFilter.getDistribution().getMin());
+        int airportsWithRoutes = routesFilter.getDistribution().getCount();
+
+        Route route = RouteDataController.getSingleton().save(new Route("NZ", "998", "CHC", new String[]{"777"}, 987654, false, 60, new ArrayList<>()));
+        assertEquals(Integer.valueOf(987654), priceFilter.getMax());
+        assertEquals(Integer.valueOf(987654), priceFilter.getBounds().max); // Full range follows the new limit
+        assertEquals(airportsWithRoutes, routesFilter.getDistribution().getCount());
+
+        AirportDataController.getSingleton().deleteFromDatabase(airport.getId());
+        RouteDataController.getSingleton().deleteFromDatabase(route.getId());
+        assertNotEquals(Integer.valueOf(987654), priceFilter.getMax());
+        assertEquals(priceFilter.getMax(), priceFilter.getBounds().max);
+    }
+
+    @Test
+    public void testDistanceFilterLimitsFollowData() throws SQLException, DataConstraintsException {
+        NumericFilter distanceFilter = filtersC.getDistanceFilter();
+        int routesWithDistance = distanceFilter.getDistribution().getCount();
+        AirportDataController.getSingleton().save(new Airport("Matty G Airport", "Christchurch", "New Zealand", "998", "4268", 0, 0, 0, 0, 'Z'));
+        Airport destination = AirportDataController.getSingleton().save(new Airport("Matty G Other Airport", "Christchurch", "New Zealand", "997", "4267", 0, 179, 0, 0, 'Z'));
+
+        Route route = RouteDataController.getSingleton().save(new Route("NZ", "998", "997", new String[]{"777"}, 100, false, 60, new ArrayList<>()));
+        assertEquals(routesWithDistance + 1, distanceFilter.getDistribution().getCount());
+        Integer longest = distanceFilter.getMax();
+        assertEquals(Integer.valueOf((int) Math.round(route.getDistance())), longest);
+        assertEquals(longest, distanceFilter.getBounds().max);
+
+        destination.setLongitude(90); // Moving an airport changes the distance of its routes
+        AirportDataController.getSingleton().save(destination);
+        assertEquals(routesWithDistance + 1, distanceFilter.getDistribution().getCount());
+        assertNotEquals(longest, distanceFilter.getMax());
+    }
+
+    @Test
+    public void testOptionSearchIndexMatchesSubstrings() {
+        OptionSearchIndex index = new OptionSearchIndex(Arrays.asList("Auckland", "Christchurch", "CHC", "Wellington", "Hamilton"));
+        assertEquals(Arrays.asList("Christchurch", "CHC"), index.search("ch"));
+        assertEquals(Arrays.asList("Christchurch"), index.search("CHURCH"));
+        assertEquals(Arrays.asList("Wellington", "Hamilton"), index.search("ton"));
+        assertEquals(Arrays.asList("Auckland", "Hamilton"), index.search("a"));
+        assertEquals(5, index.search("").size());
+        assertTrue(index.search("chx").isEmpty());
+        assertTrue(index.search("lingtonx").isEmpty());
+    }
+
+    @Test
+    public void testSearchOptionsUpdatedByOptionsChanged() {
+        TextualFilter filter = new TextualFilter("Test", Arrays.asList("AKL", "CHC", "WLG"));
+        assertEquals(Arrays.asList("CHC"), filter.searchOptions("c"));
+
+        filter.addAvailableOption("CCC");
+        assertEquals(Arrays.asList("CCC", "CHC"), filter.searchOptions("c"));
+
+        filter.removeAvailableOption("CHC");
+        assertEquals(Arrays.asList("CCC"), filter.searchOptions("c"));
+        assertEquals(Arrays.asList("AKL", "CCC", "WLG"), filter.getOptions());
+    }
+
+    @Test
+    public void testRemoveAvailableOptionUnselectsIt() {
+        TextualFilter filter = new TextualFilter("Test", Arrays.asList("AKL", "CHC", "WLG"));
+        filter.selectOption("CHC");
+        filter.selectOption("WLG");
+
+        filter.removeAvailableOption("CHC");
+        filter.removeAvailableOption("ZQN"); // Not an option
+        assertEquals(Arrays.asList("AKL", "WLG"), filter.getOptions());
+        assertEquals(Set.of("WLG"), filter.getSelectedOptions());
+    }
 }
@@ -0,0 +1,144 @@
+package seng202.group8.data.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import seng202.group8.data.Airline;
+import seng202.group8.data.Airport;
+import seng202.group8.data.Route;
+import seng202.group8.datacontroller.AirlineDataController;
+import seng202.group8.datacontroller.AirportDataController;
+import seng202.group8.datacontroller.DataConstraintsException;
+import seng202.group8.datacontroller.NetworkController;
+import seng202.group8.datacontroller.RouteDataController;
+import seng202.group8.io.ConstraintsError;
+import seng202.group8.io.Database;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class NetworkTilesTest {
+    public FlightNetwork network;
+    public Airport airportA;
+    public Airport airportB;
+    public Airport airportC;
+
+    @Before
+    public void setup() throws SQLException, DataConstraintsException, ConstraintsError {
+        Database.establishConnection();
+        Database.databaseConnection.setAutoCommit(false);
+        NetworkController.getSingleton().invalidate();
+
+        // A and B are next to each other, C is on the other side of the world
+        AirportDataController airportDC = AirportDataController.getSingleton();
+        airportA = airportDC.save(new Airport("Airport A", "Null City", "New Zealand", "991", "9991", 10.0, 20.0, 123, 3, 'N'));
+        airportB = airportDC.save(new Airport("Airport B", "Null City", "New Zealand", "992", "9992", 10.1, 20.1, 123, 3, 'N'));
+        airportC = airportDC.save(new Airport("Airport C", "Null City", "Australia", "993", "9993", -30.0, 150.0, 123, 3, 'N'));
+        AirlineDataController.getSingleton().save(new Airline("Untitled Airline", "UNTITLED", "99", "999", "New Zealand"));
+
+        saveRoute(airportA, airportC);
+        saveRoute(airportC, airportA);
+        saveRoute(airportB, airportC);
+        saveRoute(airportA, airportB);
+        network = NetworkController.getSingleton().getNetwork();
+    }
+
+    @After
+    public void teardown() throws SQLException {
+        Database.databaseConnection.rollback();
+        Database.databaseConnection.setAutoCommit(true);
+        NetworkController.getSingleton().invalidate();
+    }
+
+    /**
+     * Saves a route between two airports
+     */
+    public void saveRoute(Airport source, Airport destination) throws SQLException, DataConstraintsException {
+        RouteDataController.getSingleton().save(new Route("999", source.getCode(), destination.getCode(), new String[]{"777"}, 123, false, 60, new ArrayList<>(Arrays.asList(720))));
+    }
+
+    /**
+     * Creates tiles of the test airports, and every route between them
+     */
+    public NetworkTiles createTiles(Airport... airports) {
+        boolean[] airportShown = new boolean[network.getAirportCount()];
+        for (Airport airport : airports) {
+            airportShown[network.getAirportIndexById(airport.getId())] = true;
+        }
+        boolean[] edgeShown = new boolean[network.getEdgeCount()];
+        Arrays.fill(edgeShown, true);
+        return new NetworkTiles(network, airportShown, edgeShown);
+    }
+
+    /**
+     * Finds the cluster an airport is the label of
+     */
+    public int findCluster(NetworkTiles.Level level, Airport airport) {
+        int index = network.getAirportIndexById(airport.getId());
+        for (int c = 0; c < level.getClusterCount(); c++) {
+            if (level.getClusterLabel(c) == index) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void testZoomedOutClustersNearbyAirports() {
+        NetworkTiles tiles = createTiles(airportA, airportB, airportC);
+        assertEquals(3, tiles.getAirportCount());
+        assertEquals(4, tiles.getEdgeCount());
+
+        NetworkTiles.Level level = tiles.getLevel(0);
+        assertEquals(2, level.getClusterCount());
+        int ab = findCluster(level, airportA); // A has the most routes, so labels the cluster
+        assertNotEquals(-1, ab);
+        assertEquals(2, level.getClusterSize(ab));
+        assertEquals(10.05, level.getClusterLatitude(ab), 0.01);
+        assertEquals(20.05, level.getClusterLongitude(ab), 0.01);
+
+        // A -> B is within the cluster, the other three join the two clusters
+        assertEquals(1, level.getBundleCount());
+        assertEquals(3, level.getBundleSize(0));
+    }
+
+    @Test
+    public void testZoomedInKeepsAirportsApart() {
+        NetworkTiles tiles = createTiles(airportA, airportB, airportC);
+        NetworkTiles.Level level = tiles.getLevel(NetworkTiles.MAX_ZOOM);
+        assertSame(level, tiles.getLevel(NetworkTiles.MAX_ZOOM + 5));
+        assertEquals(3, level.getClusterCount());
+        assertEquals(3, level.getBundleCount());
+        assertEquals(2, level.getBundleSize(0)); // A <-> C, largest first
+        assertEquals(1, level.getBundleSize(1));
+        assertEquals(1, level.getBundleSize(2));
+    }
+
+    @Test
+    public void testHiddenAirportDropsRoutes() {
+        NetworkTiles tiles = createTiles(airportA, airportC);
+        assertEquals(2, tiles.getEdgeCount());
+        NetworkTiles.Level level = tiles.getLevel(NetworkTiles.MAX_ZOOM);
+        assertEquals(2, level.getClusterCount());
+        assertEquals(1, level.getBundleCount());
+        assertEquals(2, level.getBundleSize(0));
+    }
+
+    @Test
+    public void testTiles() {
+        NetworkTiles.Level level = createTiles(airportA, airportB, airportC).getLevel(3);
+        int ab = findCluster(level, airportA);
+        int c = findCluster(level, airportC);
+        assertArrayEquals(new int[]{ab}, level.getTileClusters(4, 3));
+        assertArrayEquals(new int[]{c}, level.getTileClusters(7, 4));
+        assertEquals(0, level.getTileClusters(0, 0).length);
+
+        // The bundle is in the tiles of both of its ends
+        assertArrayEquals(new int[]{0}, level.getTileBundles(4, 3));
+        assertArrayEquals(new int[]{0}, level.getTileBundles(7, 4));
+        assertEquals(0, level.getTileBundles(0, 0).length);
+    }
+}
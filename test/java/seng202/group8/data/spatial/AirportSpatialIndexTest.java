@@ -0,0 +1,122 @@
+package seng202.group8.data.spatial;
+
+import org.junit.Before;
+import org.junit.Test;
+import seng202.group8.data.Route;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AirportSpatialIndexTest {
+    public static final int NUM_AIRPORTS = 2000;
+    public int[] ids;
+    public double[] latitudes;
+    public double[] longitudes;
+    public AirportSpatialIndex index;
+
+    @Before
+    public void setup() {
+        Random random = new Random(202);
+        ids = new int[NUM_AIRPORTS];
+        latitudes = new double[NUM_AIRPORTS];
+        longitudes = new double[NUM_AIRPORTS];
+        for (int i = 0; i < NUM_AIRPORTS; i++) {
+            ids[i] = i + 1;
+            latitudes[i] = random.nextDouble() * 180 - 90;
+            longitudes[i] = random.nextDouble() * 360 - 180;
+        }
+        index = new AirportSpatialIndex(ids, latitudes, longitudes);
+    }
+
+    /**
+     * Gets the distances from a point to every airport by brute force, sorted
+     */
+    public List<Double> bruteForceDistances(double latitude, double longitude) {
+        List<Double> distances = new ArrayList<>();
+        for (int i = 0; i < NUM_AIRPORTS; i++) {
+            distances.add(Route.getDistanceFromLongLat(latitude, longitude, latitudes[i], longitudes[i]));
+        }
+        distances.sort(Double::compare);
+        return distances;
+    }
+
+    @Test
+    public void testNearestMatchesBruteForce() {
+        Random random = new Random(1);
+        for (int query = 0; query < 50; query++) {
+            double latitude = random.nextDouble() * 180 - 90;
+            double longitude = random.nextDouble() * 360 - 180;
+            List<Double> expected = bruteForceDistances(latitude, longitude);
+
+            List<AirportSpatialIndex.Neighbour> nearest = index.findNearest(latitude, longitude, 10);
+            assertEquals(10, nearest.size());
+            for (int i = 0; i < 10; i++) {
+                assertEquals(expected.get(i), nearest.get(i).getDistance(), 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void testRadiusMatchesBruteForce() {
+        Random random = new Random(2);
+        for (int query = 0; query < 50; query++) {
+            double latitude = random.nextDouble() * 180 - 90;
+            double longitude = random.nextDouble() * 360 - 180;
+            long expected = bruteForceDistances(latitude, longitude).stream().filter(distance -> distance <= 800).count();
+
+            List<AirportSpatialIndex.Neighbour> found = index.findWithinRadius(latitude, longitude, 800);
+            assertEquals(expected, found.size());
+            for (AirportSpatialIndex.Neighbour neighbour : found) {
+                assertTrue(neighbour.getDistance() <= 800);
+            }
+        }
+    }
+
+    @Test
+    public void testAcrossDateLine() {
+        AirportSpatialIndex small = new AirportSpatialIndex(new int[]{1, 2, 3}, new double[]{0, 0, 0}, new double[]{179.9, -179.9, 170});
+        List<AirportSpatialIndex.Neighbour> nearest = small.findNearest(0, 179.95, 2);
+        assertEquals(1, nearest.get(0).getAirportId());
+        assertEquals(2, nearest.get(1).getAirportId());
+        assertEquals(2, small.findWithinRadius(0, -180, 50).size());
+    }
+
+    @Test
+    public void testWithAndWithoutAirport() {
+        AirportSpatialIndex moved = index.withAirport(1, 89.999, 0);
+        assertEquals(NUM_AIRPORTS, moved.size());
+        assertEquals(1, moved.findNearest(90, 0, 1).get(0).getAirportId());
+        assertNotEquals(1, index.findNearest(90, 0, 1).get(0).getAirportId()); // Original is unchanged
+
+        AirportSpatialIndex added = moved.withAirport(NUM_AIRPORTS + 1, 89.9995, 0);
+        assertEquals(NUM_AIRPORTS + 1, added.size());
+        assertEquals(NUM_AIRPORTS + 1, added.findNearest(90, 0, 1).get(0).getAirportId());
+
+        AirportSpatialIndex removed = added.withoutAirport(NUM_AIRPORTS + 1);
+        assertEquals(NUM_AIRPORTS, removed.size());
+        assertEquals(1, removed.findNearest(90, 0, 1).get(0).getAirportId());
+        assertSame(removed, removed.withoutAirport(-5));
+    }
+
+    @Test
+    public void testWithAirportsAppliesEveryChange() {
+        AirportSpatialIndex changed = index.withAirports(
+                new int[]{1, NUM_AIRPORTS + 1, 1},
+                new double[]{0, -89.9995, 89.999},
+                new double[]{0, 0, 0});
+        assertEquals(NUM_AIRPORTS + 1, changed.size());
+        assertEquals(1, changed.findNearest(90, 0, 1).get(0).getAirportId()); // Last position of an airport is kept
+        assertEquals(NUM_AIRPORTS + 1, changed.findNearest(-90, 0, 1).get(0).getAirportId());
+        assertSame(index, index.withAirports(new int[0], new double[0], new double[0]));
+    }
+
+    @Test
+    public void testFewerAirportsThanRequested() {
+        AirportSpatialIndex small = new AirportSpatialIndex(new int[]{1}, new double[]{0}, new double[]{0});
+        assertEquals(1, small.findNearest(10, 10, 5).size());
+        assertEquals(0, new AirportSpatialIndex(new int[0], new double[0], new double[0]).findNearest(0, 0, 5).size());
+    }
+}
@@ -0,0 +1,76 @@
+package seng202.group8.data.spatial;
+
+import org.junit.Before;
+import org.junit.Test;
+import seng202.group8.data.Route;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DistanceKernelTest {
+    public static final int NUM_AIRPORTS = 1000;
+    public int[] ids;
+    public double[] latitudes;
+    public double[] longitudes;
+    public DistanceKernel kernel;
+
+    @Before
+    public void setup() {
+        Random random = new Random(202);
+        ids = new int[NUM_AIRPORTS];
+        latitudes = new double[NUM_AIRPORTS];
+        longitudes = new double[NUM_AIRPORTS];
+        for (int i = 0; i < NUM_AIRPORTS; i++) {
+            ids[i] = 2 * i + 1;
+            latitudes[i] = random.nextDouble() * 180 - 90;
+            longitudes[i] = random.nextDouble() * 360 - 180;
+        }
+        kernel = new DistanceKernel(ids, latitudes, longitudes);
+    }
+
+    @Test
+    public void testDistanceMatchesHaversine() {
+        for (int from = 0; from < NUM_AIRPORTS; from += 7) {
+            for (int to = 0; to < NUM_AIRPORTS; to += 3) {
+                double expected = Route.getDistanceFromLongLat(latitudes[from], longitudes[from], latitudes[to], longitudes[to]);
+                assertEquals(expected, kernel.distance(from, to), 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void testBulkDistancesMatchSingle() {
+        // More pairs than fit in one block, and a count smaller than the arrays
+        Random random = new Random(1);
+        int count = 1000;
+        int[] from = new int[count + 10];
+        int[] to = new int[count + 10];
+        for (int i = 0; i < from.length; i++) {
+            from[i] = random.nextInt(NUM_AIRPORTS);
+            to[i] = random.nextInt(NUM_AIRPORTS);
+        }
+        double[] out = new double[count + 10];
+        out[count] = -1;
+        kernel.distances(from, to, count, out);
+        for (int i = 0; i < count; i++) {
+            assertEquals(kernel.distance(from[i], to[i]), out[i], 1e-9);
+        }
+        assertEquals(-1, out[count], 0);
+    }
+
+    @Test
+    public void testSameAndAntipodalAirports() {
+        kernel = new DistanceKernel(new int[]{1, 2, 3}, new double[]{-43.5, 43.5, -43.5}, new double[]{172.5, -7.5, 172.5});
+        assertEquals(0, kernel.distance(0, 2), 1e-9);
+        assertEquals(Math.PI * DistanceKernel.EARTH_RADIUS, kernel.distance(0, 1), 1e-3);
+    }
+
+    @Test
+    public void testGetIndex() {
+        assertEquals(0, kernel.getIndex(1));
+        assertEquals(NUM_AIRPORTS - 1, kernel.getIndex(2 * NUM_AIRPORTS - 1));
+        assertEquals(-1, kernel.getIndex(2));
+        assertEquals(NUM_AIRPORTS, kernel.size());
+    }
+}
@@ -6,11 +6,14 @@ import org.junit.Test;
 import seng202.group8.data.Airline;
 import seng202.group8.io.ConstraintsError;
 import seng202.group8.io.Database;
+import seng202.group8.io.SortOrder;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
 
 import static org.junit.Assert.*;
 
@@ -202,7 +205,7 @@ public class AirlineDataControllerTest {
 
     @Test
     public void testDeleteFromDatabase() throws SQLException {
-        DummyObserver dummy = new DummyObserver<Airline>();
+        DummyObserver<Airline> dummy = new DummyObserver<>();
         controller.addObserver(DataController.OBSERVE_ALL, dummy);
 
         Airline returned = controller.save(airline);
@@ -211,9 +214,52 @@ public class AirlineDataControllerTest {
         assertNull(controller.getEntity(returned.getId()));
     }
 
+    @Test
+    public void testSearchByNamePrefix() throws SQLException {
+        Airline returned = controller.save(airline);
+        List<Airline> results = controller.search("test airl", 10);
+        assertEquals(1, results.size());
+        assertEquals(returned.getId(), results.get(0).getId());
+    }
+
+    @Test
+    public void testSearchByCallsign() throws SQLException {
+        Airline returned = controller.save(airline);
+        List<Airline> results = controller.search("callsign", 10);
+        assertEquals(1, results.size());
+        assertEquals(returned.getId(), results.get(0).getId());
+    }
+
+    @Test
+    public void testSearchRanksNameAboveCallsign() throws SQLException {
+        Airline byCallsign = controller.save(new Airline(-1, "Other Airline", "MATTY AIR", "ZY", "ZZY", country));
+        Airline byName = controller.save(new Airline(-1, "Matty Air", "OTHER CALLSIGN", "ZX", "ZZX", country));
+        List<Airline> results = controller.search("matty", 10);
+        assertEquals(2, results.size());
+        assertEquals(byName.getId(), results.get(0).getId());
+        assertEquals(byCallsign.getId(), results.get(1).getId());
+    }
+
+    @Test
+    public void testSearchFollowsUpdatesAndDeletes() throws SQLException, DataConstraintsException {
+        Airline returned = controller.save(airline);
+        returned.setName("Renamed Carrier");
+        controller.save(returned);
+        assertTrue(controller.search("airline", 10).isEmpty());
+        assertEquals(1, controller.search("renamed", 10).size());
+
+        controller.deleteFromDatabase(returned.getId());
+        assertTrue(controller.search("renamed", 10).isEmpty());
+    }
+
+    @Test
+    public void testSearchNoWords() throws SQLException {
+        assertTrue(controller.search(" ()*\"", 10).isEmpty());
+    }
+
     @Test
     public void testDeleteNonexistentFromDatabase() throws SQLException {
-        DummyObserver dummy = new DummyObserver<Airline>();
+        DummyObserver<Airline> dummy = new DummyObserver<>();
         controller.addObserver(DataController.OBSERVE_ALL, dummy);
 
         controller.deleteFromDatabase(42069);
@@ -221,6 +267,79 @@ public class AirlineDataControllerTest {
 
         assertEquals(dummy.dataDeleted.size(), 0);
     }
+
+    @Test
+    public void testSortedFilteredPageCachedUntilSave() throws SQLException, DataConstraintsException {
+        airline.setName("!!! Cache Test Airline"); // Sorts before every real airline name
+        airline = controller.save(airline);
+        ResultCache<Airline> cache = controller.getResultCache();
+        List<Airline> first = controller.getSortedFilteredEntities("Name", SortOrder.ASCENDING, 10, 0);
+        long hits = cache.getHits();
+
+        List<Airline> second = controller.getSortedFilteredEntities("Name", SortOrder.ASCENDING, 10, 0);
+        assertEquals(hits + 1, cache.getHits());
+        assertEquals(first.size(), second.size());
+        checkAirlinesEqual(airline, second.get(0));
+
+        airline.setName("!!! Cache Test Airline Renamed");
+        controller.save(airline);
+        List<Airline> third = controller.getSortedFilteredEntities("Name", SortOrder.ASCENDING, 10, 0);
+        assertEquals(hits + 1, cache.getHits()); // The save invalidated the cached page
+        assertEquals("!!! Cache Test Airline Renamed", third.get(0).getName());
+    }
+
+    @Test
+    public void testFilteredCount() throws SQLException {
+        int count = controller.getFilteredCount();
+        assertEquals(controller.getSortedFilteredEntities(null, null, count + 1, 0).size(), count);
+
+        controller.save(airline);
+        assertEquals(count + 1, controller.getFilteredCount()); // The cached count is dropped when the data changes
+    }
+
+    @Test
+    public void testReadSortedFilteredPage() throws SQLException {
+        String query = controller.getSortedFilteredQuery("Name", SortOrder.DESCENDING);
+        List<Airline> expected = controller.getSortedFilteredEntities("Name", SortOrder.DESCENDING, 20, 40);
+        List<Airline> page = controller.readSortedFilteredPage(query, 20, 40);
+        assertEquals(expected.size(), page.size());
+        for (int i = 0; i < page.size(); i++) {
+            checkAirlinesEqual(expected.get(i), page.get(i));
+        }
+    }
+
+    @Test
+    public void testFilteredCountAsync() throws SQLException {
+        int count = controller.getFilteredCountAsync().join();
+        assertEquals(controller.getFilteredCount(), count);
+        assertTrue(controller.getFilteredCountAsync().isDone()); // Cached, so given straight away
+
+        controller.save(airline);
+        // The save is not committed, so the count's own connection does not see it yet, but the stale count is dropped
+        assertEquals(count, (int) controller.getFilteredCountAsync().join());
+    }
+
+    @Test
+    public void testUpdateEventListsChangedColumns() throws SQLException, DataConstraintsException {
+        airline = controller.save(airline);
+        DummyObserver<Airline> observer = new DummyObserver<>();
+        controller.addObserver(DataController.OBSERVE_ALL, observer);
+        try {
+            Airline renamed = airline.copy();
+            renamed.setName("Test Airline 1 Renamed");
+            controller.save(renamed, airline);
+            controller.save(renamed); // Without the previous state, any column may have changed
+        } finally {
+            controller.removeObserver(DataController.OBSERVE_ALL, observer);
+        }
+
+        assertEquals(2, observer.changes.size());
+        DataChange<Airline> change = observer.changes.get(0);
+        assertEquals(DataChange.Type.UPDATED, change.getType());
+        assertEquals(Collections.singleton(Airline.NAME), change.getChangedColumns());
+        assertFalse(change.hasChanged(Airline.IATA, Airline.ICAO));
+        assertTrue(observer.changes.get(1).hasChanged(Airline.IATA, Airline.ICAO));
+    }
 /*
     @Test
     public void testGetEmptyAllEntities() throws SQLException {
@@ -12,6 +12,8 @@ import seng202.group8.io.Database;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.Assert.*;
 
@@ -36,6 +38,25 @@ public class AirportDataControllerTest {
     @After
     public void teardown() throws SQLException {
         db.rollback();
+        SpatialIndexController.getSingleton().invalidate(); // Index may contain rolled back airports
+    }
+
+    @Test
+    public void testNearbyAirportsFollowSaves() throws SQLException, DataConstraintsException {
+        // Middle of the South Pacific, far from any real airport
+        Airport first = controller.save(new Airport("First Ocean Airport", "Nowhere", "New Zealand", "997", "9997", -50, -130, 0, 0, 'Z'));
+        Airport second = controller.save(new Airport("Second Ocean Airport", "Nowhere", "New Zealand", "996", "9996", -50.5, -130, 0, 0, 'Z'));
+        SpatialIndexController spatialIndex = SpatialIndexController.getSingleton();
+        assertEquals(second.getId(), spatialIndex.findNearbyAirports(first, 1).get(0).getId());
+
+        Airport third = controller.save(new Airport("Third Ocean Airport", "Nowhere", "New Zealand", "995", "9995", -50.1, -130, 0, 0, 'Z'));
+        assertEquals(third.getId(), spatialIndex.findNearbyAirports(first, 1).get(0).getId());
+
+        third.setLatitude(-52);
+        controller.save(third);
+        List<Airport> nearby = spatialIndex.findNearbyAirports(first, 2);
+        assertEquals(second.getId(), nearby.get(0).getId());
+        assertEquals(third.getId(), nearby.get(1).getId());
     }
 
     public void checkAirportsEqual(Airport a, Airport b) {
@@ -50,6 +71,21 @@ public class AirportDataControllerTest {
         assertEquals(a.getCode(), b.getCode());
     }
 
+    @Test
+    public void testSearchByNameAndCity() throws SQLException {
+        Airport returned = controller.save(airport);
+        assertEquals(returned.getId(), controller.search("matty", 10).get(0).getId());
+        assertEquals(returned.getId(), controller.search("christ", 10).get(0).getId());
+        assertEquals(returned.getId(), controller.search("Christchurch Matty G", 10).get(0).getId());
+        assertTrue(controller.search("matty wellington", 10).isEmpty());
+    }
+
+    @Test
+    public void testSearchIgnoresDiacriticsAndCase() throws SQLException, DataConstraintsException {
+        Airport returned = controller.save(new Airport("Zürich Test", "Zürich", "Switzerland", "998", "9998", 47, 8, 0, 1, 'E'));
+        assertEquals(returned.getId(), controller.search("ZURICH TEST", 10).get(0).getId());
+    }
+
     @Test
     public void getExistingAirportFromID() throws SQLException {
         Airport returned = controller.addToDatabase(airport);
@@ -151,7 +187,7 @@ public class AirportDataControllerTest {
 
     @Test
     public void testDeleteFromDatabase() throws SQLException {
-        DummyObserver dummy = new DummyObserver<Airport>();
+        DummyObserver<Airport> dummy = new DummyObserver<>();
         controller.addObserver(DataController.OBSERVE_ALL, dummy);
 
         Airport returned = controller.save(airport);
@@ -162,7 +198,7 @@ public class AirportDataControllerTest {
 
     @Test
     public void testDeleteNonexistentFromDatabase() throws SQLException {
-        DummyObserver dummy = new DummyObserver<Airport>();
+        DummyObserver<Airport> dummy = new DummyObserver<>();
         controller.addObserver(DataController.OBSERVE_ALL, dummy);
 
         controller.deleteFromDatabase(42069);
@@ -198,4 +234,16 @@ public class AirportDataControllerTest {
         assertEquals(controller.getTotalRoutes(anAirport.getCode()), 2);
     }
 
+
+    @Test
+    public void testGetEntitiesByCodes() throws SQLException, DataConstraintsException {
+        Airport first = controller.save(airport);
+        Airport second = controller.save(new Airport("Second Airport", "Christchurch", "New Zealand", "998", "9998", 10, 10, 0, 0, 'Z'));
+
+        List<Airport> found = controller.getEntities(Arrays.asList("999", "9998", "NULL"));
+        assertEquals(2, found.size());
+        List<Integer> ids = Arrays.asList(found.get(0).getId(), found.get(1).getId());
+        assertTrue(ids.contains(first.getId()));
+        assertTrue(ids.contains(second.getId()));
+    }
 }
@@ -0,0 +1,163 @@
+package seng202.group8.datacontroller;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import seng202.group8.data.Airline;
+import seng202.group8.data.Airport;
+import seng202.group8.data.Route;
+import seng202.group8.data.network.FlightNetwork;
+import seng202.group8.data.network.NetworkAnalytics;
+import seng202.group8.io.ConstraintsError;
+import seng202.group8.io.Database;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class AnalyticsControllerTest {
+    public AnalyticsController analyticsController;
+    public RouteDataController routeDC;
+    public Airline airline;
+    public Airport airportA;
+    public Airport airportB;
+    public Airport airportC;
+    public Airport airportD;
+
+    @Before
+    public void setup() throws SQLException, DataConstraintsException, ConstraintsError {
+        Database.establishConnection();
+        Database.databaseConnection.setAutoCommit(false);
+
+        analyticsController = AnalyticsController.getSingleton();
+        analyticsController.invalidate();
+        NetworkController.getSingleton().invalidate();
+        routeDC = RouteDataController.getSingleton();
+
+        AirportDataController airportDC = AirportDataController.getSingleton();
+        airportA = airportDC.save(new Airport("Airport A", "Null City", "New Zealand", "991", "9991", 10.0, 20.0, 123, 3, 'N'));
+        airportB = airportDC.save(new Airport("Airport B", "Null City", "Australia", "992", "9992", 11.0, 21.0, 123, 3, 'N'));
+        airportC = airportDC.save(new Airport("Airport C", "Null City", "Australia", "993", "9993", 12.0, 22.0, 123, 3, 'N'));
+        airportD = airportDC.save(new Airport("Airport D", "Null City", "New Zealand", "994", "9994", 13.0, 23.0, 123, 3, 'N'));
+        airline = AirlineDataController.getSingleton().save(new Airline("Untitled Airline", "UNTITLED", "99", "999", "New Zealand"));
+
+        // A <-> B, B -> C, B -> D, C -> D
+        saveRoute("999", airportA, airportB);
+        saveRoute("999", airportB, airportA);
+        saveRoute("99", airportB, airportC);
+        saveRoute("99", airportB, airportD);
+        saveRoute("999", airportC, airportD);
+    }
+
+    @After
+    public void teardown() throws SQLException {
+        Database.databaseConnection.rollback();
+        Database.databaseConnection.setAutoCommit(true);
+        analyticsController.invalidate();
+        NetworkController.getSingleton().invalidate();
+    }
+
+    /**
+     * Saves a route between two airports
+     */
+    public Route saveRoute(String airlineCode, Airport source, Airport destination) throws SQLException, DataConstraintsException {
+        return routeDC.save(new Route(airlineCode, source.getCode(), destination.getCode(), new String[]{"777"}, 123, false, 60, new ArrayList<>(Arrays.asList(720))));
+    }
+
+    /**
+     * Gets the index of an airport in the network the analytics were worked out from
+     */
+    public int index(NetworkAnalytics analytics, Airport airport) {
+        return analytics.getNetwork().getAirportIndexById(airport.getId());
+    }
+
+    @Test
+    public void testDegrees() throws SQLException {
+        NetworkAnalytics analytics = analyticsController.getAnalytics();
+        int b = index(analytics, airportB);
+        assertEquals(3, analytics.getOutDegree(b));
+        assertEquals(1, analytics.getInDegree(b));
+        assertEquals(3, analytics.getDegree(b));
+
+        int d = index(analytics, airportD);
+        assertEquals(0, analytics.getOutDegree(d));
+        assertEquals(2, analytics.getInDegree(d));
+        assertEquals(2, analytics.getDegree(d));
+        assertEquals(2.0 / (analytics.getNetwork().getAirportCount() - 1), analytics.getDegreeCentrality(d), 1e-12);
+    }
+
+    @Test
+    public void testReachability() throws SQLException {
+        NetworkAnalytics analytics = analyticsController.getAnalytics();
+        int a = index(analytics, airportA);
+        assertEquals(1, analytics.countReachable(a, 1));
+        assertEquals(3, analytics.getReachCount(a));
+        assertEquals(3, analytics.countReachable(a, NetworkAnalytics.REACH_LEGS));
+        assertEquals(3, analytics.countReachable(a, 3));
+        assertEquals(0, analytics.getReachCount(index(analytics, airportD)));
+        assertEquals(1, analytics.getReachCount(index(analytics, airportC)));
+    }
+
+    @Test
+    public void testCountryHubs() throws SQLException {
+        NetworkAnalytics analytics = analyticsController.getAnalytics();
+        FlightNetwork network = analytics.getNetwork();
+        int b = index(analytics, airportB);
+        int c = index(analytics, airportC);
+        assertEquals(1, analytics.getCountryRank(b));
+        assertEquals(2, analytics.getCountryRank(c));
+
+        int[] hubs = analytics.getTopHubsInCountry(network.getCountryIndex("Australia"), 2);
+        assertArrayEquals(new int[]{b, c}, hubs);
+    }
+
+    @Test
+    public void testAirlineHubsCombineCodes() throws SQLException {
+        List<NetworkAnalytics.Hub> hubs = analyticsController.getTopHubsForAirline(airline, 2);
+        FlightNetwork network = analyticsController.getAnalytics().getNetwork();
+        assertEquals(2, hubs.size());
+        assertEquals("992", network.getAirportCode(hubs.get(0).getAirport()));
+        assertEquals(4, hubs.get(0).getRouteCount());
+        assertEquals(2, hubs.get(1).getRouteCount());
+    }
+
+    @Test
+    public void testAirlineHubsSingleCode() throws SQLException {
+        NetworkAnalytics analytics = analyticsController.getAnalytics();
+        int airline = analytics.getNetwork().getAirlineIndex("99");
+        List<NetworkAnalytics.Hub> hubs = analytics.getTopHubsForAirline(new int[]{airline}, 5);
+        assertEquals(3, hubs.size());
+        assertEquals(index(analytics, airportB), hubs.get(0).getAirport());
+        assertEquals(2, hubs.get(0).getRouteCount());
+        assertEquals(1, hubs.get(1).getRouteCount());
+    }
+
+    @Test
+    public void testRouteSaveInvalidatesAnalytics() throws SQLException, DataConstraintsException {
+        NetworkAnalytics before = analyticsController.getAnalytics();
+        saveRoute("999", airportD, airportA);
+
+        NetworkAnalytics after = analyticsController.getAnalytics();
+        assertNotSame(before, after);
+        assertEquals(0, before.getReachCount(index(before, airportD)));
+        assertEquals(2, after.getReachCount(index(after, airportD)));
+    }
+
+    @Test
+    public void testAsyncAnalyticsWorkedOutInBackground() throws SQLException, DataConstraintsException {
+        NetworkAnalytics before = analyticsController.getAnalytics();
+        CompletableFuture<NetworkAnalytics> current = analyticsController.getAnalyticsAsync();
+        assertTrue(current.isDone());
+        assertSame(before, current.join());
+
+        saveRoute("999", airportD, airportA);
+        NetworkAnalytics after = analyticsController.getAnalyticsAsync().join();
+        assertNotSame(before, after);
+        assertEquals(2, after.getReachCount(index(after, airportD)));
+        assertSame(after, analyticsController.getAnalyticsAsync().getNow(null));
+    }
+}
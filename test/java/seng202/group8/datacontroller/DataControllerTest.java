@@ -11,7 +11,9 @@ import java.sql.SQLException;
 import java.util.*;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 class DummyData extends Data {
     DummyData(int id) {
@@ -70,6 +72,11 @@ class DummyDC extends DataController<DummyData> {
         return null;
     }
 
+    @Override
+    public int getFilteredCount() {
+        return database.size();
+    }
+
     @Override
     protected DummyData addToDatabase(DummyData data, boolean returnNew) throws SQLException, ConstraintsError {
         return addToDatabase(data);
@@ -120,8 +127,8 @@ public class DataControllerTest {
     public void testGlobalObserversChange() throws SQLException {
         DummyData data = standardDummy();
         dc.save(data);
-        DummyObserver observer1 = new DummyObserver<DummyData>();
-        DummyObserver observer2 = new DummyObserver<DummyData>();
+        DummyObserver<DummyData> observer1 = new DummyObserver<>();
+        DummyObserver<DummyData> observer2 = new DummyObserver<>();
 
         dc.addObserver(data.getId(), observer1);
         dc.addObserver(DataController.OBSERVE_ALL, observer1);
@@ -140,8 +147,8 @@ public class DataControllerTest {
     public void testGlobalObserversModify() throws SQLException {
         DummyData data = standardDummy();
         dc.save(data);
-        DummyObserver observer1 = new DummyObserver<DummyData>();
-        DummyObserver observer2 = new DummyObserver<DummyData>();
+        DummyObserver<DummyData> observer1 = new DummyObserver<>();
+        DummyObserver<DummyData> observer2 = new DummyObserver<>();
 
         dc.addObserver(data.getId(), observer1);
         dc.addObserver(DataController.OBSERVE_ALL, observer1);
@@ -163,7 +170,7 @@ public class DataControllerTest {
         DummyData data = standardDummy();
         dc.save(data);
 
-        DummyObserver observer1 = new DummyObserver<DummyData>();
+        DummyObserver<DummyData> observer1 = new DummyObserver<>();
 
         dc.addObserver(data.getId(), observer1);
         dc.addObserver(data.getId(), observer1);
@@ -179,7 +186,7 @@ public class DataControllerTest {
         DummyData data = standardDummy();
         dc.save(data);
 
-        DummyObserver observer1 = new DummyObserver<DummyData>();
+        DummyObserver<DummyData> observer1 = new DummyObserver<>();
 
         dc.addObserver(data.getId(), observer1);
         dc.addObserver(data.getId(), observer1);
@@ -197,9 +204,9 @@ public class DataControllerTest {
 
     @Test
     public void testMultipleObserversMultipleObjects() throws DataConstraintsException, SQLException {
-        DummyObserver observer1 = new DummyObserver<DummyData>();
-        DummyObserver observer2 = new DummyObserver<DummyData>();
-        DummyObserver observer3 = new DummyObserver<DummyData>();
+        DummyObserver<DummyData> observer1 = new DummyObserver<>();
+        DummyObserver<DummyData> observer2 = new DummyObserver<>();
+        DummyObserver<DummyData> observer3 = new DummyObserver<>();
         DummyData data1 = new DummyData(1);
         DummyData data2 = new DummyData(2);
         DummyData data3 = new DummyData(3);
@@ -235,10 +242,10 @@ public class DataControllerTest {
     public void testNotifyObserversExcept() throws DataConstraintsException, SQLException {
         DummyData data = standardDummy();
 
-        DummyObserver observer1 = new DummyObserver<DummyData>();
+        DummyObserver<DummyData> observer1 = new DummyObserver<>();
         dc.save(data);
-        DummyObserver observer2 = new DummyObserver<DummyData>();
-        DummyObserver observer3 = new DummyObserver<DummyData>();
+        DummyObserver<DummyData> observer2 = new DummyObserver<>();
+        DummyObserver<DummyData> observer3 = new DummyObserver<>();
 
         dc.addObserver(data.getId(), observer1);
         dc.addObserver(data.getId(), observer2);
@@ -256,8 +263,8 @@ public class DataControllerTest {
         DummyData data1 = standardDummy();
         DummyData data2 = new DummyData(data1.getId() + 1);
 
-        DummyObserver observer1 = new DummyObserver<DummyData>();
-        DummyObserver observer2 = new DummyObserver<DummyData>();
+        DummyObserver<DummyData> observer1 = new DummyObserver<>();
+        DummyObserver<DummyData> observer2 = new DummyObserver<>();
 
         dc.save(data1);
         dc.save(data2);
@@ -278,8 +285,8 @@ public class DataControllerTest {
         DummyData data1 = standardDummy();
         DummyData data2 = new DummyData(data1.getId() + 1);
 
-        DummyObserver observer1 = new DummyObserver<DummyData>();
-        DummyObserver observer2 = new DummyObserver<DummyData>();
+        DummyObserver<DummyData> observer1 = new DummyObserver<>();
+        DummyObserver<DummyData> observer2 = new DummyObserver<>();
 
         dc.save(data1);
         dc.save(data2);
@@ -297,4 +304,99 @@ public class DataControllerTest {
         dc.notifyObserversOfDeletion(data2.getId());
     }
 
+    @Test
+    public void testQueuedNotificationsCoalesced() throws SQLException {
+        DummyData data = standardDummy();
+        dc.save(data);
+        DummyObserver<DummyData> observer = new DummyObserver<>();
+        DummyObserver<DummyData> globalObserver = new DummyObserver<>();
+        dc.addObserver(data.getId(), observer);
+        dc.addObserver(DataController.OBSERVE_ALL, globalObserver);
+
+        ArrayList<Runnable> queued = new ArrayList<>();
+        DataController.setNotificationExecutor(queued::add);
+        try {
+            dc.notifyObservers(data);
+            dc.notifyObservers(data.getId());
+            dc.notifyGlobalObservers(null);
+            assertEquals(0, observer.dataChanged.size()); // Nothing delivered until the executor runs
+            assertEquals(1, queued.size());
+
+            queued.remove(0).run();
+        } finally {
+            DataController.setNotificationExecutor(Runnable::run);
+        }
+
+        // The two changes to the object are merged, and the global observer only hears of the bulk change
+        assertEquals(1, observer.dataChanged.size());
+        assertEquals(1, globalObserver.dataChanged.size());
+        assertNull(globalObserver.dataChanged.get(0));
+    }
+
+    @Test
+    public void testChangeEventsDescribeChange() throws SQLException {
+        DummyObserver<DummyData> observer = new DummyObserver<>();
+        dc.addObserver(DataController.OBSERVE_ALL, observer);
+
+        DummyData data = dc.save(new DummyData());
+        dc.save(data);
+        dc.notifyObserversOfDeletion(data.getId());
+        dc.notifyObserversOfDeletion(DataController.OBSERVE_ALL);
+
+        assertEquals(4, observer.changes.size());
+        assertEquals(DataChange.Type.INSERTED, observer.changes.get(0).getType());
+        assertEquals(DataChange.Type.UPDATED, observer.changes.get(1).getType());
+        assertEquals(data, observer.changes.get(1).getData());
+        assertEquals(DataChange.Type.DELETED, observer.changes.get(2).getType());
+        assertTrue(observer.changes.get(2).affects(data.getId()));
+        assertFalse(observer.changes.get(2).affects(data.getId() + 1));
+        assertTrue(observer.changes.get(3).isWholeTable());
+    }
+
+    @Test
+    public void testQueuedInsertAndUpdateMerged() throws SQLException {
+        DummyObserver<DummyData> observer = new DummyObserver<>();
+        dc.addObserver(DataController.OBSERVE_ALL, observer);
+
+        ArrayList<Runnable> queued = new ArrayList<>();
+        DataController.setNotificationExecutor(queued::add);
+        DummyData data;
+        try {
+            data = dc.save(new DummyData());
+            dc.save(data);
+            queued.remove(0).run();
+        } finally {
+            DataController.setNotificationExecutor(Runnable::run);
+        }
+
+        // An object inserted then updated before observers heard of it is still new to them
+        assertEquals(1, observer.changes.size());
+        assertEquals(DataChange.Type.INSERTED, observer.changes.get(0).getType());
+        assertEquals(data.getId(), observer.changes.get(0).getFirstId());
+        assertTrue(observer.changes.get(0).hasChanged("Anything"));
+    }
+
+    @Test
+    public void testQueuedDeleteAndInsertMerged() throws SQLException {
+        DummyData data = dc.save(new DummyData());
+        DummyObserver<DummyData> observer = new DummyObserver<>();
+        dc.addObserver(DataController.OBSERVE_ALL, observer);
+
+        ObserverDispatcher<DummyData> dispatcher = new ObserverDispatcher<>(dc);
+        ArrayList<Runnable> queued = new ArrayList<>();
+        DataController.setNotificationExecutor(queued::add);
+        try {
+            dispatcher.changed(DataChange.Type.DELETED, data.getId(), null, null, true, null);
+            dispatcher.changed(DataChange.Type.INSERTED, data.getId(), data, null, false, null);
+            queued.remove(0).run();
+        } finally {
+            DataController.setNotificationExecutor(Runnable::run);
+        }
+
+        // Observers still hold the deleted object, so the row coming back replaces it
+        assertEquals(1, observer.changes.size());
+        assertEquals(DataChange.Type.UPDATED, observer.changes.get(0).getType());
+        assertEquals(data, observer.changes.get(0).getData());
+        assertTrue(observer.changes.get(0).hasChanged("Anything"));
+    }
 }
@@ -6,11 +6,13 @@ import seng202.group8.data.Data;
 import java.util.ArrayList;
 
 class DummyObserver<DummyData extends Data> implements DataObserver<DummyData> {
-    public ArrayList<DummyData> dataChanged = new ArrayList<>();
+    public ArrayList<DummyData> dataChanged = new ArrayList<>(); // Changed object of each change, or null if none
     public ArrayList<Integer> dataDeleted = new ArrayList<>();
+    public ArrayList<DataChange<DummyData>> changes = new ArrayList<>();
 
     @Override
-    public void dataChangedEvent(DummyData data) {
-        dataChanged.add(data);
+    public void dataChangeEvent(DataChange<DummyData> change) {
+        changes.add(change);
+        dataChanged.add(change.getData());
     }
 }
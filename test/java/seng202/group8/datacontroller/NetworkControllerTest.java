@@ -0,0 +1,163 @@
+package seng202.group8.datacontroller;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import seng202.group8.data.Airline;
+import seng202.group8.data.Airport;
+import seng202.group8.data.Route;
+import seng202.group8.data.network.FlightNetwork;
+import seng202.group8.data.network.ItinerarySearch;
+import seng202.group8.io.ConstraintsError;
+import seng202.group8.io.Database;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class NetworkControllerTest {
+    public NetworkController networkController;
+    public RouteDataController routeDC;
+    public Airport airport;
+    public Airport airport2;
+    public Route route;
+
+    @Before
+    public void setup() throws SQLException, DataConstraintsException, ConstraintsError {
+        Database.establishConnection();
+        Database.databaseConnection.setAutoCommit(false);
+
+        networkController = NetworkController.getSingleton();
+        networkController.invalidate();
+        routeDC = RouteDataController.getSingleton();
+
+        airport = AirportDataController.getSingleton().save(new Airport("Untitled Airport", "Null City", "New Zealand", "999", "9999", 10.0, 20.0, 123, 3, 'N'));
+        airport2 = AirportDataController.getSingleton().save(new Airport("DEST", "Null City", "Australia", "888", "8888", -10.0, 30.0, 123, 3, 'N'));
+        Airline airline = AirlineDataController.getSingleton().save(new Airline("Untitled Airline", "UNTITLED", null, "999", "New Zealand"));
+        route = new Route(airline.getCode(), airport.getCode(), airport2.getCode(), new String[]{"777"}, 123, false, 60, new ArrayList<>(Arrays.asList(720, 360, 1080)));
+    }
+
+    @After
+    public void teardown() throws SQLException {
+        Database.databaseConnection.rollback();
+        Database.databaseConnection.setAutoCommit(true);
+        networkController.invalidate();
+    }
+
+    /**
+     * Checks that the network has exactly one edge for the route, matching its values
+     */
+    public void checkEdgeMatchesRoute(FlightNetwork network, Route route) {
+        int edge = network.findEdge(route.getId());
+        assertNotEquals(-1, edge);
+
+        int source = network.getAirportIndex(route.getSourceAirportCode());
+        assertTrue(edge >= network.getFirstEdge(source) && edge < network.getEdgeEnd(source));
+        assertEquals(source, network.getEdgeSource(edge));
+        assertEquals(route.getDestinationAirportCode(), network.getAirportCode(network.getEdgeTarget(edge)));
+        assertEquals(route.getAirlineCode(), network.getAirlineCode(network.getEdgeAirline(edge)));
+        assertEquals(route.getPrice(), network.getEdgePrice(edge));
+        assertEquals(route.getFlightDuration(), network.getEdgeDuration(edge));
+
+        ArrayList<Integer> times = new ArrayList<>();
+        for (int k = network.getFirstTakeoff(edge); k < network.getTakeoffEnd(edge); k++) {
+            times.add(network.getTakeoffTime(k));
+        }
+        assertEquals(route.getTakeoffTimes(), times);
+    }
+
+    @Test
+    public void testBuildContainsAirports() throws SQLException {
+        FlightNetwork network = networkController.getNetwork();
+        int index = network.getAirportIndex("9999");
+        assertEquals(index, network.getAirportIndex("999"));
+        assertEquals(index, network.getAirportIndexById(airport.getId()));
+        assertEquals(airport.getId(), network.getAirportId(index));
+        assertEquals("999", network.getAirportCode(index));
+        assertEquals(10.0, network.getLatitude(index), 1e-9);
+        assertEquals(20.0, network.getLongitude(index), 1e-9);
+        assertEquals("New Zealand", network.getCountryName(network.getAirportCountry(index)));
+        assertNotEquals(network.getAirportCountry(index), network.getAirportCountry(network.getAirportIndex("888")));
+        assertEquals(-1, network.getAirportIndex("NOTANAIRPORT"));
+    }
+
+    @Test
+    public void testBuildContainsRoutes() throws SQLException {
+        route = routeDC.save(route);
+        networkController.invalidate();
+        checkEdgeMatchesRoute(networkController.getNetwork(), route);
+    }
+
+    @Test
+    public void testNegativePriceCountedAsFree() throws SQLException {
+        route = routeDC.save(route);
+        try (Statement statement = Database.databaseConnection.createStatement()) {
+            // Setting the price of a route can not make it negative, but the database does not stop it
+            statement.executeUpdate("UPDATE Route SET Price = -50 WHERE ID = " + route.getId());
+        }
+        networkController.invalidate();
+        FlightNetwork network = networkController.getNetwork();
+        ItinerarySearch.Itinerary cheapest = new ItinerarySearch(network).findCheapest(network.getAirportIndex("999"), network.getAirportIndex("888"), 0);
+        assertEquals(0, cheapest.getPrice());
+    }
+
+    @Test
+    public void testRouteWithUnknownAirportLeftOut() throws SQLException, DataConstraintsException {
+        route.setDestinationAirportCode("NULL");
+        route = routeDC.save(route);
+        networkController.invalidate();
+        assertEquals(-1, networkController.getNetwork().findEdge(route.getId()));
+    }
+
+    @Test
+    public void testSavePatchesNetwork() throws SQLException {
+        FlightNetwork before = networkController.getNetwork();
+        route = routeDC.save(route);
+
+        FlightNetwork after = networkController.getNetwork();
+        assertEquals(-1, before.findEdge(route.getId())); // Old network is unchanged
+        assertEquals(before.getEdgeCount() + 1, after.getEdgeCount());
+        checkEdgeMatchesRoute(after, route);
+    }
+
+    @Test
+    public void testUpdatePatchesNetwork() throws SQLException, DataConstraintsException {
+        route = routeDC.save(route);
+        FlightNetwork before = networkController.getNetwork();
+
+        route.setPrice(999);
+        route.setTakeoffTimes(new ArrayList<>(Arrays.asList(100, 200)));
+        route = routeDC.save(route);
+
+        FlightNetwork after = networkController.getNetwork();
+        assertEquals(before.getEdgeCount(), after.getEdgeCount());
+        checkEdgeMatchesRoute(after, route);
+    }
+
+    @Test
+    public void testPatchedNetworkMatchesRebuild() throws SQLException {
+        networkController.getNetwork();
+        route = routeDC.save(route);
+        FlightNetwork patched = networkController.getNetwork();
+
+        networkController.invalidate();
+        FlightNetwork rebuilt = networkController.getNetwork();
+        assertEquals(rebuilt.getEdgeCount(), patched.getEdgeCount());
+        for (int a = 0; a < rebuilt.getAirportCount(); a++) {
+            assertEquals(rebuilt.getEdgeEnd(a) - rebuilt.getFirstEdge(a), patched.getEdgeEnd(a) - patched.getFirstEdge(a));
+        }
+        checkEdgeMatchesRoute(rebuilt, route);
+    }
+
+    @Test
+    public void testDeleteRebuildsNetwork() throws SQLException {
+        route = routeDC.save(route);
+        assertNotEquals(-1, networkController.getNetwork().findEdge(route.getId()));
+
+        routeDC.deleteFromDatabase(route.getId());
+        assertEquals(-1, networkController.getNetwork().findEdge(route.getId()));
+    }
+}
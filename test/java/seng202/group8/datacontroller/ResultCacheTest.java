@@ -0,0 +1,40 @@
+package seng202.group8.datacontroller;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ResultCacheTest {
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        ResultCache<Integer> cache = new ResultCache<>(16);
+        for (int i = 0; i <= ResultCache.CAPACITY; i++) {
+            cache.put("page " + i, 1, Arrays.asList(i, i + 1));
+            cache.get("page 0", 1); // Keeps the first page recently used
+        }
+
+        assertEquals(ResultCache.CAPACITY, cache.getPageCount());
+        assertEquals(2 * ResultCache.CAPACITY, cache.getRowCount());
+        assertEquals(1, cache.getEvictions());
+        assertNotNull(cache.get("page 0", 1));
+        assertNull(cache.get("page 1", 1));
+    }
+
+    @Test
+    public void testNewVersionInvalidates() {
+        ResultCache<Integer> cache = new ResultCache<>(16);
+        cache.put("page", 1, Arrays.asList(1, 2, 3));
+        assertEquals(Arrays.asList(1, 2, 3), cache.get("page", 1));
+        cache.get("page", 1).clear(); // Callers get a copy they can modify
+        assertEquals(3, cache.get("page", 1).size());
+
+        assertNull(cache.get("page", 2));
+        assertEquals(0, cache.getPageCount());
+        assertEquals(1, cache.getInvalidations());
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+}
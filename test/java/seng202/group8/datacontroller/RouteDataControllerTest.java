@@ -1,5 +1,6 @@
 package seng202.group8.datacontroller;
 
+import org.javatuples.Triplet;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -7,8 +8,11 @@ import seng202.group8.data.Airline;
 import seng202.group8.data.Airport;
 import seng202.group8.data.Country;
 import seng202.group8.data.Route;
+import seng202.group8.data.filters.FilterRange;
+import seng202.group8.data.filters.NumericFilter;
 import seng202.group8.io.ConstraintsError;
 import seng202.group8.io.Database;
+import seng202.group8.io.SortOrder;
 
 import java.io.IOException;
 import java.net.URI;
@@ -21,6 +25,7 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
 import static org.junit.Assert.*;
 
@@ -256,6 +261,98 @@ public class RouteDataControllerTest {
 
 
 
+    /**
+     * Saves the test airports two degrees of longitude apart on the equator
+     */
+    public void saveAirportsApart() throws DataConstraintsException, SQLException {
+        airport2.setLongitude(2);
+        airport = airportDC.save(airport);
+        airport2 = airportDC.save(airport2);
+    }
+
+    @Test
+    public void testSaveStoresDistance() throws SQLException, DataConstraintsException {
+        saveAirportsApart();
+        Route saved = routeDC.save(route);
+        assertEquals(Route.getDistanceFromLongLat(0, 0, 0, 2), saved.getDistance(), 1e-6);
+    }
+
+    @Test
+    public void testDistanceNullWhenAirportUnknown() throws SQLException, DataConstraintsException {
+        saveAirportsApart();
+        route.setDestinationAirportCode("NULL");
+        assertNull(routeDC.save(route).getDistance());
+    }
+
+    @Test
+    public void testFillMissingDistances() throws SQLException, DataConstraintsException {
+        saveAirportsApart();
+        routeDC.addToBatch(route);
+        routeDC.executeBatch(true);
+        Route added = routeDC.getEntity(route.getSourceAirportCode(), route.getDestinationAirportCode(), route.getAirlineCode());
+        assertNull(added.getDistance());
+
+        assertTrue(RouteDataController.fillMissingDistances(db, null) >= 1);
+        assertEquals(Route.getDistanceFromLongLat(0, 0, 0, 2), routeDC.getEntity(added.getId()).getDistance(), 1e-6);
+    }
+
+    @Test
+    public void testAirportAddFillsOnlyItsRouteDistances() throws SQLException, DataConstraintsException {
+        airport = airportDC.save(airport);
+        airport2.setLongitude(2);
+        Route toNewAirport = routeDC.save(route);
+        route.setDestinationAirportCode("NULL");
+        Route elsewhere = routeDC.save(route);
+        assertNull(toNewAirport.getDistance());
+
+        airportDC.save(airport2);
+        assertEquals(Route.getDistanceFromLongLat(0, 0, 0, 2), routeDC.getEntity(toNewAirport.getId()).getDistance(), 1e-6);
+        assertNull(routeDC.getEntity(elsewhere.getId()).getDistance());
+    }
+
+    @Test
+    public void testAirportUpdateRegeneratesDistances() throws SQLException, DataConstraintsException {
+        saveAirportsApart();
+        Route saved = routeDC.save(route);
+
+        airport2.setLatitude(3);
+        airportDC.save(airport2);
+        assertEquals(Route.getDistanceFromLongLat(0, 0, 3, 2), routeDC.getEntity(saved.getId()).getDistance(), 1e-6);
+
+        // Changing the code moves the route off the airport, so it no longer has a distance
+        airport2.setIata("777");
+        airport2.setIcao("7777");
+        airportDC.save(airport2);
+        assertNull(routeDC.getEntity(saved.getId()).getDistance());
+    }
+
+    @Test
+    public void testFilterAndSortByDistance() throws SQLException, DataConstraintsException, URISyntaxException, IOException {
+        // getSortedFilteredEntities commits, so use a separate database
+        Database.setDatabasePath(testDBPath.toUri());
+        testDBUsed = true;
+        saveAirportsApart();
+        Route saved = routeDC.save(route);
+        NumericFilter distanceFilter = FiltersController.getSingleton().getDistanceFilter();
+        try {
+            distanceFilter.setRange(new FilterRange<>(200, 300));
+            ArrayList<Route> routes = routeDC.getSortedFilteredEntities(Route.DISTANCE, SortOrder.ASCENDING, 1000, 0);
+            assertTrue(routes.stream().anyMatch(found -> found.getId() == saved.getId()));
+            for (int i = 0; i < routes.size(); i++) {
+                assertTrue(routes.get(i).getDistance() >= 200 && routes.get(i).getDistance() <= 300);
+                if (i > 0) {
+                    assertTrue(routes.get(i - 1).getDistance() <= routes.get(i).getDistance());
+                }
+            }
+
+            distanceFilter.setRange(new FilterRange<>(0, 100));
+            routes = routeDC.getSortedFilteredEntities(null, null, 1000, 0);
+            assertTrue(routes.stream().noneMatch(found -> found.getId() == saved.getId()));
+        } finally {
+            distanceFilter.setRange(new FilterRange<>(distanceFilter.getMin(), distanceFilter.getMax()));
+        }
+    }
+
     @Test
     public void testAutoGenerateValuesForAllRoutesWithZeroPrice() throws DataConstraintsException, SQLException, URISyntaxException, IOException {
         Database.setDatabasePath(testDBPath.toUri());
@@ -293,4 +390,35 @@ public class RouteDataControllerTest {
         Database.setDatabasePath();
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testQueuedStatsNotHiddenByCachedPage() throws DataConstraintsException, SQLException, URISyntaxException, IOException {
+        Database.setDatabasePath(testDBPath.toUri());
+        testDBUsed = true;
+
+        airportDC.save(new Airport("test 1", "asdf", "New Zealand", null, "9999", 10, 20, 10, 5.5, 'N'));
+        airportDC.save(new Airport("test 2", "asdf", "New Zealand", null, "9998", 10, 30, 10, 5.5, 'N'));
+        Route saved = routeDC.save(new Route("ABC", "9999", "9998", new String[]{}, 100, false, 60, new ArrayList<>()));
+        assertFalse(routeDC.getSortedFilteredEntities(null, null, 10, 0).get(0).isCodeShare());
+
+        saved.setCodeShare(true); // Not filtered on, so the route stays in the page
+        routeDC.updateWithGeneratedStats(saved);
+        assertTrue(routeDC.getSortedFilteredEntities(null, null, 10, 0).get(0).isCodeShare());
+    }
+
+    @Test
+    public void testGetEntitiesByTriplets() throws SQLException, DataConstraintsException {
+        Route saved = routeDC.save(route);
+        Route reverse = routeDC.save(new Route(airline.getCode(), airport2.getCode(), airport.getCode(), new String[]{"777"}, 100, false, 60, new ArrayList<>()));
+
+        List<Route> found = routeDC.getEntities(Arrays.asList(
+                new Triplet<>(route.getSourceAirportCode(), route.getDestinationAirportCode(), route.getAirlineCode()),
+                new Triplet<>(airport2.getCode(), airport.getCode(), airline.getCode()),
+                new Triplet<>("NUL", "NUL", "NUL")));
+        assertEquals(2, found.size());
+        List<Integer> ids = Arrays.asList(found.get(0).getId(), found.get(1).getId());
+        assertTrue(ids.contains(saved.getId()));
+        assertTrue(ids.contains(reverse.getId()));
+        assertTrue(routeDC.getEntities(new ArrayList<>()).isEmpty());
+    }
+}
@@ -121,6 +121,96 @@ public class TripDataControllerTest {
     @After
     public void teardown() throws SQLException {
         Database.databaseConnection.rollback();
+        NetworkController.getSingleton().invalidate(); // Network may contain rolled back routes
+        SpatialIndexController.getSingleton().invalidate();
+    }
+
+    public void checkFlight(TripFlight flight, String source, String destination, ZonedDateTime takeoff) {
+        assertEquals(source, flight.getSourceCode());
+        assertEquals(destination, flight.getDestinationCode());
+        assertEquals("00", flight.getAirlineCode());
+        assertEquals(takeoff, flight.getUTCTakeoffDateTime());
+        assertTrue(flight.isMemoryOnly());
+    }
+
+    @Test
+    public void testEarliestArrivalItinerary() throws SQLException {
+        List<TripFlight> flights = tripDC.findEarliestArrivalItinerary("0000", "0002", DateTimeHelpers.generateUTCDateTime(2020, 2, 21, 5, 0));
+        assertEquals(2, flights.size());
+        // Lands 7:40, so the next flight with at least 30 minutes to connect is at 12:00
+        checkFlight(flights.get(0), "0000", "0001", DateTimeHelpers.generateUTCDateTime(2020, 2, 21, 6, 0));
+        checkFlight(flights.get(1), "0001", "0002", DateTimeHelpers.generateUTCDateTime(2020, 2, 21, 12, 0));
+    }
+
+    @Test
+    public void testItineraryDomesticConnectionTime() throws SQLException {
+        List<TripFlight> flights = tripDC.findEarliestArrivalItinerary("0000", "0002", DateTimeHelpers.generateUTCDateTime(2020, 2, 21, 15, 0));
+        // Lands 17:20, leaving exactly 30 minutes before the 18:00 flight
+        checkFlight(flights.get(1), "0001", "0002", DateTimeHelpers.generateUTCDateTime(2020, 2, 21, 18, 0));
+    }
+
+    @Test
+    public void testItineraryInternationalConnectionTime() throws SQLException {
+        List<TripFlight> flights = tripDC.findEarliestArrivalItinerary("0000", "0003", DateTimeHelpers.generateUTCDateTime(2020, 2, 21, 15, 0));
+        assertEquals(3, flights.size());
+        // Lands at 0002 at 20:00; the 20:00 flight to Japan leaves no time to connect, so wait for the next day
+        checkFlight(flights.get(2), "0002", "0003", DateTimeHelpers.generateUTCDateTime(2020, 2, 22, 7, 0));
+        assertEquals(DateTimeHelpers.generateUTCDateTime(2020, 2, 22, 10, 20), tripDC.getUTCLandingTime(flights.get(2)));
+    }
+
+    @Test
+    public void testCheapestItinerary() throws SQLException, DataConstraintsException {
+        routeDC.save(new Route("00", "0000", "0002", new String[]{"777"}, 1000, false, 60, Arrays.asList(6 * 60, 12 * 60)));
+        ZonedDateTime departure = DateTimeHelpers.generateUTCDateTime(2020, 2, 21, 5, 0);
+
+        List<TripFlight> fastest = tripDC.findEarliestArrivalItinerary("0000", "0002", departure);
+        assertEquals(1, fastest.size());
+        checkFlight(fastest.get(0), "0000", "0002", DateTimeHelpers.generateUTCDateTime(2020, 2, 21, 6, 0));
+
+        List<TripFlight> cheapest = tripDC.findCheapestItinerary("0000", "0002", departure);
+        assertEquals(2, cheapest.size());
+        assertEquals(400, tripDC.getPrice(cheapest.get(0)) + tripDC.getPrice(cheapest.get(1)));
+    }
+
+    @Test
+    public void testItineraryUnreachableOrUnknownAirport() throws SQLException, DataConstraintsException {
+        airportDC.save(new Airport("0004 Airport", "CITY", "Fiji", null, "0004", 6.0, 0.0, 0, 0, 'N'));
+        ZonedDateTime departure = DateTimeHelpers.generateUTCDateTime(2020, 2, 21, 5, 0);
+        assertNull(tripDC.findEarliestArrivalItinerary("0000", "0004", departure));
+        assertNull(tripDC.findCheapestItinerary("0000", "0004", departure));
+        assertNull(tripDC.findEarliestArrivalItinerary("0000", "0011", departure));
+    }
+
+    @Test
+    public void testSanityCheckSuggestsGroundTransfer() throws SQLException, DataConstraintsException {
+        // About 110 km from 0003, where flight 4 lands, with a flight to where flight 5 goes
+        airportDC.save(new Airport("0005 Airport", "CITY", "Japan", null, "0005", 21.0, 0.0, 0, 0, 'N'));
+        routeDC.save(new Route("00", "0005", "0001", new String[]{"777"}, 400, false, 200, Arrays.asList(18 * 60)));
+
+        List<TripDataController.WarningError> errors = tripDC.tripSanityCheck(trip);
+        assertTrue(errors.get(4).message.contains("km away"));
+        assertTrue(errors.get(4).message.contains("0005 (111 km)"));
+    }
+
+    @Test
+    public void testPrepareSanityCheckBuildsNetworkAndIndex() throws Exception {
+        NetworkController.getSingleton().invalidate();
+        SpatialIndexController.getSingleton().invalidate();
+        tripDC.prepareSanityCheckAsync().get();
+        assertNotNull(NetworkController.getSingleton().getBuiltNetwork());
+        assertNotNull(SpatialIndexController.getSingleton().getBuiltIndex());
+        assertTrue(tripDC.prepareSanityCheckAsync().isDone()); // Nothing left to build
+    }
+
+    @Test
+    public void testItineraryPassesSanityCheck() throws SQLException, DataConstraintsException {
+        Trip found = new Trip("Found Trip", null);
+        for (TripFlight flight : tripDC.findEarliestArrivalItinerary("0000", "0003", DateTimeHelpers.generateUTCDateTime(2020, 2, 21, 15, 0))) {
+            found.addFlight(flight);
+        }
+        for (TripDataController.WarningError error : tripDC.tripSanityCheck(found)) {
+            assertNull(error);
+        }
     }
 
     @Test
@@ -223,8 +313,8 @@ public class TripDataControllerTest {
 
     @Test
     public void testDeleteFromDatabase() throws SQLException {
-        DummyObserver dummy = new DummyObserver<Trip>();
-        routeDC.addObserver(DataController.OBSERVE_ALL, dummy);
+        DummyObserver<Trip> dummy = new DummyObserver<>();
+        tripDC.addObserver(DataController.OBSERVE_ALL, dummy);
 
         Trip returned = tripDC.save(trip);
         assertNotNull(tripDC.getEntity(returned.getId()));
@@ -234,7 +324,7 @@ public class TripDataControllerTest {
 
     @Test
     public void testDeleteNonexistentFromDatabase() throws SQLException {
-        DummyObserver dummy = new DummyObserver<Trip>();
+        DummyObserver<Trip> dummy = new DummyObserver<>();
         tripDC.addObserver(DataController.OBSERVE_ALL, dummy);
 
         tripDC.deleteFromDatabase(42069);
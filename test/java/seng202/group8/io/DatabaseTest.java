@@ -281,6 +281,73 @@ public class DatabaseTest {
         currentTestFailed = false;
     }
 
+    @Test
+    public void testPrepareDatabaseNotADatabase() throws IOException, SQLException {
+        Database.setDatabasePath(testDBPath2.toUri());
+        airportDC.save(airport);
+
+        File testDBFile = new File(testDBPath.toUri());
+        testDBFile.createNewFile();
+        PrintWriter writer = new PrintWriter(testDBFile, StandardCharsets.UTF_8);
+        writer.println("Sudo make me a sandwich");
+        writer.close();
+
+        long size = testDBFile.length();
+        assertThrows(org.sqlite.SQLiteException.class, () -> Database.prepareDatabase(testDBPath.toUri()));
+        assertEquals(size, testDBFile.length()); // Should not touch the file
+        assertNotNull(airportDC.getEntity(airport.getCode())); // Old database should still be usable
+
+        tryClose();
+        new File(testDBPath.toUri()).delete();
+        new File(testDBPath2.toUri()).delete();
+
+        currentTestFailed = false;
+    }
+
+    @Test
+    public void testSwitchToPreparedDatabase() throws IOException, SQLException {
+        Database.setDatabasePath(testDBPath.toUri());
+        airportDC.save(airport);
+
+        Database.PreparedDatabase prepared = Database.prepareDatabase(testDBPath2.toUri());
+        assertNotNull(airportDC.getEntity(airport.getCode())); // Preparing should not switch the database
+
+        Database.switchToPreparedDatabase(prepared);
+        assertEquals(new File(testDBPath2.toUri()).getCanonicalFile().toURI(), prepared.getPath());
+        assertNull(airportDC.getEntity(airport.getCode()));
+        assertEquals("NZ", Database.getCountry("New Zealand").getISO());
+
+        tryClose();
+        new File(testDBPath.toUri()).delete();
+        new File(testDBPath2.toUri()).delete();
+
+        currentTestFailed = false;
+    }
+
+    @Test
+    public void testHasPendingMigrations() throws IOException, SQLException {
+        assertTrue(Database.hasPendingMigrations(testDBPath.toUri())); // Gets the default database, which needs migrating
+
+        Database.setDatabasePath(testDBPath.toUri());
+        assertFalse(Database.hasPendingMigrations(testDBPath.toUri()));
+
+        tryClose();
+        new File(testDBPath.toUri()).delete();
+
+        currentTestFailed = false;
+    }
+
+    @Test
+    public void testGenerateFullTextSearchQuery() {
+        assertEquals("\"chri\"* \"int\"*", Database.generateFullTextSearchQuery("  chri int"));
+        assertEquals("\"O\"* \"Hare\"*", Database.generateFullTextSearchQuery("O'Hare"));
+        assertEquals("\"NEAR\"* \"x\"*", Database.generateFullTextSearchQuery("NEAR(x)"));
+        assertNull(Database.generateFullTextSearchQuery("*\" -"));
+        assertNull(Database.generateFullTextSearchQuery(null));
+
+        currentTestFailed = false;
+    }
+
     @Test
     public void testGenerateIdFilterSQLTextNoOptions() {
         assertNull(Database.generateIdFilterSQLText("Prop", List.of()));
@@ -0,0 +1,81 @@
+package seng202.group8.io;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.*;
+
+public class IndexAdvisorTest {
+
+    @Before
+    public void setup() {
+        Database.establishConnection();
+    }
+
+    @Test
+    public void testIndexesCreatedOnConnection() throws SQLException {
+        assertTrue(IndexAdvisor.getMissingIndexes(Database.databaseConnection).isEmpty());
+        assertEquals(0, IndexAdvisor.ensureIndexes(Database.databaseConnection));
+    }
+
+    @Test
+    public void testEnsureIndexesRecreatesDroppedIndex() throws SQLException {
+        try (Statement statement = Database.databaseConnection.createStatement()) {
+            statement.executeUpdate("DROP INDEX \"Airport Code Index\"");
+        }
+        assertEquals(1, IndexAdvisor.getMissingIndexes(Database.databaseConnection).size());
+        assertEquals(1, IndexAdvisor.ensureIndexes(Database.databaseConnection));
+        assertTrue(IndexAdvisor.getMissingIndexes(Database.databaseConnection).isEmpty());
+    }
+
+    @Test
+    public void testCodeFilterUsesExpressionIndex() {
+        String plan = QueryStatistics.explainQueryPlan(Database.databaseConnection,
+                "SELECT *, coalesce(IATA, ICAO) AS Code FROM Airport WHERE Code IN ('CHC', 'AKL')");
+        assertTrue(plan, plan.contains("Airport Code Index"));
+        assertFalse(plan, IndexAdvisor.planNeedsIndex(plan));
+    }
+
+    @Test
+    public void testRouteSortUsesIndex() {
+        String plan = QueryStatistics.explainQueryPlan(Database.databaseConnection,
+                "SELECT * FROM Route ORDER BY Price ASC NULLS LAST LIMIT 51 OFFSET 0");
+        assertFalse(plan, IndexAdvisor.planNeedsIndex(plan));
+    }
+
+    @Test
+    public void testFilteredSortUsesCompositeIndex() {
+        String plan = QueryStatistics.explainQueryPlan(Database.databaseConnection,
+                "SELECT * FROM Route WHERE Source IN ('CHC') ORDER BY TimeLength DESC NULLS LAST LIMIT 51 OFFSET 0");
+        assertTrue(plan, plan.contains("Route Source TimeLength Index"));
+        assertFalse(plan, IndexAdvisor.planNeedsIndex(plan));
+
+        plan = QueryStatistics.explainQueryPlan(Database.databaseConnection,
+                "SELECT * FROM Airport WHERE Country IN ('New Zealand') ORDER BY City ASC NULLS LAST LIMIT 51 OFFSET 0");
+        assertTrue(plan, plan.contains("Airport Country City Index"));
+        assertFalse(plan, IndexAdvisor.planNeedsIndex(plan));
+    }
+
+    @Test
+    public void testAdviseDoesNotRecordExplains() throws SQLException {
+        QueryStatistics.reset();
+        try (Statement statement = Database.databaseConnection.createStatement()) {
+            statement.executeQuery("SELECT * FROM Airline WHERE Name IS NOT NULL ORDER BY Callsign").close();
+        }
+        int recorded = QueryStatistics.getStatistics().size();
+        IndexAdvisor.adviseFromStatistics(Database.databaseConnection, 20);
+        assertEquals(recorded, QueryStatistics.getStatistics().size());
+        QueryStatistics.reset();
+    }
+
+    @Test
+    public void testPlanNeedsIndex() {
+        assertTrue(IndexAdvisor.planNeedsIndex("SCAN TABLE Airline\nUSE TEMP B-TREE FOR ORDER BY\n"));
+        assertTrue(IndexAdvisor.planNeedsIndex("SCAN TABLE Airline\n"));
+        assertFalse(IndexAdvisor.planNeedsIndex("SCAN TABLE Route AS r USING INDEX Route Price Index\n"));
+        assertFalse(IndexAdvisor.planNeedsIndex("SEARCH TABLE Airport USING INDEX Airport Country Index (Country=?)\n"));
+    }
+}
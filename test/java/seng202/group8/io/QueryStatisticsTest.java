@@ -0,0 +1,108 @@
+package seng202.group8.io;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.junit.Assert.*;
+
+public class QueryStatisticsTest {
+
+    @Before
+    public void setup() {
+        Database.establishConnection();
+        QueryStatistics.reset();
+    }
+
+    @After
+    public void teardown() {
+        QueryStatistics.reset();
+    }
+
+    public QueryStatistics.StatementStatistics getStatistics(String normalizedSql) {
+        for (QueryStatistics.StatementStatistics stats : QueryStatistics.getStatistics()) {
+            if (stats.getSql().equals(normalizedSql)) {
+                return stats;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testNormalizeLiterals() {
+        assertEquals("SELECT * FROM Airport WHERE Name = ? AND ID > ? LIMIT ? OFFSET ?",
+                QueryStatistics.normalize("SELECT * FROM Airport WHERE Name = 'O''Hare'  AND ID > 12\n LIMIT 51 OFFSET 0"));
+    }
+
+    @Test
+    public void testNormalizeInLists() {
+        assertEquals(QueryStatistics.normalize("SELECT * FROM Airline WHERE Country IN ('Fiji')"),
+                QueryStatistics.normalize("SELECT * FROM Airline WHERE Country IN ('New Zealand', 'Australia', 'Fiji')"));
+    }
+
+    @Test
+    public void testNormalizeKeepsIdentifiersWithNumbers() {
+        assertEquals("SELECT ICAO2 FROM t1", QueryStatistics.normalize("SELECT ICAO2 FROM t1"));
+    }
+
+    @Test
+    public void testBucketFor() {
+        assertEquals(0, QueryStatistics.bucketFor(500));
+        assertEquals(0, QueryStatistics.bucketFor(1_500));
+        assertEquals(1, QueryStatistics.bucketFor(2_000));
+        assertEquals(10, QueryStatistics.bucketFor(1_024_000));
+        assertEquals(QueryStatistics.NUM_LATENCY_BUCKETS - 1, QueryStatistics.bucketFor(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testRecordsCallsAndRows() throws SQLException {
+        String sql = "SELECT * FROM Country WHERE ID <= ?";
+        try (PreparedStatement statement = Database.databaseConnection.prepareStatement(sql)) {
+            for (int i = 0; i < 3; i++) {
+                statement.setInt(1, 10);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) ;
+                }
+            }
+        }
+
+        QueryStatistics.StatementStatistics stats = getStatistics(sql);
+        assertNotNull(stats);
+        assertEquals(3, stats.getCalls());
+        assertEquals(30, stats.getRows());
+        assertTrue(stats.getLatencyPercentileMicros(50) > 0);
+    }
+
+    @Test
+    public void testRecordsUnclosedResultSetOnReExecute() throws SQLException {
+        String sql = "SELECT * FROM Country LIMIT 5";
+        try (PreparedStatement statement = Database.databaseConnection.prepareStatement(sql)) {
+            statement.executeQuery().next();
+            statement.executeQuery().next();
+        }
+
+        QueryStatistics.StatementStatistics stats = getStatistics("SELECT * FROM Country LIMIT ?");
+        assertNotNull(stats);
+        assertEquals(2, stats.getCalls());
+        assertEquals(2, stats.getRows());
+    }
+
+    @Test
+    public void testExceptionsAreNotWrapped() {
+        assertThrows(org.sqlite.SQLiteException.class, () -> {
+            try (PreparedStatement statement = Database.databaseConnection.prepareStatement("SELECT * FROM NotATable")) {
+                statement.executeQuery();
+            }
+        });
+    }
+
+    @Test
+    public void testExplainQueryPlan() throws SQLException {
+        String plan = QueryStatistics.explainQueryPlan(Database.databaseConnection, "SELECT * FROM Country WHERE ID = ?");
+        assertTrue(plan, plan.contains("SEARCH"));
+    }
+}
@@ -0,0 +1,122 @@
+package seng202.group8.io;
+
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SchemaMigratorTest {
+    public static final String testDBName = "TEST_MIGRATION_DB_DELETE_IF_FOUND";
+    public Connection connection;
+
+    /**
+     * Migration which creates a table, then optionally fails
+     */
+    public static class TestMigration implements Migration {
+        private final int version;
+        private final boolean fail;
+
+        public TestMigration(int version, boolean fail) {
+            this.version = version;
+            this.fail = fail;
+        }
+
+        @Override
+        public int getVersion() {
+            return version;
+        }
+
+        @Override
+        public String getDescription() {
+            return "Test migration " + version;
+        }
+
+        @Override
+        public void apply(Connection connection, DoubleProperty progress) throws SQLException {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("CREATE TABLE Test" + version + " (ID INTEGER)");
+            }
+            progress.set(0.5);
+            if (fail) {
+                throw new SQLException("Failed on purpose");
+            }
+        }
+    }
+
+    @Before
+    public void setup() throws SQLException {
+        new File(testDBName).delete();
+        connection = DriverManager.getConnection("jdbc:sqlite:" + testDBName);
+    }
+
+    @After
+    public void teardown() throws SQLException {
+        connection.close();
+        new File(testDBName).delete();
+    }
+
+    public boolean tableExists(String name) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM sqlite_master WHERE name = '" + name + "'")) {
+                return resultSet.next() && resultSet.getInt(1) == 1;
+            }
+        }
+    }
+
+    @Test
+    public void testMigratesInOrder() throws SQLException {
+        List<Migration> migrations = List.of(new TestMigration(1, false), new TestMigration(2, false));
+        DoubleProperty progress = new SimpleDoubleProperty();
+
+        assertEquals(2, SchemaMigrator.migrate(connection, migrations, progress));
+        assertEquals(2, SchemaMigrator.getSchemaVersion(connection));
+        assertTrue(tableExists("Test1"));
+        assertTrue(tableExists("Test2"));
+        assertEquals(1, progress.get(), 0.0001);
+        assertTrue(connection.getAutoCommit());
+    }
+
+    @Test
+    public void testOnlyPendingMigrationsApplied() throws SQLException {
+        SchemaMigrator.migrate(connection, List.of(new TestMigration(1, false)), null);
+        assertEquals(1, SchemaMigrator.migrate(connection, List.of(new TestMigration(1, false), new TestMigration(2, false)), null));
+        assertEquals(0, SchemaMigrator.migrate(connection, List.of(new TestMigration(1, false), new TestMigration(2, false)), null));
+    }
+
+    @Test
+    public void testFailedMigrationRolledBack() throws SQLException {
+        List<Migration> migrations = List.of(new TestMigration(1, false), new TestMigration(2, true));
+
+        assertThrows(SQLException.class, () -> SchemaMigrator.migrate(connection, migrations, null));
+        assertEquals(1, SchemaMigrator.getSchemaVersion(connection)); // First migration still committed
+        assertTrue(tableExists("Test1"));
+        assertFalse(tableExists("Test2"));
+        assertTrue(connection.getAutoCommit());
+    }
+
+    @Test
+    public void testNewerDatabaseRejected() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("PRAGMA user_version = 10");
+        }
+        assertThrows(SQLException.class, () -> SchemaMigrator.migrate(connection, List.of(new TestMigration(1, false)), null));
+    }
+
+    @Test
+    public void testDatabaseMigratedOnConnection() throws SQLException {
+        Database.establishConnection();
+        assertEquals(SchemaMigrator.getLatestVersion(), SchemaMigrator.getSchemaVersion(Database.databaseConnection));
+        assertTrue(SchemaMigrator.getPendingMigrations(Database.databaseConnection).isEmpty());
+    }
+}
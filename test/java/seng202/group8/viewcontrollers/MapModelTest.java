@@ -0,0 +1,132 @@
+package seng202.group8.viewcontrollers;
+
+import org.junit.Before;
+import org.junit.Test;
+import seng202.group8.data.Airport;
+import seng202.group8.data.Route;
+import seng202.group8.data.TripFlight;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MapModelTest {
+    public MapModel model;
+    public Airport airport1;
+    public Airport airport2;
+    public Route route;
+    public List<TripFlight> flights;
+
+    @Before
+    public void setup() {
+        model = new MapModel();
+        airport1 = new Airport(1, "Airport One", "City", "New Zealand", "AAA", "AAAA", 10.0, 20.0, 0, 12, 'Z');
+        airport2 = new Airport(2, "Airport Two", "City", "New Zealand", "BBB", "BBBB", -10.0, 30.0, 0, 12, 'Z');
+        route = new Route(5, "AL", "AAA", "BBB", "777", 100, 'N', 60, new ArrayList<>());
+        flights = new ArrayList<>(Arrays.asList(
+                new TripFlight(1, "AAA", "BBB", "AL", 600, LocalDate.of(2020, 1, 1), null),
+                new TripFlight(2, "BBB", "AAA", "AL", 600, LocalDate.of(2020, 1, 2), null)));
+    }
+
+    /**
+     * Prepares an update and commits it, as the map view does once the delta has been sent
+     */
+    public String send(Collection<Airport> airports, Collection<Route> routes, List<TripFlight> tripFlights) {
+        MapModel.Update update = model.prepare(airports, routes, tripFlights);
+        assertTrue(model.commit(update));
+        return update.getDelta();
+    }
+
+    @Test
+    public void testFirstUpdateSendsEverything() {
+        String delta = send(Arrays.asList(airport1, airport2), Collections.singletonList(route), flights);
+        assertTrue(delta.contains(MapModel.airportToJson(airport1)));
+        assertTrue(delta.contains(MapModel.airportToJson(airport2)));
+        assertTrue(delta.contains(MapModel.routeToJson(route)));
+        assertTrue(delta.contains("{\"index\":1,\"flight\":" + MapModel.flightToJson(flights.get(1)) + "}"));
+        assertTrue(delta.contains("\"length\":2"));
+    }
+
+    @Test
+    public void testNoChangeSendsNothing() {
+        send(Arrays.asList(airport1, airport2), Collections.singletonList(route), flights);
+        assertNull(send(Arrays.asList(airport2, airport1), Collections.singletonList(route), flights));
+    }
+
+    @Test
+    public void testOnlyChangesSent() {
+        send(Arrays.asList(airport1, airport2), Collections.singletonList(route), flights);
+        flights.set(1, new TripFlight(2, "BBB", "AAA", "AL", 700, LocalDate.of(2020, 1, 2), null));
+
+        String delta = send(Collections.singletonList(airport1), Collections.singletonList(route), flights);
+        assertEquals("{\"airports\":{\"remove\":[2],\"put\":[]},\"routes\":{}," +
+                "\"flights\":{\"length\":2,\"put\":[{\"index\":1,\"flight\":" + MapModel.flightToJson(flights.get(1)) + "}]}}", delta);
+    }
+
+    @Test
+    public void testRemovedFlightsShortenTrip() {
+        send(Arrays.asList(airport1, airport2), Collections.singletonList(route), flights);
+        String delta = send(Arrays.asList(airport1, airport2), Collections.singletonList(route), flights.subList(0, 1));
+        assertEquals("{\"airports\":{},\"routes\":{},\"flights\":{\"length\":1,\"put\":[]}}", delta);
+    }
+
+    @Test
+    public void testClearSendsEverythingAgain() {
+        String first = send(Arrays.asList(airport1, airport2), Collections.singletonList(route), flights);
+        model.clear();
+        assertNotNull(send(Arrays.asList(airport1, airport2), Collections.singletonList(route), flights));
+        assertNotNull(first);
+    }
+
+    @Test
+    public void testJsonStringEscaping() {
+        assertEquals("\"\"", MapModel.jsonString(null));
+        assertEquals("\"a\\\"b\\\\c\\u000a\\u2028\"", MapModel.jsonString("a\"b\\c\n\u2028"));
+    }
+
+    @Test
+    public void testPrepareDoesNotChangeModel() {
+        MapModel.Update update = model.prepare(Arrays.asList(airport1, airport2), Collections.singletonList(route), flights);
+        assertNotNull(update.getDelta());
+        assertEquals(update.getDelta(), model.prepare(Arrays.asList(airport1, airport2), Collections.singletonList(route), flights).getDelta());
+
+        assertTrue(model.commit(update));
+        assertNull(model.prepare(Arrays.asList(airport1, airport2), Collections.singletonList(route), flights).getDelta());
+    }
+
+    @Test
+    public void testCommitRejectsOutdatedUpdate() {
+        MapModel.Update older = model.prepare(Collections.singletonList(airport1), new ArrayList<>(), new ArrayList<>());
+        MapModel.Update newer = model.prepare(Arrays.asList(airport1, airport2), Collections.singletonList(route), flights);
+        assertTrue(model.commit(newer));
+        assertFalse(model.commit(older)); // Prepared against what the map showed before `newer`
+        assertNull(send(Arrays.asList(airport1, airport2), Collections.singletonList(route), flights));
+    }
+
+    @Test
+    public void testBulkDataIsLittleEndian() {
+        MapBulkData data = new MapBulkData();
+        for (int i = 0; i < 300; i++) { // Past the starting capacity
+            data.addInt(i - 150).addDouble(i / 4.0);
+        }
+        data.addString("AKL").addString("quote\"");
+
+        ByteBuffer ints = ByteBuffer.wrap(Base64.getDecoder().decode(data.getInts())).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer doubles = ByteBuffer.wrap(Base64.getDecoder().decode(data.getDoubles())).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(300 * Integer.BYTES, ints.remaining());
+        assertEquals(300 * Double.BYTES, doubles.remaining());
+        for (int i = 0; i < 300; i++) {
+            assertEquals(i - 150, ints.getInt());
+            assertEquals(i / 4.0, doubles.getDouble(), 0);
+        }
+        assertEquals("[\"AKL\",\"quote\\\"\"]", data.getStrings());
+    }
+}
@@ -0,0 +1,100 @@
+package seng202.group8.viewcontrollers.tablecontrollers;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RowWindowTest {
+    public ArrayList<Runnable> loads;
+    public ArrayList<Integer> loadedOffsets;
+    public RowWindow<Integer> window;
+
+    /**
+     * Loader for a result set where each row is its own position
+     */
+    public List<Integer> load(int offset, int count) {
+        loadedOffsets.add(offset);
+        List<Integer> rows = new ArrayList<>();
+        for (int i = offset; i < Math.min(offset + count, window.size()); i++) {
+            rows.add(i);
+        }
+        return rows;
+    }
+
+    @Before
+    public void setup() {
+        loads = new ArrayList<>();
+        loadedOffsets = new ArrayList<>();
+        window = new RowWindow<>(loads::add, Runnable::run);
+    }
+
+    @Test
+    public void testRowsLoadedInBlocksWhenAskedFor() {
+        window.reset(1000, this::load);
+        ArrayList<Integer> changedRows = new ArrayList<>();
+        window.addListener((javafx.collections.ListChangeListener<Integer>) change -> {
+            while (change.next()) {
+                for (int i = change.getFrom(); i < change.getTo(); i++) {
+                    changedRows.add(i);
+                }
+            }
+        });
+        assertEquals(1000, window.size());
+        assertTrue(loads.isEmpty());
+
+        assertNull(window.get(250)); // Not loaded yet
+        assertEquals(3, loads.size()); // Its block and the blocks either side
+        while (!loads.isEmpty()) {
+            loads.remove(0).run();
+        }
+
+        assertEquals(Integer.valueOf(250), window.get(250));
+        assertEquals(Integer.valueOf(199), window.get(199));
+        assertEquals(Integer.valueOf(399), window.get(399));
+        assertEquals(3 * RowWindow.BLOCK_SIZE, changedRows.size()); // The table is told the loaded rows changed
+    }
+
+    @Test
+    public void testDistantBlocksEvicted() {
+        window = new RowWindow<>(Runnable::run, Runnable::run);
+        window.reset(67000, this::load);
+        for (int i = 0; i < window.size(); i += 10) {
+            assertEquals(Integer.valueOf(i), window.get(i));
+            assertTrue(window.getLoadedBlockCount() <= RowWindow.MAX_BLOCKS);
+        }
+        assertEquals(1, loadedOffsets.stream().filter(offset -> offset == 0).count());
+        assertEquals(Integer.valueOf(0), window.get(0));
+        assertEquals(2, loadedOffsets.stream().filter(offset -> offset == 0).count()); // Evicted, so loaded again
+    }
+
+    @Test
+    public void testBlocksOfOldResultSetDropped() {
+        window.reset(1000, this::load);
+        window.get(0);
+        window.reset(500, this::load);
+        while (!loads.isEmpty()) {
+            loads.remove(0).run();
+        }
+
+        assertTrue(loadedOffsets.isEmpty()); // Skipped before being loaded
+        assertEquals(0, window.getLoadedBlockCount());
+        assertNull(window.get(0));
+    }
+
+    @Test
+    public void testBlocksScrolledPastSkipped() {
+        window.reset(10000, this::load);
+        window.get(0);
+        window.get(9999);
+        while (!loads.isEmpty()) {
+            loads.remove(0).run();
+        }
+
+        assertFalse(loadedOffsets.contains(0));
+        assertTrue(loadedOffsets.contains(9900));
+    }
+}